@@ -1,11 +1,18 @@
 package varga.kirka.controller;
 
+import io.undertow.servlet.handlers.ServletRequestContext;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import varga.kirka.model.FileInfo;
 import varga.kirka.model.Run;
+import varga.kirka.model.RunStatus;
+import varga.kirka.service.ArtifactArchiveService;
+import varga.kirka.service.ArtifactCache;
+import varga.kirka.service.ArtifactRedirectService;
 import varga.kirka.service.ArtifactService;
+import varga.kirka.service.ResourceNotFoundException;
 import varga.kirka.service.RunService;
+import org.springframework.http.HttpHeaders;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import jakarta.servlet.http.HttpServletResponse;
@@ -13,11 +20,12 @@ import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.net.URLDecoder;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.InvalidPathException;
+import java.net.URI;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -31,9 +39,24 @@ public class ArtifactController {
 
     private final RunService runService;
 
+    private final ArtifactCache artifactCache;
+
+    private final ArtifactArchiveService artifactArchiveService;
+
+    private final ArtifactRedirectService artifactRedirectService;
+
+    /**
+     * Lists the artifacts of a run. Without {@code max_results} or {@code page_token} the whole
+     * directory comes back at once, as MLflow clients expect; with either, or with
+     * {@code recursive} (the files at any depth), one page of it and a {@code next_page_token}
+     * while more remain.
+     */
     @GetMapping("/list")
-    public Map<String, List<FileInfo>> listArtifacts(@RequestParam(value = "run_id") String runId,
-                                            @RequestParam(value = "path", required = false) String path) throws IOException {
+    public Map<String, Object> listArtifacts(@RequestParam(value = "run_id") String runId,
+                                             @RequestParam(value = "path", required = false) String path,
+                                             @RequestParam(value = "max_results", required = false) Integer maxResults,
+                                             @RequestParam(value = "page_token", required = false) String pageToken,
+                                             @RequestParam(value = "recursive", defaultValue = "false") boolean recursive) throws IOException {
         log.debug("REST request to list artifacts for run: {}, path: {}", runId, path);
         Run run = runService.getRun(runId);
         if (run == null) {
@@ -43,13 +66,21 @@ public class ArtifactController {
         String baseUri = run.getInfo().getArtifactUri();
         String fullPath = baseUri;
         if (path != null && !path.isEmpty()) {
-            validatePath(path);
+            ArtifactPaths.validate(path);
             fullPath = baseUri + (baseUri.endsWith("/") ? "" : "/") + path;
         }
 
-        List<FileInfo> files = artifactService.listArtifacts(fullPath);
-
-        return Map.of("files", files);
+        if (maxResults == null && pageToken == null && !recursive) {
+            List<FileInfo> files = artifactService.listArtifacts(fullPath);
+            return Map.of("files", files);
+        }
+        RunStatus status = run.getInfo().getStatus();
+        var page = artifactService.listArtifacts(fullPath, pageToken, maxResults, recursive,
+                status != null && status.isTerminal());
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("files", page.items());
+        if (page.nextPageToken() != null) response.put("next_page_token", page.nextPageToken());
+        return response;
     }
 
     @PostMapping("/upload")
@@ -64,44 +95,175 @@ public class ArtifactController {
         String baseUri = run.getInfo().getArtifactUri();
         String fullPath = baseUri;
         if (path != null && !path.isEmpty()) {
-            validatePath(path);
+            ArtifactPaths.validate(path);
             fullPath = baseUri + (baseUri.endsWith("/") ? "" : "/") + path;
         }
 
         // Ensure the file name is included in the HDFS path
         String fileName = file.getOriginalFilename();
         if (fileName != null) {
-            validatePath(fileName);
+            ArtifactPaths.validate(fileName);
         }
         String hdfsPath = fullPath + (fullPath.endsWith("/") ? "" : "/") + fileName;
 
         try (InputStream is = file.getInputStream()) {
-            artifactService.uploadArtifact(hdfsPath, is);
+            artifactService.uploadArtifact(hdfsPath, is, run.getInfo().getExperimentId(), null);
         }
 
         return Map.of("path", hdfsPath);
     }
 
+    /**
+     * Streams an artifact file. A single-range {@code Range} header is answered with
+     * {@code 206 Partial Content} and only that range is read from HDFS; {@code If-Range} (the
+     * {@code ETag} or {@code Last-Modified} of an earlier response) makes the range apply only
+     * if the file is unchanged, so an interrupted download can resume safely.
+     *
+     * <p>With the node-local {@link ArtifactCache} enabled, the file is copied from local disk
+     * instead of HDFS. A range of a file not cached yet is read from HDFS while the cache
+     * fetches the whole file in the background, rather than waiting for that fetch.
+     *
+     * <p>With redirects enabled, a whole large file is not sent at all: the answer is a
+     * {@code 307} to its WebHDFS or HttpFS URL (see {@link ArtifactRedirectService}). Clients
+     * that cannot follow it ask for {@code redirect=false} and get the file from here.
+     */
     @GetMapping("/download")
     public void downloadArtifact(@RequestParam("run_id") String runId,
                                 @RequestParam("path") String path,
+                                @RequestHeader(value = HttpHeaders.RANGE, required = false) String rangeHeader,
+                                @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) String ifRange,
+                                @RequestParam(value = "redirect", defaultValue = "true") boolean redirect,
                                 HttpServletResponse response) throws IOException {
         Run run = runService.getRun(runId);
         if (run == null) {
             throw new IllegalArgumentException("Run not found: " + runId);
         }
 
-        validatePath(path);
+        ArtifactPaths.validate(path);
         String baseUri = run.getInfo().getArtifactUri();
         String hdfsPath = baseUri + (baseUri.endsWith("/") ? "" : "/") + path;
+        ArtifactService.ArtifactFile file = artifactService.statArtifact(hdfsPath);
+
+        if (redirect && rangeHeader == null) {
+            URI location = artifactRedirectService.redirect(hdfsPath, file.length());
+            if (location != null) {
+                // The URL carries a credential: keep it out of shared caches.
+                response.setHeader(HttpHeaders.CACHE_CONTROL, "no-store");
+                response.setHeader(HttpHeaders.LOCATION, location.toString());
+                response.setStatus(HttpServletResponse.SC_TEMPORARY_REDIRECT);
+                return;
+            }
+        }
 
         // Extract safe filename from path
         String fileName = path.contains("/") ? path.substring(path.lastIndexOf("/") + 1) : path;
         response.setContentType("application/octet-stream");
         response.setHeader("Content-Disposition", "attachment; filename=\"" + fileName + "\"");
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader(HttpHeaders.ETAG, file.etag());
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, file.modificationTime());
+
+        ByteRange range = ifRangeMatches(ifRange, file) ? ByteRange.parse(rangeHeader, file.length()) : null;
+        if (range == ByteRange.UNSATISFIABLE) {
+            response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + file.length());
+            response.setContentLengthLong(0);
+            return;
+        }
+        long offset = 0;
+        long length = file.length();
+        if (range != null) {
+            offset = range.start();
+            length = range.length();
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader(HttpHeaders.CONTENT_RANGE,
+                    "bytes " + range.start() + "-" + range.end() + "/" + file.length());
+        }
+        response.setContentLengthLong(length);
 
+        ArtifactCache.Loader loader = out -> artifactService.downloadArtifact(hdfsPath, out, 0, file.length());
+        Path cached = range == null
+                ? artifactCache.get(hdfsPath, file, loader)
+                : artifactCache.peek(hdfsPath, file, loader);
         try (OutputStream os = response.getOutputStream()) {
-            artifactService.downloadArtifact(hdfsPath, os);
+            if (cached != null) {
+                artifactCache.transfer(cached, offset, length, os);
+            } else {
+                artifactService.downloadArtifact(hdfsPath, os, offset, length);
+            }
+        }
+    }
+
+    /**
+     * Streams the directory {@code path} of a run (its whole artifact root by default) as one
+     * {@code zip}, {@code tar}, {@code tar.gz} or {@code tar.zst} archive, with a single access
+     * check for all its files; see {@link ArtifactArchiveService}.
+     */
+    @GetMapping("/download-archive")
+    public void downloadArchive(@RequestParam("run_id") String runId,
+                                @RequestParam(value = "path", required = false) String path,
+                                @RequestParam(value = "format", required = false) String format,
+                                HttpServletResponse response) throws IOException {
+        Run run = runService.getRun(runId);
+        if (run == null) {
+            throw new IllegalArgumentException("Run not found: " + runId);
+        }
+        ArtifactArchiveService.Format archiveFormat = ArtifactArchiveService.Format.parse(format);
+
+        String baseUri = run.getInfo().getArtifactUri();
+        String hdfsPath = baseUri;
+        String archiveName = runId;
+        if (path != null && !path.isEmpty()) {
+            ArtifactPaths.validate(path);
+            hdfsPath = baseUri + (baseUri.endsWith("/") ? "" : "/") + path;
+            String trimmed = path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+            if (!trimmed.isEmpty()) archiveName = trimmed.substring(trimmed.lastIndexOf('/') + 1);
+        }
+        if (!artifactService.existsArtifact(hdfsPath)) {
+            throw new ResourceNotFoundException("Artifact", path == null ? "" : path);
+        }
+
+        response.setContentType(archiveFormat.contentType());
+        response.setHeader("Content-Disposition",
+                "attachment; filename=\"" + archiveName + "." + archiveFormat.extension() + "\"");
+        OutputStream os = response.getOutputStream();
+        try {
+            artifactArchiveService.writeArchive(hdfsPath, archiveFormat, os);
+        } catch (IOException | RuntimeException e) {
+            if (!response.isCommitted()) {
+                // Nothing sent yet: drop the archive headers so that the error is answered as JSON.
+                response.reset();
+                throw e;
+            }
+            // Closing the stream would end the 200 response cleanly, and a tar cut at an entry
+            // boundary reads as complete: the connection is dropped instead.
+            log.warn("Archive of {} failed after its response was sent, aborting the connection: {}",
+                    hdfsPath, e.toString());
+            abortConnection();
+            return;
+        }
+        os.close();
+    }
+
+    /** Drops the connection of the current request, without ending its response. */
+    private static void abortConnection() {
+        ServletRequestContext context = ServletRequestContext.current();
+        if (context != null) {
+            org.xnio.IoUtils.safeClose(context.getExchange().getConnection());
+        }
+    }
+
+    /** Whether an {@code If-Range} validator still designates the current file; true when absent. */
+    private static boolean ifRangeMatches(String ifRange, ArtifactService.ArtifactFile file) {
+        if (ifRange == null) return true;
+        String validator = ifRange.trim();
+        if (validator.startsWith("W/")) return false;
+        if (validator.startsWith("\"")) return validator.equals(file.etag());
+        try {
+            long date = ZonedDateTime.parse(validator, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            return date / 1000 == file.modificationTime() / 1000;
+        } catch (DateTimeParseException e) {
+            return false;
         }
     }
 
@@ -122,65 +284,11 @@ public class ArtifactController {
             throw new IllegalArgumentException("Run not found: " + runId);
         }
 
-        validatePath(path);
+        ArtifactPaths.validate(path);
         String baseUri = run.getInfo().getArtifactUri();
         String hdfsPath = baseUri + (baseUri.endsWith("/") ? "" : "/") + path;
 
         artifactService.deleteArtifact(hdfsPath);
         return Map.of();
     }
-
-    /**
-     * Validates that a user-supplied relative path cannot escape its run's artifact directory.
-     * Rejects encoded traversal (%2e%2e), null bytes, control characters, Windows back-slashes,
-     * absolute paths and any path that, once normalized, still contains a '..' segment.
-     */
-    private void validatePath(String path) {
-        if (path == null || path.isEmpty()) return;
-
-        // Defence in depth: decode once in case an upstream proxy forwarded the raw encoding,
-        // then reject double-encoded traversal (%252e...) by refusing any residual '%'.
-        String decoded;
-        try {
-            decoded = URLDecoder.decode(path, StandardCharsets.UTF_8);
-        } catch (IllegalArgumentException e) {
-            throw new IllegalArgumentException("Malformed path encoding: " + path);
-        }
-
-        for (int i = 0; i < decoded.length(); i++) {
-            char c = decoded.charAt(i);
-            if (c == '\0' || (c < 0x20 && c != '\t')) {
-                throw new IllegalArgumentException("Path contains a forbidden control character");
-            }
-        }
-
-        String normalized = decoded.replace('\\', '/');
-        if (normalized.startsWith("/")) {
-            throw new IllegalArgumentException("Absolute paths are not allowed: " + path);
-        }
-
-        // Reject any '..' segment before normalization. A path like "a/b/c/../../escape"
-        // would normalize to the safe "a/escape", but such constructions in user input are
-        // suspicious enough to refuse at the boundary.
-        for (String raw : normalized.split("/")) {
-            if (raw.equals("..")) {
-                throw new IllegalArgumentException("Path traversal is not allowed: " + path);
-            }
-        }
-
-        Path canonical;
-        try {
-            canonical = Paths.get(normalized).normalize();
-        } catch (InvalidPathException e) {
-            throw new IllegalArgumentException("Invalid path: " + path);
-        }
-        for (Path segment : canonical) {
-            if (segment.toString().equals("..")) {
-                throw new IllegalArgumentException("Path traversal is not allowed: " + path);
-            }
-        }
-        if (canonical.isAbsolute()) {
-            throw new IllegalArgumentException("Absolute paths are not allowed: " + path);
-        }
-    }
 }
@@ -0,0 +1,68 @@
+package varga.kirka.controller;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/** Checks on user-supplied artifact paths, shared by the artifact endpoints. */
+final class ArtifactPaths {
+
+    private ArtifactPaths() {
+    }
+
+    /**
+     * Validates that a user-supplied relative path cannot escape its run's artifact directory.
+     * Rejects encoded traversal (%2e%2e), null bytes, control characters, Windows back-slashes,
+     * absolute paths and any path that, once normalized, still contains a '..' segment.
+     */
+    static void validate(String path) {
+        if (path == null || path.isEmpty()) return;
+
+        // Defence in depth: decode once in case an upstream proxy forwarded the raw encoding,
+        // then reject double-encoded traversal (%252e...) by refusing any residual '%'.
+        String decoded;
+        try {
+            decoded = URLDecoder.decode(path, StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed path encoding: " + path);
+        }
+
+        for (int i = 0; i < decoded.length(); i++) {
+            char c = decoded.charAt(i);
+            if (c == '\0' || (c < 0x20 && c != '\t')) {
+                throw new IllegalArgumentException("Path contains a forbidden control character");
+            }
+        }
+
+        String normalized = decoded.replace('\\', '/');
+        if (normalized.startsWith("/")) {
+            throw new IllegalArgumentException("Absolute paths are not allowed: " + path);
+        }
+
+        // Reject any '..' segment before normalization. A path like "a/b/c/../../escape"
+        // would normalize to the safe "a/escape", but such constructions in user input are
+        // suspicious enough to refuse at the boundary.
+        for (String raw : normalized.split("/")) {
+            if (raw.equals("..")) {
+                throw new IllegalArgumentException("Path traversal is not allowed: " + path);
+            }
+        }
+
+        Path canonical;
+        try {
+            canonical = Paths.get(normalized).normalize();
+        } catch (InvalidPathException e) {
+            throw new IllegalArgumentException("Invalid path: " + path);
+        }
+        for (Path segment : canonical) {
+            if (segment.toString().equals("..")) {
+                throw new IllegalArgumentException("Path traversal is not allowed: " + path);
+            }
+        }
+        if (canonical.isAbsolute()) {
+            throw new IllegalArgumentException("Absolute paths are not allowed: " + path);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package varga.kirka.controller;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotBlank;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import varga.kirka.model.Run;
+import varga.kirka.repo.ContentStore;
+import varga.kirka.service.ArtifactService;
+import varga.kirka.service.ExperimentService;
+import varga.kirka.service.MultipartUploadService;
+import varga.kirka.service.RunService;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * MLFlow artifacts proxy ({@code mlflow-artifacts:/} URIs). The request body of a {@code PUT}
+ * is the raw file content and is streamed straight to HDFS: unlike the multipart
+ * {@code /api/2.0/mlflow/artifacts/upload}, it is never spooled to local disk.
+ *
+ * <p>Paths are relative to the proxy destination and take the form
+ * {@code <experiment_id>/<run_id>/<path>}; the caller needs write access to the run, and the
+ * file must land inside that run's artifact directory.
+ *
+ * <p>Large files can be sent in parts over several connections ({@code mpu/create}, then one
+ * {@code PUT} per part to the URLs it returns, then {@code mpu/complete} or {@code mpu/abort});
+ * see {@link MultipartUploadService}. As in MLFlow, the URL path of these calls is the
+ * directory and the {@code path} field the file name.
+ *
+ * <p>With the content-addressed store enabled ({@link ContentStore}), a client that knows the
+ * SHA-256 of a file can ask {@code GET blobs/<sha256>?experiment_id=<id>} whether the
+ * experiment already holds it and, if so, {@code POST blobs/<sha256>/link/<path>} instead of
+ * uploading it. Both only see the content of one experiment: the question needs read access to
+ * it, and a link only finds content of the destination run's experiment. A {@code PUT} may
+ * declare the hash in {@value #CONTENT_SHA256_HEADER}; content that does not match it is
+ * rejected.
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/2.0/mlflow-artifacts")
+@RequiredArgsConstructor
+public class ArtifactProxyController {
+
+    static final String CONTENT_SHA256_HEADER = "X-Kirka-Content-Sha256";
+
+    private final ArtifactService artifactService;
+
+    private final RunService runService;
+
+    private final ExperimentService experimentService;
+
+    private final MultipartUploadService multipartUploadService;
+
+    @lombok.Data
+    public static class CreateMultipartUploadRequest {
+        @NotBlank private String path;
+        private int num_parts = 1;
+    }
+
+    @lombok.Data
+    @lombok.AllArgsConstructor
+    public static class MultipartUploadCredential {
+        private int part_number;
+        private String url;
+        private Map<String, String> headers;
+    }
+
+    @lombok.Data
+    @lombok.AllArgsConstructor
+    public static class CreateMultipartUploadResponse {
+        private String upload_id;
+        private List<MultipartUploadCredential> credentials;
+    }
+
+    @lombok.Data
+    public static class MultipartUploadPart {
+        private int part_number;
+        private String etag;
+        private String url;
+    }
+
+    @lombok.Data
+    public static class CompleteMultipartUploadRequest {
+        @NotBlank private String path;
+        @NotBlank private String upload_id;
+        private List<MultipartUploadPart> parts;
+    }
+
+    @lombok.Data
+    public static class AbortMultipartUploadRequest {
+        @NotBlank private String path;
+        @NotBlank private String upload_id;
+    }
+
+    /** Where a proxy path lands: the run's artifact root and the file inside it, and the run's experiment. */
+    private record Destination(String runRoot, String target, String experimentId) {}
+
+    /** Resolves {@code <experiment_id>/<run_id>/<file path>}, checking write access to the run. */
+    private Destination resolve(String relative) throws IOException {
+        ArtifactPaths.validate(relative);
+        String[] parts = relative.split("/", 3);
+        if (parts.length < 3 || parts[2].isEmpty() || parts[2].endsWith("/")) {
+            throw new IllegalArgumentException(
+                    "Artifact path must be <experiment_id>/<run_id>/<file path>: " + relative);
+        }
+
+        Run run = runService.getWritableRun(parts[1]);
+        String runRoot = run.getInfo().getArtifactUri();
+        String target = artifactService.proxyLocation(relative);
+        if (runRoot == null || !target.startsWith(runRoot + (runRoot.endsWith("/") ? "" : "/"))) {
+            throw new IllegalArgumentException("Path " + relative + " is outside the artifact directory of run "
+                    + parts[1]);
+        }
+        return new Destination(runRoot, target, run.getInfo().getExperimentId());
+    }
+
+    private static String strip(String artifactPath) {
+        return artifactPath.startsWith("/") ? artifactPath.substring(1) : artifactPath;
+    }
+
+    private static String sha256(String value) {
+        String sha256 = value.trim().toLowerCase(Locale.ROOT);
+        if (!ContentStore.isSha256(sha256)) {
+            throw new IllegalArgumentException("Not a hex-encoded SHA-256: " + value);
+        }
+        return sha256;
+    }
+
+    /** The file {@code path} in the directory {@code directory} of a multipart call. */
+    private static String join(String directory, String path) {
+        String dir = strip(directory);
+        return dir.isEmpty() || dir.endsWith("/") ? dir + path : dir + "/" + path;
+    }
+
+    @PutMapping("/artifacts/{*artifactPath}")
+    public Map<String, Object> uploadArtifact(@PathVariable("artifactPath") String artifactPath,
+                                              @RequestHeader(value = CONTENT_SHA256_HEADER, required = false) String contentSha256,
+                                              HttpServletRequest request) throws IOException {
+        Destination destination = resolve(strip(artifactPath));
+        String sha256 = contentSha256 == null || contentSha256.isBlank() ? null : sha256(contentSha256);
+        try (InputStream body = request.getInputStream()) {
+            long written = artifactService.uploadArtifact(destination.target(), body, destination.experimentId(), sha256);
+            log.debug("Streamed {} bytes to {}", written, destination.target());
+        }
+        return Map.of();
+    }
+
+    @GetMapping("/blobs/{sha256}")
+    public Map<String, Object> hasBlob(@PathVariable("sha256") String sha256,
+                                       @RequestParam("experiment_id") String experimentId) throws IOException {
+        String hash = sha256(sha256);
+        experimentService.getExperiment(experimentId);
+        Long size = artifactService.blobLength(experimentId, hash);
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("exists", size != null);
+        if (size != null) response.put("size", size);
+        return response;
+    }
+
+    @PostMapping("/blobs/{sha256}/link/{*artifactPath}")
+    public Map<String, Object> linkBlob(@PathVariable("sha256") String sha256,
+                                        @PathVariable("artifactPath") String artifactPath) throws IOException {
+        Destination destination = resolve(strip(artifactPath));
+        long size = artifactService.linkArtifact(destination.target(), destination.experimentId(), sha256(sha256));
+        log.debug("Linked blob {} ({} bytes) to {}", sha256, size, destination.target());
+        return Map.of("size", size);
+    }
+
+    @PostMapping("/mpu/create/{*artifactPath}")
+    public CreateMultipartUploadResponse createMultipartUpload(@PathVariable("artifactPath") String artifactPath,
+                                                               @Valid @RequestBody CreateMultipartUploadRequest request) throws IOException {
+        Destination destination = resolve(join(artifactPath, request.getPath()));
+        String uploadId = multipartUploadService.create(destination.runRoot(), destination.target(), request.getNum_parts());
+        List<MultipartUploadCredential> credentials = new ArrayList<>(request.getNum_parts());
+        for (int part = 1; part <= request.getNum_parts(); part++) {
+            String url = ServletUriComponentsBuilder.fromCurrentContextPath()
+                    .path("/api/2.0/mlflow-artifacts/mpu/upload/" + strip(artifactPath))
+                    .queryParam("path", request.getPath())
+                    .queryParam("upload_id", uploadId)
+                    .queryParam("part_number", part)
+                    .encode()
+                    .toUriString();
+            credentials.add(new MultipartUploadCredential(part, url, Map.of()));
+        }
+        return new CreateMultipartUploadResponse(uploadId, credentials);
+    }
+
+    @PutMapping("/mpu/upload/{*artifactPath}")
+    public ResponseEntity<Map<String, Object>> uploadPart(@PathVariable("artifactPath") String artifactPath,
+                                                          @RequestParam("path") String path,
+                                                          @RequestParam("upload_id") String uploadId,
+                                                          @RequestParam("part_number") int partNumber,
+                                                          @RequestHeader(value = "Content-MD5", required = false) String contentMd5,
+                                                          HttpServletRequest request) throws IOException {
+        Destination destination = resolve(join(artifactPath, path));
+        String etag;
+        try (InputStream body = request.getInputStream()) {
+            etag = multipartUploadService.uploadPart(destination.runRoot(), destination.target(), uploadId, partNumber,
+                    body, contentMd5);
+        }
+        return ResponseEntity.ok().header(HttpHeaders.ETAG, etag).body(Map.of());
+    }
+
+    @PostMapping("/mpu/complete/{*artifactPath}")
+    public Map<String, Object> completeMultipartUpload(@PathVariable("artifactPath") String artifactPath,
+                                                       @Valid @RequestBody CompleteMultipartUploadRequest request) throws IOException {
+        Destination destination = resolve(join(artifactPath, request.getPath()));
+        List<MultipartUploadService.Part> parts = new ArrayList<>();
+        if (request.getParts() != null) {
+            for (MultipartUploadPart part : request.getParts()) {
+                parts.add(new MultipartUploadService.Part(part.getPart_number(), part.getEtag()));
+            }
+        }
+        multipartUploadService.complete(destination.runRoot(), destination.target(), request.getUpload_id(), parts);
+        return Map.of();
+    }
+
+    @PostMapping("/mpu/abort/{*artifactPath}")
+    public Map<String, Object> abortMultipartUpload(@PathVariable("artifactPath") String artifactPath,
+                                                    @Valid @RequestBody AbortMultipartUploadRequest request) throws IOException {
+        Destination destination = resolve(join(artifactPath, request.getPath()));
+        multipartUploadService.abort(destination.runRoot(), destination.target(), request.getUpload_id());
+        return Map.of();
+    }
+}
@@ -4,20 +4,36 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import varga.kirka.model.AuditEvent;
+import varga.kirka.repo.AuditQuery;
 import varga.kirka.repo.Page;
+import varga.kirka.service.AuditIndexBackfillJob;
 import varga.kirka.service.AuditService;
+import varga.kirka.service.JobService;
 
+import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Admin-facing read endpoint for the Kirka audit log. Listing the audit trail returns the
  * most recent events first, paginated through {@link Page} tokens. Every non-GET mutation is
  * already recorded automatically by {@link varga.kirka.observability.AuditAspect}.
  *
+ * <p>{@code /search} accepts optional {@code user}, {@code resource_type}, {@code resource_id},
+ * {@code action}, {@code start_time} and {@code end_time} (inclusive epoch millis) filters.
+ * The repository picks the cheapest access path — resource index, user index or the
+ * time-ordered primary table — so "what did user X do to experiment Y last month" reads
+ * only the matching slice instead of the whole log.
+ *
+ * <p>{@code POST /backfill-indexes} submits the {@link AuditIndexBackfillJob}, which adds the
+ * events logged before the user and resource indexes existed to them, and returns its
+ * {@code job_id} for {@code /api/2.0/kirka/jobs/get}.
+ *
  * <p>Guarded by {@code ROLE_ADMIN} at the method level. When security is disabled
  * (development / test setups where no admin role is mapped) the endpoint is inaccessible by
  * default — this is intentional: the audit trail often contains user identifiers and should
@@ -30,6 +46,7 @@ import java.util.List;
 public class AuditController {
 
     private final AuditService auditService;
+    private final JobService jobService;
 
     @lombok.Data
     @lombok.AllArgsConstructor
@@ -41,8 +58,28 @@ public class AuditController {
     @GetMapping("/search")
     @PreAuthorize("hasRole('ADMIN')")
     public AuditResponse search(@RequestParam(value = "max_results", required = false) Integer maxResults,
-                                @RequestParam(value = "page_token", required = false) String pageToken) {
-        Page<AuditEvent> page = auditService.search(maxResults, pageToken);
+                                @RequestParam(value = "page_token", required = false) String pageToken,
+                                @RequestParam(value = "user", required = false) String user,
+                                @RequestParam(value = "resource_type", required = false) String resourceType,
+                                @RequestParam(value = "resource_id", required = false) String resourceId,
+                                @RequestParam(value = "action", required = false) String action,
+                                @RequestParam(value = "start_time", required = false) Long startTime,
+                                @RequestParam(value = "end_time", required = false) Long endTime) {
+        AuditQuery query = new AuditQuery(blankToNull(user), blankToNull(resourceType), blankToNull(resourceId),
+                blankToNull(action), startTime, endTime);
+        Page<AuditEvent> page = auditService.search(query, maxResults, pageToken);
         return new AuditResponse(page.items(), page.nextPageToken());
     }
+
+    @PostMapping("/backfill-indexes")
+    @PreAuthorize("hasRole('ADMIN')")
+    public JobController.JobSubmission backfillIndexes() throws IOException {
+        String jobId = jobService.submit(AuditIndexBackfillJob.TYPE, Map.of());
+        log.info("Audit index backfill submitted as job {}", jobId);
+        return new JobController.JobSubmission(jobId);
+    }
+
+    private static String blankToNull(String s) {
+        return s == null || s.isBlank() ? null : s;
+    }
 }
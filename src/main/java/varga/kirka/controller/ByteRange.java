@@ -0,0 +1,47 @@
+package varga.kirka.controller;
+
+/**
+ * The single byte range of an HTTP {@code Range} header, {@code start} to {@code end}
+ * inclusive, resolved against the length of the file being served.
+ */
+record ByteRange(long start, long end) {
+
+    /** The range starts past the end of the file: answer 416. */
+    static final ByteRange UNSATISFIABLE = new ByteRange(-1, -1);
+
+    /**
+     * Parses {@code bytes=a-b}, {@code bytes=a-} and {@code bytes=-n}. Returns {@code null} when
+     * the whole file should be served: no header, a unit other than bytes, a malformed header,
+     * or several ranges (which RFC 9110 lets a server ignore rather than answer with
+     * {@code multipart/byteranges}).
+     */
+    static ByteRange parse(String header, long length) {
+        if (header == null) return null;
+        String value = header.trim();
+        if (!value.regionMatches(true, 0, "bytes=", 0, 6)) return null;
+        String spec = value.substring(6).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0 || spec.indexOf(',') >= 0) return null;
+        String first = spec.substring(0, dash).trim();
+        String last = spec.substring(dash + 1).trim();
+        try {
+            if (first.isEmpty()) {
+                long suffix = Long.parseLong(last);
+                if (suffix < 0) return null;
+                if (suffix == 0 || length == 0) return UNSATISFIABLE;
+                return new ByteRange(Math.max(0, length - suffix), length - 1);
+            }
+            long start = Long.parseLong(first);
+            long end = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+            if (start < 0 || end < start) return null;
+            if (start >= length) return UNSATISFIABLE;
+            return new ByteRange(start, Math.min(end, length - 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    long length() {
+        return end - start + 1;
+    }
+}
@@ -28,6 +28,11 @@ import java.io.IOException;
  *   X-Kirka-Confirm-Hard-Delete: exp-42
  *   {"resource_type": "experiment", "resource_id": "exp-42"}
  * </pre>
+ *
+ * <p>{@code /hard-delete/submit} takes the same request but runs the erasure as a background
+ * job and answers immediately with its {@code job_id}, to be polled on
+ * {@code /api/2.0/kirka/jobs/get}. Use it for experiments with many runs, whose synchronous
+ * erasure outlives the gateway timeout.
  */
 @Slf4j
 @RestController
@@ -54,12 +59,7 @@ public class GdprController {
     @PreAuthorize("hasRole('ADMIN')")
     public GdprService.DeletionReport hardDelete(@Valid @RequestBody HardDeleteRequest body,
                                                  HttpServletRequest request) throws IOException {
-        String confirmation = request.getHeader(CONFIRMATION_HEADER);
-        if (confirmation == null || !confirmation.equals(body.getResource_id())) {
-            throw new IllegalArgumentException(
-                    "Missing or incorrect confirmation header '" + CONFIRMATION_HEADER
-                            + "'. The header value must equal resource_id to authorize the hard delete.");
-        }
+        checkConfirmation(body, request);
 
         log.warn("GDPR hard-delete requested: type={} id={}", body.getResource_type(), body.getResource_id());
 
@@ -70,4 +70,23 @@ public class GdprController {
             default -> throw new IllegalArgumentException("Unsupported resource_type: " + body.getResource_type());
         };
     }
+
+    @PostMapping("/hard-delete/submit")
+    @PreAuthorize("hasRole('ADMIN')")
+    public JobController.JobSubmission submitHardDelete(@Valid @RequestBody HardDeleteRequest body,
+                                                        HttpServletRequest request) throws IOException {
+        checkConfirmation(body, request);
+
+        log.warn("GDPR hard-delete job requested: type={} id={}", body.getResource_type(), body.getResource_id());
+        return new JobController.JobSubmission(gdprService.submitHardDelete(body.getResource_type(), body.getResource_id()));
+    }
+
+    private static void checkConfirmation(HardDeleteRequest body, HttpServletRequest request) {
+        String confirmation = request.getHeader(CONFIRMATION_HEADER);
+        if (confirmation == null || !confirmation.equals(body.getResource_id())) {
+            throw new IllegalArgumentException(
+                    "Missing or incorrect confirmation header '" + CONFIRMATION_HEADER
+                            + "'. The header value must equal resource_id to authorize the hard delete.");
+        }
+    }
 }
@@ -0,0 +1,60 @@
+package varga.kirka.controller;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Size;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import varga.kirka.model.Job;
+import varga.kirka.service.JobService;
+import varga.kirka.service.ModelRegistryService;
+
+import java.io.IOException;
+
+/**
+ * Kirka background jobs. Long operations are submitted through their own endpoint — here for
+ * model renames, {@code /api/2.0/kirka/gdpr/hard-delete/submit} for erasures — which returns a
+ * {@code job_id} at once; {@code /get} then reports status, progress and result. A job is
+ * visible to the user who submitted it and to admins.
+ */
+@RestController
+@RequestMapping("/api/2.0/kirka/jobs")
+@RequiredArgsConstructor
+public class JobController {
+
+    private final JobService jobService;
+    private final ModelRegistryService modelRegistryService;
+
+    @lombok.Data
+    @lombok.AllArgsConstructor
+    public static class JobSubmission {
+        private String job_id;
+    }
+
+    @lombok.Data
+    @lombok.AllArgsConstructor
+    public static class JobResponse {
+        private Job job;
+    }
+
+    @lombok.Data
+    public static class RenameRegisteredModelRequest {
+        @NotBlank private String name;
+        @NotBlank @Size(max = 256) private String new_name;
+    }
+
+    @GetMapping("/get")
+    public JobResponse getJob(@RequestParam("job_id") String jobId) throws IOException {
+        return new JobResponse(jobService.getJob(jobId));
+    }
+
+    @PostMapping("/registered-models/rename")
+    public JobSubmission renameRegisteredModel(@Valid @RequestBody RenameRegisteredModelRequest request) throws IOException {
+        return new JobSubmission(modelRegistryService.submitRenameRegisteredModel(request.getName(), request.getNew_name()));
+    }
+}
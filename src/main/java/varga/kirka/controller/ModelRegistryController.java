@@ -151,8 +151,12 @@ public class ModelRegistryController {
     }
 
     @GetMapping("/registered-models/search")
-    public RegisteredModelsResponse searchRegisteredModels(@RequestParam(value = "filter", required = false) String filter) throws IOException {
-        return new RegisteredModelsResponse(modelRegistryService.searchRegisteredModels(filter));
+    public RegisteredModelsResponse searchRegisteredModels(@RequestParam(value = "filter", required = false) String filter,
+                                                           @RequestParam(value = "max_results", required = false) Integer maxResults,
+                                                           @RequestParam(value = "page_token", required = false) String pageToken,
+                                                           @RequestParam(value = "order_by", required = false) String orderBy) throws IOException {
+        var page = modelRegistryService.searchRegisteredModels(filter, maxResults, pageToken, orderBy);
+        return new RegisteredModelsResponse(page.items(), page.nextPageToken());
     }
 
     @PostMapping("/registered-models/update")
@@ -287,13 +291,37 @@ public class ModelRegistryController {
     @lombok.AllArgsConstructor
     public static class ModelVersionsResponse {
         private List<ModelVersion> model_versions;
+        private String next_page_token;
+
+        public ModelVersionsResponse(List<ModelVersion> model_versions) {
+            this(model_versions, null);
+        }
     }
 
     @GetMapping("/model-versions/search")
     public ModelVersionsResponse searchModelVersions(@RequestParam(value = "filter", required = false) String filter,
-                                                     @RequestParam(value = "max_results", required = false) Integer maxResults) throws IOException {
-        int cap = maxResults != null ? maxResults : 1000;
-        return new ModelVersionsResponse(modelRegistryService.searchModelVersions(filter, cap));
+                                                     @RequestParam(value = "max_results", required = false) Integer maxResults,
+                                                     @RequestParam(value = "page_token", required = false) String pageToken,
+                                                     @RequestParam(value = "order_by", required = false) String orderBy) throws IOException {
+        var page = modelRegistryService.searchModelVersions(filter, maxResults, pageToken, orderBy);
+        return new ModelVersionsResponse(page.items(), page.nextPageToken());
+    }
+
+    @lombok.Data
+    public static class GetLatestVersionsRequest {
+        @NotBlank private String name;
+        private List<String> stages;
+    }
+
+    @PostMapping("/registered-models/get-latest-versions")
+    public ModelVersionsResponse getLatestVersions(@Valid @RequestBody GetLatestVersionsRequest request) throws IOException {
+        return new ModelVersionsResponse(modelRegistryService.getLatestVersions(request.getName(), request.getStages()));
+    }
+
+    @GetMapping("/registered-models/get-latest-versions")
+    public ModelVersionsResponse getLatestVersions(@RequestParam("name") String name,
+                                                   @RequestParam(value = "stages", required = false) List<String> stages) throws IOException {
+        return new ModelVersionsResponse(modelRegistryService.getLatestVersions(name, stages));
     }
 
     @lombok.Data
@@ -0,0 +1,83 @@
+package varga.kirka.controller;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Size;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import varga.kirka.model.Webhook;
+import varga.kirka.service.WebhookService;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Registry webhooks: receivers are notified of model and model version changes (stage
+ * transitions, aliases, tags, ...) instead of polling {@code model-versions/search}. The
+ * signing secret is only returned by the create call.
+ */
+@RestController
+@RequestMapping("/api/2.0/mlflow/webhooks")
+@RequiredArgsConstructor
+public class WebhookController {
+
+    private final WebhookService webhookService;
+
+    @lombok.Data
+    public static class CreateWebhookRequest {
+        @Size(max = 256) private String name;
+        @NotBlank @Size(max = 2048) private String url;
+        private List<String> events;
+        @Size(max = 256) private String model_name;
+        @Size(max = 256) private String secret;
+    }
+
+    @lombok.Data
+    @lombok.AllArgsConstructor
+    public static class CreateWebhookResponse {
+        private Webhook webhook;
+        private String secret;
+    }
+
+    @lombok.Data
+    @lombok.AllArgsConstructor
+    public static class WebhookResponse {
+        private Webhook webhook;
+    }
+
+    @lombok.Data
+    @lombok.AllArgsConstructor
+    public static class WebhooksResponse {
+        private List<Webhook> webhooks;
+    }
+
+    @PostMapping
+    public CreateWebhookResponse createWebhook(@Valid @RequestBody CreateWebhookRequest request) throws IOException {
+        Webhook webhook = webhookService.createWebhook(request.getName(), request.getUrl(), request.getEvents(),
+                request.getModel_name(), request.getSecret());
+        return new CreateWebhookResponse(webhook, webhook.getSecret());
+    }
+
+    @GetMapping
+    public WebhooksResponse listWebhooks() throws IOException {
+        return new WebhooksResponse(webhookService.listWebhooks());
+    }
+
+    @GetMapping("/{webhook_id}")
+    public WebhookResponse getWebhook(@PathVariable("webhook_id") String webhookId) throws IOException {
+        return new WebhookResponse(webhookService.getWebhook(webhookId));
+    }
+
+    @DeleteMapping("/{webhook_id}")
+    public Map<String, Object> deleteWebhook(@PathVariable("webhook_id") String webhookId) throws IOException {
+        webhookService.deleteWebhook(webhookId);
+        return Map.of();
+    }
+}
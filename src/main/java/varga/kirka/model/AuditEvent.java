@@ -50,4 +50,16 @@ public class AuditEvent {
 
     /** Correlation id copied from SLF4J MDC ({@code request_id}). */
     private String requestId;
+
+    /**
+     * Number of calls folded into this row by {@link varga.kirka.observability.AuditCoalescer};
+     * {@code null} when the row records a single call.
+     */
+    private Integer count;
+
+    /** Time of the first coalesced call (epoch millis); {@code null} for single-call rows. */
+    private Long firstTimestamp;
+
+    /** Time of the last coalesced call (epoch millis); {@code null} for single-call rows. */
+    private Long lastTimestamp;
 }
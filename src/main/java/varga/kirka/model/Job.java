@@ -0,0 +1,61 @@
+package varga.kirka.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * A long-running operation executed in the background by
+ * {@link varga.kirka.service.JobService}, as returned by {@code /api/2.0/kirka/jobs/get}.
+ *
+ * <p>{@code checkpoint} is the handler's own resume state: it is persisted with every progress
+ * update and handed back to the handler when the job is picked up again after a restart.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class Job {
+
+    /** Opaque job identifier (UUID). */
+    private String jobId;
+
+    /** Handler that runs the job, e.g. {@code rename-registered-model}. */
+    private String type;
+
+    private JobStatus status;
+
+    /** User who submitted the job; only they (or an admin) can read it. */
+    private String owner;
+
+    /** Submission parameters, fixed for the lifetime of the job. */
+    private Map<String, String> params;
+
+    private Map<String, String> checkpoint;
+
+    /** Units of work done so far and expected in total; {@code total} is 0 when unknown. */
+    private long completed;
+    private long total;
+
+    /** Handler output once {@code status} is {@code SUCCEEDED}. */
+    private Map<String, String> result;
+
+    /** Failure message once {@code status} is {@code FAILED}. */
+    private String error;
+
+    /** Number of times a worker has started the job, including resumptions. */
+    private int attempts;
+
+    private long creationTimestamp;
+    private long lastUpdatedTimestamp;
+
+    /** Node currently holding the job and until when (epoch millis); internal to the scheduler. */
+    @JsonIgnore
+    private String leaseOwner;
+    @JsonIgnore
+    private long leaseExpiry;
+}
@@ -0,0 +1,71 @@
+package varga.kirka.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Set;
+
+/**
+ * A change to the model registry, as delivered to {@link Webhook} receivers. Only the fields
+ * relevant to {@code eventType} are set; receivers should de-duplicate on {@code eventId},
+ * since a batch may be delivered more than once when an acknowledgement is lost.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class RegistryEvent {
+
+    public static final String REGISTERED_MODEL_CREATED = "registered_model.created";
+    public static final String REGISTERED_MODEL_UPDATED = "registered_model.updated";
+    public static final String REGISTERED_MODEL_RENAMED = "registered_model.renamed";
+    public static final String REGISTERED_MODEL_DELETED = "registered_model.deleted";
+    public static final String REGISTERED_MODEL_TAG_SET = "registered_model_tag.set";
+    public static final String REGISTERED_MODEL_TAG_DELETED = "registered_model_tag.deleted";
+    public static final String MODEL_VERSION_CREATED = "model_version.created";
+    public static final String MODEL_VERSION_UPDATED = "model_version.updated";
+    public static final String MODEL_VERSION_STAGE_TRANSITIONED = "model_version.stage_transitioned";
+    public static final String MODEL_VERSION_DELETED = "model_version.deleted";
+    public static final String MODEL_VERSION_TAG_SET = "model_version_tag.set";
+    public static final String MODEL_VERSION_TAG_DELETED = "model_version_tag.deleted";
+    public static final String MODEL_VERSION_ALIAS_SET = "model_version_alias.set";
+    public static final String MODEL_VERSION_ALIAS_DELETED = "model_version_alias.deleted";
+
+    public static final Set<String> TYPES = Set.of(
+            REGISTERED_MODEL_CREATED, REGISTERED_MODEL_UPDATED, REGISTERED_MODEL_RENAMED,
+            REGISTERED_MODEL_DELETED, REGISTERED_MODEL_TAG_SET, REGISTERED_MODEL_TAG_DELETED,
+            MODEL_VERSION_CREATED, MODEL_VERSION_UPDATED, MODEL_VERSION_STAGE_TRANSITIONED,
+            MODEL_VERSION_DELETED, MODEL_VERSION_TAG_SET, MODEL_VERSION_TAG_DELETED,
+            MODEL_VERSION_ALIAS_SET, MODEL_VERSION_ALIAS_DELETED);
+
+    /** Unique per event (UUID), stable across redeliveries. */
+    private String eventId;
+
+    private String eventType;
+
+    /** Milliseconds since the epoch at which the change was committed. */
+    private long timestamp;
+
+    /** User who made the change. */
+    private String user;
+
+    private String modelName;
+
+    /** Previous name, for {@code registered_model.renamed}. */
+    private String oldName;
+
+    private String version;
+
+    /** Stage after the transition, for {@code model_version.stage_transitioned}. */
+    private String stage;
+
+    private String alias;
+
+    private String key;
+
+    private String value;
+}
@@ -6,4 +6,9 @@ public enum RunStatus {
     FINISHED,
     FAILED,
     KILLED;
+
+    /** Whether a run in this status has ended. */
+    public boolean isTerminal() {
+        return this == FINISHED || this == FAILED || this == KILLED;
+    }
 }
@@ -0,0 +1,44 @@
+package varga.kirka.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * A subscription to model registry changes: matching {@link RegistryEvent}s are POSTed to
+ * {@code url} in batches by {@link varga.kirka.service.WebhookDispatcher}, each request signed
+ * with HMAC-SHA256 under {@code secret}.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class Webhook {
+
+    /** Opaque webhook identifier (UUID). */
+    private String webhookId;
+
+    private String name;
+
+    /** Receiver endpoint, {@code http} or {@code https}. */
+    private String url;
+
+    /** Event types to deliver, e.g. {@code model_version.stage_transitioned}; empty means all. */
+    private List<String> events;
+
+    /** Only deliver events of this registered model; {@code null} means every model. */
+    private String modelName;
+
+    /** User who created the webhook; only they (or an admin) can read or delete it. */
+    private String owner;
+
+    private long creationTimestamp;
+
+    /** Signing key. Returned once at creation, never afterwards. */
+    @JsonIgnore
+    private String secret;
+}
@@ -0,0 +1,410 @@
+package varga.kirka.observability;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hadoop.hbase.client.BufferedMutator;
+import org.apache.hadoop.hbase.client.RetriesExhaustedWithDetailsException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import varga.kirka.model.AuditEvent;
+import varga.kirka.repo.AuditRepository;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Moves audit writes off the request thread. {@link varga.kirka.service.AuditService} hands
+ * fully-enriched events to {@link #submit}, which only touches a bounded lock-free queue; a
+ * single daemon thread drains it into {@link BufferedMutator}s and flushes either when
+ * {@code flush-size} events are pending or when {@code flush-interval-ms} has elapsed,
+ * whichever comes first. A {@code log-batch} call therefore costs one queue insertion instead
+ * of an extra HBase round trip.
+ *
+ * <p>When the queue is full the configured {@link OverflowPolicy} applies:
+ * <ul>
+ *   <li>{@code block} — the caller waits up to {@code block-timeout-ms} for space, then the
+ *       event is dropped. The bound keeps an HBase outage from stalling every request.</li>
+ *   <li>{@code drop} — the event is discarded immediately and counted.</li>
+ *   <li>{@code spill} — the event is appended as a JSON line to a file under {@code spill-dir}
+ *       and replayed into HBase once the queue has drained. {@code spill-dir} has no default and
+ *       must be set with this policy: it should be a volume mounted into the pod, which both
+ *       survives a restart and is writable under a read-only root file system.</li>
+ * </ul>
+ *
+ * <p>{@link #submit} never throws: like the synchronous path, losing an audit row is preferred
+ * over failing the business operation. Losses are visible on {@code kirka.audit.dropped} and
+ * {@code kirka.audit.failed}; {@code kirka.audit.lag} measures the time between the event and
+ * the flush that made it durable. {@code kirka.audit.written} only counts events whose row
+ * reached the audit table: rows the {@link BufferedMutator} gave up on count as failed.
+ */
+@Slf4j
+@Component
+public class AsyncAuditWriter {
+
+    public enum OverflowPolicy { BLOCK, DROP, SPILL }
+
+    private static final ObjectMapper SPILL_MAPPER = new ObjectMapper();
+    private static final String SPILL_FILE = "audit-spill.jsonl";
+    private static final String REPLAY_GLOB = "audit-spill-*.replay";
+    private static final long REPLAY_BACKOFF_MS = 30_000L;
+
+    private final AuditRepository auditRepository;
+    private final boolean enabled;
+    private final int capacity;
+    private final int flushSize;
+    private final long flushIntervalNanos;
+    private final long writeBufferBytes;
+    private final OverflowPolicy overflowPolicy;
+    private final long blockTimeoutNanos;
+    private final long shutdownTimeoutMs;
+    private final Path spillDir;
+
+    private final ConcurrentLinkedQueue<AuditEvent> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicBoolean spillPending = new AtomicBoolean();
+    private final Object spillLock = new Object();
+    private volatile Thread writerThread;
+
+    private final Counter writtenCounter;
+    private final Counter droppedCounter;
+    private final Counter spilledCounter;
+    private final Counter failedCounter;
+    private final Timer lagTimer;
+    /** Audit table rows reported lost by the mutators' exception listener. */
+    private final AtomicLong failedRows = new AtomicLong();
+
+    /** Owned by the writer thread only. */
+    private AuditRepository.BatchWriter batchWriter;
+    private long nextReplayAttemptMs;
+
+    public AsyncAuditWriter(AuditRepository auditRepository,
+                            MeterRegistry meterRegistry,
+                            @Value("${kirka.audit.async.enabled:true}") boolean enabled,
+                            @Value("${kirka.audit.async.queue-capacity:10000}") int capacity,
+                            @Value("${kirka.audit.async.flush-size:500}") int flushSize,
+                            @Value("${kirka.audit.async.flush-interval-ms:1000}") long flushIntervalMs,
+                            @Value("${kirka.audit.async.write-buffer-bytes:2097152}") long writeBufferBytes,
+                            @Value("${kirka.audit.async.overflow-policy:drop}") String overflowPolicy,
+                            @Value("${kirka.audit.async.block-timeout-ms:500}") long blockTimeoutMs,
+                            @Value("${kirka.audit.async.shutdown-timeout-ms:10000}") long shutdownTimeoutMs,
+                            @Value("${kirka.audit.async.spill-dir:}") String spillDir) {
+        this.auditRepository = auditRepository;
+        this.enabled = enabled;
+        this.capacity = Math.max(1, capacity);
+        this.flushSize = Math.max(1, Math.min(flushSize, this.capacity));
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1L, flushIntervalMs));
+        this.writeBufferBytes = writeBufferBytes;
+        this.overflowPolicy = OverflowPolicy.valueOf(overflowPolicy.trim().toUpperCase(Locale.ROOT));
+        this.blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0L, blockTimeoutMs));
+        this.shutdownTimeoutMs = shutdownTimeoutMs;
+        if (this.overflowPolicy == OverflowPolicy.SPILL && (spillDir == null || spillDir.isBlank())) {
+            throw new IllegalArgumentException(
+                    "kirka.audit.async.spill-dir must be set when kirka.audit.async.overflow-policy is spill");
+        }
+        this.spillDir = spillDir == null || spillDir.isBlank() ? null : Path.of(spillDir.trim());
+
+        this.writtenCounter = counter(meterRegistry, "kirka.audit.written", "Audit events flushed to HBase");
+        this.droppedCounter = counter(meterRegistry, "kirka.audit.dropped", "Audit events discarded because the queue was full");
+        this.spilledCounter = counter(meterRegistry, "kirka.audit.spilled", "Audit events spilled to local disk because the queue was full");
+        this.failedCounter = counter(meterRegistry, "kirka.audit.failed", "Audit events that could not be written to HBase");
+        this.lagTimer = Timer.builder("kirka.audit.lag")
+                .description("Delay between an audit event and the flush that persisted it")
+                .tag("service", "kirka")
+                .register(meterRegistry);
+        Gauge.builder("kirka.audit.queue.size", size, AtomicInteger::get)
+                .description("Audit events waiting for the background writer")
+                .tag("service", "kirka")
+                .register(meterRegistry);
+    }
+
+    private static Counter counter(MeterRegistry registry, String name, String description) {
+        return Counter.builder(name).description(description).tag("service", "kirka").register(registry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            log.info("Asynchronous audit writer disabled; audit events are written synchronously");
+            return;
+        }
+        if (overflowPolicy == OverflowPolicy.SPILL) {
+            try {
+                Files.createDirectories(spillDir);
+                spillPending.set(hasSpillFiles());
+            } catch (IOException e) {
+                log.warn("Audit spill directory {} is not usable: {}", spillDir, e.toString());
+            }
+        }
+        running.set(true);
+        Thread t = new Thread(this::drainLoop, "kirka-audit-writer");
+        t.setDaemon(true);
+        writerThread = t;
+        t.start();
+        log.info("Asynchronous audit writer started: capacity={} flushSize={} flushIntervalMs={} overflow={}",
+                capacity, flushSize, TimeUnit.NANOSECONDS.toMillis(flushIntervalNanos), overflowPolicy);
+    }
+
+    @PreDestroy
+    void stop() {
+        Thread t = writerThread;
+        if (t == null) return;
+        running.set(false);
+        LockSupport.unpark(t);
+        try {
+            t.join(shutdownTimeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        int left = size.get();
+        if (left > 0) {
+            log.warn("Audit writer stopped with {} events still queued", left);
+            AuditEvent e;
+            while ((e = queue.poll()) != null) {
+                size.decrementAndGet();
+                overflow(e);
+            }
+        }
+    }
+
+    /**
+     * Enqueues {@code event} for the background writer. Never throws and never waits longer
+     * than {@code block-timeout-ms}.
+     */
+    public void submit(AuditEvent event) {
+        if (event == null) return;
+        try {
+            if (tryEnqueue(event)) return;
+            if (overflowPolicy == OverflowPolicy.BLOCK && enqueueBlocking(event)) return;
+            overflow(event);
+        } catch (Exception e) {
+            droppedCounter.increment();
+            log.warn("Failed to enqueue audit event {} on {}:{}: {}",
+                    event.getAction(), event.getResourceType(), event.getResourceId(), e.toString());
+        }
+    }
+
+    private boolean tryEnqueue(AuditEvent event) {
+        int n = size.incrementAndGet();
+        if (n > capacity) {
+            size.decrementAndGet();
+            return false;
+        }
+        queue.offer(event);
+        if (n >= flushSize) {
+            LockSupport.unpark(writerThread);
+        }
+        return true;
+    }
+
+    private boolean enqueueBlocking(AuditEvent event) {
+        long deadline = System.nanoTime() + blockTimeoutNanos;
+        while (running.get()) {
+            if (tryEnqueue(event)) return true;
+            if (System.nanoTime() >= deadline) return false;
+            LockSupport.parkNanos(100_000L);
+        }
+        return false;
+    }
+
+    private void overflow(AuditEvent event) {
+        if (overflowPolicy == OverflowPolicy.SPILL && spill(List.of(event))) {
+            spilledCounter.increment();
+            return;
+        }
+        droppedCounter.increment();
+        log.debug("Dropped audit event {} on {}:{}", event.getAction(), event.getResourceType(), event.getResourceId());
+    }
+
+    private void drainLoop() {
+        List<AuditEvent> batch = new ArrayList<>(flushSize);
+        long lastFlush = System.nanoTime();
+        while (running.get() || size.get() > 0) {
+            // Events stay queued until a flush is due, so that size counts every pending event and
+            // tryEnqueue wakes this thread as soon as flush-size of them are waiting.
+            int pending = size.get();
+            long sinceFlush = System.nanoTime() - lastFlush;
+            boolean due = pending >= flushSize || sinceFlush >= flushIntervalNanos || !running.get();
+            if (pending > 0 && due) {
+                AuditEvent event;
+                while (batch.size() < flushSize && (event = queue.poll()) != null) {
+                    size.decrementAndGet();
+                    batch.add(event);
+                }
+                if (batch.isEmpty()) {
+                    // Counted by tryEnqueue but not offered yet.
+                    Thread.onSpinWait();
+                    continue;
+                }
+                write(batch);
+                batch.clear();
+                lastFlush = System.nanoTime();
+                continue;
+            }
+            if (pending == 0 && spillPending.get() && running.get()) {
+                replaySpill();
+            }
+            if (running.get()) {
+                LockSupport.parkNanos(pending == 0 ? flushIntervalNanos : flushIntervalNanos - sinceFlush);
+            }
+        }
+        closeBatchWriter();
+    }
+
+    private void write(List<AuditEvent> batch) {
+        try {
+            AuditRepository.BatchWriter w = batchWriter();
+            long failedBefore = failedRows.get();
+            for (AuditEvent e : batch) {
+                w.append(e);
+            }
+            w.flush();
+            writtenCounter.increment(Math.max(0L, batch.size() - (failedRows.get() - failedBefore)));
+            long now = System.currentTimeMillis();
+            for (AuditEvent e : batch) {
+                lagTimer.record(Math.max(0L, now - e.getTimestamp()), TimeUnit.MILLISECONDS);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to flush {} audit events: {}", batch.size(), e.toString());
+            closeBatchWriter();
+            if (overflowPolicy == OverflowPolicy.SPILL && spill(batch)) {
+                spilledCounter.increment(batch.size());
+            } else {
+                failedCounter.increment(batch.size());
+            }
+        }
+    }
+
+    private AuditRepository.BatchWriter batchWriter() throws IOException {
+        if (batchWriter == null) {
+            batchWriter = auditRepository.openBatchWriter(writeBufferBytes, this::onRetriesExhausted);
+        }
+        return batchWriter;
+    }
+
+    /**
+     * Called by the mutators, on the writer thread, for the rows they gave up on. Only rows of
+     * the audit table itself stand for lost events; a lost index row leaves the event readable.
+     */
+    private void onRetriesExhausted(RetriesExhaustedWithDetailsException e, BufferedMutator m) {
+        if (AuditRepository.isEventTable(m.getName())) {
+            failedRows.addAndGet(e.getNumExceptions());
+            failedCounter.increment(e.getNumExceptions());
+            log.warn("{} audit rows could not be written after retries: {}", e.getNumExceptions(), e.getMessage());
+        } else {
+            log.warn("{} audit index rows in {} could not be written after retries: {}",
+                    e.getNumExceptions(), m.getName(), e.getMessage());
+        }
+    }
+
+    private void closeBatchWriter() {
+        if (batchWriter == null) return;
+        try {
+            batchWriter.close();
+        } catch (IOException e) {
+            log.debug("Closing audit batch writer failed: {}", e.toString());
+        }
+        batchWriter = null;
+    }
+
+    // ---------------------------------------------------------------------------------------
+    // Spill to local disk
+    // ---------------------------------------------------------------------------------------
+
+    private boolean spill(List<AuditEvent> events) {
+        synchronized (spillLock) {
+            try (Writer out = Files.newBufferedWriter(spillDir.resolve(SPILL_FILE), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (AuditEvent e : events) {
+                    out.write(SPILL_MAPPER.writeValueAsString(e));
+                    out.write('\n');
+                }
+                spillPending.set(true);
+                return true;
+            } catch (IOException e) {
+                log.warn("Failed to spill {} audit events to {}: {}", events.size(), spillDir, e.toString());
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Replays spilled events once the in-memory queue is empty. The active spill file is first
+     * renamed so submitters keep appending to a fresh one; a replay file is deleted only after
+     * every event in it has been flushed, so a failure leaves it for the next attempt. Rows
+     * are keyed by timestamp and event id, so replaying a partially-flushed file is idempotent.
+     */
+    private void replaySpill() {
+        long now = System.currentTimeMillis();
+        if (now < nextReplayAttemptMs) return;
+        try {
+            synchronized (spillLock) {
+                Path active = spillDir.resolve(SPILL_FILE);
+                if (Files.exists(active)) {
+                    Files.move(active, spillDir.resolve("audit-spill-" + now + ".replay"));
+                }
+                spillPending.set(false);
+            }
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(spillDir, REPLAY_GLOB)) {
+                for (Path file : files) {
+                    replayFile(file);
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Audit spill replay failed, retrying in {}s: {}", REPLAY_BACKOFF_MS / 1000, e.toString());
+            spillPending.set(true);
+            closeBatchWriter();
+            nextReplayAttemptMs = now + REPLAY_BACKOFF_MS;
+        }
+    }
+
+    private void replayFile(Path file) throws IOException {
+        AuditRepository.BatchWriter w = batchWriter();
+        long failedBefore = failedRows.get();
+        int replayed = 0;
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isBlank()) continue;
+                w.append(SPILL_MAPPER.readValue(line, AuditEvent.class));
+                if (++replayed % flushSize == 0) w.flush();
+            }
+        }
+        w.flush();
+        Files.delete(file);
+        writtenCounter.increment(Math.max(0L, replayed - (failedRows.get() - failedBefore)));
+        log.info("Replayed {} spilled audit events from {}", replayed, file.getFileName());
+    }
+
+    private boolean hasSpillFiles() throws IOException {
+        if (Files.exists(spillDir.resolve(SPILL_FILE))) return true;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(spillDir, REPLAY_GLOB)) {
+            return files.iterator().hasNext();
+        }
+    }
+}
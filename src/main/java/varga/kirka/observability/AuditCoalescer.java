@@ -0,0 +1,150 @@
+package varga.kirka.observability;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import varga.kirka.model.AuditEvent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Folds high-frequency audit events into one row per time window. Compliance needs to know
+ * <em>who wrote to which run</em>, not one row per {@code logMetric} call, so for the
+ * configured actions (default {@code log}) events sharing the same (user, resource type,
+ * resource id, action, outcome) are aggregated for {@code window-ms} and emitted as a single
+ * event carrying {@code count}, {@code firstTimestamp} and {@code lastTimestamp}.
+ *
+ * <p>Only {@code allowed} outcomes are coalesced: {@code denied} and {@code error} events are
+ * security signals and always pass straight through. The number of open windows is capped
+ * by {@code max-keys}; once the cap is reached new keys are emitted individually rather than
+ * growing the map without bound.
+ *
+ * <p>Thread-safety: every mutation of a window happens inside {@link ConcurrentHashMap#compute}
+ * for its key, so a call racing with {@link #drainExpired} lands either in the window being
+ * emitted or in a fresh one — never in neither.
+ */
+@Component
+public class AuditCoalescer {
+
+    private final boolean enabled;
+    private final long windowMs;
+    private final Set<String> actions;
+    private final int maxKeys;
+
+    private final Map<Key, Window> windows = new ConcurrentHashMap<>();
+    private final Counter coalescedCounter;
+
+    public AuditCoalescer(MeterRegistry meterRegistry,
+                          @Value("${kirka.audit.coalesce.enabled:false}") boolean enabled,
+                          @Value("${kirka.audit.coalesce.window-ms:60000}") long windowMs,
+                          @Value("${kirka.audit.coalesce.actions:log}") String actions,
+                          @Value("${kirka.audit.coalesce.max-keys:100000}") int maxKeys) {
+        this.enabled = enabled;
+        this.windowMs = Math.max(1L, windowMs);
+        this.actions = Arrays.stream(actions.split(","))
+                .map(String::trim)
+                .filter(a -> !a.isEmpty())
+                .collect(Collectors.toUnmodifiableSet());
+        this.maxKeys = Math.max(1, maxKeys);
+        this.coalescedCounter = Counter.builder("kirka.audit.coalesced")
+                .description("Audit events folded into an existing coalescing window")
+                .tag("service", "kirka")
+                .register(meterRegistry);
+        Gauge.builder("kirka.audit.coalesce.windows", windows, Map::size)
+                .description("Open audit coalescing windows")
+                .tag("service", "kirka")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Absorbs {@code event} into its window. Returns {@code false} when the event is not
+     * eligible for coalescing and must be persisted by the caller as-is.
+     */
+    public boolean offer(AuditEvent event) {
+        if (!enabled || event == null
+                || !"allowed".equals(event.getOutcome())
+                || !actions.contains(event.getAction())) {
+            return false;
+        }
+        Key key = new Key(event.getUser(), event.getResourceType(), event.getResourceId(),
+                event.getAction(), event.getOutcome());
+        if (windows.size() >= maxKeys && !windows.containsKey(key)) {
+            return false;
+        }
+        windows.compute(key, (k, w) -> {
+            if (w == null) return new Window(event);
+            w.add(event.getTimestamp());
+            coalescedCounter.increment();
+            return w;
+        });
+        return true;
+    }
+
+    /** Removes and returns every window opened at least {@code window-ms} before {@code nowMillis}. */
+    public List<AuditEvent> drainExpired(long nowMillis) {
+        return drain(nowMillis - windowMs);
+    }
+
+    /** Removes and returns every open window, regardless of age. Used on shutdown. */
+    public List<AuditEvent> drainAll() {
+        return drain(Long.MAX_VALUE);
+    }
+
+    private List<AuditEvent> drain(long openedBefore) {
+        if (windows.isEmpty()) return List.of();
+        List<AuditEvent> out = new ArrayList<>();
+        for (Key key : windows.keySet()) {
+            windows.computeIfPresent(key, (k, w) -> {
+                if (w.first.getTimestamp() > openedBefore) return w;
+                out.add(w.toEvent());
+                return null;
+            });
+        }
+        return out;
+    }
+
+    private record Key(String user, String resourceType, String resourceId, String action, String outcome) {}
+
+    /** Mutated only inside {@code compute} for its key. */
+    private static final class Window {
+        private final AuditEvent first;
+        private int count = 1;
+        private long lastTimestamp;
+
+        Window(AuditEvent first) {
+            this.first = first;
+            this.lastTimestamp = first.getTimestamp();
+        }
+
+        void add(long timestamp) {
+            count++;
+            lastTimestamp = Math.max(lastTimestamp, timestamp);
+        }
+
+        AuditEvent toEvent() {
+            return AuditEvent.builder()
+                    .eventId(first.getEventId())
+                    .timestamp(first.getTimestamp())
+                    .user(first.getUser())
+                    .clientIp(first.getClientIp())
+                    .action(first.getAction())
+                    .resourceType(first.getResourceType())
+                    .resourceId(first.getResourceId())
+                    .outcome(first.getOutcome())
+                    .reason(first.getReason())
+                    .requestId(first.getRequestId())
+                    .count(count)
+                    .firstTimestamp(first.getTimestamp())
+                    .lastTimestamp(lastTimestamp)
+                    .build();
+        }
+    }
+}
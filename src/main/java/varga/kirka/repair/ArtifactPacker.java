@@ -0,0 +1,107 @@
+package varga.kirka.repair;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hadoop.fs.FileStatus;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import varga.kirka.model.Run;
+import varga.kirka.model.RunStatus;
+import varga.kirka.repo.ArtifactPackStore;
+import varga.kirka.repo.ArtifactRepository;
+import varga.kirka.repo.RunRepository;
+import varga.kirka.service.ArtifactService;
+import varga.kirka.service.JobService;
+
+import java.io.IOException;
+
+/**
+ * Packs the small artifact files of finished runs into one file per run
+ * ({@link ArtifactPackStore}), to spare the NameNode the thousands of plots and summaries some
+ * runs log. Run directories under the proxy destination are visited each interval; a run is
+ * packed once it ended (FINISHED, FAILED or KILLED) at least {@code min-age-ms} ago, and again
+ * later only if {@code min-files} new small files appeared in it or files were deleted from
+ * its pack. A run is packed under a {@link JobService} lease on its directory, renewed right
+ * before the new pack is swapped in, so replicas never rewrite the same pack concurrently.
+ * Packed files are exposed on the {@code kirka.repair.artifacts-packed} counter.
+ */
+@Slf4j
+@Component
+public class ArtifactPacker {
+
+    private final ArtifactRepository artifactRepository;
+    private final ArtifactService artifactService;
+    private final RunRepository runRepository;
+    private final JobService jobService;
+    private final boolean enabled;
+    private final long maxFileBytes;
+    private final int minFiles;
+    private final long minAgeMs;
+    private final int bufferBytes;
+    private final Counter packedCounter;
+
+    public ArtifactPacker(ArtifactRepository artifactRepository,
+                          ArtifactService artifactService,
+                          RunRepository runRepository,
+                          JobService jobService,
+                          MeterRegistry meterRegistry,
+                          @Value("${kirka.artifacts.pack.enabled:false}") boolean enabled,
+                          @Value("${kirka.artifacts.pack.max-file-bytes:1048576}") long maxFileBytes,
+                          @Value("${kirka.artifacts.pack.min-files:16}") int minFiles,
+                          @Value("${kirka.artifacts.pack.min-age-ms:3600000}") long minAgeMs,
+                          @Value("${kirka.artifacts.upload.buffer-bytes:1048576}") int bufferBytes) {
+        this.artifactRepository = artifactRepository;
+        this.artifactService = artifactService;
+        this.runRepository = runRepository;
+        this.jobService = jobService;
+        this.enabled = enabled;
+        this.maxFileBytes = Math.max(1, maxFileBytes);
+        this.minFiles = Math.max(1, minFiles);
+        this.minAgeMs = Math.max(0, minAgeMs);
+        this.bufferBytes = Math.max(4096, bufferBytes);
+        this.packedCounter = Counter.builder("kirka.repair.artifacts-packed")
+                .description("Small artifact files moved into per-run packs")
+                .tag("service", "kirka")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${kirka.artifacts.pack.interval-ms:3600000}",
+               initialDelayString = "${kirka.artifacts.pack.initial-delay-ms:900000}")
+    public void pack() {
+        if (!enabled) return;
+        long cutoff = System.currentTimeMillis() - minAgeMs;
+        int packed = 0;
+        try {
+            for (FileStatus runDir : artifactRepository.globStatus(artifactService.proxyLocation("*/*"))) {
+                if (!runDir.isDirectory()) continue;
+                String runId = runDir.getPath().getName();
+                try {
+                    Run run = runRepository.getRun(runId);
+                    if (run == null || !isFinished(run, cutoff)) continue;
+                    String lease = "artifact-pack:" + runDir.getPath().toUri().getPath();
+                    if (!jobService.tryLease(lease)) continue;
+                    try {
+                        int files = artifactRepository.packArtifacts(runDir.getPath().toString(), maxFileBytes, minFiles,
+                                bufferBytes, () -> jobService.renewLease(lease));
+                        packedCounter.increment(files);
+                        packed += files;
+                    } finally {
+                        jobService.releaseLease(lease);
+                    }
+                } catch (IOException e) {
+                    log.warn("Skipped packing the artifacts of run {}: {}", runId, e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            log.error("Failed to list run artifact directories for packing", e);
+        }
+        if (packed > 0) log.info("Packed {} small artifact files", packed);
+    }
+
+    private static boolean isFinished(Run run, long cutoff) {
+        RunStatus status = run.getInfo().getStatus();
+        return status != null && status.isTerminal() && run.getInfo().getEndTime() > 0 && run.getInfo().getEndTime() <= cutoff;
+    }
+}
@@ -0,0 +1,93 @@
+package varga.kirka.repair;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import varga.kirka.model.AuditEvent;
+import varga.kirka.repo.AuditArchiveRepository;
+import varga.kirka.repo.AuditRepository;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Moves audit events older than {@code kirka.audit.archive.max-age-days} out of HBase into the
+ * HDFS archive ({@link AuditArchiveRepository}). Only whole UTC days are archived: the cutoff
+ * is the start of the day {@code max-age-days} ago.
+ *
+ * <p>Each batch is written to the archive before it is deleted from HBase, so a failure in
+ * between leaves the events in both tiers — the archive reader de-duplicates them — and
+ * never loses one. A run handles at most {@code batch-size * max-batches} events; a backlog
+ * is worked off over successive runs. Archived events are exposed on the
+ * {@code kirka.repair.audit-archived} counter.
+ */
+@Slf4j
+@Component
+public class AuditArchiver {
+
+    private final AuditRepository auditRepository;
+    private final AuditArchiveRepository archiveRepository;
+    private final int maxAgeDays;
+    private final int batchSize;
+    private final int maxBatches;
+    private final Counter archivedCounter;
+
+    public AuditArchiver(AuditRepository auditRepository,
+                         AuditArchiveRepository archiveRepository,
+                         MeterRegistry meterRegistry,
+                         @Value("${kirka.audit.archive.max-age-days:90}") int maxAgeDays,
+                         @Value("${kirka.audit.archive.batch-size:50000}") int batchSize,
+                         @Value("${kirka.audit.archive.max-batches:20}") int maxBatches) {
+        this.auditRepository = auditRepository;
+        this.archiveRepository = archiveRepository;
+        this.maxAgeDays = Math.max(1, maxAgeDays);
+        this.batchSize = Math.max(1, batchSize);
+        this.maxBatches = Math.max(1, maxBatches);
+        this.archivedCounter = Counter.builder("kirka.repair.audit-archived")
+                .description("Audit events moved from HBase to the HDFS archive")
+                .tag("service", "kirka")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${kirka.audit.archive.interval-ms:3600000}",
+               initialDelayString = "${kirka.audit.archive.initial-delay-ms:600000}")
+    public void archive() {
+        if (!archiveRepository.isEnabled()) return;
+        long cutoff = LocalDate.now(ZoneOffset.UTC).minusDays(maxAgeDays)
+                .atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+        int archived = 0;
+        try {
+            for (int batch = 0; batch < maxBatches; batch++) {
+                List<AuditRepository.StoredEvent> rows = auditRepository.scanOlderThan(cutoff, batchSize);
+                if (rows.isEmpty()) break;
+                Map<LocalDate, List<AuditEvent>> byDay = new TreeMap<>();
+                for (AuditRepository.StoredEvent row : rows) {
+                    byDay.computeIfAbsent(AuditArchiveRepository.day(row.event().getTimestamp()),
+                            d -> new ArrayList<>()).add(row.event());
+                }
+                for (Map.Entry<LocalDate, List<AuditEvent>> e : byDay.entrySet()) {
+                    archiveRepository.write(e.getKey(), e.getValue());
+                }
+                auditRepository.deleteStored(rows);
+                archived += rows.size();
+                archivedCounter.increment(rows.size());
+                if (rows.size() < batchSize) break;
+            }
+        } catch (IOException e) {
+            log.error("Audit archival failed after {} events; remaining rows stay in HBase until the next run",
+                    archived, e);
+        }
+        if (archived > 0) {
+            log.info("Archived {} audit events older than {} to HDFS", archived, Instant.ofEpochMilli(cutoff));
+        }
+    }
+}
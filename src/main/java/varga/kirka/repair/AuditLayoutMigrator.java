@@ -0,0 +1,77 @@
+package varga.kirka.repair;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import varga.kirka.repo.AuditRepository;
+
+import java.io.IOException;
+
+/**
+ * Moves {@code mlflow_audit} to the salted row-key layout described on
+ * {@link AuditRepository}. Two steps, both idempotent:
+ *
+ * <ol>
+ *   <li>When {@code kirka.audit.layout.presplit=true}, split the table on every salt boundary
+ *       that is not already a region start key. This needs HBase admin rights, hence opt-in;
+ *       operators who create the table with {@code SPLITS} can leave it off.</li>
+ *   <li>Rewrite rows written before salting under their salted key, at most
+ *       {@code batch-size * max-batches} rows per run so the job never monopolises the
+ *       region servers. Searches keep returning legacy rows until they are moved.</li>
+ * </ol>
+ *
+ * <p>Once the legacy key range is empty a run costs a single empty scan. Migrated rows are
+ * exposed on the {@code kirka.repair.audit-migrated} counter.
+ */
+@Slf4j
+@Component
+public class AuditLayoutMigrator {
+
+    private final AuditRepository auditRepository;
+    private final boolean presplit;
+    private final int batchSize;
+    private final int maxBatches;
+    private final Counter migratedCounter;
+    private boolean presplitDone;
+
+    public AuditLayoutMigrator(AuditRepository auditRepository,
+                               MeterRegistry meterRegistry,
+                               @Value("${kirka.audit.layout.presplit:false}") boolean presplit,
+                               @Value("${kirka.audit.layout.batch-size:500}") int batchSize,
+                               @Value("${kirka.audit.layout.max-batches:200}") int maxBatches) {
+        this.auditRepository = auditRepository;
+        this.presplit = presplit;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxBatches = Math.max(1, maxBatches);
+        this.migratedCounter = Counter.builder("kirka.repair.audit-migrated")
+                .description("Legacy audit rows rewritten under the salted row-key layout")
+                .tag("service", "kirka")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${kirka.audit.layout.interval-ms:3600000}",
+               initialDelayString = "${kirka.audit.layout.initial-delay-ms:300000}")
+    public void migrate() {
+        if (presplit && !presplitDone) {
+            try {
+                int splits = auditRepository.presplit(120_000L);
+                presplitDone = true;
+                if (splits > 0) log.info("Pre-split mlflow_audit: {} new salt regions", splits);
+            } catch (IOException e) {
+                log.warn("Failed to pre-split mlflow_audit, will retry next run: {}", e.getMessage());
+            }
+        }
+        try {
+            int moved = auditRepository.migrateLegacyRows(batchSize, batchSize * maxBatches);
+            if (moved > 0) {
+                migratedCounter.increment(moved);
+                log.info("Migrated {} legacy audit rows to the salted layout", moved);
+            }
+        } catch (IOException e) {
+            log.error("Audit layout migration failed", e);
+        }
+    }
+}
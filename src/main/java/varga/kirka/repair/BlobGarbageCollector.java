@@ -0,0 +1,60 @@
+package varga.kirka.repair;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import varga.kirka.repo.ContentStore;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Removes content-store blobs that no artifact references any more ({@link ContentStore#collectGarbage}),
+ * so that deleting or erasing a run eventually frees — and erases — its content too.
+ * {@code kirka.artifacts.cas.gc.reference-roots}, by default the store's artifact roots, must list
+ * every directory artifacts are written under: a blob referenced only from outside them would
+ * be collected. Blobs and staged uploads
+ * younger than {@code grace-ms} are kept, which covers uploads and links in progress. Removed
+ * files are exposed on the {@code kirka.repair.blobs-collected} counter.
+ */
+@Slf4j
+@Component
+public class BlobGarbageCollector {
+
+    private final ContentStore contentStore;
+    private final List<String> referenceRoots;
+    private final long graceMs;
+    private final Counter collectedCounter;
+
+    public BlobGarbageCollector(ContentStore contentStore,
+                                MeterRegistry meterRegistry,
+                                @Value("${kirka.artifacts.cas.gc.reference-roots:${kirka.artifacts.cas.artifact-roots:${kirka.artifacts.proxy.destination:hdfs:///mlflow/artifacts}}}") String referenceRoots,
+                                @Value("${kirka.artifacts.cas.gc.grace-ms:86400000}") long graceMs) {
+        this.contentStore = contentStore;
+        this.referenceRoots = Arrays.stream(referenceRoots.split(","))
+                .map(String::trim)
+                .filter(root -> !root.isEmpty())
+                .toList();
+        this.graceMs = Math.max(3_600_000L, graceMs);
+        this.collectedCounter = Counter.builder("kirka.repair.blobs-collected")
+                .description("Unreferenced content-store blobs and staged uploads removed")
+                .tag("service", "kirka")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${kirka.artifacts.cas.gc.interval-ms:86400000}",
+               initialDelayString = "${kirka.artifacts.cas.gc.initial-delay-ms:3600000}")
+    public void collect() {
+        if (!contentStore.isEnabled() || referenceRoots.isEmpty()) return;
+        try {
+            int removed = contentStore.collectGarbage(referenceRoots, graceMs);
+            collectedCounter.increment(removed);
+        } catch (IOException e) {
+            log.error("Content store collection failed; unreferenced blobs stay until the next run", e);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package varga.kirka.repair;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import varga.kirka.repo.ModelRegistryRepository;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rebuilds the latest-version-per-stage data denormalized into each
+ * {@code mlflow_registered_models} row (see {@link ModelRegistryRepository}) from the
+ * {@code mlflow_model_versions} table. The model row and the version rows live in different
+ * tables and are not written atomically, so a failure between the two writes can leave the
+ * denormalized copy stale; this job also backfills model rows created before the copy existed.
+ *
+ * <p>Only models whose stored data differs are rewritten. The number of repaired models is
+ * exposed on the {@code kirka.repair.latest-versions} counter — after the first backfill, a
+ * sustained non-zero rate points at partial write failures worth investigating.
+ */
+@Slf4j
+@Component
+public class ModelLatestVersionsRebuilder {
+
+    private final ModelRegistryRepository modelRegistryRepository;
+    private final Counter repairedCounter;
+
+    public ModelLatestVersionsRebuilder(ModelRegistryRepository modelRegistryRepository, MeterRegistry meterRegistry) {
+        this.modelRegistryRepository = modelRegistryRepository;
+        this.repairedCounter = Counter.builder("kirka.repair.latest-versions")
+                .description("Registered models whose denormalized latest versions were rebuilt")
+                .tag("service", "kirka")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${kirka.repair.latest-versions.interval-ms:3600000}",
+               initialDelayString = "${kirka.repair.latest-versions.initial-delay-ms:120000}")
+    public void rebuild() {
+        List<String> names = new ArrayList<>();
+        try {
+            modelRegistryRepository.forEachRegisteredModelName(names::add);
+        } catch (IOException e) {
+            log.error("Failed to scan registered models", e);
+            return;
+        }
+
+        int repaired = 0;
+        for (String name : names) {
+            try {
+                if (modelRegistryRepository.refreshLatestVersions(name)) {
+                    repaired++;
+                    repairedCounter.increment();
+                }
+            } catch (IOException e) {
+                log.warn("Failed to rebuild latest versions of model {}: {}", name, e.getMessage());
+            }
+        }
+        if (repaired > 0) {
+            log.info("Rebuilt latest versions of {} registered models out of {}", repaired, names.size());
+        }
+    }
+}
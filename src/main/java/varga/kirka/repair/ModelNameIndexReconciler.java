@@ -0,0 +1,53 @@
+package varga.kirka.repair;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import varga.kirka.repo.ModelRegistryRepository;
+
+import java.io.IOException;
+
+/**
+ * Keeps {@code mlflow_registered_models_ci_index}, the case-folded name index behind ILIKE
+ * pushdown (see {@link ModelRegistryRepository}), in step with {@code mlflow_registered_models}.
+ * Each run adds the entries of models that have none — rows created before the index existed,
+ * or by a write that failed halfway — and removes entries whose model is gone. The first
+ * complete backfill marks the index usable; until then ILIKE searches scan the whole table.
+ *
+ * <p>Added and removed entries are exposed on the {@code kirka.repair.model-name-index}
+ * counter. After the initial backfill a sustained non-zero rate points at partial write
+ * failures worth investigating.
+ */
+@Slf4j
+@Component
+public class ModelNameIndexReconciler {
+
+    private final ModelRegistryRepository modelRegistryRepository;
+    private final Counter repairedCounter;
+
+    public ModelNameIndexReconciler(ModelRegistryRepository modelRegistryRepository, MeterRegistry meterRegistry) {
+        this.modelRegistryRepository = modelRegistryRepository;
+        this.repairedCounter = Counter.builder("kirka.repair.model-name-index")
+                .description("Case-folded model name index entries added or removed by the reconciler")
+                .tag("service", "kirka")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${kirka.repair.model-name-index.interval-ms:3600000}",
+               initialDelayString = "${kirka.repair.model-name-index.initial-delay-ms:180000}")
+    public void reconcile() {
+        try {
+            int added = modelRegistryRepository.backfillNameIndex();
+            modelRegistryRepository.markNameIndexComplete();
+            int removed = modelRegistryRepository.removeOrphanNameIndexEntries();
+            repairedCounter.increment(added + removed);
+            if (added + removed > 0) {
+                log.info("Model name index reconciled: {} entries added, {} orphans removed", added, removed);
+            }
+        } catch (IOException e) {
+            log.error("Failed to reconcile the model name index", e);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package varga.kirka.repair;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import varga.kirka.repo.ModelRegistryRepository;
+
+import java.io.IOException;
+
+/**
+ * Keeps {@code mlflow_registry_order_index}, the index behind registry searches ordered by
+ * timestamp or version number (see {@link ModelRegistryRepository}), usable and small. The
+ * first run writes the entries of every model and version — rows created before the index
+ * existed — and marks the index usable; until then those searches scan the whole table. Every
+ * run then removes entries left behind by a later update, a rename or a delete.
+ *
+ * <p>Written and removed entries are exposed on the {@code kirka.repair.registry-order-index}
+ * counter.
+ */
+@Slf4j
+@Component
+public class RegistryOrderIndexReconciler {
+
+    private final ModelRegistryRepository modelRegistryRepository;
+    private final Counter repairedCounter;
+
+    public RegistryOrderIndexReconciler(ModelRegistryRepository modelRegistryRepository, MeterRegistry meterRegistry) {
+        this.modelRegistryRepository = modelRegistryRepository;
+        this.repairedCounter = Counter.builder("kirka.repair.registry-order-index")
+                .description("Registry order index entries backfilled or removed as stale by the reconciler")
+                .tag("service", "kirka")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${kirka.repair.registry-order-index.interval-ms:3600000}",
+               initialDelayString = "${kirka.repair.registry-order-index.initial-delay-ms:240000}")
+    public void reconcile() {
+        try {
+            int added = 0;
+            if (!modelRegistryRepository.isOrderIndexComplete()) {
+                added = modelRegistryRepository.backfillOrderIndex();
+                modelRegistryRepository.markOrderIndexComplete();
+            }
+            int removed = modelRegistryRepository.removeStaleOrderIndexEntries();
+            repairedCounter.increment(added + removed);
+            if (added + removed > 0) {
+                log.info("Registry order index reconciled: {} entries backfilled, {} stale entries removed", added, removed);
+            }
+        } catch (IOException e) {
+            log.error("Failed to reconcile the registry order index", e);
+        }
+    }
+}
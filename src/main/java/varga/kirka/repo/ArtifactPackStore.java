@@ -0,0 +1,521 @@
+package varga.kirka.repo;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Options;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.io.IOUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Packs of small artifact files. {@link #pack} moves the small files of a directory (a run's
+ * artifact root) into one container, {@value #PACK_FILE}, and removes them: thousands of plots
+ * and JSON summaries become a single HDFS file. {@link ArtifactRepository} falls back to the
+ * pack whenever a path is not on the file system, so packed files keep their paths, lengths
+ * and modification times for readers; a file uploaded again at a packed path shadows the packed
+ * copy until the next pack.
+ *
+ * <p>A pack is the files' bytes back to back, then an index (path relative to the packed
+ * directory, offset, length, modification time of every file), then a footer holding the
+ * index offset, a random generation and a magic number. Indexes are cached, keyed by the
+ * pack's length and modification time; reads check the footer of the pack they opened against
+ * the index they used, so a pack rewritten in between is looked up again rather than read at
+ * stale offsets. Packs are rewritten whole and swapped with an overwriting rename on HDFS.
+ *
+ * <p>Only {@link #pack} rewrites a pack, and its caller must make sure a directory is packed by
+ * one node at a time: the {@link SwapGuard} it passes is checked right before the swap, and the
+ * current pack's generation again, so a rewrite that lost its lease, or raced one that did not
+ * take it, is dropped rather than swapped over another. Deleting packed files leaves a
+ * tombstone in {@value #TOMBSTONES} naming the deleted path instead: entries at or below it and
+ * not newer than the tombstone are hidden from readers until the next pack leaves them out.
+ *
+ * <p>With packing enabled, a lookup that misses on the file system walks up the parents of the
+ * path looking for a pack, one status call per level. Names starting with {@code .kirka-} are
+ * internal and never packed, nor are {@link ContentStore} references.
+ */
+@Slf4j
+@Component
+public class ArtifactPackStore {
+
+    public static final String PACK_FILE = ".kirka-pack";
+    private static final String TOMBSTONES = PACK_FILE + ".deleted";
+    private static final String INTERNAL_PREFIX = ".kirka-";
+    private static final byte[] MAGIC = "KRKPACK1".getBytes(StandardCharsets.US_ASCII);
+    private static final int FOOTER_BYTES = 16 + MAGIC.length;
+
+    private final FileSystem fileSystem;
+    private final ContentStore contentStore;
+    private final boolean enabled;
+    private final int indexCacheEntries;
+
+    /** Pack file to its index, least recently used first. Guarded by itself. */
+    private final LinkedHashMap<Path, Pack> indexes = new LinkedHashMap<>(16, 0.75f, true);
+    /** Tombstone file to the path it deletes (tombstones are never rewritten), least recently used first. Guarded by itself. */
+    private final LinkedHashMap<Path, String> tombstoneNames = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Checked right before a rewritten pack replaces the current one; the rewrite is dropped unless it holds. */
+    @FunctionalInterface
+    public interface SwapGuard {
+        boolean holds() throws IOException;
+    }
+
+    record Entry(long offset, long length, long modificationTime) {}
+
+    record Pack(Path file, long length, long modificationTime, long indexOffset, long generation,
+                NavigableMap<String, Entry> entries) {}
+
+    /** The packed file at {@code path}. */
+    record Packed(Pack pack, Path path, Entry entry) {}
+
+    /** An open pack with the entry of a file: its bytes are {@code length} bytes from {@code offset}. */
+    record PackedStream(FSDataInputStream stream, long offset, long length) {}
+
+    /** The pack at or above a path, and the path relative to the packed directory ("" for the directory). */
+    private record Scope(Pack pack, Path directory, Path path, String relative) {}
+
+    public ArtifactPackStore(FileSystem fileSystem,
+                             ContentStore contentStore,
+                             @Value("${kirka.artifacts.pack.enabled:false}") boolean enabled,
+                             @Value("${kirka.artifacts.pack.index-cache-entries:1024}") int indexCacheEntries) {
+        this.fileSystem = fileSystem;
+        this.contentStore = contentStore;
+        this.enabled = enabled;
+        this.indexCacheEntries = Math.max(1, indexCacheEntries);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Whether {@code name} is one of the store's own files, which listings leave out. */
+    static boolean isInternal(String name) {
+        return name.startsWith(PACK_FILE);
+    }
+
+    /** The pack of {@code directory} as readers see it, without the entries its tombstones delete. */
+    private Pack open(Path directory) throws IOException {
+        Pack pack = index(directory);
+        return pack == null ? null : visible(pack, tombstones(directory));
+    }
+
+    private Pack index(Path directory) throws IOException {
+        Path file = new Path(directory, PACK_FILE);
+        FileStatus status;
+        try {
+            status = fileSystem.getFileStatus(file);
+        } catch (FileNotFoundException e) {
+            synchronized (indexes) {
+                indexes.remove(file);
+            }
+            return null;
+        }
+        synchronized (indexes) {
+            Pack cached = indexes.get(file);
+            if (cached != null && cached.length() == status.getLen()
+                    && cached.modificationTime() == status.getModificationTime()) {
+                return cached;
+            }
+        }
+        Pack pack = readIndex(file, status);
+        synchronized (indexes) {
+            indexes.put(file, pack);
+            Iterator<Path> eldest = indexes.keySet().iterator();
+            while (indexes.size() > indexCacheEntries) {
+                eldest.next();
+                eldest.remove();
+            }
+        }
+        return pack;
+    }
+
+    private Pack readIndex(Path file, FileStatus status) throws IOException {
+        try (FSDataInputStream in = fileSystem.open(file)) {
+            long[] footer = readFooter(in, status.getLen());
+            if (footer == null) throw new IOException("Not an artifact pack: " + file);
+            in.seek(footer[0]);
+            DataInputStream index = new DataInputStream(new BufferedInputStream(in, 65536));
+            int count = index.readInt();
+            NavigableMap<String, Entry> entries = new TreeMap<>();
+            for (int i = 0; i < count; i++) {
+                entries.put(index.readUTF(), new Entry(index.readLong(), index.readLong(), index.readLong()));
+            }
+            return new Pack(file, status.getLen(), status.getModificationTime(), footer[0], footer[1],
+                    Collections.unmodifiableNavigableMap(entries));
+        }
+    }
+
+    /** The tombstones left in {@code directory} by deletes since its pack was last rewritten. */
+    private List<FileStatus> tombstones(Path directory) throws IOException {
+        try {
+            return Arrays.asList(fileSystem.listStatus(new Path(directory, TOMBSTONES)));
+        } catch (FileNotFoundException e) {
+            return List.of();
+        }
+    }
+
+    /** The relative path {@code tombstone} deletes, or {@code null} if it is gone already. */
+    private String deletedPath(FileStatus tombstone) throws IOException {
+        synchronized (tombstoneNames) {
+            String cached = tombstoneNames.get(tombstone.getPath());
+            if (cached != null) return cached;
+        }
+        String deleted;
+        try (FSDataInputStream in = fileSystem.open(tombstone.getPath())) {
+            deleted = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+        synchronized (tombstoneNames) {
+            tombstoneNames.put(tombstone.getPath(), deleted);
+            Iterator<Path> eldest = tombstoneNames.keySet().iterator();
+            while (tombstoneNames.size() > indexCacheEntries) {
+                eldest.next();
+                eldest.remove();
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * {@code pack} without the entries {@code tombstones} delete: those at or below a deleted
+     * path that are not newer than its tombstone. A file uploaded again after the delete is.
+     */
+    private Pack visible(Pack pack, List<FileStatus> tombstones) throws IOException {
+        if (tombstones.isEmpty()) return pack;
+        NavigableMap<String, Entry> entries = new TreeMap<>(pack.entries());
+        for (FileStatus tombstone : tombstones) {
+            String deleted = deletedPath(tombstone);
+            if (deleted == null) continue;
+            long deletedAt = tombstone.getModificationTime();
+            Entry exact = entries.get(deleted);
+            if (exact != null && exact.modificationTime() <= deletedAt) entries.remove(deleted);
+            // Below "<deleted>/" and before "<deleted>0", the next character after '/'.
+            entries.subMap(deleted + "/", true, deleted + "0", false).values()
+                    .removeIf(entry -> entry.modificationTime() <= deletedAt);
+        }
+        return new Pack(pack.file(), pack.length(), pack.modificationTime(), pack.indexOffset(), pack.generation(),
+                Collections.unmodifiableNavigableMap(entries));
+    }
+
+    /** Index offset and generation from the footer of a pack of {@code length} bytes, or {@code null}. */
+    private static long[] readFooter(FSDataInputStream in, long length) throws IOException {
+        if (length < FOOTER_BYTES) return null;
+        byte[] footer = new byte[FOOTER_BYTES];
+        try {
+            in.readFully(length - FOOTER_BYTES, footer);
+        } catch (EOFException e) {
+            return null;
+        }
+        if (!Arrays.equals(footer, 16, FOOTER_BYTES, MAGIC, 0, MAGIC.length)) return null;
+        ByteBuffer buffer = ByteBuffer.wrap(footer);
+        return new long[]{buffer.getLong(), buffer.getLong()};
+    }
+
+    private static String relative(Path directory, Path path) {
+        String dir = directory.toUri().getPath();
+        String file = path.toUri().getPath();
+        if (file.equals(dir)) return "";
+        return file.substring(dir.endsWith("/") ? dir.length() : dir.length() + 1);
+    }
+
+    /** The nearest pack in an ancestor of {@code path} (or {@code path} itself with {@code self}). */
+    private Scope scope(Path path, boolean self) throws IOException {
+        if (!enabled) return null;
+        Path qualified = fileSystem.makeQualified(path);
+        for (Path directory = self ? qualified : qualified.getParent(); directory != null; directory = directory.getParent()) {
+            Pack pack = open(directory);
+            if (pack != null) return new Scope(pack, directory, qualified, relative(directory, qualified));
+        }
+        return null;
+    }
+
+    /** The packed file at {@code path}, or {@code null} if no pack holds one there. */
+    Packed find(Path path) throws IOException {
+        Scope scope = scope(path, false);
+        if (scope == null) return null;
+        Entry entry = scope.pack().entries().get(scope.relative());
+        return entry == null ? null : new Packed(scope.pack(), scope.path(), entry);
+    }
+
+    /**
+     * Status of {@code path} as held by a pack: a packed file, or a directory that only packed
+     * files are left in; {@code null} if no pack holds anything there.
+     */
+    FileStatus status(Path path) throws IOException {
+        Scope scope = scope(path, false);
+        if (scope == null) return null;
+        Entry entry = scope.pack().entries().get(scope.relative());
+        if (entry != null) return fileStatus(scope.path(), entry);
+        String prefix = scope.relative() + "/";
+        String first = scope.pack().entries().ceilingKey(prefix);
+        return first != null && first.startsWith(prefix) ? directoryStatus(scope.path(), scope.pack()) : null;
+    }
+
+    /** Files and directories that packs hold directly in {@code directory}. */
+    List<FileStatus> list(Path directory) throws IOException {
+        Scope scope = scope(directory, true);
+        if (scope == null) return List.of();
+        String prefix = scope.relative().isEmpty() ? "" : scope.relative() + "/";
+        Map<String, FileStatus> children = new TreeMap<>();
+        for (Map.Entry<String, Entry> packed : scope.pack().entries().tailMap(prefix, true).entrySet()) {
+            if (!packed.getKey().startsWith(prefix)) break;
+            String rest = packed.getKey().substring(prefix.length());
+            int slash = rest.indexOf('/');
+            if (slash < 0) {
+                children.put(rest, fileStatus(new Path(scope.path(), rest), packed.getValue()));
+            } else {
+                String name = rest.substring(0, slash);
+                children.computeIfAbsent(name, n -> directoryStatus(new Path(scope.path(), n), scope.pack()));
+            }
+        }
+        return new ArrayList<>(children.values());
+    }
+
+    /** Every packed file at or below {@code directory}. */
+    List<FileStatus> listTree(Path directory) throws IOException {
+        Scope scope = scope(directory, true);
+        if (scope == null) return List.of();
+        String prefix = scope.relative().isEmpty() ? "" : scope.relative() + "/";
+        List<FileStatus> files = new ArrayList<>();
+        for (Map.Entry<String, Entry> packed : scope.pack().entries().tailMap(prefix, true).entrySet()) {
+            if (!packed.getKey().startsWith(prefix)) break;
+            files.add(fileStatus(new Path(scope.path(), packed.getKey().substring(prefix.length())), packed.getValue()));
+        }
+        return files;
+    }
+
+    private static FileStatus fileStatus(Path path, Entry entry) {
+        return new FileStatus(entry.length(), false, 1, 0, entry.modificationTime(), path);
+    }
+
+    private static FileStatus directoryStatus(Path path, Pack pack) {
+        return new FileStatus(0, true, 0, 0, pack.modificationTime(), path);
+    }
+
+    /**
+     * Opens the pack holding the file at {@code path}, checked against the index the file was
+     * found in; the caller seeks to the returned offset. {@code null} if no pack holds the file.
+     */
+    PackedStream open(Path path, int bufferSize) throws IOException {
+        Packed packed = find(path);
+        for (int attempt = 0; packed != null; attempt++) {
+            FSDataInputStream in;
+            try {
+                in = fileSystem.open(packed.pack().file(), bufferSize);
+            } catch (FileNotFoundException e) {
+                in = null;
+            }
+            if (in != null) {
+                long[] footer = readFooter(in, packed.pack().length());
+                if (footer != null && footer[0] == packed.pack().indexOffset() && footer[1] == packed.pack().generation()) {
+                    return new PackedStream(in, packed.entry().offset(), packed.entry().length());
+                }
+                in.close();
+            }
+            if (attempt > 0) throw new IOException("Artifact pack " + packed.pack().file() + " changed while being read");
+            // Rewritten since its index was read: look the file up again.
+            packed = find(path);
+        }
+        return null;
+    }
+
+    /**
+     * Packs the files of at most {@code maxFileBytes} below {@code directory} (with those of an
+     * earlier pack there, less the deleted ones) and removes them. Does nothing unless at least
+     * {@code minFiles} new files would be packed or deletes are pending. The pack is only
+     * swapped in while {@code guard} holds. Returns the number of files packed.
+     */
+    public int pack(Path directory, long maxFileBytes, int minFiles, int bufferSize, SwapGuard guard) throws IOException {
+        if (!enabled) return 0;
+        Path root = fileSystem.makeQualified(directory);
+        // Tombstones before loose files: a delete removes the file before writing its tombstone,
+        // so a file listed below whose tombstone is not seen here stays hidden by it.
+        List<FileStatus> tombstones = tombstones(root);
+        List<FileStatus> candidates = new ArrayList<>();
+        RemoteIterator<LocatedFileStatus> files = fileSystem.listFiles(root, true);
+        while (files.hasNext()) {
+            LocatedFileStatus file = files.next();
+            String relative = relative(root, file.getPath());
+            if (file.getLen() > maxFileBytes || isInternalPath(relative) || contentStore.readRef(file) != null) continue;
+            candidates.add(file);
+        }
+        Pack previous = index(root);
+        if (candidates.size() < Math.max(1, minFiles) && (tombstones.isEmpty() || previous == null)) return 0;
+
+        Map<String, FileStatus> loose = new HashMap<>();
+        for (FileStatus file : candidates) loose.put(relative(root, file.getPath()), file);
+        write(root, previous == null ? null : visible(previous, tombstones), loose.keySet(), loose, bufferSize, guard);
+        for (FileStatus tombstone : tombstones) {
+            fileSystem.delete(tombstone.getPath(), false);
+            synchronized (tombstoneNames) {
+                tombstoneNames.remove(tombstone.getPath());
+            }
+        }
+        if (!tombstones.isEmpty()) {
+            try {
+                fileSystem.delete(new Path(root, TOMBSTONES), false);
+            } catch (IOException e) {
+                // A delete left a new tombstone meanwhile: the next pack applies it.
+            }
+        }
+
+        Set<Path> parents = new TreeSet<>(Comparator.comparingInt(Path::depth).reversed().thenComparing(Path::toString));
+        for (FileStatus file : candidates) {
+            // A file rewritten since it was packed is newer than the packed copy: keep it.
+            FileStatus current;
+            try {
+                current = fileSystem.getFileStatus(file.getPath());
+            } catch (FileNotFoundException e) {
+                continue;
+            }
+            if (current.getLen() == file.getLen() && current.getModificationTime() == file.getModificationTime()) {
+                fileSystem.delete(file.getPath(), false);
+                for (Path parent = file.getPath().getParent(); parent.depth() > root.depth(); parent = parent.getParent()) {
+                    parents.add(parent);
+                }
+            }
+        }
+        for (Path parent : parents) {
+            FileStatus[] left = fileSystem.listStatus(parent);
+            if (left != null && left.length == 0) fileSystem.delete(parent, false);
+        }
+        log.info("Packed {} small artifact files under {}", candidates.size(), root);
+        return candidates.size();
+    }
+
+    private static boolean isInternalPath(String relative) {
+        for (String name : relative.split("/")) {
+            if (name.startsWith(INTERNAL_PREFIX)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Hides the packed files at or below {@code path}, after the file system copy was deleted:
+     * otherwise the packed copy would show through. Leaves a tombstone for the next
+     * {@link #pack} rather than rewriting the pack here.
+     */
+    void remove(Path path) throws IOException {
+        Scope scope = scope(path, false);
+        if (scope == null) return;
+        String prefix = scope.relative() + "/";
+        String first = scope.pack().entries().ceilingKey(scope.relative());
+        if (first == null || !first.equals(scope.relative()) && !first.startsWith(prefix)) return;
+        Path tombstone = new Path(new Path(scope.directory(), TOMBSTONES), UUID.randomUUID().toString());
+        try (FSDataOutputStream out = fileSystem.create(tombstone, false)) {
+            out.write(scope.relative().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /** The generation in the footer of the pack {@code file}, or {@code null} if there is none. */
+    private Long generation(Path file) throws IOException {
+        try (FSDataInputStream in = fileSystem.open(file)) {
+            long[] footer = readFooter(in, fileSystem.getFileStatus(file).getLen());
+            return footer == null ? null : footer[1];
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Rewrites the pack of {@code directory}: the entries of {@code previous} not in
+     * {@code replaced}, then the {@code loose} files, keyed by relative path. The new pack
+     * replaces the current one only if {@code guard} holds and the current one is still
+     * {@code previous}.
+     */
+    private void write(Path directory, Pack previous, Set<String> replaced, Map<String, FileStatus> loose,
+                       int bufferSize, SwapGuard guard) throws IOException {
+        Path file = new Path(directory, PACK_FILE);
+        Path staging = new Path(directory, PACK_FILE + ".tmp-" + UUID.randomUUID());
+        NavigableMap<String, Entry> index = new TreeMap<>();
+        try {
+            try (FSDataOutputStream out = fileSystem.create(staging, true, bufferSize)) {
+                if (previous != null) {
+                    try (FSDataInputStream in = fileSystem.open(previous.file(), bufferSize)) {
+                        long[] footer = readFooter(in, previous.length());
+                        if (footer == null || footer[1] != previous.generation()) {
+                            throw new IOException("Artifact pack " + previous.file() + " changed while being rewritten");
+                        }
+                        for (Map.Entry<String, Entry> packed : previous.entries().entrySet()) {
+                            if (replaced.contains(packed.getKey())) continue;
+                            Entry entry = packed.getValue();
+                            in.seek(entry.offset());
+                            index.put(packed.getKey(), new Entry(out.getPos(), entry.length(), entry.modificationTime()));
+                            IOUtils.copyBytes(in, out, entry.length(), false);
+                        }
+                    }
+                }
+                for (Map.Entry<String, FileStatus> looseFile : new TreeMap<>(loose).entrySet()) {
+                    FileStatus status = looseFile.getValue();
+                    try (FSDataInputStream in = fileSystem.open(status.getPath(), bufferSize)) {
+                        index.put(looseFile.getKey(), new Entry(out.getPos(), status.getLen(), status.getModificationTime()));
+                        IOUtils.copyBytes(in, out, status.getLen(), false);
+                    }
+                }
+                long indexOffset = out.getPos();
+                DataOutputStream data = new DataOutputStream(out);
+                data.writeInt(index.size());
+                for (Map.Entry<String, Entry> packed : index.entrySet()) {
+                    data.writeUTF(packed.getKey());
+                    data.writeLong(packed.getValue().offset());
+                    data.writeLong(packed.getValue().length());
+                    data.writeLong(packed.getValue().modificationTime());
+                }
+                data.writeLong(indexOffset);
+                data.writeLong(ThreadLocalRandom.current().nextLong());
+                data.write(MAGIC);
+                data.flush();
+            }
+            if (!guard.holds()) {
+                throw new IOException("No longer allowed to rewrite artifact pack " + file + "; left as it was");
+            }
+            if (!Objects.equals(generation(file), previous == null ? null : previous.generation())) {
+                throw new IOException("Artifact pack " + file + " changed while being rewritten");
+            }
+            if (index.isEmpty()) {
+                fileSystem.delete(file, false);
+            } else if (fileSystem instanceof DistributedFileSystem hdfs) {
+                hdfs.rename(staging, file, Options.Rename.OVERWRITE);
+            } else {
+                fileSystem.delete(file, false);
+                if (!fileSystem.rename(staging, file)) {
+                    throw new IOException("Could not move " + staging + " to " + file);
+                }
+            }
+        } finally {
+            fileSystem.delete(staging, false);
+        }
+    }
+}
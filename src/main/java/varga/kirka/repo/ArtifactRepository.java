@@ -1,16 +1,32 @@
 package varga.kirka.repo;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.hadoop.HadoopIllegalArgumentException;
 import org.apache.hadoop.fs.*;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
 import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.ipc.RemoteException;
 import org.springframework.stereotype.Repository;
 
 import varga.kirka.model.FileInfo;
+import java.io.EOFException;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.LongConsumer;
 
 @Slf4j
 @Repository
@@ -19,43 +35,434 @@ public class ArtifactRepository {
 
     private final FileSystem fileSystem;
 
-    public void uploadArtifact(String hdfsPath, InputStream inputStream) throws IOException {
+    private final ParallelArtifactReader parallelReader;
+
+    private final ContentStore contentStore;
+
+    private final ArtifactPackStore packStore;
+
+    /** Prefix of the files and directories Kirka keeps next to artifacts; never listed. */
+    private static final String INTERNAL_PREFIX = ".kirka-";
+
+    /** Orders names as HDFS lists them: by their UTF-8 bytes. */
+    private static final Comparator<String> NAME_ORDER = (a, b) -> Arrays.compareUnsigned(
+            a.getBytes(StandardCharsets.UTF_8), b.getBytes(StandardCharsets.UTF_8));
+
+    /**
+     * Orders relative paths as listing pages return them: depth first, the entries of each
+     * directory by name.
+     */
+    public static final Comparator<String> PATH_ORDER = (a, b) -> {
+        String[] left = a.split("/");
+        String[] right = b.split("/");
+        for (int i = 0; i < Math.min(left.length, right.length); i++) {
+            int order = NAME_ORDER.compare(left[i], right[i]);
+            if (order != 0) return order;
+        }
+        return Integer.compare(left.length, right.length);
+    };
+
+    /**
+     * Streams {@code inputStream} into a file at {@code hdfsPath}, replacing any existing one,
+     * through a single buffer of {@code bufferSize} bytes: nothing is staged on local disk.
+     * {@code progress} is given the size of every chunk once written. A partially written file
+     * is removed if the copy fails. Returns the number of bytes written.
+     */
+    public long uploadArtifact(String hdfsPath, InputStream inputStream, int bufferSize,
+                               LongConsumer progress) throws IOException {
         Path path = new Path(hdfsPath);
-        try (FSDataOutputStream outputStream = fileSystem.create(path, true)) {
-            IOUtils.copyBytes(inputStream, outputStream, 4096, true);
+        byte[] buffer = new byte[bufferSize];
+        long written = 0;
+        try (FSDataOutputStream outputStream = fileSystem.create(path, true, bufferSize)) {
+            int n;
+            while ((n = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, n);
+                written += n;
+                progress.accept(n);
+            }
+        } catch (IOException | RuntimeException e) {
+            try {
+                fileSystem.delete(path, false);
+            } catch (IOException cleanup) {
+                e.addSuppressed(cleanup);
+            }
+            throw e;
         }
+        return written;
+    }
+
+    /** Whether uploads through {@link #storeArtifact} are deduplicated by the {@link ContentStore}. */
+    public boolean isDeduplicating() {
+        return contentStore.isEnabled();
+    }
+
+    /**
+     * Like {@link #uploadArtifact}, but through the {@link ContentStore}: content already stored
+     * in {@code scope} is kept once and {@code hdfsPath} references it. A non-null
+     * {@code sha256} is checked against the received content.
+     */
+    public long storeArtifact(String hdfsPath, String scope, InputStream inputStream, int bufferSize,
+                              LongConsumer progress, String sha256) throws IOException {
+        return contentStore.store(new Path(hdfsPath), scope, inputStream, bufferSize, progress, sha256);
+    }
+
+    /** Makes {@code hdfsPath} reference the blob {@code sha256} of {@code scope}; false if there is no such blob. */
+    public boolean linkArtifact(String hdfsPath, String scope, String sha256) throws IOException {
+        return contentStore.link(new Path(hdfsPath), scope, sha256);
+    }
+
+    /** Size of the blob {@code sha256} of {@code scope}, or {@code null} if there is none. */
+    public Long blobLength(String scope, String sha256) throws IOException {
+        FileStatus blob = contentStore.blobStatus(scope, sha256);
+        return blob != null ? blob.getLen() : null;
     }
 
     public void downloadArtifact(String hdfsPath, OutputStream outputStream) throws IOException {
-        Path path = new Path(hdfsPath);
-        try (FSDataInputStream inputStream = fileSystem.open(path)) {
+        Path path = contentStore.dataPath(new Path(hdfsPath));
+        FSDataInputStream opened;
+        try {
+            opened = fileSystem.open(path);
+        } catch (FileNotFoundException e) {
+            ArtifactPackStore.PackedStream packed = packStore.open(path, 4096);
+            if (packed == null) throw e;
+            try (FSDataInputStream inputStream = packed.stream()) {
+                inputStream.seek(packed.offset());
+                IOUtils.copyBytes(inputStream, outputStream, packed.length(), false);
+            }
+            return;
+        }
+        try (FSDataInputStream inputStream = opened) {
             IOUtils.copyBytes(inputStream, outputStream, 4096, false);
         }
     }
 
-    public List<FileInfo> listArtifacts(String hdfsPath) throws IOException {
-        List<FileInfo> fileInfos = new ArrayList<>();
+    /**
+     * Copies {@code length} bytes of {@code hdfsPath} starting at {@code offset} to
+     * {@code outputStream}. The stream seeks straight to {@code offset}, so only the blocks
+     * covering the range are read. Ranges large enough for {@link ParallelArtifactReader} are
+     * fetched with concurrent positional reads instead. A packed file is read from its pack.
+     */
+    public void downloadArtifact(String hdfsPath, OutputStream outputStream, long offset, long length,
+                                 int bufferSize) throws IOException {
+        Path path = contentStore.dataPath(new Path(hdfsPath));
+        FSDataInputStream opened;
+        long start = offset;
+        try {
+            opened = fileSystem.open(path, bufferSize);
+        } catch (FileNotFoundException e) {
+            ArtifactPackStore.PackedStream packed = packStore.open(path, bufferSize);
+            if (packed == null) throw e;
+            opened = packed.stream();
+            if (offset + length > packed.length()) {
+                opened.close();
+                throw new EOFException("Artifact " + hdfsPath + " ended " + (offset + length - packed.length()) + " bytes early");
+            }
+            start = packed.offset() + offset;
+        }
+        try (FSDataInputStream inputStream = opened) {
+            if (parallelReader.accepts(length)) {
+                parallelReader.copy(inputStream, outputStream, start, length);
+                return;
+            }
+            if (start > 0) inputStream.seek(start);
+            byte[] buffer = new byte[(int) Math.max(1L, Math.min(bufferSize, length))];
+            long remaining = length;
+            while (remaining > 0) {
+                int n = inputStream.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (n < 0) {
+                    throw new EOFException("Artifact " + hdfsPath + " ended " + remaining + " bytes early");
+                }
+                outputStream.write(buffer, 0, n);
+                remaining -= n;
+            }
+        }
+    }
+
+    /**
+     * Status of the file or directory at {@code hdfsPath}, or {@code null} if there is none. A
+     * {@link ContentStore} reference has the length of its blob; a packed file is described by
+     * its {@link ArtifactPackStore} entry.
+     */
+    public FileStatus getFileStatus(String hdfsPath) throws IOException {
+        try {
+            return contentStore.resolve(fileSystem.getFileStatus(new Path(hdfsPath)));
+        } catch (FileNotFoundException e) {
+            return packStore.status(new Path(hdfsPath));
+        }
+    }
+
+    /**
+     * The file on the file system holding the bytes of the artifact file {@code hdfsPath} and
+     * nothing else: itself, or its blob for a {@link ContentStore} reference; {@code null} for a
+     * packed file, whose pack holds others, and for a missing one.
+     */
+    public Path dataFile(String hdfsPath) throws IOException {
         Path path = new Path(hdfsPath);
-        if (fileSystem.exists(path)) {
-            FileStatus[] statuses = fileSystem.listStatus(path);
-            if (statuses != null) {
-                for (FileStatus status : statuses) {
-                    fileInfos.add(FileInfo.builder()
-                            .path(status.getPath().toString())
-                            .isDir(status.isDirectory())
-                            .fileSize(status.isDirectory() ? null : status.getLen())
-                            .build());
+        FileStatus status;
+        try {
+            status = fileSystem.getFileStatus(path);
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+        if (status.isDirectory()) return null;
+        ContentStore.Ref ref = contentStore.readRef(status);
+        return ref == null ? status.getPath() : contentStore.blobPath(ref);
+    }
+
+    /**
+     * Checksum of the file at {@code hdfsPath} as computed by the file system (on HDFS, an MD5
+     * of the per-block checksums, which asks a datanode of every block), or {@code null} when
+     * the file system has none or the file is packed.
+     */
+    public FileChecksum getFileChecksum(String hdfsPath) throws IOException {
+        try {
+            return fileSystem.getFileChecksum(contentStore.dataPath(new Path(hdfsPath)));
+        } catch (FileNotFoundException e) {
+            if (packStore.find(new Path(hdfsPath)) == null) throw e;
+            return null;
+        }
+    }
+
+    /**
+     * Joins {@code parts}, in order, into a file at {@code hdfsPath}, replacing any existing
+     * one. The parts must share a directory. On HDFS this is a {@link FileSystem#concat}
+     * (a metadata operation that moves their blocks) followed by a rename; file systems without
+     * concat, or an HDFS refusing the parts (e.g. differing block sizes), get an ordered copy
+     * through a {@code bufferSize} buffer instead. The parts are consumed either way.
+     */
+    public void concatArtifacts(String hdfsPath, List<String> parts, int bufferSize) throws IOException {
+        List<Path> sources = new ArrayList<>();
+        for (String part : parts) {
+            Path path = new Path(part);
+            // Empty parts add nothing; leaving them out keeps the concat to real blocks.
+            if (fileSystem.getFileStatus(path).getLen() > 0) sources.add(path);
+        }
+        if (sources.isEmpty()) sources.add(new Path(parts.get(0)));
+        Path joined = sources.get(0);
+        if (sources.size() > 1) {
+            try {
+                fileSystem.concat(joined, sources.subList(1, sources.size()).toArray(new Path[0]));
+            } catch (UnsupportedOperationException | IllegalArgumentException e) {
+                joined = stitch(sources, bufferSize);
+            } catch (RemoteException e) {
+                if (!HadoopIllegalArgumentException.class.getName().equals(e.getClassName())) throw e;
+                log.info("HDFS refused to concat into {} ({}); copying the parts instead", hdfsPath, e.getMessage());
+                joined = stitch(sources, bufferSize);
+            }
+        }
+        Path target = new Path(hdfsPath);
+        fileSystem.delete(target, false);
+        fileSystem.mkdirs(target.getParent());
+        if (!fileSystem.rename(joined, target)) {
+            throw new IOException("Could not move " + joined + " to " + target);
+        }
+    }
+
+    private Path stitch(List<Path> sources, int bufferSize) throws IOException {
+        Path stitched = sources.get(0).suffix(".stitched");
+        try (FSDataOutputStream out = fileSystem.create(stitched, true, bufferSize)) {
+            for (Path source : sources) {
+                try (FSDataInputStream in = fileSystem.open(source, bufferSize)) {
+                    IOUtils.copyBytes(in, out, bufferSize, false);
+                }
+            }
+        }
+        return stitched;
+    }
+
+    /** Files and directories matching the glob {@code pattern}; empty when there are none. */
+    public List<FileStatus> globStatus(String pattern) throws IOException {
+        FileStatus[] statuses = fileSystem.globStatus(new Path(pattern));
+        return statuses == null ? List.of() : List.of(statuses);
+    }
+
+    /**
+     * Files and directories in {@code hdfsPath}, including those only its pack holds (a file on
+     * the file system shadows a packed one of the same name). Pack files and other internal
+     * {@code .kirka-} entries are left out.
+     */
+    public List<FileInfo> listArtifacts(String hdfsPath) throws IOException {
+        return listArtifacts(hdfsPath, null, Integer.MAX_VALUE, false).items();
+    }
+
+    /**
+     * One page of {@code hdfsPath}: up to {@code limit} entries whose relative paths follow
+     * {@code after} in {@link #PATH_ORDER}, or the first ones when it is {@code null}. Without
+     * {@code recursive} these are its files and directories, as in {@link #listArtifacts(String)};
+     * with it, the files at any depth below it.
+     *
+     * <p>Directories are read with {@link FileSystem#listStatusIterator}, one batch at a time,
+     * keeping only the {@code limit + 1} first names, so a page costs memory in proportion to
+     * its size and not to the directory's. HDFS lists names in order, so the read stops once the
+     * page is full; other file systems are read to the end. The page token holds the relative
+     * path of the last entry, so uploads and deletes between two pages never shift the later
+     * ones, but a deep page re-reads the names before it: a directory is paged through in time
+     * quadratic in its size, with a small constant.
+     */
+    public Page<FileInfo> listArtifacts(String hdfsPath, PageToken after, int limit, boolean recursive) throws IOException {
+        int size = Math.max(1, Math.min(limit, Integer.MAX_VALUE - 1));
+        Path root = new Path(hdfsPath);
+        String from = after == null ? null : new String(after.lastRow(), StandardCharsets.UTF_8);
+        List<Listed> page = new ArrayList<>();
+        if (recursive) {
+            collectFiles(root, "", from == null ? null : List.of(from.split("/")), size, page);
+        } else {
+            for (FileStatus child : children(root, from, false, size + 1)) {
+                page.add(new Listed(child.getPath().getName(), child));
+            }
+        }
+        boolean more = page.size() > size;
+        List<FileInfo> fileInfos = new ArrayList<>(Math.min(page.size(), size));
+        for (Listed listed : more ? page.subList(0, size) : page) fileInfos.add(fileInfo(listed.status()));
+        return more ? Page.of(fileInfos, PageToken.ofRow(page.get(size - 1).relative()).encode()) : Page.terminal(fileInfos);
+    }
+
+    /** An entry of a listing page and its path relative to the listed directory. */
+    private record Listed(String relative, FileStatus status) {}
+
+    /**
+     * Adds to {@code page} the files below {@code directory} that follow {@code after} (its
+     * remaining path components, or {@code null} for all of them) depth first, until it holds
+     * {@code limit + 1}. Children are read in chunks of about the room left in the page, since
+     * a subdirectory may hold anything from nothing to the rest of the page.
+     */
+    private void collectFiles(Path directory, String prefix, List<String> after, int limit, List<Listed> page)
+            throws IOException {
+        String cursor = after == null ? null : after.get(0);
+        // The last page ended inside the child named by the cursor: read it again, from there.
+        boolean inside = after != null && after.size() > 1;
+        while (page.size() <= limit) {
+            List<FileStatus> children = children(directory, cursor, inside, Math.max(16, limit + 1 - page.size()));
+            if (children.isEmpty()) return;
+            for (FileStatus child : children) {
+                String name = child.getPath().getName();
+                boolean resumed = inside && name.equals(cursor);
+                if (child.isDirectory()) {
+                    collectFiles(child.getPath(), prefix + name + "/", resumed ? after.subList(1, after.size()) : null,
+                            limit, page);
+                } else if (!resumed) {
+                    page.add(new Listed(prefix + name, child));
+                }
+                if (page.size() > limit) return;
+                cursor = name;
+                inside = false;
+            }
+        }
+    }
+
+    /**
+     * The first {@code limit} children of {@code directory} by {@link #NAME_ORDER} whose names
+     * follow {@code after} (or equal it, with {@code inclusive}), packed ones included and
+     * internal ones left out; empty if the directory does not exist.
+     */
+    private List<FileStatus> children(Path directory, String after, boolean inclusive, int limit) throws IOException {
+        TreeMap<String, FileStatus> selected = new TreeMap<>(NAME_ORDER);
+        Set<String> loose = new HashSet<>();
+        boolean ordered = fileSystem instanceof DistributedFileSystem;
+        try {
+            RemoteIterator<FileStatus> statuses = fileSystem.listStatusIterator(directory);
+            while (statuses.hasNext()) {
+                FileStatus status = statuses.next();
+                String name = status.getPath().getName();
+                if (name.startsWith(INTERNAL_PREFIX) || !follows(name, after, inclusive)) continue;
+                if (selected.size() == limit && NAME_ORDER.compare(name, selected.lastKey()) > 0) {
+                    if (ordered) break;
+                    continue;
                 }
+                selected.put(name, status);
+                loose.add(name);
+                if (selected.size() > limit) selected.pollLastEntry();
             }
+        } catch (FileNotFoundException e) {
+            // Not on the file system: its pack may still hold it.
+        }
+        for (FileStatus status : packStore.list(directory)) {
+            String name = status.getPath().getName();
+            if (!follows(name, after, inclusive) || selected.containsKey(name)) continue;
+            if (selected.size() == limit && NAME_ORDER.compare(name, selected.lastKey()) > 0) continue;
+            selected.put(name, status);
+            if (selected.size() > limit) selected.pollLastEntry();
         }
-        return fileInfos;
+        List<FileStatus> children = new ArrayList<>(selected.size());
+        for (FileStatus status : selected.values()) {
+            children.add(loose.contains(status.getPath().getName()) ? contentStore.resolve(status) : status);
+        }
+        return children;
+    }
+
+    private static boolean follows(String name, String after, boolean inclusive) {
+        if (after == null) return true;
+        int order = NAME_ORDER.compare(name, after);
+        return order > 0 || (inclusive && order == 0);
+    }
+
+    private static FileInfo fileInfo(FileStatus status) {
+        return FileInfo.builder()
+                .path(status.getPath().toString())
+                .isDir(status.isDirectory())
+                .fileSize(status.isDirectory() ? null : status.getLen())
+                .build();
+    }
+
+    /**
+     * Every file at or below {@code hdfsPath}, described as by {@link #getFileStatus}, packed
+     * files included and internal {@code .kirka-} files left out. The file system is listed
+     * lazily with {@link FileSystem#listFiles}, so large trees are never held in memory: only
+     * the packed files are, as their packs' indexes already are. A loose file shadows a packed
+     * one of the same path.
+     */
+    public RemoteIterator<FileStatus> walkArtifacts(String hdfsPath) throws IOException {
+        Path root = new Path(hdfsPath);
+        RemoteIterator<LocatedFileStatus> loose = fileSystem.exists(root) ? fileSystem.listFiles(root, true) : null;
+        Map<Path, FileStatus> packedByPath = new LinkedHashMap<>();
+        for (FileStatus status : packStore.listTree(root)) packedByPath.put(status.getPath(), status);
+        return new RemoteIterator<>() {
+            private Iterator<FileStatus> packed;
+            private FileStatus next;
+
+            @Override
+            public boolean hasNext() throws IOException {
+                while (next == null) {
+                    if (loose != null && loose.hasNext()) {
+                        FileStatus status = loose.next();
+                        if (status.getPath().toUri().getPath().contains("/" + INTERNAL_PREFIX)) continue;
+                        packedByPath.remove(status.getPath());
+                        next = contentStore.resolve(status);
+                    } else {
+                        if (packed == null) packed = packedByPath.values().iterator();
+                        if (!packed.hasNext()) return false;
+                        next = packed.next();
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public FileStatus next() throws IOException {
+                if (!hasNext()) throw new NoSuchElementException();
+                FileStatus status = next;
+                next = null;
+                return status;
+            }
+        };
     }
 
     public boolean exists(String hdfsPath) throws IOException {
-        return fileSystem.exists(new Path(hdfsPath));
+        Path path = new Path(hdfsPath);
+        return fileSystem.exists(path) || packStore.status(path) != null;
     }
 
     public void deleteArtifact(String hdfsPath) throws IOException {
         fileSystem.delete(new Path(hdfsPath), true);
+        packStore.remove(new Path(hdfsPath));
+    }
+
+    /**
+     * Packs the small files below {@code hdfsPath} into its {@link ArtifactPackStore} pack,
+     * swapped in only while {@code guard} holds; returns the number of files packed.
+     */
+    public int packArtifacts(String hdfsPath, long maxFileBytes, int minFiles, int bufferSize,
+                             ArtifactPackStore.SwapGuard guard) throws IOException {
+        return packStore.pack(new Path(hdfsPath), maxFileBytes, minFiles, bufferSize, guard);
     }
 }
@@ -0,0 +1,248 @@
+package varga.kirka.repo;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+import varga.kirka.model.AuditEvent;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Cold tier of the audit log: {@link AuditEvent}s moved out of {@code mlflow_audit} by
+ * {@link varga.kirka.repair.AuditArchiver}, stored as deflate-compressed Avro container files
+ * on HDFS under a Hive-style day partitioning:
+ *
+ * <pre>
+ *   ${kirka.audit.archive.path}/dt=2024-01-31/part-1706745600000-3f2a9c1e.avro
+ * </pre>
+ *
+ * <p>Days are UTC. Every archival batch adds a new file to the partitions it touches, so a
+ * partition is never rewritten. Files are written under a {@code _}-prefixed temporary name
+ * and renamed once complete; like Hive and Spark, readers ignore {@code _} and {@code .}
+ * files, so a crashed archival run never exposes a truncated file. The files are
+ * self-describing, so the archive is also queryable by external engines as-is.
+ *
+ * <p>{@link #search} prunes on the partition directory names: only the days that overlap the
+ * query's time range (and that are older than the page token) are listed and read. Within a
+ * partition, records are filtered and ordered on the same
+ * {@code reversedTimestamp + "_" + eventId} cursor as {@link AuditRepository}, so one page
+ * token works across both tiers. An event archived twice (a batch whose HBase delete failed)
+ * is returned once.
+ */
+@Slf4j
+@Repository
+public class AuditArchiveRepository {
+
+    private static final String PARTITION_PREFIX = "dt=";
+    private static final String FILE_SUFFIX = ".avro";
+
+    static final Schema SCHEMA = SchemaBuilder.record("AuditEvent").namespace("varga.kirka.audit")
+            .fields()
+            .requiredString("event_id")
+            .requiredLong("timestamp")
+            .optionalString("user")
+            .optionalString("client_ip")
+            .optionalString("action")
+            .optionalString("resource_type")
+            .optionalString("resource_id")
+            .optionalString("outcome")
+            .optionalString("reason")
+            .optionalString("request_id")
+            .optionalInt("count")
+            .optionalLong("first_timestamp")
+            .optionalLong("last_timestamp")
+            .endRecord();
+
+    private final FileSystem fileSystem;
+    private final boolean enabled;
+    private final Path root;
+    private final int compressionLevel;
+
+    public AuditArchiveRepository(FileSystem fileSystem,
+                                  @Value("${kirka.audit.archive.enabled:false}") boolean enabled,
+                                  @Value("${kirka.audit.archive.path:/kirka/audit-archive}") String path,
+                                  @Value("${kirka.audit.archive.compression-level:6}") int compressionLevel) {
+        this.fileSystem = fileSystem;
+        this.enabled = enabled;
+        this.root = new Path(path);
+        this.compressionLevel = Math.max(1, Math.min(9, compressionLevel));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Writes {@code events} as one new file in the partition of {@code day} and returns its path. */
+    public Path write(LocalDate day, List<AuditEvent> events) throws IOException {
+        Path dir = new Path(root, PARTITION_PREFIX + day);
+        String name = "part-" + System.currentTimeMillis() + "-" + UUID.randomUUID().toString().substring(0, 8) + FILE_SUFFIX;
+        Path tmp = new Path(dir, "_" + name + ".tmp");
+        Path target = new Path(dir, name);
+        fileSystem.mkdirs(dir);
+        try (FSDataOutputStream out = fileSystem.create(tmp, false);
+             DataFileWriter<GenericRecord> writer = new DataFileWriter<>(new GenericDatumWriter<GenericRecord>(SCHEMA))) {
+            writer.setCodec(CodecFactory.deflateCodec(compressionLevel));
+            writer.create(SCHEMA, out);
+            for (AuditEvent event : events) {
+                writer.append(toRecord(event));
+            }
+        } catch (IOException | RuntimeException e) {
+            fileSystem.delete(tmp, false);
+            throw e;
+        }
+        if (!fileSystem.rename(tmp, target)) {
+            fileSystem.delete(tmp, false);
+            throw new IOException("Failed to publish audit archive file " + target);
+        }
+        return target;
+    }
+
+    /**
+     * Returns archived events matching {@code query}, newest first, resuming strictly after
+     * {@code pageToken} (see {@link AuditRepository#tokenAfter}). Only the first
+     * {@code maxResults} matches of a partition are held in memory.
+     */
+    public Page<AuditEvent> search(AuditQuery query, int maxResults, PageToken pageToken) throws IOException {
+        String after = pageToken != null ? new String(pageToken.lastRow(), StandardCharsets.UTF_8) : null;
+        Long end = query.endTime();
+        if (after != null) {
+            long resumeTs = AuditRepository.suffixTimestamp(after);
+            end = end == null ? resumeTs : Math.min(end, resumeTs);
+        }
+        List<AuditEvent> events = new ArrayList<>();
+        String lastSuffix = null;
+        for (LocalDate day : partitions(query.startTime(), end)) {
+            for (Map.Entry<String, AuditEvent> e : readPartition(day, query, after, maxResults - events.size()).entrySet()) {
+                events.add(e.getValue());
+                lastSuffix = e.getKey();
+            }
+            if (events.size() >= maxResults) {
+                return Page.of(events, PageToken.ofRow(lastSuffix).encode());
+            }
+        }
+        return Page.terminal(events);
+    }
+
+    /** Partition days overlapping {@code [start, end]}, newest first. */
+    private List<LocalDate> partitions(Long start, Long end) throws IOException {
+        if (!fileSystem.exists(root)) return List.of();
+        LocalDate first = start != null ? day(start) : LocalDate.MIN;
+        LocalDate last = end != null ? day(end) : LocalDate.MAX;
+        List<LocalDate> days = new ArrayList<>();
+        for (FileStatus status : fileSystem.listStatus(root)) {
+            String name = status.getPath().getName();
+            if (!status.isDirectory() || !name.startsWith(PARTITION_PREFIX)) continue;
+            try {
+                LocalDate day = LocalDate.parse(name.substring(PARTITION_PREFIX.length()));
+                if (!day.isBefore(first) && !day.isAfter(last)) days.add(day);
+            } catch (DateTimeParseException e) {
+                log.warn("Ignoring unexpected audit archive directory {}", status.getPath());
+            }
+        }
+        days.sort(Comparator.reverseOrder());
+        return days;
+    }
+
+    /** The first {@code limit} matches of a partition after {@code after}, keyed and ordered by cursor. */
+    private TreeMap<String, AuditEvent> readPartition(LocalDate day, AuditQuery query, String after, int limit)
+            throws IOException {
+        TreeMap<String, AuditEvent> matches = new TreeMap<>();
+        for (FileStatus file : fileSystem.listStatus(new Path(root, PARTITION_PREFIX + day))) {
+            String name = file.getPath().getName();
+            if (!file.isFile() || !name.endsWith(FILE_SUFFIX) || name.startsWith("_") || name.startsWith(".")) continue;
+            try (FSDataInputStream in = fileSystem.open(file.getPath());
+                 DataFileStream<GenericRecord> records = new DataFileStream<>(in, new GenericDatumReader<GenericRecord>())) {
+                for (GenericRecord record : records) {
+                    AuditEvent event = fromRecord(record);
+                    if (!matches(query, event)) continue;
+                    String suffix = AuditRepository.suffix(event.getTimestamp(), event.getEventId());
+                    if (after != null && suffix.compareTo(after) <= 0) continue;
+                    matches.put(suffix, event);
+                    if (matches.size() > limit) matches.pollLastEntry();
+                }
+            }
+        }
+        return matches;
+    }
+
+    private static boolean matches(AuditQuery query, AuditEvent event) {
+        return (query.startTime() == null || event.getTimestamp() >= query.startTime())
+                && (query.endTime() == null || event.getTimestamp() <= query.endTime())
+                && (query.user() == null || query.user().equals(event.getUser()))
+                && (query.resourceType() == null || query.resourceType().equals(event.getResourceType()))
+                && (query.resourceId() == null || query.resourceId().equals(event.getResourceId()))
+                && (query.action() == null || query.action().equals(event.getAction()));
+    }
+
+    /** The UTC day partition an event with this timestamp belongs to. */
+    public static LocalDate day(long timestampMillis) {
+        return Instant.ofEpochMilli(timestampMillis).atZone(ZoneOffset.UTC).toLocalDate();
+    }
+
+    private static GenericRecord toRecord(AuditEvent event) {
+        GenericRecord r = new GenericData.Record(SCHEMA);
+        r.put("event_id", event.getEventId());
+        r.put("timestamp", event.getTimestamp());
+        r.put("user", event.getUser());
+        r.put("client_ip", event.getClientIp());
+        r.put("action", event.getAction());
+        r.put("resource_type", event.getResourceType());
+        r.put("resource_id", event.getResourceId());
+        r.put("outcome", event.getOutcome());
+        r.put("reason", event.getReason());
+        r.put("request_id", event.getRequestId());
+        r.put("count", event.getCount());
+        r.put("first_timestamp", event.getFirstTimestamp());
+        r.put("last_timestamp", event.getLastTimestamp());
+        return r;
+    }
+
+    private static AuditEvent fromRecord(GenericRecord r) {
+        return AuditEvent.builder()
+                .eventId(string(r, "event_id"))
+                .timestamp((Long) r.get("timestamp"))
+                .user(string(r, "user"))
+                .clientIp(string(r, "client_ip"))
+                .action(string(r, "action"))
+                .resourceType(string(r, "resource_type"))
+                .resourceId(string(r, "resource_id"))
+                .outcome(string(r, "outcome"))
+                .reason(string(r, "reason"))
+                .requestId(string(r, "request_id"))
+                .count((Integer) r.get("count"))
+                .firstTimestamp((Long) r.get("first_timestamp"))
+                .lastTimestamp((Long) r.get("last_timestamp"))
+                .build();
+    }
+
+    /** Avro hands strings back as {@code Utf8}. */
+    private static String string(GenericRecord r, String field) {
+        Object value = r.get(field);
+        return value != null ? value.toString() : null;
+    }
+}
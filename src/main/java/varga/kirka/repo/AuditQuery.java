@@ -0,0 +1,17 @@
+package varga.kirka.repo;
+
+/**
+ * Filters accepted by {@link AuditRepository#search}. Every field is optional; string fields
+ * are exact matches and the time bounds are inclusive epoch-millis values.
+ */
+public record AuditQuery(String user, String resourceType, String resourceId, String action,
+                         Long startTime, Long endTime) {
+
+    public static AuditQuery all() {
+        return new AuditQuery(null, null, null, null, null, null);
+    }
+
+    public boolean hasResource() {
+        return resourceType != null && resourceId != null;
+    }
+}
@@ -1,35 +1,69 @@
 package varga.kirka.repo;
 
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.CompareOperator;
 import org.apache.hadoop.hbase.TableName;
 import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.SingleColumnValueFilter;
 import org.apache.hadoop.hbase.util.Bytes;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 import varga.kirka.model.AuditEvent;
 import varga.kirka.util.HBaseResults;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
 
 /**
  * Append-only store for {@link AuditEvent}s in the {@code mlflow_audit} HBase table.
  *
- * <p>The row key encodes {@code reversedTimestamp + "_" + eventId}. Because HBase scans are
- * lexicographically ordered, a plain scan returns events from newest to oldest without a
- * sort step on the server. The reversed timestamp is left-padded to 19 digits so rows sort
- * consistently for any positive epoch-millis value.
+ * <p>The row key encodes {@code salt + reversedTimestamp + "_" + eventId}, where the salt is
+ * {@code "s" + NN + "_"} with {@code NN = hash(eventId) mod kirka.audit.salt-buckets}. Without
+ * the salt every replica would append to the head of the same region, the classic monotonic
+ * key hotspot; with it, concurrent writes within any time bucket spread over as many regions
+ * as there are salts. Within one salt, HBase's lexicographic order still returns events from
+ * newest to oldest, so {@link #search} opens one scanner per salt and merges them on the
+ * {@code reversedTimestamp + "_" + eventId} suffix ({@link MergedScanner}). The reversed
+ * timestamp is left-padded to 19 digits so rows sort consistently for any positive
+ * epoch-millis value, which also turns a time range into a start/stop row range per salt.
+ *
+ * <p>The table should be pre-split on the {@link #splitKeys() salt boundaries}, e.g.
+ * {@code create 'mlflow_audit', 'info', SPLITS => ['s00_', 's01_', ..., 's15_']}, or split in
+ * place by {@link varga.kirka.repair.AuditLayoutMigrator}. Rows written before salting (bare
+ * {@code reversedTimestamp + "_" + eventId}, always digit-initial) sort before every salted
+ * row and are read as one more merge source until the migrator has rewritten them. The number
+ * of salt buckets may grow but must never shrink: rows in a dropped salt would become invisible.
+ *
+ * <p>Two covering index tables are maintained at append time so that the common
+ * investigation queries do not scan the whole log:
+ * <ul>
+ *   <li>{@code mlflow_audit_by_user}: {@code user + "_" + reversedTimestamp + "_" + eventId}</li>
+ *   <li>{@code mlflow_audit_by_resource}: {@code resourceType + "_" + resourceId + "_" +
+ *       reversedTimestamp + "_" + eventId}</li>
+ * </ul>
+ * Index rows carry the same columns as the primary row, so an indexed search never goes back
+ * to {@code mlflow_audit}. Like the experiment name index, the three tables are not written
+ * atomically; a partial failure leaves an event missing from an index, never a dangling entry.
+ * Events appended before the index tables existed are indexed by {@link #backfillIndexes},
+ * run once as the {@link varga.kirka.service.AuditIndexBackfillJob}; until then an indexed
+ * search does not see them.
  *
  * <p>The repository never exposes the raw row key — callers manipulate {@link varga.kirka.repo.PageToken}.
  */
 @Slf4j
 @Repository
-@RequiredArgsConstructor
 public class AuditRepository {
 
     private static final String TABLE_NAME = "mlflow_audit";
+    private static final String USER_INDEX_TABLE_NAME = "mlflow_audit_by_user";
+    private static final String RESOURCE_INDEX_TABLE_NAME = "mlflow_audit_by_resource";
     private static final byte[] CF_INFO = Bytes.toBytes("info");
 
     private static final byte[] COL_EVENT_ID = Bytes.toBytes("event_id");
@@ -42,58 +76,447 @@ public class AuditRepository {
     private static final byte[] COL_OUTCOME = Bytes.toBytes("outcome");
     private static final byte[] COL_REASON = Bytes.toBytes("reason");
     private static final byte[] COL_REQUEST_ID = Bytes.toBytes("request_id");
+    private static final byte[] COL_COUNT = Bytes.toBytes("count");
+    private static final byte[] COL_FIRST_TIMESTAMP = Bytes.toBytes("first_timestamp");
+    private static final byte[] COL_LAST_TIMESTAMP = Bytes.toBytes("last_timestamp");
+
+    /** Digit-initial legacy keys sort strictly before this row; salted keys start with {@code 's'}. */
+    private static final byte[] LEGACY_STOP_ROW = Bytes.toBytes(":");
+    private static final int MAX_SALT_BUCKETS = 100;
 
     private final Connection connection;
+    private final int saltBuckets;
+
+    public AuditRepository(Connection connection,
+                           @Value("${kirka.audit.salt-buckets:16}") int saltBuckets) {
+        this.connection = connection;
+        this.saltBuckets = Math.max(1, Math.min(saltBuckets, MAX_SALT_BUCKETS));
+    }
 
     public void append(AuditEvent event) throws IOException {
         if (event == null) return;
+        Rows rows = toRows(event, saltBuckets);
+        try (Table table = connection.getTable(TableName.valueOf(TABLE_NAME))) {
+            table.put(rows.event());
+        }
+        if (rows.byUser() != null) {
+            try (Table table = connection.getTable(TableName.valueOf(USER_INDEX_TABLE_NAME))) {
+                table.put(rows.byUser());
+            }
+        }
+        if (rows.byResource() != null) {
+            try (Table table = connection.getTable(TableName.valueOf(RESOURCE_INDEX_TABLE_NAME))) {
+                table.put(rows.byResource());
+            }
+        }
+    }
+
+    /** Whether {@code table} is the audit table itself rather than one of its indexes. */
+    public static boolean isEventTable(TableName table) {
+        return table != null && table.getNameAsString().equals(TABLE_NAME);
+    }
+
+    /**
+     * Opens buffered mutators on the audit table and its indexes for the asynchronous writer.
+     * The caller owns the returned writer and must close it; {@code listener} receives the
+     * rows that could not be written after the client exhausted its retries.
+     */
+    public BatchWriter openBatchWriter(long writeBufferBytes, BufferedMutator.ExceptionListener listener)
+            throws IOException {
+        List<BufferedMutator> opened = new ArrayList<>(3);
+        try {
+            for (String name : List.of(TABLE_NAME, USER_INDEX_TABLE_NAME, RESOURCE_INDEX_TABLE_NAME)) {
+                opened.add(connection.getBufferedMutator(new BufferedMutatorParams(TableName.valueOf(name))
+                        .writeBufferSize(writeBufferBytes)
+                        .listener(listener)));
+            }
+        } catch (IOException e) {
+            for (BufferedMutator m : opened) m.close();
+            throw e;
+        }
+        return new BatchWriter(opened.get(0), opened.get(1), opened.get(2), saltBuckets);
+    }
+
+    /**
+     * Buffered writer over the audit table and its two indexes. Rows reach HBase on
+     * {@link #flush()} or when the client-side write buffer fills up.
+     */
+    public static class BatchWriter implements Closeable {
+        private final BufferedMutator events;
+        private final BufferedMutator byUser;
+        private final BufferedMutator byResource;
+        private final int saltBuckets;
+
+        BatchWriter(BufferedMutator events, BufferedMutator byUser, BufferedMutator byResource, int saltBuckets) {
+            this.events = events;
+            this.byUser = byUser;
+            this.byResource = byResource;
+            this.saltBuckets = saltBuckets;
+        }
+
+        public void append(AuditEvent event) throws IOException {
+            if (event == null) return;
+            Rows rows = toRows(event, saltBuckets);
+            events.mutate(rows.event());
+            if (rows.byUser() != null) byUser.mutate(rows.byUser());
+            if (rows.byResource() != null) byResource.mutate(rows.byResource());
+        }
+
+        public void flush() throws IOException {
+            events.flush();
+            byUser.flush();
+            byResource.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try (BufferedMutator a = events; BufferedMutator b = byUser; BufferedMutator c = byResource) {
+                // try-with-resources closes all three even if one of them fails
+            }
+        }
+    }
+
+    private record Rows(Put event, Put byUser, Put byResource) {}
+
+    private static Rows toRows(AuditEvent event, int saltBuckets) {
         long ts = event.getTimestamp() > 0 ? event.getTimestamp() : System.currentTimeMillis();
         String eventId = event.getEventId() != null ? event.getEventId() : UUID.randomUUID().toString();
-        byte[] rowKey = buildRowKey(ts, eventId);
+        String suffix = suffix(ts, eventId);
+        Put byUser = event.getUser() != null
+                ? toPut(Bytes.toBytes(event.getUser() + "_" + suffix), event, ts, eventId)
+                : null;
+        Put byResource = event.getResourceType() != null && event.getResourceId() != null
+                ? toPut(Bytes.toBytes(resourcePrefix(event.getResourceType(), event.getResourceId()) + suffix),
+                        event, ts, eventId)
+                : null;
+        byte[] eventKey = Bytes.toBytes(saltPrefix(Math.floorMod(eventId.hashCode(), saltBuckets)) + suffix);
+        return new Rows(toPut(eventKey, event, ts, eventId), byUser, byResource);
+    }
 
-        try (Table table = connection.getTable(TableName.valueOf(TABLE_NAME))) {
-            Put put = new Put(rowKey);
-            put.addColumn(CF_INFO, COL_EVENT_ID, Bytes.toBytes(eventId));
-            put.addColumn(CF_INFO, COL_TIMESTAMP, Bytes.toBytes(ts));
-            if (event.getUser() != null) put.addColumn(CF_INFO, COL_USER, Bytes.toBytes(event.getUser()));
-            if (event.getClientIp() != null) put.addColumn(CF_INFO, COL_CLIENT_IP, Bytes.toBytes(event.getClientIp()));
-            if (event.getAction() != null) put.addColumn(CF_INFO, COL_ACTION, Bytes.toBytes(event.getAction()));
-            if (event.getResourceType() != null) put.addColumn(CF_INFO, COL_RESOURCE_TYPE, Bytes.toBytes(event.getResourceType()));
-            if (event.getResourceId() != null) put.addColumn(CF_INFO, COL_RESOURCE_ID, Bytes.toBytes(event.getResourceId()));
-            if (event.getOutcome() != null) put.addColumn(CF_INFO, COL_OUTCOME, Bytes.toBytes(event.getOutcome()));
-            if (event.getReason() != null) put.addColumn(CF_INFO, COL_REASON, Bytes.toBytes(event.getReason()));
-            if (event.getRequestId() != null) put.addColumn(CF_INFO, COL_REQUEST_ID, Bytes.toBytes(event.getRequestId()));
-            table.put(put);
-        }
+    private static Put toPut(byte[] rowKey, AuditEvent event, long ts, String eventId) {
+        Put put = new Put(rowKey);
+        put.addColumn(CF_INFO, COL_EVENT_ID, Bytes.toBytes(eventId));
+        put.addColumn(CF_INFO, COL_TIMESTAMP, Bytes.toBytes(ts));
+        if (event.getUser() != null) put.addColumn(CF_INFO, COL_USER, Bytes.toBytes(event.getUser()));
+        if (event.getClientIp() != null) put.addColumn(CF_INFO, COL_CLIENT_IP, Bytes.toBytes(event.getClientIp()));
+        if (event.getAction() != null) put.addColumn(CF_INFO, COL_ACTION, Bytes.toBytes(event.getAction()));
+        if (event.getResourceType() != null) put.addColumn(CF_INFO, COL_RESOURCE_TYPE, Bytes.toBytes(event.getResourceType()));
+        if (event.getResourceId() != null) put.addColumn(CF_INFO, COL_RESOURCE_ID, Bytes.toBytes(event.getResourceId()));
+        if (event.getOutcome() != null) put.addColumn(CF_INFO, COL_OUTCOME, Bytes.toBytes(event.getOutcome()));
+        if (event.getReason() != null) put.addColumn(CF_INFO, COL_REASON, Bytes.toBytes(event.getReason()));
+        if (event.getRequestId() != null) put.addColumn(CF_INFO, COL_REQUEST_ID, Bytes.toBytes(event.getRequestId()));
+        if (event.getCount() != null) put.addColumn(CF_INFO, COL_COUNT, Bytes.toBytes((long) event.getCount()));
+        if (event.getFirstTimestamp() != null) put.addColumn(CF_INFO, COL_FIRST_TIMESTAMP, Bytes.toBytes(event.getFirstTimestamp()));
+        if (event.getLastTimestamp() != null) put.addColumn(CF_INFO, COL_LAST_TIMESTAMP, Bytes.toBytes(event.getLastTimestamp()));
+        return put;
     }
 
     /**
      * Scans the audit log in reverse-chronological order (newest first). {@code pageToken} is
-     * the row key returned from the previous page; pass {@code null} to start at the most
-     * recent event.
+     * the {@code reversedTimestamp + "_" + eventId} suffix of the last event returned; pass
+     * {@code null} to start at the most recent event.
+     *
+     * <p>The access path is chosen from the filters, most selective first: the resource index
+     * when both resource type and id are given, then the user index, then a merge over every
+     * salt of the primary table. In every case the time range becomes the start/stop rows of
+     * the scans, and the remaining filters are evaluated server-side so that only matching
+     * rows cross the network.
      */
-    public Page<AuditEvent> search(int maxResults, PageToken pageToken) throws IOException {
+    public Page<AuditEvent> search(AuditQuery query, int maxResults, PageToken pageToken) throws IOException {
+        String table;
+        List<String> prefixes;
+        if (query.hasResource()) {
+            table = RESOURCE_INDEX_TABLE_NAME;
+            prefixes = List.of(resourcePrefix(query.resourceType(), query.resourceId()));
+        } else if (query.user() != null) {
+            table = USER_INDEX_TABLE_NAME;
+            prefixes = List.of(query.user() + "_");
+        } else {
+            table = TABLE_NAME;
+            prefixes = new ArrayList<>(saltBuckets + 1);
+            for (int salt = 0; salt < saltBuckets; salt++) prefixes.add(saltPrefix(salt));
+            prefixes.add("");
+        }
+        log.debug("Audit search on {} ({} sources, start={}, end={})",
+                table, prefixes.size(), query.startTime(), query.endTime());
+
+        FilterList filters = columnFilters(query);
+        int caching = Math.max(16, Math.min(500, maxResults / prefixes.size() + 1));
         List<AuditEvent> events = new ArrayList<>();
-        byte[] lastRow = null;
+        byte[] lastSuffix = null;
+
+        try (Table t = connection.getTable(TableName.valueOf(table))) {
+            List<MergedScanner.Source> sources = new ArrayList<>(prefixes.size());
+            try {
+                for (String prefix : prefixes) {
+                    Scan scan = rangeScan(prefix, query, pageToken);
+                    scan.setCaching(caching);
+                    if (!filters.getFilters().isEmpty()) scan.setFilter(filters);
+                    sources.add(new MergedScanner.Source(t.getScanner(scan), Bytes.toBytes(prefix).length));
+                }
+            } catch (IOException | RuntimeException e) {
+                sources.forEach(src -> src.scanner().close());
+                throw e;
+            }
+            try (MergedScanner merged = new MergedScanner(sources)) {
+                MergedScanner.Row row;
+                while (events.size() < maxResults && (row = merged.next()) != null) {
+                    events.add(mapResultToEvent(row.result()));
+                    lastSuffix = row.suffix();
+                }
+            }
+        }
+        String next = (events.size() == maxResults && lastSuffix != null) ? PageToken.of(lastSuffix).encode() : null;
+        return new Page<>(events, next);
+    }
 
+    /** Start/stop rows covering {@code [startTime, endTime]} under {@code prefix}, resumed after the token. */
+    private static Scan rangeScan(String prefix, AuditQuery query, PageToken pageToken) {
         Scan scan = new Scan();
-        scan.setCaching(Math.min(maxResults, 500));
+        byte[] startRow = Bytes.toBytes(prefix + (query.endTime() != null ? reversed(query.endTime()) : ""));
         if (pageToken != null) {
-            scan.withStartRow(pageToken.nextStartRow(), true);
+            byte[] resume = Bytes.add(Bytes.toBytes(prefix), pageToken.nextStartRow());
+            if (Bytes.compareTo(resume, startRow) > 0) startRow = resume;
+        }
+        scan.withStartRow(startRow, true);
+        byte[] stopRow;
+        if (query.startTime() != null && query.startTime() > 0) {
+            stopRow = Bytes.toBytes(prefix + reversed(query.startTime() - 1));
+        } else {
+            stopRow = prefix.isEmpty() ? LEGACY_STOP_ROW : prefixStopRow(prefix);
+        }
+        if (stopRow != null) scan.withStopRow(stopRow, false);
+        return scan;
+    }
+
+    /**
+     * The page token that resumes a search right after {@code event}. Used by callers that
+     * continue a listing in another tier (the HDFS archive) with the same cursor format.
+     */
+    public static PageToken tokenAfter(AuditEvent event) {
+        return PageToken.ofRow(suffix(event.getTimestamp(), event.getEventId()));
+    }
+
+    /** An audit row as stored, for maintenance jobs that move rows out of the table. */
+    public record StoredEvent(byte[] rowKey, AuditEvent event) {}
+
+    /**
+     * Returns up to {@code maxRows} events with a timestamp strictly before {@code cutoffMillis},
+     * across every salt and the legacy key range, in no particular order. Deleting the returned
+     * rows with {@link #deleteStored} and calling again walks the whole range without a cursor.
+     */
+    public List<StoredEvent> scanOlderThan(long cutoffMillis, int maxRows) throws IOException {
+        List<StoredEvent> rows = new ArrayList<>();
+        List<String> prefixes = new ArrayList<>(saltBuckets + 1);
+        for (int salt = 0; salt < saltBuckets; salt++) prefixes.add(saltPrefix(salt));
+        prefixes.add("");
+        try (Table table = connection.getTable(TableName.valueOf(TABLE_NAME))) {
+            for (String prefix : prefixes) {
+                if (rows.size() >= maxRows) break;
+                Scan scan = new Scan()
+                        .withStartRow(Bytes.toBytes(prefix + reversed(cutoffMillis - 1)), true)
+                        .withStopRow(prefix.isEmpty() ? LEGACY_STOP_ROW : prefixStopRow(prefix), false);
+                scan.setCaching(Math.max(16, Math.min(500, maxRows - rows.size())));
+                try (ResultScanner scanner = table.getScanner(scan)) {
+                    for (Result r : scanner) {
+                        rows.add(new StoredEvent(r.getRow(), mapResultToEvent(r)));
+                        if (rows.size() >= maxRows) break;
+                    }
+                }
+            }
         }
+        return rows;
+    }
+
+    /** Deletes the given rows from the audit table together with their index entries. */
+    public void deleteStored(List<StoredEvent> rows) throws IOException {
+        if (rows.isEmpty()) return;
+        List<Delete> events = new ArrayList<>(rows.size());
+        List<Delete> byUser = new ArrayList<>();
+        List<Delete> byResource = new ArrayList<>();
+        for (StoredEvent row : rows) {
+            AuditEvent event = row.event();
+            String suffix = suffix(event.getTimestamp(), event.getEventId());
+            events.add(new Delete(row.rowKey()));
+            if (event.getUser() != null) {
+                byUser.add(new Delete(Bytes.toBytes(event.getUser() + "_" + suffix)));
+            }
+            if (event.getResourceType() != null && event.getResourceId() != null) {
+                byResource.add(new Delete(Bytes.toBytes(
+                        resourcePrefix(event.getResourceType(), event.getResourceId()) + suffix)));
+            }
+        }
+        // Indexes first: an interruption leaves an event without index entries, never a dangling entry.
+        if (!byUser.isEmpty()) {
+            try (Table table = connection.getTable(TableName.valueOf(USER_INDEX_TABLE_NAME))) {
+                table.delete(byUser);
+            }
+        }
+        if (!byResource.isEmpty()) {
+            try (Table table = connection.getTable(TableName.valueOf(RESOURCE_INDEX_TABLE_NAME))) {
+                table.delete(byResource);
+            }
+        }
+        try (Table table = connection.getTable(TableName.valueOf(TABLE_NAME))) {
+            table.delete(events);
+        }
+    }
+
+    /** Progress of {@link #backfillIndexes}: rows read, and where the next batch starts ({@code null} at the end). */
+    public record IndexBackfill(int rows, PageToken next) {}
+
+    /**
+     * Writes the user and resource index rows of up to {@code batchSize} audit rows, in row-key
+     * order across the legacy range and every salt, starting after {@code after} ({@code null}
+     * for the first row). Index rows are derived from the primary row exactly as
+     * {@link #append} writes them, so rewriting one that already exists changes nothing.
+     */
+    public IndexBackfill backfillIndexes(PageToken after, int batchSize) throws IOException {
+        Scan scan = new Scan();
+        if (after != null) scan.withStartRow(after.nextStartRow(), true);
+        scan.setCaching(batchSize);
+        scan.setLimit(batchSize);
+        List<Put> byUser = new ArrayList<>();
+        List<Put> byResource = new ArrayList<>();
+        int read = 0;
+        byte[] lastRow = null;
         try (Table table = connection.getTable(TableName.valueOf(TABLE_NAME));
              ResultScanner scanner = table.getScanner(scan)) {
-            for (Result result : scanner) {
-                if (events.size() >= maxResults) break;
-                events.add(mapResultToEvent(result));
-                lastRow = result.getRow();
+            for (Result r : scanner) {
+                read++;
+                lastRow = r.getRow();
+                AuditEvent event = mapResultToEvent(r);
+                // Without both the suffix of the index key cannot be rebuilt.
+                if (event.getEventId() == null || event.getTimestamp() <= 0) continue;
+                Rows rows = toRows(event, saltBuckets);
+                if (rows.byUser() != null) byUser.add(rows.byUser());
+                if (rows.byResource() != null) byResource.add(rows.byResource());
             }
         }
-        String next = (events.size() == maxResults && lastRow != null) ? PageToken.of(lastRow).encode() : null;
-        return new Page<>(events, next);
+        if (!byUser.isEmpty()) {
+            try (Table table = connection.getTable(TableName.valueOf(USER_INDEX_TABLE_NAME))) {
+                table.put(byUser);
+            }
+        }
+        if (!byResource.isEmpty()) {
+            try (Table table = connection.getTable(TableName.valueOf(RESOURCE_INDEX_TABLE_NAME))) {
+                table.put(byResource);
+            }
+        }
+        return new IndexBackfill(read, read < batchSize ? null : PageToken.of(lastRow));
+    }
+
+    /** Region boundaries for a pre-split {@code mlflow_audit}: one region per salt, plus legacy rows. */
+    public byte[][] splitKeys() {
+        byte[][] keys = new byte[saltBuckets][];
+        for (int salt = 0; salt < saltBuckets; salt++) keys[salt] = Bytes.toBytes(saltPrefix(salt));
+        return keys;
+    }
+
+    /**
+     * Splits {@code mlflow_audit} on every {@link #splitKeys() salt boundary} that is not
+     * already a region start key. Splits run one at a time and wait for completion; returns
+     * the number of splits performed.
+     */
+    public int presplit(long timeoutMs) throws IOException {
+        TableName tableName = TableName.valueOf(TABLE_NAME);
+        int performed = 0;
+        try (Admin admin = connection.getAdmin()) {
+            for (byte[] key : splitKeys()) {
+                RegionInfo containing = null;
+                for (RegionInfo region : admin.getRegions(tableName)) {
+                    if (region.containsRow(key)) {
+                        containing = region;
+                        break;
+                    }
+                }
+                if (containing == null || Bytes.equals(containing.getStartKey(), key)) continue;
+                try {
+                    admin.splitRegionAsync(containing.getRegionName(), key)
+                            .get(timeoutMs, java.util.concurrent.TimeUnit.MILLISECONDS);
+                    performed++;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while splitting " + TABLE_NAME, e);
+                } catch (java.util.concurrent.ExecutionException | java.util.concurrent.TimeoutException e) {
+                    throw new IOException("Failed to split " + TABLE_NAME + " at " + Bytes.toString(key), e);
+                }
+            }
+        }
+        return performed;
+    }
+
+    /**
+     * Rewrites up to {@code maxRows} pre-salting rows under their salted key and deletes the
+     * originals. Each batch is written before it is deleted, so a failure in between leaves a
+     * duplicate (same event id) rather than a lost event. Returns the number of rows moved;
+     * {@code 0} means the legacy range is empty.
+     */
+    public int migrateLegacyRows(int batchSize, int maxRows) throws IOException {
+        int moved = 0;
+        Scan scan = new Scan().withStopRow(LEGACY_STOP_ROW, false);
+        scan.setCaching(batchSize);
+        try (Table table = connection.getTable(TableName.valueOf(TABLE_NAME));
+             ResultScanner scanner = table.getScanner(scan)) {
+            List<Put> puts = new ArrayList<>(batchSize);
+            List<Delete> deletes = new ArrayList<>(batchSize);
+            for (Result r : scanner) {
+                if (moved + puts.size() >= maxRows) break;
+                String legacyKey = Bytes.toString(r.getRow());
+                int sep = legacyKey.indexOf('_');
+                String eventId = sep >= 0 ? legacyKey.substring(sep + 1) : legacyKey;
+                Put put = new Put(Bytes.toBytes(saltPrefix(Math.floorMod(eventId.hashCode(), saltBuckets)) + legacyKey));
+                for (Cell cell : r.rawCells()) {
+                    put.addColumn(CellUtil.cloneFamily(cell), CellUtil.cloneQualifier(cell),
+                            cell.getTimestamp(), CellUtil.cloneValue(cell));
+                }
+                puts.add(put);
+                deletes.add(new Delete(r.getRow()));
+                if (puts.size() >= batchSize) {
+                    moved += flushMigration(table, puts, deletes);
+                }
+            }
+            moved += flushMigration(table, puts, deletes);
+        }
+        return moved;
+    }
+
+    private static int flushMigration(Table table, List<Put> puts, List<Delete> deletes) throws IOException {
+        if (puts.isEmpty()) return 0;
+        int n = puts.size();
+        table.put(puts);
+        table.delete(deletes);
+        puts.clear();
+        deletes.clear();
+        return n;
+    }
+
+    /**
+     * Exact-match filters for every criterion the query carries. Criteria already encoded in
+     * the index key are re-checked too: {@code _} may appear inside a user name or resource
+     * id, so a key prefix alone can over-match.
+     */
+    private static FilterList columnFilters(AuditQuery query) {
+        FilterList list = new FilterList(FilterList.Operator.MUST_PASS_ALL);
+        addEquals(list, COL_USER, query.user());
+        addEquals(list, COL_RESOURCE_TYPE, query.resourceType());
+        addEquals(list, COL_RESOURCE_ID, query.resourceId());
+        addEquals(list, COL_ACTION, query.action());
+        return list;
+    }
+
+    private static void addEquals(FilterList list, byte[] column, String value) {
+        if (value == null) return;
+        SingleColumnValueFilter filter = new SingleColumnValueFilter(
+                CF_INFO, column, CompareOperator.EQUAL, Bytes.toBytes(value));
+        filter.setFilterIfMissing(true);
+        list.addFilter(filter);
     }
 
     private AuditEvent mapResultToEvent(Result r) {
+        long count = HBaseResults.getLongOrDefault(r, CF_INFO, COL_COUNT, 0L);
+        long first = HBaseResults.getLongOrDefault(r, CF_INFO, COL_FIRST_TIMESTAMP, 0L);
+        long last = HBaseResults.getLongOrDefault(r, CF_INFO, COL_LAST_TIMESTAMP, 0L);
         return AuditEvent.builder()
                 .eventId(HBaseResults.getStringOrNull(r, CF_INFO, COL_EVENT_ID))
                 .timestamp(HBaseResults.getLongOrDefault(r, CF_INFO, COL_TIMESTAMP, 0L))
@@ -105,11 +528,44 @@ public class AuditRepository {
                 .outcome(HBaseResults.getStringOrNull(r, CF_INFO, COL_OUTCOME))
                 .reason(HBaseResults.getStringOrNull(r, CF_INFO, COL_REASON))
                 .requestId(HBaseResults.getStringOrNull(r, CF_INFO, COL_REQUEST_ID))
+                .count(count > 0 ? (int) count : null)
+                .firstTimestamp(first > 0 ? first : null)
+                .lastTimestamp(last > 0 ? last : null)
                 .build();
     }
 
-    private static byte[] buildRowKey(long timestampMillis, String eventId) {
-        String reversed = String.format("%019d", Long.MAX_VALUE - timestampMillis);
-        return Bytes.toBytes(reversed + "_" + eventId);
+    private static String reversed(long timestampMillis) {
+        return String.format("%019d", Long.MAX_VALUE - timestampMillis);
+    }
+
+    /** The {@code reversedTimestamp + "_" + eventId} part shared by every key of an event. */
+    static String suffix(long timestampMillis, String eventId) {
+        return reversed(timestampMillis) + "_" + eventId;
+    }
+
+    /** Inverse of {@link #suffix}'s timestamp part. */
+    static long suffixTimestamp(String suffix) {
+        return Long.MAX_VALUE - Long.parseLong(suffix.substring(0, 19));
+    }
+
+    private static String saltPrefix(int salt) {
+        return String.format("s%02d_", salt);
+    }
+
+    private static String resourcePrefix(String resourceType, String resourceId) {
+        return resourceType + "_" + resourceId + "_";
+    }
+
+    /** First row key that no longer starts with {@code prefix}, or {@code null} for an empty prefix. */
+    private static byte[] prefixStopRow(String prefix) {
+        if (prefix.isEmpty()) return null;
+        byte[] stop = Bytes.toBytes(prefix);
+        for (int i = stop.length - 1; i >= 0; i--) {
+            if (stop[i] != (byte) 0xFF) {
+                stop[i]++;
+                return Arrays.copyOf(stop, i + 1);
+            }
+        }
+        return null;
     }
 }
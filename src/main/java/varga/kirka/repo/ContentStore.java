@@ -0,0 +1,314 @@
+package varga.kirka.repo;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.LongConsumer;
+import java.util.regex.Pattern;
+
+/**
+ * Content-addressed artifact storage. With {@code kirka.artifacts.cas.enabled}, uploaded
+ * content is hashed (SHA-256) while it streams and kept once per scope, as a blob at
+ * {@code <root>/blobs/<scope>/<2 hex>/<2 hex>/<sha256>}; the artifact path itself only gets an
+ * empty reference file naming the blob in its {@code user.kirka.ref} extended attribute, so the
+ * store needs a file system with extended attributes, such as HDFS. {@link ArtifactRepository}
+ * resolves references wherever it reads, so callers see the blob's bytes and length under the
+ * artifact's path and time. Content below {@code min-bytes} is stored in place: a reference
+ * would save nothing.
+ *
+ * <p>The scope is the experiment the artifact belongs to. A hash is only proof of having the
+ * content, not of being allowed to see it: scoping keeps a caller who knows the hash of a file
+ * in another experiment from linking it into their own run, or from learning that it is stored
+ * at all. Identical files in different experiments are therefore stored once each. A
+ * reference is only followed from the directory of its own experiment below one of the
+ * {@code artifact-roots} ({@code <artifact root>/<experiment id>/<run id>/...}); elsewhere the
+ * file reads as the empty file it is. Only empty files are looked at, and file content is never
+ * taken for a reference, so nothing a user can upload or concatenate reaches a blob.
+ *
+ * <p>References are only interpreted while the store is enabled. Blobs are never removed on
+ * delete, since other artifacts of the scope may share them; {@link #collectGarbage} removes
+ * the ones no reference names any more. The root must be on the same file system as the
+ * artifacts, so that moving a staged upload into place is a rename.
+ */
+@Slf4j
+@Component
+public class ContentStore {
+
+    private static final String REF_XATTR = "user.kirka.ref";
+    private static final Pattern SHA256 = Pattern.compile("[0-9a-f]{64}");
+    private static final Pattern SCOPE = Pattern.compile("[0-9A-Za-z_-]{1,64}");
+
+    private final FileSystem fileSystem;
+    private final boolean enabled;
+    private final String root;
+    private final List<String> artifactRoots;
+    private final long minBytes;
+
+    /** A reference to the blob {@code sha256} of {@code scope}, of {@code length} bytes. */
+    public record Ref(String scope, String sha256, long length) {}
+
+    public ContentStore(FileSystem fileSystem,
+                        @Value("${kirka.artifacts.cas.enabled:false}") boolean enabled,
+                        @Value("${kirka.artifacts.cas.root:hdfs:///mlflow/cas}") String root,
+                        @Value("${kirka.artifacts.cas.artifact-roots:${kirka.artifacts.proxy.destination:hdfs:///mlflow/artifacts}}") String artifactRoots,
+                        @Value("${kirka.artifacts.cas.min-bytes:65536}") long minBytes) {
+        this.fileSystem = fileSystem;
+        this.enabled = enabled;
+        this.root = root.endsWith("/") ? root.substring(0, root.length() - 1) : root;
+        this.artifactRoots = Arrays.stream(artifactRoots.split(","))
+                .map(String::trim)
+                .filter(artifactRoot -> !artifactRoot.isEmpty())
+                .map(artifactRoot -> {
+                    String path = new Path(artifactRoot).toUri().getPath();
+                    return path.endsWith("/") ? path : path + "/";
+                })
+                .toList();
+        this.minBytes = Math.max(1L, minBytes);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public static boolean isSha256(String value) {
+        return value != null && SHA256.matcher(value).matches();
+    }
+
+    /** Whether {@code value} can name a scope: experiment ids are numbers or UUIDs. */
+    public static boolean isScope(String value) {
+        return value != null && SCOPE.matcher(value).matches();
+    }
+
+    Path blobPath(String scope, String sha256) {
+        return new Path(root + "/blobs/" + scope + "/" + sha256.substring(0, 2) + "/" + sha256.substring(2, 4) + "/" + sha256);
+    }
+
+    Path blobPath(Ref ref) {
+        return blobPath(ref.scope(), ref.sha256());
+    }
+
+    /**
+     * The experiment directory {@code path} is in, that is its first segment below an artifact
+     * root, or {@code null} outside of them.
+     */
+    String scopeOf(Path path) {
+        String file = path.toUri().getPath();
+        for (String artifactRoot : artifactRoots) {
+            if (!file.startsWith(artifactRoot)) continue;
+            int end = file.indexOf('/', artifactRoot.length());
+            return end > artifactRoot.length() ? file.substring(artifactRoot.length(), end) : null;
+        }
+        return null;
+    }
+
+    /**
+     * The reference held by the file of {@code status}, or {@code null} for an ordinary file:
+     * a non-empty one, one without the attribute, or one outside the experiment its reference
+     * names.
+     */
+    Ref readRef(FileStatus status) throws IOException {
+        if (!enabled || status.isDirectory() || status.getLen() != 0) return null;
+        byte[] value;
+        try {
+            Map<String, byte[]> attributes = fileSystem.getXAttrs(status.getPath());
+            value = attributes == null ? null : attributes.get(REF_XATTR);
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+        if (value == null) return null;
+        String[] fields = new String(value, StandardCharsets.US_ASCII).trim().split(" ");
+        if (fields.length != 3 || !isScope(fields[0]) || !isSha256(fields[1])) return null;
+        if (!fields[0].equals(scopeOf(status.getPath()))) {
+            log.warn("Ignoring the reference of {} to a blob of experiment {}", status.getPath(), fields[0]);
+            return null;
+        }
+        try {
+            return new Ref(fields[0], fields[1], Long.parseLong(fields[2]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * {@code status} as readers should see it: for a reference, the blob's length and layout
+     * under the reference's path and modification time.
+     */
+    FileStatus resolve(FileStatus status) throws IOException {
+        Ref ref = readRef(status);
+        if (ref == null) return status;
+        FileStatus blob = fileSystem.getFileStatus(blobPath(ref));
+        return new FileStatus(blob.getLen(), false, blob.getReplication(), blob.getBlockSize(),
+                status.getModificationTime(), status.getPath());
+    }
+
+    /** The file holding the bytes of {@code path}: its blob if it is a reference, else itself. */
+    Path dataPath(Path path) throws IOException {
+        if (!enabled) return path;
+        FileStatus status;
+        try {
+            status = fileSystem.getFileStatus(path);
+        } catch (FileNotFoundException e) {
+            return path;
+        }
+        Ref ref = readRef(status);
+        return ref == null ? path : blobPath(ref);
+    }
+
+    /** Status of the blob {@code sha256} of {@code scope}, or {@code null} if the store does not have it. */
+    FileStatus blobStatus(String scope, String sha256) throws IOException {
+        if (!enabled || !isScope(scope) || !isSha256(sha256)) return null;
+        try {
+            return fileSystem.getFileStatus(blobPath(scope, sha256));
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Streams {@code in} to {@code target}, hashing it on the way: through a staging file under
+     * the root, then either moved to {@code target} (small content, or a target outside the
+     * directory of {@code scope}, which could not follow a reference) or kept as a blob of
+     * {@code scope} that {@code target} references. A blob already present in the scope is
+     * reused and the copy dropped. When {@code expectedSha256} is given, content with another
+     * hash is rejected. Returns the number of bytes received.
+     */
+    long store(Path target, String scope, InputStream in, int bufferSize, LongConsumer progress,
+               String expectedSha256) throws IOException {
+        if (!isScope(scope)) throw new IllegalArgumentException("Invalid content store scope: " + scope);
+        Path staging = new Path(root + "/tmp/" + UUID.randomUUID());
+        MessageDigest sha256 = sha256();
+        byte[] buffer = new byte[bufferSize];
+        long written = 0;
+        try {
+            try (FSDataOutputStream out = fileSystem.create(staging, true, bufferSize)) {
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, n);
+                    sha256.update(buffer, 0, n);
+                    written += n;
+                    progress.accept(n);
+                }
+            }
+            String hex = HexFormat.of().formatHex(sha256.digest());
+            if (expectedSha256 != null && !expectedSha256.equalsIgnoreCase(hex)) {
+                throw new IllegalArgumentException("Content does not match its declared SHA-256 " + expectedSha256);
+            }
+            fileSystem.mkdirs(target.getParent());
+            if (written < minBytes || !scope.equals(scopeOf(target))) {
+                fileSystem.delete(target, false);
+                rename(staging, target);
+                return written;
+            }
+            Path blob = blobPath(scope, hex);
+            if (fileSystem.exists(blob)) {
+                touch(blob);
+            } else {
+                fileSystem.mkdirs(blob.getParent());
+                // Losing a race with an identical upload is fine: its blob is the same bytes.
+                if (!fileSystem.rename(staging, blob) && !fileSystem.exists(blob)) {
+                    throw new IOException("Could not move " + staging + " to " + blob);
+                }
+            }
+            writeRef(target, new Ref(scope, hex, written));
+            return written;
+        } finally {
+            try {
+                fileSystem.delete(staging, false);
+            } catch (IOException e) {
+                log.warn("Could not remove staged upload {}: {}", staging, e.toString());
+            }
+        }
+    }
+
+    /**
+     * Makes {@code target} reference the blob {@code sha256} of {@code scope}; false if the
+     * scope has no such blob, or {@code target} is not in its directory.
+     */
+    boolean link(Path target, String scope, String sha256) throws IOException {
+        FileStatus blob = blobStatus(scope, sha256);
+        if (blob == null || !scope.equals(scopeOf(target))) return false;
+        touch(blob.getPath());
+        fileSystem.mkdirs(target.getParent());
+        writeRef(target, new Ref(scope, sha256, blob.getLen()));
+        return true;
+    }
+
+    private void writeRef(Path target, Ref ref) throws IOException {
+        fileSystem.create(target, true).close();
+        fileSystem.setXAttr(target, REF_XATTR,
+                (ref.scope() + " " + ref.sha256() + " " + ref.length()).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /** Marks a blob as just used, so a collection running concurrently keeps it. */
+    private void touch(Path blob) throws IOException {
+        fileSystem.setTimes(blob, System.currentTimeMillis(), -1);
+    }
+
+    private void rename(Path from, Path to) throws IOException {
+        if (!fileSystem.rename(from, to)) {
+            throw new IOException("Could not move " + from + " to " + to);
+        }
+    }
+
+    /**
+     * Mark and sweep: collects the blobs named by references under {@code referenceRoots},
+     * then removes every other blob, and staged uploads, not modified for {@code graceMs}.
+     * Blobs written or reused while the scan runs are newer than that and survive it. Returns
+     * the number of files removed.
+     */
+    public int collectGarbage(List<String> referenceRoots, long graceMs) throws IOException {
+        if (!enabled) return 0;
+        long cutoff = System.currentTimeMillis() - graceMs;
+        Set<String> live = new HashSet<>();
+        for (String referenceRoot : referenceRoots) {
+            Path path = new Path(referenceRoot);
+            if (!fileSystem.exists(path)) continue;
+            RemoteIterator<LocatedFileStatus> files = fileSystem.listFiles(path, true);
+            while (files.hasNext()) {
+                Ref ref = readRef(files.next());
+                if (ref != null) live.add(blobPath(ref).toUri().getPath());
+            }
+        }
+        int removed = 0;
+        for (String area : List.of("blobs", "tmp")) {
+            Path path = new Path(root + "/" + area);
+            if (!fileSystem.exists(path)) continue;
+            RemoteIterator<LocatedFileStatus> files = fileSystem.listFiles(path, true);
+            while (files.hasNext()) {
+                LocatedFileStatus file = files.next();
+                if (file.getModificationTime() >= cutoff || live.contains(file.getPath().toUri().getPath())) continue;
+                if (fileSystem.delete(file.getPath(), false)) removed++;
+            }
+        }
+        log.info("Content store collection: {} live blobs, {} files removed", live.size(), removed);
+        return removed;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
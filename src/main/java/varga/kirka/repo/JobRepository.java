@@ -0,0 +1,289 @@
+package varga.kirka.repo;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hadoop.hbase.CompareOperator;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.SingleColumnValueFilter;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.springframework.stereotype.Repository;
+import varga.kirka.model.Job;
+import varga.kirka.model.JobStatus;
+import varga.kirka.util.HBaseResults;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HBase persistence for background {@link Job}s in {@code mlflow_jobs}, one row per job id.
+ *
+ * <p>A job is executed by whichever node holds its lease ({@code lease_owner} until
+ * {@code lease_expiry}). {@link #tryClaim} takes the lease with a compare-and-set on the
+ * expiry it observed, so two nodes picking up the same abandoned job cannot both win; every
+ * later write by the worker ({@link #checkpoint}, {@link #finish}, {@link #release}) is
+ * guarded on {@code lease_owner} and fails once another node has taken the job over.
+ *
+ * <p>Rows {@code lease:<name>} hold named leases ({@link #tryLease}) for work that is not a job
+ * but must only run on one node at a time, such as rewriting a run's artifact pack. They have
+ * no status, so the job scans skip them.
+ */
+@Slf4j
+@Repository
+@RequiredArgsConstructor
+public class JobRepository {
+
+    private static final String TABLE_NAME = "mlflow_jobs";
+    private static final String LEASE_ROW_PREFIX = "lease:";
+    private static final byte[] CF_INFO = Bytes.toBytes("info");
+
+    private static final byte[] COL_TYPE = Bytes.toBytes("type");
+    private static final byte[] COL_STATUS = Bytes.toBytes("status");
+    private static final byte[] COL_OWNER = Bytes.toBytes("owner");
+    private static final byte[] COL_PARAMS = Bytes.toBytes("params");
+    private static final byte[] COL_CHECKPOINT = Bytes.toBytes("checkpoint");
+    private static final byte[] COL_COMPLETED = Bytes.toBytes("completed");
+    private static final byte[] COL_TOTAL = Bytes.toBytes("total");
+    private static final byte[] COL_RESULT = Bytes.toBytes("result");
+    private static final byte[] COL_ERROR = Bytes.toBytes("error");
+    private static final byte[] COL_ATTEMPTS = Bytes.toBytes("attempts");
+    private static final byte[] COL_CREATION_TIMESTAMP = Bytes.toBytes("creation_timestamp");
+    private static final byte[] COL_LAST_UPDATED_TIMESTAMP = Bytes.toBytes("last_updated_timestamp");
+    private static final byte[] COL_LEASE_OWNER = Bytes.toBytes("lease_owner");
+    private static final byte[] COL_LEASE_EXPIRY = Bytes.toBytes("lease_expiry");
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final TypeReference<Map<String, String>> STRING_MAP = new TypeReference<>() {};
+
+    private final Connection connection;
+
+    /** Stores a new job; it is immediately claimable. */
+    public void create(Job job) throws IOException {
+        Put put = new Put(Bytes.toBytes(job.getJobId()))
+                .addColumn(CF_INFO, COL_TYPE, Bytes.toBytes(job.getType()))
+                .addColumn(CF_INFO, COL_STATUS, Bytes.toBytes(JobStatus.PENDING.name()))
+                .addColumn(CF_INFO, COL_PARAMS, json(job.getParams()))
+                .addColumn(CF_INFO, COL_COMPLETED, Bytes.toBytes(0L))
+                .addColumn(CF_INFO, COL_TOTAL, Bytes.toBytes(0L))
+                .addColumn(CF_INFO, COL_ATTEMPTS, Bytes.toBytes(0))
+                .addColumn(CF_INFO, COL_CREATION_TIMESTAMP, Bytes.toBytes(job.getCreationTimestamp()))
+                .addColumn(CF_INFO, COL_LAST_UPDATED_TIMESTAMP, Bytes.toBytes(job.getCreationTimestamp()))
+                .addColumn(CF_INFO, COL_LEASE_EXPIRY, Bytes.toBytes(0L));
+        if (job.getOwner() != null) put.addColumn(CF_INFO, COL_OWNER, Bytes.toBytes(job.getOwner()));
+        try (Table table = connection.getTable(TableName.valueOf(TABLE_NAME))) {
+            table.put(put);
+        }
+    }
+
+    public Job get(String jobId) throws IOException {
+        try (Table table = connection.getTable(TableName.valueOf(TABLE_NAME))) {
+            Result result = table.get(new Get(Bytes.toBytes(jobId)));
+            return result.isEmpty() || result.getValue(CF_INFO, COL_TYPE) == null ? null : map(result);
+        }
+    }
+
+    /**
+     * Takes the lease of {@code observed} for {@code node} until {@code leaseExpiry}, provided
+     * nobody claimed it since it was read, and marks it running. Returns the job as claimed, or
+     * {@code null} if another node won.
+     */
+    public Job tryClaim(Job observed, String node, long leaseExpiry) throws IOException {
+        byte[] row = Bytes.toBytes(observed.getJobId());
+        long now = System.currentTimeMillis();
+        int attempts = observed.getAttempts() + 1;
+        Put put = new Put(row)
+                .addColumn(CF_INFO, COL_STATUS, Bytes.toBytes(JobStatus.RUNNING.name()))
+                .addColumn(CF_INFO, COL_LEASE_OWNER, Bytes.toBytes(node))
+                .addColumn(CF_INFO, COL_LEASE_EXPIRY, Bytes.toBytes(leaseExpiry))
+                .addColumn(CF_INFO, COL_ATTEMPTS, Bytes.toBytes(attempts))
+                .addColumn(CF_INFO, COL_LAST_UPDATED_TIMESTAMP, Bytes.toBytes(now));
+        CheckAndMutate cas = CheckAndMutate.newBuilder(row)
+                .ifEquals(CF_INFO, COL_LEASE_EXPIRY, Bytes.toBytes(observed.getLeaseExpiry()))
+                .build(put);
+        try (Table table = connection.getTable(TableName.valueOf(TABLE_NAME))) {
+            if (!table.checkAndMutate(cas).isSuccess()) return null;
+        }
+        observed.setStatus(JobStatus.RUNNING);
+        observed.setLeaseOwner(node);
+        observed.setLeaseExpiry(leaseExpiry);
+        observed.setAttempts(attempts);
+        observed.setLastUpdatedTimestamp(now);
+        return observed;
+    }
+
+    /** Extends the lease held by {@code node}; {@code false} if it has been lost. */
+    public boolean renewLease(String jobId, String node, long leaseExpiry) throws IOException {
+        return mutateIfOwner(jobId, node, new Put(Bytes.toBytes(jobId))
+                .addColumn(CF_INFO, COL_LEASE_EXPIRY, Bytes.toBytes(leaseExpiry)));
+    }
+
+    /** Persists progress and resume state; {@code false} if {@code node} no longer holds the job. */
+    public boolean checkpoint(String jobId, String node, Map<String, String> checkpoint,
+                              long completed, long total, long leaseExpiry) throws IOException {
+        return mutateIfOwner(jobId, node, new Put(Bytes.toBytes(jobId))
+                .addColumn(CF_INFO, COL_CHECKPOINT, json(checkpoint))
+                .addColumn(CF_INFO, COL_COMPLETED, Bytes.toBytes(completed))
+                .addColumn(CF_INFO, COL_TOTAL, Bytes.toBytes(total))
+                .addColumn(CF_INFO, COL_LEASE_EXPIRY, Bytes.toBytes(leaseExpiry))
+                .addColumn(CF_INFO, COL_LAST_UPDATED_TIMESTAMP, Bytes.toBytes(System.currentTimeMillis())));
+    }
+
+    /** Records the final outcome of a job held by {@code node}. */
+    public boolean finish(String jobId, String node, JobStatus status,
+                          Map<String, String> result, String error) throws IOException {
+        Put put = new Put(Bytes.toBytes(jobId))
+                .addColumn(CF_INFO, COL_STATUS, Bytes.toBytes(status.name()))
+                .addColumn(CF_INFO, COL_LEASE_EXPIRY, Bytes.toBytes(Long.MAX_VALUE))
+                .addColumn(CF_INFO, COL_LAST_UPDATED_TIMESTAMP, Bytes.toBytes(System.currentTimeMillis()));
+        if (result != null) put.addColumn(CF_INFO, COL_RESULT, json(result));
+        if (error != null) put.addColumn(CF_INFO, COL_ERROR, Bytes.toBytes(error));
+        return mutateIfOwner(jobId, node, put);
+    }
+
+    /**
+     * Gives a job held by {@code node} back to the queue after a transient failure; it becomes
+     * claimable again at {@code retryAt}, resuming from its last checkpoint.
+     */
+    public boolean release(String jobId, String node, String error, long retryAt) throws IOException {
+        return mutateIfOwner(jobId, node, new Put(Bytes.toBytes(jobId))
+                .addColumn(CF_INFO, COL_STATUS, Bytes.toBytes(JobStatus.PENDING.name()))
+                .addColumn(CF_INFO, COL_ERROR, Bytes.toBytes(error))
+                .addColumn(CF_INFO, COL_LEASE_EXPIRY, Bytes.toBytes(retryAt))
+                .addColumn(CF_INFO, COL_LAST_UPDATED_TIMESTAMP, Bytes.toBytes(System.currentTimeMillis())));
+    }
+
+    /**
+     * Takes the named lease {@code name} for {@code node} until {@code leaseExpiry}, provided
+     * nobody holds it at {@code now}, with a compare-and-set on the expiry it observed. Returns
+     * whether {@code node} won it.
+     */
+    public boolean tryLease(String name, String node, long now, long leaseExpiry) throws IOException {
+        byte[] row = Bytes.toBytes(LEASE_ROW_PREFIX + name);
+        Put put = new Put(row)
+                .addColumn(CF_INFO, COL_LEASE_OWNER, Bytes.toBytes(node))
+                .addColumn(CF_INFO, COL_LEASE_EXPIRY, Bytes.toBytes(leaseExpiry));
+        try (Table table = connection.getTable(TableName.valueOf(TABLE_NAME))) {
+            byte[] expiry = table.get(new Get(row).addColumn(CF_INFO, COL_LEASE_EXPIRY)).getValue(CF_INFO, COL_LEASE_EXPIRY);
+            CheckAndMutate.Builder cas = CheckAndMutate.newBuilder(row);
+            if (expiry == null) {
+                cas.ifNotExists(CF_INFO, COL_LEASE_EXPIRY);
+            } else if (Bytes.toLong(expiry) > now) {
+                return false;
+            } else {
+                cas.ifEquals(CF_INFO, COL_LEASE_EXPIRY, expiry);
+            }
+            return table.checkAndMutate(cas.build(put)).isSuccess();
+        }
+    }
+
+    /** Extends the named lease held by {@code node}; {@code false} if it has been lost. */
+    public boolean extendLease(String name, String node, long leaseExpiry) throws IOException {
+        return mutateIfOwner(LEASE_ROW_PREFIX + name, node, new Put(Bytes.toBytes(LEASE_ROW_PREFIX + name))
+                .addColumn(CF_INFO, COL_LEASE_EXPIRY, Bytes.toBytes(leaseExpiry)));
+    }
+
+    /** Gives up the named lease, if {@code node} still holds it. */
+    public void releaseLease(String name, String node) throws IOException {
+        byte[] row = Bytes.toBytes(LEASE_ROW_PREFIX + name);
+        CheckAndMutate cas = CheckAndMutate.newBuilder(row)
+                .ifEquals(CF_INFO, COL_LEASE_OWNER, Bytes.toBytes(node))
+                .build(new Delete(row));
+        try (Table table = connection.getTable(TableName.valueOf(TABLE_NAME))) {
+            table.checkAndMutate(cas);
+        }
+    }
+
+    private boolean mutateIfOwner(String jobId, String node, Put put) throws IOException {
+        CheckAndMutate cas = CheckAndMutate.newBuilder(Bytes.toBytes(jobId))
+                .ifEquals(CF_INFO, COL_LEASE_OWNER, Bytes.toBytes(node))
+                .build(put);
+        try (Table table = connection.getTable(TableName.valueOf(TABLE_NAME))) {
+            return table.checkAndMutate(cas).isSuccess();
+        }
+    }
+
+    /**
+     * Unfinished jobs whose lease has expired at {@code now}: never started, released for a
+     * retry, or abandoned by a node that stopped renewing.
+     */
+    public List<Job> findClaimable(long now, int limit) throws IOException {
+        List<Job> jobs = new ArrayList<>();
+        Scan scan = new Scan().setFilter(statusIn(JobStatus.PENDING, JobStatus.RUNNING)).setCaching(100);
+        try (Table table = connection.getTable(TableName.valueOf(TABLE_NAME));
+             ResultScanner scanner = table.getScanner(scan)) {
+            for (Result result : scanner) {
+                if (jobs.size() >= limit) break;
+                Job job = map(result);
+                if (job.getLeaseExpiry() <= now) jobs.add(job);
+            }
+        }
+        return jobs;
+    }
+
+    /** Deletes finished jobs last updated before {@code cutoff}; returns how many were removed. */
+    public int deleteFinishedBefore(long cutoff) throws IOException {
+        List<Delete> deletes = new ArrayList<>();
+        Scan scan = new Scan()
+                .addColumn(CF_INFO, COL_STATUS)
+                .addColumn(CF_INFO, COL_LAST_UPDATED_TIMESTAMP)
+                .setFilter(statusIn(JobStatus.SUCCEEDED, JobStatus.FAILED))
+                .setCaching(500);
+        try (Table table = connection.getTable(TableName.valueOf(TABLE_NAME))) {
+            try (ResultScanner scanner = table.getScanner(scan)) {
+                for (Result result : scanner) {
+                    if (HBaseResults.getLongOrDefault(result, CF_INFO, COL_LAST_UPDATED_TIMESTAMP, 0L) < cutoff) {
+                        deletes.add(new Delete(result.getRow()));
+                    }
+                }
+            }
+            if (!deletes.isEmpty()) table.delete(deletes);
+        }
+        return deletes.size();
+    }
+
+    private static FilterList statusIn(JobStatus... statuses) {
+        FilterList anyOf = new FilterList(FilterList.Operator.MUST_PASS_ONE);
+        for (JobStatus status : statuses) {
+            SingleColumnValueFilter f = new SingleColumnValueFilter(CF_INFO, COL_STATUS,
+                    CompareOperator.EQUAL, Bytes.toBytes(status.name()));
+            f.setFilterIfMissing(true);
+            anyOf.addFilter(f);
+        }
+        return anyOf;
+    }
+
+    private static Job map(Result result) throws IOException {
+        String status = HBaseResults.getStringOrNull(result, CF_INFO, COL_STATUS);
+        byte[] attempts = result.getValue(CF_INFO, COL_ATTEMPTS);
+        return Job.builder()
+                .jobId(Bytes.toString(result.getRow()))
+                .type(HBaseResults.getStringOrNull(result, CF_INFO, COL_TYPE))
+                .status(status != null ? JobStatus.valueOf(status) : JobStatus.PENDING)
+                .owner(HBaseResults.getStringOrNull(result, CF_INFO, COL_OWNER))
+                .params(stringMap(result.getValue(CF_INFO, COL_PARAMS)))
+                .checkpoint(stringMap(result.getValue(CF_INFO, COL_CHECKPOINT)))
+                .completed(HBaseResults.getLongOrDefault(result, CF_INFO, COL_COMPLETED, 0L))
+                .total(HBaseResults.getLongOrDefault(result, CF_INFO, COL_TOTAL, 0L))
+                .result(result.getValue(CF_INFO, COL_RESULT) != null ? stringMap(result.getValue(CF_INFO, COL_RESULT)) : null)
+                .error(HBaseResults.getStringOrNull(result, CF_INFO, COL_ERROR))
+                .attempts(attempts != null ? Bytes.toInt(attempts) : 0)
+                .creationTimestamp(HBaseResults.getLongOrDefault(result, CF_INFO, COL_CREATION_TIMESTAMP, 0L))
+                .lastUpdatedTimestamp(HBaseResults.getLongOrDefault(result, CF_INFO, COL_LAST_UPDATED_TIMESTAMP, 0L))
+                .leaseOwner(HBaseResults.getStringOrNull(result, CF_INFO, COL_LEASE_OWNER))
+                .leaseExpiry(HBaseResults.getLongOrDefault(result, CF_INFO, COL_LEASE_EXPIRY, 0L))
+                .build();
+    }
+
+    private static Map<String, String> stringMap(byte[] value) throws IOException {
+        return value != null ? objectMapper.readValue(value, STRING_MAP) : Map.of();
+    }
+
+    private static byte[] json(Map<String, String> value) throws IOException {
+        return objectMapper.writeValueAsBytes(value != null ? value : Map.of());
+    }
+}
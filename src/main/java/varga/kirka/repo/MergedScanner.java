@@ -0,0 +1,71 @@
+package varga.kirka.repo;
+
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * K-way merge over several scanners of the same table whose row keys share a layout of
+ * {@code prefix + suffix}. Each source scanner is already ordered by row key, hence by suffix
+ * within its prefix; the merge returns rows ordered by suffix across all sources, which is how
+ * salted tables rebuild a global ordering without a sort step.
+ *
+ * <p>Only one row per source is held in memory at a time, on top of the client-side scanner
+ * caching. Closing the merged scanner closes every source.
+ */
+final class MergedScanner implements Closeable {
+
+    /** A scanner plus the length of the key prefix to ignore when ordering its rows. */
+    record Source(ResultScanner scanner, int prefixLength) {}
+
+    /** A merged row and the key suffix it was ordered by. */
+    record Row(Result result, byte[] suffix) {}
+
+    private record Head(Row row, int source) {}
+
+    private final List<Source> sources;
+    private final PriorityQueue<Head> heads;
+
+    MergedScanner(List<Source> sources) throws IOException {
+        this.sources = sources;
+        this.heads = new PriorityQueue<>(Math.max(1, sources.size()),
+                (a, b) -> Bytes.compareTo(a.row().suffix(), b.row().suffix()));
+        try {
+            for (int i = 0; i < sources.size(); i++) {
+                advance(i);
+            }
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /** Returns the next row in suffix order, or {@code null} once every source is exhausted. */
+    Row next() throws IOException {
+        Head head = heads.poll();
+        if (head == null) return null;
+        advance(head.source());
+        return head.row();
+    }
+
+    private void advance(int i) throws IOException {
+        Source source = sources.get(i);
+        Result r = source.scanner().next();
+        if (r == null) return;
+        byte[] row = r.getRow();
+        heads.add(new Head(new Row(r, Arrays.copyOfRange(row, source.prefixLength(), row.length)), i));
+    }
+
+    @Override
+    public void close() {
+        for (Source s : sources) {
+            s.scanner().close();
+        }
+    }
+}
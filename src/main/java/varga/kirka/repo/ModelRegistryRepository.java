@@ -1,18 +1,77 @@
 package varga.kirka.repo;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import varga.kirka.model.*;
+import varga.kirka.search.NameKeyPlan;
 import varga.kirka.util.HBaseResults;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.CompareOperator;
 import org.apache.hadoop.hbase.TableName;
 import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.filter.BinaryComparator;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.MultiRowRangeFilter;
+import org.apache.hadoop.hbase.filter.SingleColumnValueFilter;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.springframework.stereotype.Repository;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
+/**
+ * HBase persistence for registered models ({@code mlflow_registered_models}, one row per model
+ * name) and their versions ({@code mlflow_model_versions}, row key {@code name + "_" + version}).
+ *
+ * <p>The latest version of each stage is denormalized into the {@code latest} column family of
+ * the model row — qualifier = stage, value = JSON snapshot of the version — so that
+ * {@link #getRegisteredModel} and {@link #listRegisteredModelsPaged} are single-row reads
+ * instead of a prefix scan over every version of every model. The family is written by
+ * {@link #createModelVersion}, rewritten by {@link #transitionModelVersionStage} from the
+ * state it just wrote, and recomputed by {@link #refreshLatestVersions} whenever a deletion or
+ * an update may have changed it. Both rewrites are compare-and-set against the family as read
+ * before the versions it is computed from, so a version created or moved meanwhile is never
+ * overwritten by an older snapshot. Model rows written before
+ * the family existed carry no {@code info:latest_indexed} marker; they fall back to the
+ * version scan until {@link varga.kirka.repair.ModelLatestVersionsRebuilder} backfills them,
+ * and the same job repairs any drift left by a partial failure between the two tables.
+ *
+ * <p>Version numbers are allocated by {@link #allocateModelVersion} from an atomic counter
+ * cell of the model row and inserted with {@link #createModelVersionIfAbsent}, so concurrent
+ * creations of versions of the same model never share a number.
+ *
+ * <p>Searches push filters on {@code name} down to row ranges (see {@link NameKeyPlan}):
+ * exact names and literal LIKE prefixes map directly onto both tables' row keys. ILIKE goes
+ * through {@code mlflow_registered_models_ci_index}, keyed by {@code lower(name) + "\0" + name}.
+ * Its entry is written before the model row and removed after it, so it may briefly point at
+ * a missing model but never misses an existing one; ILIKE pushdown is only used once
+ * {@link varga.kirka.repair.ModelNameIndexReconciler} has backfilled the index.
+ *
+ * <p>Searches in name order walk the tables' own row keys from the page cursor and stop once
+ * the page is full. Timestamp and version number orders go through
+ * {@code mlflow_registry_order_index}, keyed by a kind prefix and the {@link RegistryOrder}
+ * sort key: every write of a sort value puts the entry for the new value before the row, and
+ * readers skip entries whose row no longer has that sort key, so the index may hold stale
+ * entries but never misses a row. It is only used once
+ * {@link varga.kirka.repair.RegistryOrderIndexReconciler} has backfilled it, and that job
+ * removes the stale entries.
+ */
 @Slf4j
 @Repository
 @RequiredArgsConstructor
@@ -20,12 +79,16 @@ public class ModelRegistryRepository {
 
     private static final String MODELS_TABLE = "mlflow_registered_models";
     private static final String VERSIONS_TABLE = "mlflow_model_versions";
+    private static final String NAME_INDEX_TABLE = "mlflow_registered_models_ci_index";
+    private static final String ORDER_INDEX_TABLE = "mlflow_registry_order_index";
 
     private static final byte[] CF_INFO = Bytes.toBytes("info");
     private static final byte[] CF_ALIASES = Bytes.toBytes("aliases");
+    private static final byte[] CF_LATEST = Bytes.toBytes("latest");
 
     private static final byte[] COL_NAME = Bytes.toBytes("name");
     private static final byte[] COL_VERSION = Bytes.toBytes("version");
+    private static final byte[] COL_ROW = Bytes.toBytes("row");
     private static final byte[] COL_CREATION_TIMESTAMP = Bytes.toBytes("creation_timestamp");
     private static final byte[] COL_LAST_UPDATED_TIMESTAMP = Bytes.toBytes("last_updated_timestamp");
     private static final byte[] COL_DESCRIPTION = Bytes.toBytes("description");
@@ -34,16 +97,51 @@ public class ModelRegistryRepository {
     private static final byte[] COL_SOURCE = Bytes.toBytes("source");
     private static final byte[] COL_RUN_ID = Bytes.toBytes("run_id");
     private static final byte[] COL_STATUS = Bytes.toBytes("status");
+    /** Present on model rows whose {@code latest} family is maintained. */
+    private static final byte[] COL_LATEST_INDEXED = Bytes.toBytes("latest_indexed");
+    /** Counter cell of the model row holding the last allocated version number. */
+    private static final byte[] COL_VERSION_SEQ = Bytes.toBytes("version_seq");
+
+    private static final int MAX_LATEST_CAS_ATTEMPTS = 10;
+    private static final int MAX_TRANSITION_ATTEMPTS = 5;
+    private static final int RENAME_BATCH_SIZE = 500;
+
+    /** Written once every model row is known to have a case-folded index entry. */
+    private static final byte[] NAME_INDEX_COMPLETE_ROW = Bytes.toBytes("\u0000complete");
+    private static final byte[] ORDER_INDEX_COMPLETE_ROW = NAME_INDEX_COMPLETE_ROW;
+    /** Order index kinds: models by update time, versions by update time, versions by number. */
+    private static final String MODELS_BY_UPDATE = "mu\u0000";
+    private static final String VERSIONS_BY_UPDATE = "vu\u0000";
+    private static final String VERSIONS_BY_NUMBER = "vn\u0000";
+    private static final RegistryOrder BY_UPDATE = new RegistryOrder(RegistryOrder.Field.LAST_UPDATED_TIMESTAMP, false);
+    private static final RegistryOrder BY_NUMBER = new RegistryOrder(RegistryOrder.Field.VERSION_NUMBER, false);
+    /** ILIKE prefixes matching more names than this fall back to a full scan. */
+    private static final int MAX_ILIKE_PUSHDOWN_NAMES = 1000;
+    /** Index entries younger than this are never treated as orphans: their model row may be in flight. */
+    private static final long NAME_INDEX_ORPHAN_GRACE_MS = 10 * 60 * 1000L;
+
+    private static final String DEFAULT_STAGE = "None";
+    private static final String ARCHIVED_STAGE = "Archived";
+
+    private static final ObjectMapper objectMapper = new ObjectMapper()
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL);
 
     private final Connection connection;
 
+    private volatile boolean nameIndexComplete;
+    private volatile boolean orderIndexComplete;
+
     public void createRegisteredModel(String name) throws IOException {
         log.info("HBase: creating registered model {}", name);
+        putNameIndexEntry(name);
+        long now = System.currentTimeMillis();
+        putOrderIndexEntries(List.of(modelOrderEntry(name, now)));
         try (Table table = connection.getTable(TableName.valueOf(MODELS_TABLE))) {
             Put put = new Put(Bytes.toBytes(name));
             put.addColumn(CF_INFO, Bytes.toBytes("name"), Bytes.toBytes(name));
-            put.addColumn(CF_INFO, Bytes.toBytes("creation_timestamp"), Bytes.toBytes(System.currentTimeMillis()));
-            put.addColumn(CF_INFO, Bytes.toBytes("last_updated_timestamp"), Bytes.toBytes(System.currentTimeMillis()));
+            put.addColumn(CF_INFO, Bytes.toBytes("creation_timestamp"), Bytes.toBytes(now));
+            put.addColumn(CF_INFO, Bytes.toBytes("last_updated_timestamp"), Bytes.toBytes(now));
+            put.addColumn(CF_INFO, COL_LATEST_INDEXED, Bytes.toBytes(true));
             table.put(put);
         }
     }
@@ -57,6 +155,33 @@ public class ModelRegistryRepository {
         }
     }
 
+    /**
+     * Loads the parents of many model versions in one multi-get, keyed by name. Only the
+     * columns that authorization reads ({@code name}, {@code user_id}) are fetched, so unlike
+     * {@link #getRegisteredModel} no latest versions, aliases or description are decoded and
+     * legacy rows never trigger a version scan. Names without a model row are absent from the
+     * result.
+     */
+    public Map<String, RegisteredModel> getRegisteredModelsForAuthorization(Collection<String> names) throws IOException {
+        Map<String, RegisteredModel> models = new HashMap<>();
+        if (names.isEmpty()) return models;
+        List<Get> gets = new ArrayList<>(names.size());
+        for (String name : names) {
+            gets.add(new Get(Bytes.toBytes(name)).addColumn(CF_INFO, COL_NAME).addColumn(CF_INFO, COL_USER_ID));
+        }
+        try (Table table = connection.getTable(TableName.valueOf(MODELS_TABLE))) {
+            for (Result result : table.get(gets)) {
+                if (result.isEmpty()) continue;
+                String name = Bytes.toString(result.getRow());
+                models.put(name, RegisteredModel.builder()
+                        .name(HBaseResults.getStringOrDefault(result, CF_INFO, COL_NAME, name))
+                        .userId(HBaseResults.getStringOrNull(result, CF_INFO, COL_USER_ID))
+                        .build());
+            }
+        }
+        return models;
+    }
+
     private RegisteredModel mapResultToRegisteredModel(Result result, String fallbackName) throws IOException {
         String name = HBaseResults.getStringOrDefault(result, CF_INFO, COL_NAME, fallbackName);
         return RegisteredModel.builder()
@@ -65,7 +190,7 @@ public class ModelRegistryRepository {
                 .lastUpdatedTimestamp(HBaseResults.getLongOrDefault(result, CF_INFO, COL_LAST_UPDATED_TIMESTAMP, 0L))
                 .description(HBaseResults.getStringOrNull(result, CF_INFO, COL_DESCRIPTION))
                 .userId(HBaseResults.getStringOrNull(result, CF_INFO, COL_USER_ID))
-                .latestVersions(getLatestVersions(name))
+                .latestVersions(latestVersions(result, name))
                 .aliases(extractAliases(result))
                 .build();
     }
@@ -84,42 +209,314 @@ public class ModelRegistryRepository {
     }
 
     public void createModelVersion(ModelVersion version) throws IOException {
+        putOrderIndexEntries(versionOrderEntries(version));
         try (Table table = connection.getTable(TableName.valueOf(VERSIONS_TABLE))) {
-            // Row key: name + version
-            byte[] rowKey = Bytes.toBytes(version.getName() + "_" + version.getVersion());
-            Put put = new Put(rowKey);
-            put.addColumn(CF_INFO, Bytes.toBytes("name"), Bytes.toBytes(version.getName()));
-            put.addColumn(CF_INFO, Bytes.toBytes("version"), Bytes.toBytes(version.getVersion()));
-            put.addColumn(CF_INFO, Bytes.toBytes("creation_timestamp"), Bytes.toBytes(version.getCreationTimestamp()));
-            put.addColumn(CF_INFO, Bytes.toBytes("current_stage"), Bytes.toBytes(version.getCurrentStage()));
-            put.addColumn(CF_INFO, Bytes.toBytes("source"), Bytes.toBytes(version.getSource()));
-            put.addColumn(CF_INFO, Bytes.toBytes("run_id"), Bytes.toBytes(version.getRunId()));
-            put.addColumn(CF_INFO, Bytes.toBytes("status"), Bytes.toBytes("READY"));
-            table.put(put);
+            table.put(versionPut(version));
         }
-        
-        // Update last_updated_timestamp of registered model
+        touchModelForNewVersion(version);
+    }
+
+    /**
+     * Inserts the version row only if no version with the same number exists yet, then
+     * updates the model row as {@link #createModelVersion} does. Returns {@code false},
+     * writing nothing, if the number is already taken.
+     */
+    public boolean createModelVersionIfAbsent(ModelVersion version) throws IOException {
+        putOrderIndexEntries(versionOrderEntries(version));
+        try (Table table = connection.getTable(TableName.valueOf(VERSIONS_TABLE))) {
+            Put put = versionPut(version);
+            boolean created = table.checkAndMutate(CheckAndMutate.newBuilder(put.getRow())
+                    .ifNotExists(CF_INFO, COL_VERSION)
+                    .build(put)).isSuccess();
+            if (!created) return false;
+        }
+        touchModelForNewVersion(version);
+        return true;
+    }
+
+    /**
+     * Atomically reserves the next version number of {@code name} from the
+     * {@code info:version_seq} counter of its model row. The counter of a model created before
+     * it existed is first seeded with the highest stored version; concurrent seeders compute
+     * the same value and only the first write lands. Numbers are never handed out twice, even
+     * after the versions holding them are deleted.
+     *
+     * <p>Both writes are conditional on the model row still holding its name, so a model deleted
+     * meanwhile is not brought back as a row holding only the counter. Returns {@code null} when
+     * the model does not exist.
+     */
+    public String allocateModelVersion(String name) throws IOException {
+        byte[] row = Bytes.toBytes(name);
         try (Table table = connection.getTable(TableName.valueOf(MODELS_TABLE))) {
-            Put put = new Put(Bytes.toBytes(version.getName()));
-            put.addColumn(CF_INFO, Bytes.toBytes("last_updated_timestamp"), Bytes.toBytes(System.currentTimeMillis()));
-            table.put(put);
+            if (!table.exists(new Get(row).addColumn(CF_INFO, COL_VERSION_SEQ))) {
+                long highest = scanVersions(name).stream()
+                        .mapToLong(ModelRegistryRepository::versionNumber)
+                        .max()
+                        .orElse(0L);
+                // Present counter values are never LESS than the empty value, so the filter only
+                // passes a row without one.
+                SingleColumnValueFilter noCounter = new SingleColumnValueFilter(
+                        CF_INFO, COL_VERSION_SEQ, CompareOperator.LESS, new byte[0]);
+                SingleColumnValueFilter named = new SingleColumnValueFilter(CF_INFO, COL_NAME, CompareOperator.EQUAL, row);
+                named.setFilterIfMissing(true);
+                table.checkAndMutate(CheckAndMutate.newBuilder(row)
+                        .ifMatches(new FilterList(FilterList.Operator.MUST_PASS_ALL, named, noCounter))
+                        .build(new Put(row).addColumn(CF_INFO, COL_VERSION_SEQ, Bytes.toBytes(Math.max(0L, highest)))));
+            }
+            CheckAndMutateResult result = table.checkAndMutate(CheckAndMutate.newBuilder(row)
+                    .ifEquals(CF_INFO, COL_NAME, row)
+                    .build(new Increment(row).addColumn(CF_INFO, COL_VERSION_SEQ, 1L)));
+            if (!result.isSuccess()) return null;
+            return String.valueOf(Bytes.toLong(result.getResult().getValue(CF_INFO, COL_VERSION_SEQ)));
+        }
+    }
+
+    private static Put versionPut(ModelVersion version) {
+        // Row key: name + version
+        byte[] rowKey = Bytes.toBytes(version.getName() + "_" + version.getVersion());
+        Put put = new Put(rowKey);
+        put.addColumn(CF_INFO, Bytes.toBytes("name"), Bytes.toBytes(version.getName()));
+        put.addColumn(CF_INFO, Bytes.toBytes("version"), Bytes.toBytes(version.getVersion()));
+        put.addColumn(CF_INFO, Bytes.toBytes("creation_timestamp"), Bytes.toBytes(version.getCreationTimestamp()));
+        put.addColumn(CF_INFO, Bytes.toBytes("current_stage"), Bytes.toBytes(version.getCurrentStage()));
+        put.addColumn(CF_INFO, Bytes.toBytes("source"), Bytes.toBytes(version.getSource()));
+        put.addColumn(CF_INFO, Bytes.toBytes("run_id"), Bytes.toBytes(version.getRunId()));
+        put.addColumn(CF_INFO, Bytes.toBytes("status"), Bytes.toBytes("READY"));
+        return put;
+    }
+
+    /** Bumps {@code last_updated_timestamp} and records a new version as the latest of its stage. */
+    private void touchModelForNewVersion(ModelVersion version) throws IOException {
+        byte[] row = Bytes.toBytes(version.getName());
+        long now = System.currentTimeMillis();
+        putOrderIndexEntries(List.of(modelOrderEntry(version.getName(), now)));
+        try (Table table = connection.getTable(TableName.valueOf(MODELS_TABLE))) {
+            table.put(new Put(row).addColumn(CF_INFO, Bytes.toBytes("last_updated_timestamp"),
+                    Bytes.toBytes(now)));
+            // Same fields as the version row just written, so the snapshot equals what a rebuild would produce.
+            ModelVersion stored = ModelVersion.builder()
+                    .name(version.getName())
+                    .version(version.getVersion())
+                    .creationTimestamp(version.getCreationTimestamp())
+                    .currentStage(version.getCurrentStage())
+                    .source(version.getSource())
+                    .runId(version.getRunId())
+                    .status(ModelVersionStatus.READY)
+                    .build();
+            raiseLatestVersion(table, row, stored);
         }
     }
 
-    private List<ModelVersion> getLatestVersions(String name) throws IOException {
+    /**
+     * Stores {@code candidate} as the latest version of its stage unless a higher version is
+     * already there. Versions created concurrently reach this point in any order, so the slot
+     * is compare-and-set against the value read rather than blindly overwritten.
+     */
+    private void raiseLatestVersion(Table table, byte[] row, ModelVersion candidate) throws IOException {
+        byte[] stage = Bytes.toBytes(stageOf(candidate));
+        byte[] value = objectMapper.writeValueAsBytes(candidate);
+        for (int attempt = 0; attempt < MAX_LATEST_CAS_ATTEMPTS; attempt++) {
+            byte[] current = table.get(new Get(row).addColumn(CF_LATEST, stage)).getValue(CF_LATEST, stage);
+            if (current != null
+                    && versionNumber(objectMapper.readValue(current, ModelVersion.class)) >= versionNumber(candidate)) {
+                return;
+            }
+            CheckAndMutate.Builder check = CheckAndMutate.newBuilder(row);
+            CheckAndMutate cas = (current == null
+                    ? check.ifNotExists(CF_LATEST, stage)
+                    : check.ifEquals(CF_LATEST, stage, current))
+                    .build(new Put(row).addColumn(CF_LATEST, stage, value));
+            if (table.checkAndMutate(cas).isSuccess()) return;
+        }
+        // Sustained contention on one stage slot: let the next refresh or the rebuilder settle it.
+        log.warn("Could not record version {} as latest of {}/{}; leaving it to the next refresh",
+                candidate.getVersion(), candidate.getName(), Bytes.toString(stage));
+    }
+
+    /** Every version of {@code name}, in row-key order. */
+    private List<ModelVersion> scanVersions(String name) throws IOException {
         List<ModelVersion> versions = new ArrayList<>();
         try (Table table = connection.getTable(TableName.valueOf(VERSIONS_TABLE))) {
             Scan scan = new Scan();
             scan.setRowPrefixFilter(Bytes.toBytes(name + "_"));
+            scan.setCaching(100);
             try (ResultScanner scanner = table.getScanner(scan)) {
                 for (Result result : scanner) {
-                    versions.add(mapResultToModelVersion(result));
+                    ModelVersion mv = mapResultToModelVersion(result);
+                    // The prefix also matches models whose name extends this one past an underscore.
+                    if (name.equals(mv.getName())) versions.add(mv);
                 }
             }
         }
         return versions;
     }
 
+    private List<ModelVersion> latestVersions(Result result, String name) throws IOException {
+        if (result.getValue(CF_INFO, COL_LATEST_INDEXED) == null) {
+            return new ArrayList<>(latestByStage(scanVersions(name)).values());
+        }
+        List<ModelVersion> latest = new ArrayList<>();
+        NavigableMap<byte[], byte[]> family = result.getFamilyMap(CF_LATEST);
+        if (family == null) return latest;
+        for (byte[] value : family.values()) {
+            latest.add(objectMapper.readValue(value, ModelVersion.class));
+        }
+        return latest;
+    }
+
+    /** Highest-numbered version per stage, keyed by stage. */
+    private static Map<String, ModelVersion> latestByStage(List<ModelVersion> versions) {
+        Map<String, ModelVersion> latest = new TreeMap<>();
+        for (ModelVersion mv : versions) {
+            latest.merge(stageOf(mv), mv, (a, b) -> versionNumber(b) > versionNumber(a) ? b : a);
+        }
+        return latest;
+    }
+
+    private static String stageOf(ModelVersion mv) {
+        return mv.getCurrentStage() != null ? mv.getCurrentStage() : DEFAULT_STAGE;
+    }
+
+    private static long versionNumber(ModelVersion mv) {
+        try {
+            return Long.parseLong(mv.getVersion());
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+
+    /**
+     * Recomputes the {@code latest} family of a model row from its versions and marks the row
+     * as maintained. Only differing cells are written; returns {@code true} if anything
+     * changed. A model row that no longer exists is left alone rather than resurrected.
+     */
+    public boolean refreshLatestVersions(String name) throws IOException {
+        return refreshLatestVersions(name, null);
+    }
+
+    private boolean refreshLatestVersions(String name, Long touchedAt) throws IOException {
+        for (int attempt = 0; attempt < MAX_LATEST_CAS_ATTEMPTS; attempt++) {
+            // Read before the scan: a slot changed after this read fails the write below.
+            Result observed = readLatestVersions(name);
+            LatestWrite outcome = writeLatestVersions(name, observed, latestByStage(scanVersions(name)), touchedAt);
+            if (outcome != LatestWrite.CONFLICT) return outcome == LatestWrite.WRITTEN;
+            log.debug("Latest versions of {} changed concurrently, recomputing", name);
+        }
+        log.warn("Could not refresh the latest versions of {}; leaving them to the next refresh", name);
+        return false;
+    }
+
+    private enum LatestWrite { UNCHANGED, WRITTEN, CONFLICT }
+
+    /** The model row's name, {@code latest_indexed} marker and {@code latest} family. */
+    private Result readLatestVersions(String name) throws IOException {
+        try (Table table = connection.getTable(TableName.valueOf(MODELS_TABLE))) {
+            Get get = new Get(Bytes.toBytes(name));
+            get.addColumn(CF_INFO, COL_NAME);
+            get.addColumn(CF_INFO, COL_LATEST_INDEXED);
+            get.addFamily(CF_LATEST);
+            return table.get(get);
+        }
+    }
+
+    /**
+     * Makes the {@code latest} family of the model row equal to {@code latest} in one
+     * {@link RowMutations}, optionally bumping {@code last_updated_timestamp} in the same
+     * mutation. {@code observed} is the row as read before the versions {@code latest} was
+     * computed from; the mutation only applies while every slot it touches still holds what
+     * was observed, and {@link LatestWrite#CONFLICT} is returned otherwise.
+     */
+    private LatestWrite writeLatestVersions(String name, Result observed, Map<String, ModelVersion> latest,
+                                            Long touchedAt) throws IOException {
+        byte[] row = Bytes.toBytes(name);
+        try (Table table = connection.getTable(TableName.valueOf(MODELS_TABLE))) {
+            if (observed.getValue(CF_INFO, COL_NAME) == null) return LatestWrite.UNCHANGED;
+
+            NavigableMap<byte[], byte[]> existing = observed.getFamilyMap(CF_LATEST);
+            boolean changed = observed.getValue(CF_INFO, COL_LATEST_INDEXED) == null || touchedAt != null;
+            Put put = new Put(row);
+            put.addColumn(CF_INFO, COL_LATEST_INDEXED, Bytes.toBytes(true));
+            if (touchedAt != null) put.addColumn(CF_INFO, COL_LAST_UPDATED_TIMESTAMP, Bytes.toBytes(touchedAt));
+            for (Map.Entry<String, ModelVersion> e : latest.entrySet()) {
+                byte[] stage = Bytes.toBytes(e.getKey());
+                byte[] value = objectMapper.writeValueAsBytes(e.getValue());
+                if (existing == null || !Arrays.equals(existing.get(stage), value)) {
+                    put.addColumn(CF_LATEST, stage, value);
+                    changed = true;
+                }
+            }
+            Delete delete = new Delete(row);
+            if (existing != null) {
+                for (byte[] stage : existing.keySet()) {
+                    if (!latest.containsKey(Bytes.toString(stage))) delete.addColumns(CF_LATEST, stage);
+                }
+            }
+            if (!changed && delete.isEmpty()) return LatestWrite.UNCHANGED;
+            if (touchedAt != null) putOrderIndexEntries(List.of(modelOrderEntry(name, touchedAt)));
+            RowMutations mutations = new RowMutations(row);
+            mutations.add(put);
+            if (!delete.isEmpty()) mutations.add(delete);
+            CheckAndMutate cas = CheckAndMutate.newBuilder(row)
+                    .ifMatches(unchangedSince(observed, latest.keySet()))
+                    .build(mutations);
+            return table.checkAndMutate(cas).isSuccess() ? LatestWrite.WRITTEN : LatestWrite.CONFLICT;
+        }
+    }
+
+    /**
+     * Passes while the model row still exists and each {@code latest} slot of {@code stages}
+     * or of {@code observed} holds the snapshot {@code observed} read, or is still empty.
+     */
+    private static FilterList unchangedSince(Result observed, Collection<String> stages) {
+        FilterList conditions = new FilterList(FilterList.Operator.MUST_PASS_ALL);
+        conditions.addFilter(slotEquals(CF_INFO, COL_NAME, observed.getValue(CF_INFO, COL_NAME)));
+        NavigableMap<byte[], byte[]> existing = observed.getFamilyMap(CF_LATEST);
+        Set<String> slots = new TreeSet<>(stages);
+        if (existing != null) existing.keySet().forEach(stage -> slots.add(Bytes.toString(stage)));
+        for (String slot : slots) {
+            byte[] stage = Bytes.toBytes(slot);
+            byte[] value = existing == null ? null : existing.get(stage);
+            if (value != null) {
+                conditions.addFilter(slotEquals(CF_LATEST, stage, value));
+            } else {
+                // A stored snapshot is never empty, so this only passes while the cell is absent.
+                conditions.addFilter(new SingleColumnValueFilter(CF_LATEST, stage, CompareOperator.EQUAL,
+                        new BinaryComparator(new byte[0])));
+            }
+        }
+        return conditions;
+    }
+
+    private static SingleColumnValueFilter slotEquals(byte[] family, byte[] qualifier, byte[] value) {
+        SingleColumnValueFilter filter = new SingleColumnValueFilter(family, qualifier, CompareOperator.EQUAL, value);
+        filter.setFilterIfMissing(true);
+        return filter;
+    }
+
+    /** Whether {@code version} is currently one of the denormalized latest versions of {@code name}. */
+    private boolean isLatestVersion(String name, String version) throws IOException {
+        try (Table table = connection.getTable(TableName.valueOf(MODELS_TABLE))) {
+            Result result = table.get(new Get(Bytes.toBytes(name)).addFamily(CF_LATEST));
+            NavigableMap<byte[], byte[]> family = result.getFamilyMap(CF_LATEST);
+            if (family == null) return false;
+            for (byte[] value : family.values()) {
+                if (version.equals(objectMapper.readValue(value, ModelVersion.class).getVersion())) return true;
+            }
+            return false;
+        }
+    }
+
+    /** Visits the name of every registered model. */
+    public void forEachRegisteredModelName(Consumer<String> visitor) throws IOException {
+        Scan scan = new Scan().addColumn(CF_INFO, COL_NAME).setCaching(500);
+        try (Table table = connection.getTable(TableName.valueOf(MODELS_TABLE));
+             ResultScanner scanner = table.getScanner(scan)) {
+            for (Result r : scanner) {
+                visitor.accept(Bytes.toString(r.getRow()));
+            }
+        }
+    }
+
     private ModelVersion mapResultToModelVersion(Result result) {
         byte[] name = result.getValue(CF_INFO, Bytes.toBytes("name"));
         byte[] version = result.getValue(CF_INFO, Bytes.toBytes("version"));
@@ -181,12 +578,14 @@ public class ModelRegistryRepository {
         return new Page<>(models, next);
     }
     public void updateRegisteredModel(String name, String description) throws IOException {
+        long now = System.currentTimeMillis();
+        putOrderIndexEntries(List.of(modelOrderEntry(name, now)));
         try (Table table = connection.getTable(TableName.valueOf(MODELS_TABLE))) {
             Put put = new Put(Bytes.toBytes(name));
             if (description != null) {
                 put.addColumn(CF_INFO, Bytes.toBytes("description"), Bytes.toBytes(description));
             }
-            put.addColumn(CF_INFO, Bytes.toBytes("last_updated_timestamp"), Bytes.toBytes(System.currentTimeMillis()));
+            put.addColumn(CF_INFO, Bytes.toBytes("last_updated_timestamp"), Bytes.toBytes(now));
             table.put(put);
         }
     }
@@ -196,6 +595,7 @@ public class ModelRegistryRepository {
             Delete delete = new Delete(Bytes.toBytes(name));
             table.delete(delete);
         }
+        deleteNameIndexEntry(name);
         // Should also delete versions, but MLFlow might keep them or mark them.
         // For simplicity, we just delete the model.
     }
@@ -217,6 +617,7 @@ public class ModelRegistryRepository {
             }
             table.put(put);
         }
+        if (isLatestVersion(name, version)) refreshLatestVersions(name);
     }
 
     public void deleteModelVersion(String name, String version) throws IOException {
@@ -224,18 +625,111 @@ public class ModelRegistryRepository {
             Delete delete = new Delete(Bytes.toBytes(name + "_" + version));
             table.delete(delete);
         }
+        if (isLatestVersion(name, version)) refreshLatestVersions(name);
     }
 
+    /** Every version of the model, whatever its stage. */
     public List<ModelVersion> getVersions(String name) throws IOException {
-        return getLatestVersions(name);
+        return scanVersions(name);
     }
 
     public void updateModelVersionStage(String name, String version, String stage) throws IOException {
-        try (Table table = connection.getTable(TableName.valueOf(VERSIONS_TABLE))) {
-            Put put = new Put(Bytes.toBytes(name + "_" + version));
-            put.addColumn(CF_INFO, Bytes.toBytes("current_stage"), Bytes.toBytes(stage));
-            table.put(put);
+        transitionModelVersionStage(name, version, stage, false);
+    }
+
+    /** A version moved to a stage, and the versions archived out of that stage to make room. */
+    public record StageTransition(ModelVersion version, List<ModelVersion> archived) {}
+
+    /**
+     * Moves {@code version} to {@code stage} and, with {@code archiveExisting}, every other
+     * version currently in {@code stage} to {@code Archived}. The versions are read with one
+     * prefix scan, all stage changes are sent as one batch of {@link CheckAndMutate}s, each
+     * guarded on the stage that scan observed, and the model row's latest versions and
+     * {@code last_updated_timestamp} are rewritten in a single {@link RowMutations} computed
+     * from the mutated state, so no version is read back. That rewrite is guarded on the
+     * latest versions read before the scan; if another writer changed them since, they are
+     * recomputed from HBase instead.
+     *
+     * <p>If a concurrent transition moved the target first, the whole step is replayed
+     * against a fresh scan. An archive whose guard fails is left to the transition that
+     * moved it, and the latest versions are then recomputed from HBase instead.
+     *
+     * @return the transitioned version as written with the versions this call archived, or
+     *         {@code null} if it does not exist
+     */
+    public StageTransition transitionModelVersionStage(String name, String version, String stage,
+                                                       boolean archiveExisting) throws IOException {
+        for (int attempt = 0; attempt < MAX_TRANSITION_ATTEMPTS; attempt++) {
+            Result observed = readLatestVersions(name);
+            List<ModelVersion> versions = scanVersions(name);
+            ModelVersion target = null;
+            for (ModelVersion mv : versions) {
+                if (version.equals(mv.getVersion())) target = mv;
+            }
+            if (target == null) return null;
+
+            List<ModelVersion> moved = new ArrayList<>();
+            List<String> newStages = new ArrayList<>();
+            moved.add(target);
+            newStages.add(stage);
+            if (archiveExisting) {
+                for (ModelVersion mv : versions) {
+                    if (mv != target && stage.equalsIgnoreCase(stageOf(mv))) {
+                        moved.add(mv);
+                        newStages.add(ARCHIVED_STAGE);
+                    }
+                }
+            }
+
+            long now = System.currentTimeMillis();
+            List<CheckAndMutate> mutations = new ArrayList<>(moved.size());
+            List<Put> orderEntries = new ArrayList<>(moved.size());
+            for (int i = 0; i < moved.size(); i++) {
+                mutations.add(guardedStageChange(moved.get(i), newStages.get(i), now));
+                orderEntries.add(versionUpdateEntry(moved.get(i).getName(), moved.get(i).getVersion(), now));
+            }
+            putOrderIndexEntries(orderEntries);
+            List<CheckAndMutateResult> results;
+            try (Table table = connection.getTable(TableName.valueOf(VERSIONS_TABLE))) {
+                results = table.checkAndMutate(mutations);
+            }
+            if (!results.get(0).isSuccess()) {
+                log.debug("Version {}/{} changed stage concurrently, retrying transition", name, version);
+                continue;
+            }
+
+            boolean allApplied = true;
+            List<ModelVersion> archived = new ArrayList<>(moved.size() - 1);
+            for (int i = 0; i < moved.size(); i++) {
+                if (results.get(i).isSuccess()) {
+                    moved.get(i).setCurrentStage(newStages.get(i));
+                    moved.get(i).setLastUpdatedTimestamp(now);
+                    if (i > 0) archived.add(moved.get(i));
+                } else {
+                    allApplied = false;
+                }
+            }
+            if (!allApplied || writeLatestVersions(name, observed, latestByStage(versions), now) == LatestWrite.CONFLICT) {
+                refreshLatestVersions(name, now);
+            }
+            return new StageTransition(target, archived);
         }
+        throw new IOException("Gave up transitioning " + name + "/" + version
+                + " after " + MAX_TRANSITION_ATTEMPTS + " concurrent changes");
+    }
+
+    /** Sets the stage of {@code mv}'s row if it still holds the stage it was read with. */
+    private static CheckAndMutate guardedStageChange(ModelVersion mv, String stage, long now) {
+        byte[] row = Bytes.toBytes(mv.getName() + "_" + mv.getVersion());
+        Put put = new Put(row)
+                .addColumn(CF_INFO, COL_CURRENT_STAGE, Bytes.toBytes(stage))
+                .addColumn(CF_INFO, COL_LAST_UPDATED_TIMESTAMP, Bytes.toBytes(now));
+        CheckAndMutate.Builder check = CheckAndMutate.newBuilder(row);
+        // Rows written without a stage are still guarded on existing, so a deleted version is not recreated.
+        return (mv.getCurrentStage() != null
+                ? check.ifEquals(CF_INFO, COL_CURRENT_STAGE, Bytes.toBytes(mv.getCurrentStage()))
+                : check.ifEquals(CF_INFO, COL_VERSION, Bytes.toBytes(mv.getVersion())))
+                .build(put);
     }
 
     public void setRegisteredModelTag(String name, String key, String value) throws IOException {
@@ -272,10 +766,12 @@ public class ModelRegistryRepository {
 
     /** Sets (or overwrites) an alias on a registered model. */
     public void setAlias(String name, String alias, String version) throws IOException {
+        long now = System.currentTimeMillis();
+        putOrderIndexEntries(List.of(modelOrderEntry(name, now)));
         try (Table table = connection.getTable(TableName.valueOf(MODELS_TABLE))) {
             Put put = new Put(Bytes.toBytes(name));
             put.addColumn(CF_ALIASES, Bytes.toBytes(alias), Bytes.toBytes(version));
-            put.addColumn(CF_INFO, COL_LAST_UPDATED_TIMESTAMP, Bytes.toBytes(System.currentTimeMillis()));
+            put.addColumn(CF_INFO, COL_LAST_UPDATED_TIMESTAMP, Bytes.toBytes(now));
             table.put(put);
         }
     }
@@ -300,32 +796,68 @@ public class ModelRegistryRepository {
 
     /**
      * Renames a registered model. HBase rows are immutable so this is a copy-then-delete:
-     * we claim the new name atomically, duplicate the primary row and all versions, then delete
-     * the source rows. On failure the newly claimed row is rolled back.
+     * {@link #copyModelForRename} claims the new name with a copy of the primary row,
+     * {@link #moveVersionsForRename} moves the versions in batches, and
+     * {@link #finishRename} drops the source row. On failure the moved versions are moved back
+     * and the newly claimed row is rolled back.
+     *
+     * <p>Background rename jobs call the three steps themselves, resuming after a restart
+     * instead of rolling back; each step can safely be repeated.
      */
     public void renameRegisteredModel(String oldName, String newName) throws IOException {
         if (oldName.equals(newName)) return;
+        if (!copyModelForRename(oldName, newName, false)) return;
+        try {
+            while (moveVersionsForRename(oldName, newName, RENAME_BATCH_SIZE) > 0) {
+                // next batch
+            }
+            finishRename(oldName, newName);
+        } catch (IOException | RuntimeException e) {
+            try {
+                while (moveVersionsForRename(newName, oldName, RENAME_BATCH_SIZE) > 0) {
+                    // next batch
+                }
+                try (Table modelsTable = connection.getTable(TableName.valueOf(MODELS_TABLE))) {
+                    modelsTable.delete(new Delete(Bytes.toBytes(newName)));
+                }
+                deleteNameIndexEntry(newName);
+            } catch (IOException rollback) {
+                log.error("Failed to roll back renamed model {} -> {}", oldName, newName, rollback);
+            }
+            throw e;
+        }
+    }
 
-        try (Table modelsTable = connection.getTable(TableName.valueOf(MODELS_TABLE));
-             Table versionsTable = connection.getTable(TableName.valueOf(VERSIONS_TABLE))) {
-
-            // Check destination is free
+    /**
+     * First rename step: copies the model row of {@code oldName} to {@code newName}. Returns
+     * {@code false} if there is nothing to rename. Throws {@link ExperimentAlreadyExistsException}
+     * if {@code newName} is taken — unless {@code resume} is set and the row there is the copy
+     * made by an earlier run of the same rename (it keeps the source's creation timestamp).
+     */
+    public boolean copyModelForRename(String oldName, String newName, boolean resume) throws IOException {
+        try (Table modelsTable = connection.getTable(TableName.valueOf(MODELS_TABLE))) {
+            Result source = modelsTable.get(new Get(Bytes.toBytes(oldName)));
             Get destCheck = new Get(Bytes.toBytes(newName));
             destCheck.addColumn(CF_INFO, COL_NAME);
-            if (!modelsTable.get(destCheck).isEmpty()) {
+            destCheck.addColumn(CF_INFO, COL_CREATION_TIMESTAMP);
+            Result dest = modelsTable.get(destCheck);
+            if (!dest.isEmpty()) {
+                if (resume && (source.isEmpty() || HBaseResults.getLongOrDefault(dest, CF_INFO, COL_CREATION_TIMESTAMP, -1L)
+                        == HBaseResults.getLongOrDefault(source, CF_INFO, COL_CREATION_TIMESTAMP, -2L))) {
+                    return true;
+                }
                 throw new ExperimentAlreadyExistsException(newName);
             }
-
-            Result source = modelsTable.get(new Get(Bytes.toBytes(oldName)));
             if (source.isEmpty()) {
-                return;
+                return false;
             }
 
             Put copy = new Put(Bytes.toBytes(newName));
             copy.addColumn(CF_INFO, COL_NAME, Bytes.toBytes(newName));
             long creation = HBaseResults.getLongOrDefault(source, CF_INFO, COL_CREATION_TIMESTAMP, System.currentTimeMillis());
             copy.addColumn(CF_INFO, COL_CREATION_TIMESTAMP, Bytes.toBytes(creation));
-            copy.addColumn(CF_INFO, COL_LAST_UPDATED_TIMESTAMP, Bytes.toBytes(System.currentTimeMillis()));
+            long now = System.currentTimeMillis();
+            copy.addColumn(CF_INFO, COL_LAST_UPDATED_TIMESTAMP, Bytes.toBytes(now));
             String description = HBaseResults.getStringOrNull(source, CF_INFO, COL_DESCRIPTION);
             if (description != null) copy.addColumn(CF_INFO, COL_DESCRIPTION, Bytes.toBytes(description));
             String userId = HBaseResults.getStringOrNull(source, CF_INFO, COL_USER_ID);
@@ -336,75 +868,552 @@ public class ModelRegistryRepository {
                 copy.addColumn(CF_ALIASES, entry.getKey(), entry.getValue());
             }
 
+            putNameIndexEntry(newName);
+            putOrderIndexEntries(List.of(modelOrderEntry(newName, now)));
             modelsTable.put(copy);
+            return true;
+        }
+    }
 
-            try {
-                // Copy versions (each row key is "oldName_versionNumber")
-                Scan versionScan = new Scan();
-                versionScan.setRowPrefixFilter(Bytes.toBytes(oldName + "_"));
-                versionScan.setCaching(100);
-                List<Put> versionCopies = new ArrayList<>();
-                List<Delete> versionDeletes = new ArrayList<>();
-                try (ResultScanner scanner = versionsTable.getScanner(versionScan)) {
-                    for (Result vr : scanner) {
-                        String oldKey = Bytes.toString(vr.getRow());
-                        String versionNumber = oldKey.substring(oldName.length() + 1);
-                        Put p = new Put(Bytes.toBytes(newName + "_" + versionNumber));
-                        for (var fam : vr.getNoVersionMap().entrySet()) {
-                            byte[] family = fam.getKey();
-                            for (var q : fam.getValue().entrySet()) {
-                                byte[] qualifier = q.getKey();
-                                if (java.util.Arrays.equals(family, CF_INFO) && java.util.Arrays.equals(qualifier, COL_NAME)) {
-                                    p.addColumn(family, qualifier, Bytes.toBytes(newName));
-                                } else {
-                                    p.addColumn(family, qualifier, q.getValue());
-                                }
+    /**
+     * Second rename step: moves up to {@code batchSize} version rows of {@code fromName} under
+     * {@code toName} (copy, then delete the originals) and returns how many were moved; 0 once
+     * none are left. Versions of models whose name merely starts with {@code fromName + "_"}
+     * share the row prefix and are skipped.
+     */
+    public int moveVersionsForRename(String fromName, String toName, int batchSize) throws IOException {
+        try (Table versionsTable = connection.getTable(TableName.valueOf(VERSIONS_TABLE))) {
+            Scan versionScan = new Scan();
+            versionScan.setRowPrefixFilter(Bytes.toBytes(fromName + "_"));
+            versionScan.setCaching(Math.min(batchSize, 500));
+            List<Put> versionCopies = new ArrayList<>();
+            List<Put> orderEntries = new ArrayList<>();
+            List<Delete> versionDeletes = new ArrayList<>();
+            try (ResultScanner scanner = versionsTable.getScanner(versionScan)) {
+                for (Result vr : scanner) {
+                    if (!fromName.equals(HBaseResults.getStringOrNull(vr, CF_INFO, COL_NAME))) continue;
+                    String oldKey = Bytes.toString(vr.getRow());
+                    String versionNumber = oldKey.substring(fromName.length() + 1);
+                    Put p = new Put(Bytes.toBytes(toName + "_" + versionNumber));
+                    for (var fam : vr.getNoVersionMap().entrySet()) {
+                        byte[] family = fam.getKey();
+                        for (var q : fam.getValue().entrySet()) {
+                            byte[] qualifier = q.getKey();
+                            if (java.util.Arrays.equals(family, CF_INFO) && java.util.Arrays.equals(qualifier, COL_NAME)) {
+                                p.addColumn(family, qualifier, Bytes.toBytes(toName));
+                            } else {
+                                p.addColumn(family, qualifier, q.getValue());
                             }
                         }
-                        versionCopies.add(p);
-                        versionDeletes.add(new Delete(vr.getRow()));
                     }
+                    versionCopies.add(p);
+                    ModelVersion moved = mapResultToModelVersion(vr);
+                    moved.setName(toName);
+                    orderEntries.addAll(versionOrderEntries(moved));
+                    versionDeletes.add(new Delete(vr.getRow()));
+                    if (versionCopies.size() >= batchSize) break;
                 }
-                if (!versionCopies.isEmpty()) versionsTable.put(versionCopies);
-                if (!versionDeletes.isEmpty()) versionsTable.delete(versionDeletes);
+            }
+            // Copies land before the originals go, so an interrupted batch is simply moved again.
+            putOrderIndexEntries(orderEntries);
+            if (!versionCopies.isEmpty()) versionsTable.put(versionCopies);
+            if (!versionDeletes.isEmpty()) versionsTable.delete(versionDeletes);
+            return versionCopies.size();
+        }
+    }
 
-                // Finally drop the old registered-model row
-                modelsTable.delete(new Delete(Bytes.toBytes(oldName)));
-            } catch (IOException | RuntimeException e) {
-                try {
-                    modelsTable.delete(new Delete(Bytes.toBytes(newName)));
-                } catch (IOException rollback) {
-                    log.error("Failed to roll back renamed model {} -> {}", oldName, newName, rollback);
+    /** Last rename step: drops the source row and its index entry and rebuilds the latest versions. */
+    public void finishRename(String oldName, String newName) throws IOException {
+        try (Table modelsTable = connection.getTable(TableName.valueOf(MODELS_TABLE))) {
+            modelsTable.delete(new Delete(Bytes.toBytes(oldName)));
+        }
+        deleteNameIndexEntry(oldName);
+        refreshLatestVersions(newName);
+    }
+
+    /**
+     * One page of the registered models accepted by {@code filter}, in {@code order}, resuming
+     * after {@code pageToken}. In name order the scan walks the table in (reverse) row-key
+     * order from the cursor and stops as soon as the page is full. Other orders walk the order
+     * index from the cursor when no name restriction applies and the index is backfilled, and
+     * otherwise scan the whole table; either way only {@code maxResults + 1} models are held.
+     */
+    public Page<RegisteredModel> searchRegisteredModels(NameKeyPlan plan, Predicate<RegisteredModel> filter,
+                                                        RegistryOrder order, int maxResults, PageToken pageToken)
+            throws IOException {
+        String after = pageToken != null ? Bytes.toString(pageToken.lastRow()) : null;
+        Scan scan = new Scan().setCaching(Math.min(maxResults + 1, 500));
+        List<MultiRowRangeFilter.RowRange> ranges = nameRanges(plan, false);
+        if (ranges == null && !order.followsModelRowKey() && isOrderIndexComplete()) {
+            return searchOrderIndex(MODELS_BY_UPDATE, MODELS_TABLE, order, after, maxResults,
+                    result -> mapResultToRegisteredModel(result, Bytes.toString(result.getRow())),
+                    order::sortKey, filter);
+        }
+        if (ranges != null) {
+            if (ranges.isEmpty()) return Page.terminal(List.of());
+            scan.setFilter(new MultiRowRangeFilter(ranges));
+        }
+        if (order.followsModelRowKey()) {
+            scan.setReversed(order.descending());
+            if (after != null) scan.withStartRow(Bytes.toBytes(after), false);
+        }
+        try (Table table = connection.getTable(TableName.valueOf(MODELS_TABLE));
+             ResultScanner scanner = table.getScanner(scan)) {
+            TopK<RegisteredModel> page = new TopK<>(order.comparator(), after, maxResults);
+            for (Result result : scanner) {
+                RegisteredModel model = mapResultToRegisteredModel(result, Bytes.toString(result.getRow()));
+                if (!filter.test(model)) continue;
+                page.offer(order.sortKey(model), model);
+                // Rows arrive in sort order: the first one past a full page proves there is a next page.
+                if (order.followsModelRowKey() && page.isOverfull()) break;
+            }
+            return page.toPage();
+        }
+    }
+
+    /**
+     * One page of the model versions accepted by {@code filter}, in {@code order}, resuming
+     * after {@code pageToken}. {@code plan} narrows the scan to the row ranges of the matching
+     * names; {@code filter} must still check the name, since a model's row prefix also matches
+     * models whose name extends it past an underscore. At most {@code maxResults + 1} versions
+     * are held in memory.
+     *
+     * <p>In name order the scan starts at the cursor's model and stops once the page is full
+     * and no later row can belong to a name it holds (see {@link #nameOrderBound}). Timestamp
+     * and version number orders walk the order index from the cursor when no name restriction
+     * applies and the index is backfilled, and otherwise scan the whole table.
+     */
+    public Page<ModelVersion> searchModelVersions(NameKeyPlan plan, Predicate<ModelVersion> filter, RegistryOrder order,
+                                                  int maxResults, PageToken pageToken) throws IOException {
+        String after = pageToken != null ? Bytes.toString(pageToken.lastRow()) : null;
+        Scan scan = new Scan().setCaching(500);
+        List<MultiRowRangeFilter.RowRange> ranges = nameRanges(plan, true);
+        if (ranges == null && order.field() != RegistryOrder.Field.NAME && isOrderIndexComplete()) {
+            String kind = order.field() == RegistryOrder.Field.VERSION_NUMBER ? VERSIONS_BY_NUMBER : VERSIONS_BY_UPDATE;
+            return searchOrderIndex(kind, VERSIONS_TABLE, order, after, maxResults,
+                    this::mapResultToModelVersion, order::sortKey, filter);
+        }
+        if (ranges != null) {
+            if (ranges.isEmpty()) return Page.terminal(List.of());
+            scan.setFilter(new MultiRowRangeFilter(ranges));
+        }
+        boolean byName = order.field() == RegistryOrder.Field.NAME;
+        if (byName) {
+            scan.setReversed(order.descending());
+            if (after != null) {
+                // Sort keys in name order are name + NUL + padded version.
+                int separator = after.indexOf('\u0000');
+                byte[] cursorName = Bytes.toBytes(separator >= 0 ? after.substring(0, separator) : after);
+                if (order.descending()) {
+                    scan.withStartRow(nameOrderBound(cursorName), false);
+                } else {
+                    scan.withStartRow(cursorName, true);
                 }
-                throw e;
             }
         }
+        try (Table table = connection.getTable(TableName.valueOf(VERSIONS_TABLE));
+             ResultScanner scanner = table.getScanner(scan)) {
+            TopK<ModelVersion> page = new TopK<>(order.comparator(), after, maxResults);
+            byte[] stop = null;
+            for (Result result : scanner) {
+                if (stop != null && (order.descending()
+                        ? Bytes.compareTo(result.getRow(), stop) < 0
+                        : Bytes.compareTo(result.getRow(), stop) >= 0)) {
+                    break;
+                }
+                ModelVersion mv = mapResultToModelVersion(result);
+                if (filter.test(mv)) page.offer(order.sortKey(mv), mv);
+                if (byName && page.isOverfull()) {
+                    // Once full, only the rows of names up to the page's last one can still change it.
+                    byte[] lastName = Bytes.toBytes(page.last().getName());
+                    stop = order.descending() ? lastName : nameOrderBound(lastName);
+                }
+            }
+            return page.toPage();
+        }
     }
 
     /**
-     * Scans the model-versions table. When {@code modelName} is provided, only versions of that
-     * model are returned (via prefix scan). The optional {@code stageFilter} (e.g. "Production")
-     * narrows the result further server-side.
+     * A row key above every version row of every name up to {@code name}. Version rows are
+     * {@code name_version}, so a shorter name sorts after the longer names it prefixes when
+     * the next character of those is below {@code '_'}: the bound is the prefix of
+     * {@code name} up to its first such character (or to its end), followed by the character
+     * after {@code '_'}.
      */
-    public List<ModelVersion> searchModelVersions(String modelName, String stageFilter, int maxResults) throws IOException {
-        List<ModelVersion> versions = new ArrayList<>();
-        try (Table table = connection.getTable(TableName.valueOf(VERSIONS_TABLE))) {
-            Scan scan = new Scan();
-            scan.setCaching(100);
-            if (modelName != null && !modelName.isBlank()) {
-                scan.setRowPrefixFilter(Bytes.toBytes(modelName + "_"));
+    private static byte[] nameOrderBound(byte[] name) {
+        int end = 1;
+        while (end < name.length && (name[end] & 0xFF) > '_') end++;
+        byte[] bound = Arrays.copyOf(name, end + 1);
+        bound[end] = '_' + 1;
+        return bound;
+    }
+
+    @FunctionalInterface
+    private interface RowMapper<T> {
+        T map(Result result) throws IOException;
+    }
+
+    /**
+     * One page read through the order index: entries of {@code kind} are walked in
+     * {@code order} from the cursor, their rows fetched from {@code table} a batch at a time,
+     * and entries whose row is gone or no longer has the entry's sort key are skipped.
+     */
+    private <T> Page<T> searchOrderIndex(String kind, String table, RegistryOrder order, String after, int maxResults,
+                                         RowMapper<T> mapper, Function<T, String> sortKey,
+                                         Predicate<T> filter) throws IOException {
+        byte[] prefix = Bytes.toBytes(kind);
+        byte[] end = stopRowForPrefix(prefix);
+        int batchSize = Math.min(maxResults + 1, 500);
+        Scan scan = new Scan().addColumn(CF_INFO, COL_ROW).setCaching(batchSize).setReversed(order.descending());
+        byte[] cursor = after != null ? Bytes.add(prefix, Bytes.toBytes(after)) : null;
+        if (order.descending()) {
+            scan.withStartRow(cursor != null ? cursor : end, false).withStopRow(prefix, true);
+        } else {
+            scan.withStartRow(cursor != null ? cursor : prefix, cursor == null).withStopRow(end, false);
+        }
+        TopK<T> page = new TopK<>(order.comparator(), after, maxResults);
+        try (Table index = connection.getTable(TableName.valueOf(ORDER_INDEX_TABLE));
+             Table data = connection.getTable(TableName.valueOf(table));
+             ResultScanner scanner = index.getScanner(scan)) {
+            List<String> keys = new ArrayList<>(batchSize);
+            List<Get> gets = new ArrayList<>(batchSize);
+            for (Result entry : scanner) {
+                keys.add(Bytes.toString(entry.getRow(), prefix.length, entry.getRow().length - prefix.length));
+                gets.add(new Get(entry.getValue(CF_INFO, COL_ROW)));
+                if (gets.size() < batchSize) continue;
+                offerIndexed(data, keys, gets, mapper, sortKey, filter, page);
+                if (page.isOverfull()) break;
+                keys.clear();
+                gets.clear();
             }
-            try (ResultScanner scanner = table.getScanner(scan)) {
-                for (Result result : scanner) {
-                    ModelVersion mv = mapResultToModelVersion(result);
-                    if (stageFilter == null || stageFilter.isBlank()
-                            || stageFilter.equalsIgnoreCase(mv.getCurrentStage())) {
-                        versions.add(mv);
-                        if (versions.size() >= maxResults) break;
-                    }
+            if (!page.isOverfull()) offerIndexed(data, keys, gets, mapper, sortKey, filter, page);
+        }
+        return page.toPage();
+    }
+
+    private static <T> void offerIndexed(Table data, List<String> keys, List<Get> gets, RowMapper<T> mapper,
+                                         Function<T, String> sortKey, Predicate<T> filter,
+                                         TopK<T> page) throws IOException {
+        if (gets.isEmpty()) return;
+        Result[] rows = data.get(gets);
+        for (int i = 0; i < rows.length; i++) {
+            if (rows[i].isEmpty()) continue;
+            T item = mapper.map(rows[i]);
+            if (keys.get(i).equals(sortKey.apply(item)) && filter.test(item)) page.offer(keys.get(i), item);
+        }
+    }
+
+    /**
+     * Row ranges of the models table (or, with {@code versions}, the versions table) that can
+     * hold names selected by {@code plan}, or {@code null} when the whole table must be read.
+     */
+    private List<MultiRowRangeFilter.RowRange> nameRanges(NameKeyPlan plan, boolean versions) throws IOException {
+        SortedSet<String> names = plan.names();
+        if (plan.foldedPrefix() != null) {
+            names = namesByFoldedPrefix(plan.foldedPrefix());
+            if (names == null) return null;
+        }
+        List<MultiRowRangeFilter.RowRange> ranges = new ArrayList<>();
+        if (names != null) {
+            for (String name : names) {
+                ranges.add(versions ? prefixRange(name + "_")
+                        : new MultiRowRangeFilter.RowRange(Bytes.toBytes(name), true, Bytes.toBytes(name), true));
+            }
+            return ranges;
+        }
+        if (plan.prefix() != null) {
+            ranges.add(prefixRange(plan.prefix()));
+            return ranges;
+        }
+        return null;
+    }
+
+    private static MultiRowRangeFilter.RowRange prefixRange(String prefix) {
+        byte[] start = Bytes.toBytes(prefix);
+        return new MultiRowRangeFilter.RowRange(start, true, stopRowForPrefix(start), false);
+    }
+
+    /** First row after every row starting with {@code prefix}; empty (end of table) if there is none. */
+    private static byte[] stopRowForPrefix(byte[] prefix) {
+        for (int i = prefix.length - 1; i >= 0; i--) {
+            if (prefix[i] != (byte) 0xFF) {
+                byte[] stop = Arrays.copyOf(prefix, i + 1);
+                stop[i]++;
+                return stop;
+            }
+        }
+        return new byte[0];
+    }
+
+    /**
+     * Model names whose case-folded form starts with {@code foldedPrefix}, from the ILIKE
+     * index; {@code null} if the index is not backfilled yet or the prefix is too broad to be
+     * worth a range per name.
+     */
+    private SortedSet<String> namesByFoldedPrefix(String foldedPrefix) throws IOException {
+        if (!isNameIndexComplete()) return null;
+        MultiRowRangeFilter.RowRange range = prefixRange(foldedPrefix);
+        Scan scan = new Scan().withStartRow(range.getStartRow()).withStopRow(range.getStopRow(), false)
+                .addColumn(CF_INFO, COL_NAME).setCaching(MAX_ILIKE_PUSHDOWN_NAMES + 1);
+        SortedSet<String> names = new TreeSet<>();
+        try (Table table = connection.getTable(TableName.valueOf(NAME_INDEX_TABLE));
+             ResultScanner scanner = table.getScanner(scan)) {
+            for (Result result : scanner) {
+                names.add(Bytes.toString(result.getValue(CF_INFO, COL_NAME)));
+                if (names.size() > MAX_ILIKE_PUSHDOWN_NAMES) return null;
+            }
+        }
+        return names;
+    }
+
+    private boolean isNameIndexComplete() throws IOException {
+        if (nameIndexComplete) return true;
+        try (Table table = connection.getTable(TableName.valueOf(NAME_INDEX_TABLE))) {
+            nameIndexComplete = table.exists(new Get(NAME_INDEX_COMPLETE_ROW));
+        }
+        return nameIndexComplete;
+    }
+
+    /** Whether the order index has been backfilled and serves timestamp and version number orders. */
+    public boolean isOrderIndexComplete() throws IOException {
+        if (orderIndexComplete) return true;
+        try (Table table = connection.getTable(TableName.valueOf(ORDER_INDEX_TABLE))) {
+            orderIndexComplete = table.exists(new Get(ORDER_INDEX_COMPLETE_ROW));
+        }
+        return orderIndexComplete;
+    }
+
+    private static Put orderIndexEntry(String kind, String sortKey, byte[] row) {
+        return new Put(Bytes.toBytes(kind + sortKey)).addColumn(CF_INFO, COL_ROW, row);
+    }
+
+    private static Put modelOrderEntry(String name, long lastUpdated) {
+        RegisteredModel model = RegisteredModel.builder().name(name).lastUpdatedTimestamp(lastUpdated).build();
+        return orderIndexEntry(MODELS_BY_UPDATE, BY_UPDATE.sortKey(model), Bytes.toBytes(name));
+    }
+
+    private static Put versionUpdateEntry(String name, String version, long lastUpdated) {
+        ModelVersion mv = ModelVersion.builder().name(name).version(version).lastUpdatedTimestamp(lastUpdated).build();
+        return orderIndexEntry(VERSIONS_BY_UPDATE, BY_UPDATE.sortKey(mv), Bytes.toBytes(name + "_" + version));
+    }
+
+    private static List<Put> versionOrderEntries(ModelVersion mv) {
+        byte[] row = Bytes.toBytes(mv.getName() + "_" + mv.getVersion());
+        return List.of(orderIndexEntry(VERSIONS_BY_UPDATE, BY_UPDATE.sortKey(mv), row),
+                orderIndexEntry(VERSIONS_BY_NUMBER, BY_NUMBER.sortKey(mv), row));
+    }
+
+    private void putOrderIndexEntries(List<Put> entries) throws IOException {
+        if (entries.isEmpty()) return;
+        try (Table table = connection.getTable(TableName.valueOf(ORDER_INDEX_TABLE))) {
+            table.put(entries);
+        }
+    }
+
+    private static byte[] nameIndexRow(String name) {
+        return Bytes.toBytes(NameKeyPlan.fold(name) + "\u0000" + name);
+    }
+
+    private void putNameIndexEntry(String name) throws IOException {
+        try (Table table = connection.getTable(TableName.valueOf(NAME_INDEX_TABLE))) {
+            table.put(new Put(nameIndexRow(name)).addColumn(CF_INFO, COL_NAME, Bytes.toBytes(name)));
+        }
+    }
+
+    private void deleteNameIndexEntry(String name) throws IOException {
+        try (Table table = connection.getTable(TableName.valueOf(NAME_INDEX_TABLE))) {
+            table.delete(new Delete(nameIndexRow(name)));
+        }
+    }
+
+    /**
+     * Writes the ILIKE index entry of every registered model that lacks one and returns how
+     * many were added.
+     */
+    public int backfillNameIndex() throws IOException {
+        int added = 0;
+        List<String> batch = new ArrayList<>();
+        try (Table models = connection.getTable(TableName.valueOf(MODELS_TABLE));
+             Table index = connection.getTable(TableName.valueOf(NAME_INDEX_TABLE));
+             ResultScanner scanner = models.getScanner(new Scan().addColumn(CF_INFO, COL_NAME).setCaching(500))) {
+            for (Result result : scanner) {
+                batch.add(Bytes.toString(result.getRow()));
+                if (batch.size() == 500) {
+                    added += addMissingIndexEntries(index, batch);
+                    batch.clear();
                 }
             }
+            added += addMissingIndexEntries(index, batch);
+        }
+        return added;
+    }
+
+    private static int addMissingIndexEntries(Table index, List<String> names) throws IOException {
+        if (names.isEmpty()) return 0;
+        List<Get> gets = new ArrayList<>(names.size());
+        for (String name : names) gets.add(new Get(nameIndexRow(name)));
+        boolean[] present = index.exists(gets);
+        List<Put> puts = new ArrayList<>();
+        for (int i = 0; i < names.size(); i++) {
+            if (!present[i]) {
+                puts.add(new Put(nameIndexRow(names.get(i))).addColumn(CF_INFO, COL_NAME, Bytes.toBytes(names.get(i))));
+            }
+        }
+        if (!puts.isEmpty()) index.put(puts);
+        return puts.size();
+    }
+
+    /**
+     * Deletes ILIKE index entries whose model row no longer exists and returns how many were
+     * removed. Entries younger than a grace period are skipped: their model may still be
+     * being created.
+     */
+    public int removeOrphanNameIndexEntries() throws IOException {
+        long cutoff = System.currentTimeMillis() - NAME_INDEX_ORPHAN_GRACE_MS;
+        List<Delete> orphans = new ArrayList<>();
+        try (Table models = connection.getTable(TableName.valueOf(MODELS_TABLE));
+             Table index = connection.getTable(TableName.valueOf(NAME_INDEX_TABLE));
+             ResultScanner scanner = index.getScanner(new Scan().addColumn(CF_INFO, COL_NAME).setCaching(500))) {
+            for (Result result : scanner) {
+                if (Arrays.equals(result.getRow(), NAME_INDEX_COMPLETE_ROW)) continue;
+                Cell cell = result.getColumnLatestCell(CF_INFO, COL_NAME);
+                if (cell == null || cell.getTimestamp() > cutoff) continue;
+                if (!models.exists(new Get(CellUtil.cloneValue(cell)).addColumn(CF_INFO, COL_NAME))) {
+                    orphans.add(new Delete(result.getRow()));
+                }
+            }
+            if (!orphans.isEmpty()) index.delete(orphans);
+        }
+        return orphans.size();
+    }
+
+    /** Enables ILIKE pushdown; called once {@link #backfillNameIndex} has covered every model. */
+    public void markNameIndexComplete() throws IOException {
+        try (Table table = connection.getTable(TableName.valueOf(NAME_INDEX_TABLE))) {
+            table.put(new Put(NAME_INDEX_COMPLETE_ROW).addColumn(CF_INFO, COL_NAME, Bytes.toBytes(true)));
+        }
+        nameIndexComplete = true;
+    }
+
+    /**
+     * Writes the order index entries of every registered model and model version, as their
+     * rows hold them now, and returns how many were written. Entries are idempotent, so rows
+     * that already have theirs are simply rewritten; writes keep the index current afterwards.
+     */
+    public int backfillOrderIndex() throws IOException {
+        int written = 0;
+        try (Table models = connection.getTable(TableName.valueOf(MODELS_TABLE));
+             ResultScanner scanner = models.getScanner(new Scan().addFamily(CF_INFO).setCaching(500))) {
+            List<Put> batch = new ArrayList<>();
+            for (Result result : scanner) {
+                String name = Bytes.toString(result.getRow());
+                batch.add(modelOrderEntry(name, HBaseResults.getLongOrDefault(result, CF_INFO, COL_LAST_UPDATED_TIMESTAMP, 0L)));
+                if (batch.size() >= 500) {
+                    putOrderIndexEntries(batch);
+                    written += batch.size();
+                    batch.clear();
+                }
+            }
+            putOrderIndexEntries(batch);
+            written += batch.size();
+        }
+        try (Table versions = connection.getTable(TableName.valueOf(VERSIONS_TABLE));
+             ResultScanner scanner = versions.getScanner(new Scan().addFamily(CF_INFO).setCaching(500))) {
+            List<Put> batch = new ArrayList<>();
+            for (Result result : scanner) {
+                ModelVersion mv = mapResultToModelVersion(result);
+                if (mv.getName() == null || mv.getVersion() == null) continue;
+                batch.addAll(versionOrderEntries(mv));
+                if (batch.size() >= 500) {
+                    putOrderIndexEntries(batch);
+                    written += batch.size();
+                    batch.clear();
+                }
+            }
+            putOrderIndexEntries(batch);
+            written += batch.size();
+        }
+        return written;
+    }
+
+    /**
+     * Deletes order index entries whose row is gone or has moved on to another sort key and
+     * returns how many were removed. Entries younger than a grace period are skipped: their
+     * row may still be being written.
+     */
+    public int removeStaleOrderIndexEntries() throws IOException {
+        long cutoff = System.currentTimeMillis() - NAME_INDEX_ORPHAN_GRACE_MS;
+        int removed = 0;
+        for (String kind : List.of(MODELS_BY_UPDATE, VERSIONS_BY_UPDATE, VERSIONS_BY_NUMBER)) {
+            byte[] prefix = Bytes.toBytes(kind);
+            boolean models = kind.equals(MODELS_BY_UPDATE);
+            RegistryOrder order = kind.equals(VERSIONS_BY_NUMBER) ? BY_NUMBER : BY_UPDATE;
+            Scan scan = new Scan().withStartRow(prefix).withStopRow(stopRowForPrefix(prefix))
+                    .addColumn(CF_INFO, COL_ROW).setCaching(500);
+            List<Delete> stale = new ArrayList<>();
+            try (Table index = connection.getTable(TableName.valueOf(ORDER_INDEX_TABLE));
+                 Table data = connection.getTable(TableName.valueOf(models ? MODELS_TABLE : VERSIONS_TABLE));
+                 ResultScanner scanner = index.getScanner(scan)) {
+                for (Result entry : scanner) {
+                    Cell cell = entry.getColumnLatestCell(CF_INFO, COL_ROW);
+                    if (cell == null || cell.getTimestamp() > cutoff) continue;
+                    Result row = data.get(new Get(CellUtil.cloneValue(cell)).addFamily(CF_INFO));
+                    String key = Bytes.toString(entry.getRow(), prefix.length, entry.getRow().length - prefix.length);
+                    String current = row.isEmpty() ? null
+                            : models ? order.sortKey(RegisteredModel.builder().name(Bytes.toString(row.getRow()))
+                                    .lastUpdatedTimestamp(HBaseResults.getLongOrDefault(row, CF_INFO, COL_LAST_UPDATED_TIMESTAMP, 0L))
+                                    .build())
+                            : order.sortKey(mapResultToModelVersion(row));
+                    if (!key.equals(current)) stale.add(new Delete(entry.getRow()));
+                }
+                if (!stale.isEmpty()) index.delete(stale);
+            }
+            removed += stale.size();
+        }
+        return removed;
+    }
+
+    /** Enables order index reads; called once {@link #backfillOrderIndex} has covered every row. */
+    public void markOrderIndexComplete() throws IOException {
+        try (Table table = connection.getTable(TableName.valueOf(ORDER_INDEX_TABLE))) {
+            table.put(new Put(ORDER_INDEX_COMPLETE_ROW).addColumn(CF_INFO, COL_ROW, Bytes.toBytes(true)));
+        }
+        orderIndexComplete = true;
+    }
+
+    /**
+     * The first {@code limit} items after a cursor in sort-key order, keeping one extra item
+     * to tell whether another page follows.
+     */
+    private static final class TopK<T> {
+        private final TreeMap<String, T> items;
+        private final String after;
+        private final int limit;
+
+        TopK(Comparator<String> comparator, String after, int limit) {
+            this.items = new TreeMap<>(comparator);
+            this.after = after;
+            this.limit = limit;
+        }
+
+        void offer(String key, T item) {
+            if (after != null && items.comparator().compare(key, after) <= 0) return;
+            items.put(key, item);
+            if (items.size() > limit + 1) items.pollLastEntry();
+        }
+
+        boolean isOverfull() {
+            return items.size() > limit;
+        }
+
+        T last() {
+            return items.lastEntry().getValue();
+        }
+
+        Page<T> toPage() {
+            if (!isOverfull()) return Page.terminal(new ArrayList<>(items.values()));
+            items.pollLastEntry();
+            return Page.of(new ArrayList<>(items.values()), PageToken.ofRow(items.lastKey()).encode());
         }
-        return versions;
     }
 }
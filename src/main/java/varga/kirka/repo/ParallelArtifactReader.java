@@ -0,0 +1,251 @@
+package varga.kirka.repo;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Read-ahead for large artifact downloads. Instead of one sequential read pipeline, the range
+ * is cut into {@code chunk-bytes} chunks that are fetched with concurrent positional reads
+ * ({@link FSDataInputStream#readFully(long, byte[], int, int)}) on a shared pool, and written
+ * to the response strictly in order by the request thread.
+ *
+ * <p>Chunks are read into buffers from a pool capped at {@code memory-budget-bytes}, so the
+ * memory held by all downloads together is fixed; a download that finds the pool empty waits
+ * for a buffer only when it holds none itself, which keeps downloads from deadlocking each
+ * other. The buffers are heap arrays: the servlet output stream only takes arrays, so a direct
+ * buffer would cost one more copy per chunk.
+ *
+ * <p>How many chunks a download keeps in flight adapts to its throughput, between 1 and
+ * {@code max-parallelism}: every few chunks the window grows while throughput keeps improving,
+ * turns back when it drops, and shrinks when the client, not HDFS, is the bottleneck (every
+ * chunk was ready before the response could take it).
+ */
+@Component
+public class ParallelArtifactReader {
+
+    /** Relative throughput change below which the window is left alone. */
+    private static final double TOLERANCE = 0.05;
+
+    private final boolean enabled;
+    private final long minBytes;
+    private final int chunkBytes;
+    private final int maxParallelism;
+    private final BufferPool buffers;
+    private final ExecutorService readers;
+    private final DistributionSummary finalParallelism;
+
+    public ParallelArtifactReader(MeterRegistry meterRegistry,
+                                  @Value("${kirka.artifacts.download.parallel.enabled:true}") boolean enabled,
+                                  @Value("${kirka.artifacts.download.parallel.min-bytes:67108864}") long minBytes,
+                                  @Value("${kirka.artifacts.download.parallel.chunk-bytes:8388608}") int chunkBytes,
+                                  @Value("${kirka.artifacts.download.parallel.max-parallelism:8}") int maxParallelism,
+                                  @Value("${kirka.artifacts.download.parallel.threads:16}") int threads,
+                                  @Value("${kirka.artifacts.download.parallel.memory-budget-bytes:268435456}") long memoryBudgetBytes) {
+        this.enabled = enabled;
+        this.chunkBytes = Math.max(64 * 1024, chunkBytes);
+        this.minBytes = Math.max(2L * this.chunkBytes, minBytes);
+        this.maxParallelism = Math.max(1, maxParallelism);
+        this.buffers = new BufferPool(this.chunkBytes, (int) Math.max(1, Math.min(Integer.MAX_VALUE, memoryBudgetBytes / this.chunkBytes)));
+        AtomicInteger count = new AtomicInteger();
+        this.readers = new ThreadPoolExecutor(Math.max(1, threads), Math.max(1, threads), 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "kirka-artifact-read-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        Gauge.builder("kirka.artifacts.download.readahead.buffers", buffers, BufferPool::inUse)
+                .description("Read-ahead buffers held by artifact downloads")
+                .tag("service", "kirka")
+                .register(meterRegistry);
+        this.finalParallelism = DistributionSummary.builder("kirka.artifacts.download.readahead.parallelism")
+                .description("Chunks in flight at the end of each parallel artifact download")
+                .tag("service", "kirka")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void stop() {
+        readers.shutdownNow();
+    }
+
+    /** Whether a range of {@code length} bytes is worth reading in parallel. */
+    public boolean accepts(long length) {
+        return enabled && length >= minBytes;
+    }
+
+    /** Outcome of one positional read. */
+    private record Chunk(long position, int length, byte[] buffer, Future<?> read) {}
+
+    /**
+     * Copies {@code length} bytes of {@code in} starting at {@code offset} to {@code out}.
+     * {@code in} must support concurrent positional reads, as HDFS and local streams do.
+     */
+    public void copy(FSDataInputStream in, OutputStream out, long offset, long length) throws IOException {
+        long end = offset + length;
+        long nextPosition = offset;
+        ArrayDeque<Chunk> inFlight = new ArrayDeque<>();
+        Window window = new Window(maxParallelism, System.nanoTime());
+        try {
+            while (nextPosition < end || !inFlight.isEmpty()) {
+                while (nextPosition < end && inFlight.size() < window.size) {
+                    byte[] buffer = inFlight.isEmpty() ? buffers.acquire() : buffers.tryAcquire();
+                    if (buffer == null) break;
+                    long position = nextPosition;
+                    int size = (int) Math.min(chunkBytes, end - position);
+                    Future<?> read;
+                    try {
+                        read = readers.submit(() -> {
+                            in.readFully(position, buffer, 0, size);
+                            return null;
+                        });
+                    } catch (RuntimeException e) {
+                        buffers.release(buffer);
+                        throw new IOException("Artifact read-ahead pool unavailable", e);
+                    }
+                    inFlight.add(new Chunk(position, size, buffer, read));
+                    nextPosition += size;
+                }
+                Chunk head = inFlight.peek();
+                boolean waited = !head.read().isDone();
+                await(head);
+                out.write(head.buffer(), 0, head.length());
+                inFlight.poll();
+                buffers.release(head.buffer());
+                window.record(head.length(), waited, System.nanoTime());
+            }
+        } finally {
+            // Reads still running write into their buffers: only recycle them once finished.
+            for (Chunk chunk : inFlight) {
+                try {
+                    chunk.read().get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    continue;
+                } catch (ExecutionException e) {
+                    // Already failing, or the download was abandoned.
+                }
+                buffers.release(chunk.buffer());
+            }
+            finalParallelism.record(window.size);
+        }
+    }
+
+    private static void await(Chunk chunk) throws IOException {
+        try {
+            chunk.read().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading artifact at offset " + chunk.position());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) throw io;
+            throw new IOException("Artifact read at offset " + chunk.position() + " failed", cause);
+        }
+    }
+
+    /**
+     * Hill-climbing on throughput: after each epoch of {@code size} chunks, keep moving the
+     * window in the same direction while throughput improves, reverse when it degrades, and
+     * step down when the response never had to wait for a chunk.
+     */
+    static final class Window {
+        private final int max;
+        int size;
+        private int direction = 1;
+        private double lastThroughput;
+        private long epochStart;
+        private long epochBytes;
+        private int epochChunks;
+        private boolean epochWaited;
+
+        Window(int max, long now) {
+            this.max = max;
+            this.size = Math.min(2, max);
+            this.epochStart = now;
+        }
+
+        void record(int bytes, boolean waited, long now) {
+            epochBytes += bytes;
+            epochChunks++;
+            epochWaited |= waited;
+            if (epochChunks < Math.max(2, size)) return;
+            double throughput = epochBytes / (double) Math.max(1L, now - epochStart);
+            if (!epochWaited) {
+                // The response drains slower than HDFS fills: extra chunks only hold memory.
+                direction = -1;
+                size = Math.max(1, size - 1);
+            } else if (lastThroughput == 0 || throughput > lastThroughput * (1 + TOLERANCE)) {
+                size = Math.max(1, Math.min(max, size + direction));
+            } else if (throughput < lastThroughput * (1 - TOLERANCE)) {
+                direction = -direction;
+                size = Math.max(1, Math.min(max, size + direction));
+            }
+            // From a single chunk the only useful probe is upwards.
+            if (size == 1) direction = 1;
+            lastThroughput = throughput;
+            epochStart = now;
+            epochBytes = 0;
+            epochChunks = 0;
+            epochWaited = false;
+        }
+    }
+
+    /** Fixed budget of chunk buffers, allocated on first use and recycled. */
+    static final class BufferPool {
+        private final int bufferBytes;
+        private final int capacity;
+        private final ArrayBlockingQueue<byte[]> free;
+        private final AtomicInteger allocated = new AtomicInteger();
+
+        BufferPool(int bufferBytes, int capacity) {
+            this.bufferBytes = bufferBytes;
+            this.capacity = capacity;
+            this.free = new ArrayBlockingQueue<>(capacity);
+        }
+
+        byte[] tryAcquire() {
+            byte[] buffer = free.poll();
+            if (buffer != null) return buffer;
+            if (allocated.incrementAndGet() <= capacity) return new byte[bufferBytes];
+            allocated.decrementAndGet();
+            return null;
+        }
+
+        byte[] acquire() throws InterruptedIOException {
+            byte[] buffer = tryAcquire();
+            if (buffer != null) return buffer;
+            try {
+                return free.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a read-ahead buffer");
+            }
+        }
+
+        void release(byte[] buffer) {
+            free.offer(buffer);
+        }
+
+        int inUse() {
+            return allocated.get() - free.size();
+        }
+    }
+}
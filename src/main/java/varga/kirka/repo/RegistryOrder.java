@@ -0,0 +1,94 @@
+package varga.kirka.repo;
+
+import varga.kirka.model.ModelVersion;
+import varga.kirka.model.RegisteredModel;
+
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * A parsed MLFlow {@code order_by} clause for registry searches: {@code name},
+ * {@code last_updated_timestamp} or {@code version_number} (model versions only), each
+ * optionally followed by {@code ASC} or {@code DESC}.
+ *
+ * <p>Every result maps to a string {@link #sortKey} that is unique per row — the sort value
+ * followed by the natural key as a tie-break — so a page boundary is a single key and the next
+ * page resumes strictly after it, whatever was inserted or deleted in between.
+ */
+public record RegistryOrder(Field field, boolean descending) {
+
+    public enum Field { NAME, LAST_UPDATED_TIMESTAMP, VERSION_NUMBER }
+
+    public static final RegistryOrder NAME_ASC = new RegistryOrder(Field.NAME, false);
+
+    private static final char SEPARATOR = '\u0000';
+
+    /**
+     * Parses a single {@code order_by} clause. Blank means {@code name ASC}; unknown fields are
+     * rejected with {@link IllegalArgumentException}.
+     */
+    public static RegistryOrder parse(String orderBy, boolean modelVersions) {
+        if (orderBy == null || orderBy.isBlank()) return NAME_ASC;
+        String[] parts = orderBy.trim().split("\\s+");
+        if (parts.length > 2) {
+            throw new IllegalArgumentException("Invalid order_by clause: " + orderBy);
+        }
+        boolean descending = false;
+        if (parts.length == 2) {
+            switch (parts[1].toUpperCase(Locale.ROOT)) {
+                case "ASC" -> descending = false;
+                case "DESC" -> descending = true;
+                default -> throw new IllegalArgumentException("Invalid order_by direction: " + parts[1]);
+            }
+        }
+        Field field = switch (parts[0].toLowerCase(Locale.ROOT)) {
+            case "name" -> Field.NAME;
+            case "last_updated_timestamp", "timestamp" -> Field.LAST_UPDATED_TIMESTAMP;
+            case "version_number" -> {
+                if (!modelVersions) throw new IllegalArgumentException("version_number applies to model versions only");
+                yield Field.VERSION_NUMBER;
+            }
+            default -> throw new IllegalArgumentException("Unsupported order_by field: " + parts[0]);
+        };
+        return new RegistryOrder(field, descending);
+    }
+
+    /** Whether results in this order are exactly the models table row-key order (or its reverse). */
+    boolean followsModelRowKey() {
+        return field == Field.NAME;
+    }
+
+    Comparator<String> comparator() {
+        return descending ? Comparator.<String>reverseOrder() : Comparator.<String>naturalOrder();
+    }
+
+    String sortKey(RegisteredModel model) {
+        return switch (field) {
+            case LAST_UPDATED_TIMESTAMP -> pad(model.getLastUpdatedTimestamp()) + SEPARATOR + model.getName();
+            default -> model.getName();
+        };
+    }
+
+    String sortKey(ModelVersion mv) {
+        // Version rows only carry last_updated_timestamp once they have been modified.
+        long updated = mv.getLastUpdatedTimestamp() > 0 ? mv.getLastUpdatedTimestamp() : mv.getCreationTimestamp();
+        return switch (field) {
+            case NAME -> mv.getName() + SEPARATOR + pad(versionNumber(mv));
+            case LAST_UPDATED_TIMESTAMP -> pad(updated) + SEPARATOR + mv.getName() + SEPARATOR + pad(versionNumber(mv));
+            case VERSION_NUMBER -> pad(versionNumber(mv)) + SEPARATOR + mv.getName();
+        };
+    }
+
+    private static long versionNumber(ModelVersion mv) {
+        try {
+            return Long.parseLong(mv.getVersion());
+        } catch (NumberFormatException e) {
+            return 0L;
+        }
+    }
+
+    /** Fixed-width decimal so that string order equals numeric order. */
+    private static String pad(long value) {
+        return String.format("%020d", Math.max(0L, value));
+    }
+}
@@ -3,15 +3,21 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import varga.kirka.model.*;
 import varga.kirka.util.HBaseResults;
+import org.apache.hadoop.hbase.CompareOperator;
 import org.apache.hadoop.hbase.TableName;
 import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.filter.KeyOnlyFilter;
+import org.apache.hadoop.hbase.filter.SingleColumnValueFilter;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.springframework.stereotype.Repository;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Slf4j
 @Repository
@@ -100,6 +106,112 @@ public class RunRepository {
         }
     }
 
+    /** A run to erase: its id and the root of its artifacts ({@code null} if none was recorded). */
+    public record PurgeTarget(String runId, String artifactUri) {}
+
+    /**
+     * Lists the runs of {@code experimentId} with their artifact location in a single scan
+     * reading only those two columns, so a cascading delete needs no {@code getRun} per run.
+     */
+    public List<PurgeTarget> findPurgeTargetsForExperiment(String experimentId) throws IOException {
+        List<PurgeTarget> targets = new ArrayList<>();
+        Scan scan = new Scan()
+                .addColumn(CF_INFO, COL_EXPERIMENT_ID)
+                .addColumn(CF_INFO, COL_ARTIFACT_URI)
+                .setCaching(1000);
+        SingleColumnValueFilter filter = new SingleColumnValueFilter(CF_INFO, COL_EXPERIMENT_ID,
+                CompareOperator.EQUAL, Bytes.toBytes(experimentId));
+        filter.setFilterIfMissing(true);
+        scan.setFilter(filter);
+        try (Table table = connection.getTable(TableName.valueOf(TABLE_NAME));
+             ResultScanner scanner = table.getScanner(scan)) {
+            for (Result r : scanner) {
+                targets.add(new PurgeTarget(Bytes.toString(r.getRow()),
+                        HBaseResults.getStringOrNull(r, CF_INFO, COL_ARTIFACT_URI)));
+            }
+        }
+        return targets;
+    }
+
+    /**
+     * Opens a {@link RunPurger} for erasing many runs at once. The caller owns it and must
+     * close it, which flushes whatever is still buffered.
+     */
+    public RunPurger openRunPurger(long writeBufferBytes) throws IOException {
+        return new RunPurger(connection, writeBufferBytes);
+    }
+
+    /**
+     * Thread-safe batch counterpart of {@link #hardDeleteRun}: run rows and metric history
+     * points are queued on {@link BufferedMutator}s and reach HBase in large batches instead of
+     * one round trip per run. Rows still failing after the client's retries are reported by
+     * {@link #failedRunIds()} once a {@link #flush()} has completed.
+     */
+    public static class RunPurger implements Closeable {
+        private final Connection connection;
+        private final BufferedMutator runs;
+        private final BufferedMutator history;
+        private final Set<String> failedRunIds = ConcurrentHashMap.newKeySet();
+
+        RunPurger(Connection connection, long writeBufferBytes) throws IOException {
+            this.connection = connection;
+            BufferedMutator.ExceptionListener listener = (e, mutator) -> {
+                for (int i = 0; i < e.getNumExceptions(); i++) {
+                    failedRunIds.add(runIdOf(e.getRow(i).getRow()));
+                }
+            };
+            this.runs = connection.getBufferedMutator(new BufferedMutatorParams(TableName.valueOf(TABLE_NAME))
+                    .writeBufferSize(writeBufferBytes).listener(listener));
+            try {
+                this.history = connection.getBufferedMutator(new BufferedMutatorParams(TableName.valueOf(METRIC_HISTORY_TABLE))
+                        .writeBufferSize(writeBufferBytes).listener(listener));
+            } catch (IOException e) {
+                runs.close();
+                throw e;
+            }
+        }
+
+        /** Queues the deletion of the run row and of every metric history point of {@code runId}. */
+        public void purge(String runId) throws IOException {
+            Scan scan = new Scan()
+                    .setRowPrefixFilter(Bytes.toBytes(runId + "_"))
+                    .setFilter(new KeyOnlyFilter())
+                    .setCaching(1000);
+            try (Table historyTable = connection.getTable(TableName.valueOf(METRIC_HISTORY_TABLE));
+                 ResultScanner scanner = historyTable.getScanner(scan)) {
+                for (Result r : scanner) {
+                    history.mutate(new Delete(r.getRow()));
+                }
+            }
+            // History first: a run row that survives a failed batch keeps the run listed for a retry.
+            runs.mutate(new Delete(Bytes.toBytes(runId)));
+        }
+
+        public void flush() throws IOException {
+            history.flush();
+            runs.flush();
+        }
+
+        /** Runs at least one of whose deletes was given up by the client so far. */
+        public Set<String> failedRunIds() {
+            return failedRunIds;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try (BufferedMutator a = history; BufferedMutator b = runs) {
+                // try-with-resources closes both even if one of them fails
+            }
+        }
+
+        /** Run ids carry no underscore; history rows are {@code runId + "_" + ...}. */
+        private static String runIdOf(byte[] row) {
+            String key = Bytes.toString(row);
+            int sep = key.indexOf('_');
+            return sep < 0 ? key : key.substring(0, sep);
+        }
+    }
+
     /** Returns every run id that belongs to {@code experimentId}. Used for cascading deletes. */
     public List<String> findRunIdsForExperiment(String experimentId) throws IOException {
         List<String> ids = new ArrayList<>();
@@ -13,6 +13,18 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
+/**
+ * HBase persistence for scorers in {@code mlflow_scorers}, one row per version keyed by
+ * {@code experimentId + "_" + name + "_" + version}.
+ *
+ * <p>Version numbers come from a per-scorer counter cell bumped with an atomic
+ * {@code Increment}, and the version row is inserted with a {@code checkAndMutate} guard, so
+ * concurrent registrations of the same scorer never reuse a number or overwrite each other.
+ * Counter rows are keyed {@code "#seq_" + experimentId + "_" + name}: {@code '#'} sorts before
+ * every experiment id, so no scorer scan ever reads them. Counters are seeded from the highest
+ * stored version the first time they are used, and are not reset when versions are deleted —
+ * a number is never handed out twice.
+ */
 @Slf4j
 @Repository
 @RequiredArgsConstructor
@@ -25,43 +37,65 @@ public class ScorerRepository {
     private static final byte[] COL_VERSION = Bytes.toBytes("version");
     private static final byte[] COL_SERIALIZED_SCORER = Bytes.toBytes("serialized_scorer");
     private static final byte[] COL_CREATION_TIME = Bytes.toBytes("creation_time");
+    private static final byte[] COL_VERSION_SEQ = Bytes.toBytes("version_seq");
+    private static final String SEQUENCE_ROW_PREFIX = "#seq_";
+    private static final int MAX_ALLOCATION_ATTEMPTS = 5;
 
     private final Connection connection;
 
     public Scorer registerScorer(String experimentId, String name, String serializedScorer) throws IOException {
-        int version = getNextVersion(experimentId, name);
-        String scorerId = UUID.randomUUID().toString();
-        long creationTime = System.currentTimeMillis();
-
-        Scorer scorer = Scorer.builder()
-                .scorerId(scorerId)
-                .experimentId(experimentId)
-                .scorerName(name)
-                .scorerVersion(version)
-                .serializedScorer(serializedScorer)
-                .creationTime(creationTime)
-                .build();
-
         try (Table table = connection.getTable(TableName.valueOf(TABLE_NAME))) {
-            // Row key: experimentId_name_version
-            Put put = new Put(Bytes.toBytes(experimentId + "_" + name + "_" + version));
-            put.addColumn(CF_INFO, Bytes.toBytes("scorer_id"), Bytes.toBytes(scorerId));
-            put.addColumn(CF_INFO, COL_EXPERIMENT_ID, Bytes.toBytes(experimentId));
-            put.addColumn(CF_INFO, COL_NAME, Bytes.toBytes(name));
-            put.addColumn(CF_INFO, COL_VERSION, Bytes.toBytes(version));
-            put.addColumn(CF_INFO, COL_SERIALIZED_SCORER, Bytes.toBytes(serializedScorer));
-            put.addColumn(CF_INFO, COL_CREATION_TIME, Bytes.toBytes(creationTime));
-            table.put(put);
+            for (int attempt = 1; ; attempt++) {
+                int version = getNextVersion(table, experimentId, name);
+                String scorerId = UUID.randomUUID().toString();
+                long creationTime = System.currentTimeMillis();
+
+                // Row key: experimentId_name_version
+                byte[] rowKey = Bytes.toBytes(experimentId + "_" + name + "_" + version);
+                Put put = new Put(rowKey);
+                put.addColumn(CF_INFO, Bytes.toBytes("scorer_id"), Bytes.toBytes(scorerId));
+                put.addColumn(CF_INFO, COL_EXPERIMENT_ID, Bytes.toBytes(experimentId));
+                put.addColumn(CF_INFO, COL_NAME, Bytes.toBytes(name));
+                put.addColumn(CF_INFO, COL_VERSION, Bytes.toBytes(version));
+                put.addColumn(CF_INFO, COL_SERIALIZED_SCORER, Bytes.toBytes(serializedScorer));
+                put.addColumn(CF_INFO, COL_CREATION_TIME, Bytes.toBytes(creationTime));
+                boolean created = table.checkAndMutate(CheckAndMutate.newBuilder(rowKey)
+                        .ifNotExists(CF_INFO, COL_VERSION)
+                        .build(put)).isSuccess();
+                if (created) {
+                    return Scorer.builder()
+                            .scorerId(scorerId)
+                            .experimentId(experimentId)
+                            .scorerName(name)
+                            .scorerVersion(version)
+                            .serializedScorer(serializedScorer)
+                            .creationTime(creationTime)
+                            .build();
+                }
+                if (attempt >= MAX_ALLOCATION_ATTEMPTS) {
+                    throw new IOException("Could not allocate a free version for scorer " + experimentId + "/" + name);
+                }
+                // Only rows written behind the counter's back (manual imports) can collide.
+                log.warn("Scorer {}/{} version {} already exists, allocating the next one", experimentId, name, version);
+            }
         }
-        return scorer;
     }
 
-    private int getNextVersion(String experimentId, String name) throws IOException {
-        List<Scorer> versions = listScorerVersions(experimentId, name);
-        return versions.stream()
-                .mapToInt(Scorer::getScorerVersion)
-                .max()
-                .orElse(0) + 1;
+    /** Atomically reserves the next version number of a scorer. */
+    private int getNextVersion(Table table, String experimentId, String name) throws IOException {
+        byte[] row = Bytes.toBytes(SEQUENCE_ROW_PREFIX + experimentId + "_" + name);
+        if (!table.exists(new Get(row).addColumn(CF_INFO, COL_VERSION_SEQ))) {
+            // First allocation for this scorer: start after the versions already stored.
+            // Concurrent seeders compute the same value and only the first write lands.
+            long highest = listScorerVersions(experimentId, name).stream()
+                    .mapToInt(Scorer::getScorerVersion)
+                    .max()
+                    .orElse(0);
+            table.checkAndMutate(CheckAndMutate.newBuilder(row)
+                    .ifNotExists(CF_INFO, COL_VERSION_SEQ)
+                    .build(new Put(row).addColumn(CF_INFO, COL_VERSION_SEQ, Bytes.toBytes(highest))));
+        }
+        return Math.toIntExact(table.incrementColumnValue(row, CF_INFO, COL_VERSION_SEQ, 1L));
     }
 
     public List<Scorer> listScorerVersions(String experimentId, String name) throws IOException {
@@ -0,0 +1,97 @@
+package varga.kirka.repo;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.springframework.stereotype.Repository;
+import varga.kirka.model.Webhook;
+import varga.kirka.util.HBaseResults;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * HBase persistence for registry {@link Webhook} subscriptions in {@code mlflow_webhooks},
+ * one row per webhook id. The table stays small (a handful of receivers per deployment
+ * system), so listing is a plain full scan.
+ */
+@Slf4j
+@Repository
+@RequiredArgsConstructor
+public class WebhookRepository {
+
+    private static final String TABLE_NAME = "mlflow_webhooks";
+    private static final byte[] CF_INFO = Bytes.toBytes("info");
+
+    private static final byte[] COL_NAME = Bytes.toBytes("name");
+    private static final byte[] COL_URL = Bytes.toBytes("url");
+    private static final byte[] COL_EVENTS = Bytes.toBytes("events");
+    private static final byte[] COL_MODEL_NAME = Bytes.toBytes("model_name");
+    private static final byte[] COL_OWNER = Bytes.toBytes("owner");
+    private static final byte[] COL_SECRET = Bytes.toBytes("secret");
+    private static final byte[] COL_CREATION_TIMESTAMP = Bytes.toBytes("creation_timestamp");
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final TypeReference<List<String>> STRING_LIST = new TypeReference<>() {};
+
+    private final Connection connection;
+
+    public void create(Webhook webhook) throws IOException {
+        Put put = new Put(Bytes.toBytes(webhook.getWebhookId()))
+                .addColumn(CF_INFO, COL_URL, Bytes.toBytes(webhook.getUrl()))
+                .addColumn(CF_INFO, COL_EVENTS, objectMapper.writeValueAsBytes(
+                        webhook.getEvents() != null ? webhook.getEvents() : List.of()))
+                .addColumn(CF_INFO, COL_SECRET, Bytes.toBytes(webhook.getSecret()))
+                .addColumn(CF_INFO, COL_CREATION_TIMESTAMP, Bytes.toBytes(webhook.getCreationTimestamp()));
+        if (webhook.getName() != null) put.addColumn(CF_INFO, COL_NAME, Bytes.toBytes(webhook.getName()));
+        if (webhook.getModelName() != null) put.addColumn(CF_INFO, COL_MODEL_NAME, Bytes.toBytes(webhook.getModelName()));
+        if (webhook.getOwner() != null) put.addColumn(CF_INFO, COL_OWNER, Bytes.toBytes(webhook.getOwner()));
+        try (Table table = connection.getTable(TableName.valueOf(TABLE_NAME))) {
+            table.put(put);
+        }
+    }
+
+    public Webhook get(String webhookId) throws IOException {
+        try (Table table = connection.getTable(TableName.valueOf(TABLE_NAME))) {
+            Result result = table.get(new Get(Bytes.toBytes(webhookId)));
+            return result.isEmpty() ? null : map(result);
+        }
+    }
+
+    /** Every webhook, secrets included, for the dispatcher and for listing. */
+    public List<Webhook> list() throws IOException {
+        List<Webhook> webhooks = new ArrayList<>();
+        try (Table table = connection.getTable(TableName.valueOf(TABLE_NAME));
+             ResultScanner scanner = table.getScanner(new Scan().addFamily(CF_INFO))) {
+            for (Result result : scanner) {
+                webhooks.add(map(result));
+            }
+        }
+        return webhooks;
+    }
+
+    public void delete(String webhookId) throws IOException {
+        try (Table table = connection.getTable(TableName.valueOf(TABLE_NAME))) {
+            table.delete(new Delete(Bytes.toBytes(webhookId)));
+        }
+    }
+
+    private static Webhook map(Result result) throws IOException {
+        byte[] events = result.getValue(CF_INFO, COL_EVENTS);
+        return Webhook.builder()
+                .webhookId(Bytes.toString(result.getRow()))
+                .name(HBaseResults.getStringOrNull(result, CF_INFO, COL_NAME))
+                .url(HBaseResults.getStringOrNull(result, CF_INFO, COL_URL))
+                .events(events != null ? objectMapper.readValue(events, STRING_LIST) : List.of())
+                .modelName(HBaseResults.getStringOrNull(result, CF_INFO, COL_MODEL_NAME))
+                .owner(HBaseResults.getStringOrNull(result, CF_INFO, COL_OWNER))
+                .secret(HBaseResults.getStringOrNull(result, CF_INFO, COL_SECRET))
+                .creationTimestamp(HBaseResults.getLongOrDefault(result, CF_INFO, COL_CREATION_TIMESTAMP, 0L))
+                .build();
+    }
+}
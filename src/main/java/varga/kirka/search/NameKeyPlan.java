@@ -0,0 +1,86 @@
+package varga.kirka.search;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * The part of a search filter on {@code name} that can be answered from row-key order
+ * instead of evaluated after a full scan. Registered models are keyed by name and model
+ * versions by {@code name + "_" + version}, so:
+ *
+ * <ul>
+ *   <li>{@code name = 'x'} and {@code name IN ('x', 'y')} become exact {@link #names};</li>
+ *   <li>{@code name LIKE 'fraud-%'} becomes the literal {@link #prefix} {@code fraud-} (the
+ *       characters before the first {@code %} or {@code _});</li>
+ *   <li>{@code name ILIKE 'Fraud-%'} becomes the lower-cased {@link #foldedPrefix}
+ *       {@code fraud-}, to be looked up in a case-folded index.</li>
+ * </ul>
+ *
+ * <p>The plan only narrows what is read: it always selects a superset of the matches, and
+ * {@link FilterEvaluator} still evaluates the full filter on every row. Clauses are
+ * conjunctive, so one pushed-down clause is enough; exact names are preferred over a prefix,
+ * and a longer prefix over a shorter one. Only string literals are pushed down, since
+ * {@code name = 123} also matches {@code "0123"} under the evaluator's loose equality.
+ */
+public record NameKeyPlan(SortedSet<String> names, String prefix, String foldedPrefix) {
+
+    public static final NameKeyPlan NONE = new NameKeyPlan(null, null, null);
+
+    public static NameKeyPlan of(List<FilterClause> clauses) {
+        SortedSet<String> names = null;
+        String prefix = null;
+        String folded = null;
+        for (FilterClause c : clauses) {
+            if (c.field() != FilterClause.Field.ATTRIBUTE || !"name".equalsIgnoreCase(c.key())) continue;
+            switch (c.op()) {
+                case EQ, IN -> {
+                    SortedSet<String> values = stringValues(c.values());
+                    if (values != null && (names == null || values.size() < names.size())) names = values;
+                }
+                case LIKE -> {
+                    String p = literalPrefix(c.firstValue());
+                    if (p != null && (prefix == null || p.length() > prefix.length())) prefix = p;
+                }
+                case ILIKE -> {
+                    String p = literalPrefix(c.firstValue());
+                    if (p != null) p = fold(p);
+                    if (p != null && (folded == null || p.length() > folded.length())) folded = p;
+                }
+                default -> { }
+            }
+        }
+        if (names != null) return new NameKeyPlan(names, null, null);
+        if (prefix != null) return new NameKeyPlan(null, prefix, null);
+        if (folded != null) return new NameKeyPlan(null, null, folded);
+        return NONE;
+    }
+
+    public boolean isEmpty() {
+        return names == null && prefix == null && foldedPrefix == null;
+    }
+
+    /** Case folding shared by the ILIKE index writer and the planner. */
+    public static String fold(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    private static SortedSet<String> stringValues(List<Object> values) {
+        if (values == null || values.isEmpty()) return null;
+        SortedSet<String> out = new TreeSet<>();
+        for (Object v : values) {
+            if (!(v instanceof String s)) return null;
+            out.add(s);
+        }
+        return out;
+    }
+
+    /** Characters of a LIKE pattern before its first wildcard, or {@code null} if there are none. */
+    private static String literalPrefix(Object pattern) {
+        if (!(pattern instanceof String s)) return null;
+        int end = 0;
+        while (end < s.length() && s.charAt(end) != '%' && s.charAt(end) != '_') end++;
+        return end > 0 ? s.substring(0, end) : null;
+    }
+}
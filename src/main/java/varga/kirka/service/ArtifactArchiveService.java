@@ -0,0 +1,264 @@
+package varga.kirka.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import varga.kirka.repo.ArtifactRepository;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.Deque;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Streams an artifact directory as one archive ({@code zip}, {@code tar}, {@code tar.gz} or
+ * {@code tar.zst}). The tree is walked lazily ({@link ArtifactRepository#walkArtifacts}) and
+ * every file is written straight from HDFS into its entry, so neither the listing nor a file
+ * is ever held whole in memory.
+ *
+ * <p>Small files are dominated by the cost of opening them (a NameNode call, then a datanode
+ * connection), so while one entry is written the first {@code prefetch-bytes} of the next
+ * {@code prefetch-files} files are read concurrently on a shared pool; the rest of a larger
+ * file is streamed when its turn comes. A download thus holds at most
+ * {@code prefetch-files * prefetch-bytes} bytes of prefetched content. Zip entries are
+ * deflated at the fastest level: artifacts are mostly already compressed model weights.
+ */
+@Slf4j
+@Service
+public class ArtifactArchiveService {
+
+    public enum Format {
+        ZIP("zip", "application/zip"),
+        TAR("tar", "application/x-tar"),
+        TAR_GZ("tar.gz", "application/gzip"),
+        TAR_ZST("tar.zst", "application/zstd");
+
+        private final String extension;
+        private final String contentType;
+
+        Format(String extension, String contentType) {
+            this.extension = extension;
+            this.contentType = contentType;
+        }
+
+        public String extension() {
+            return extension;
+        }
+
+        public String contentType() {
+            return contentType;
+        }
+
+        /** The format named {@code name} ({@code zip}, {@code tar}, {@code tar.gz}/{@code tgz}, {@code tar.zst}/{@code tzst}). */
+        public static Format parse(String name) {
+            String format = name == null ? "zip" : name.trim().toLowerCase(Locale.ROOT);
+            return switch (format) {
+                case "zip" -> ZIP;
+                case "tar" -> TAR;
+                case "tar.gz", "tgz" -> TAR_GZ;
+                case "tar.zst", "tzst" -> TAR_ZST;
+                default -> throw new IllegalArgumentException("Archive format must be zip, tar, tar.gz or tar.zst: " + name);
+            };
+        }
+    }
+
+    private final ArtifactRepository artifactRepository;
+    private final int prefetchFiles;
+    private final int prefetchBytes;
+    private final int bufferBytes;
+    private final ExecutorService prefetchPool;
+    private final Counter filesCounter;
+    private final Counter bytesCounter;
+
+    /** A file and its first bytes, read ahead of its turn. */
+    private record Prefetched(FileStatus status, byte[] head) {}
+
+    public ArtifactArchiveService(ArtifactRepository artifactRepository,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${kirka.artifacts.archive.prefetch-files:8}") int prefetchFiles,
+                                  @Value("${kirka.artifacts.archive.prefetch-bytes:262144}") int prefetchBytes,
+                                  @Value("${kirka.artifacts.archive.threads:16}") int threads,
+                                  @Value("${kirka.artifacts.download.buffer-bytes:1048576}") int bufferBytes) {
+        this.artifactRepository = artifactRepository;
+        this.prefetchFiles = Math.max(1, prefetchFiles);
+        this.prefetchBytes = Math.max(0, prefetchBytes);
+        this.bufferBytes = Math.max(4096, bufferBytes);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.prefetchPool = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, "kirka-archive-prefetch-" + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.filesCounter = Counter.builder("kirka.artifacts.archive.files")
+                .description("Artifact files written into directory archives")
+                .tag("service", "kirka")
+                .register(meterRegistry);
+        this.bytesCounter = Counter.builder("kirka.artifacts.archive.bytes")
+                .description("Artifact bytes written into directory archives, before compression")
+                .baseUnit("bytes")
+                .tag("service", "kirka")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void stop() {
+        prefetchPool.shutdownNow();
+    }
+
+    /**
+     * Writes the files below {@code hdfsPath} to {@code out} as a {@code format} archive, named
+     * relative to {@code hdfsPath}; returns the file count. When reading a file fails, the
+     * archive is left unfinished, so that the client cannot take it for a complete one.
+     */
+    public int writeArchive(String hdfsPath, Format format, OutputStream out) throws IOException {
+        String root = new Path(hdfsPath).toUri().getPath();
+        String prefix = root.endsWith("/") ? root : root + "/";
+        RemoteIterator<FileStatus> files = artifactRepository.walkArtifacts(hdfsPath);
+        Deque<Future<Prefetched>> window = new ArrayDeque<>();
+        int written = 0;
+        try {
+            ArchiveWriter archive = open(format, new BufferedOutputStream(out, 65536));
+            while (true) {
+                while (window.size() < prefetchFiles && files.hasNext()) {
+                    FileStatus status = files.next();
+                    window.add(prefetchPool.submit(() -> prefetch(status)));
+                }
+                if (window.isEmpty()) break;
+                Prefetched file = await(window.poll());
+                String path = file.status().getPath().toUri().getPath();
+                String name = path.startsWith(prefix) ? path.substring(prefix.length()) : file.status().getPath().getName();
+                long length = file.status().getLen();
+                OutputStream entry = archive.begin(name, length, file.status().getModificationTime());
+                entry.write(file.head());
+                if (length > file.head().length) {
+                    artifactRepository.downloadArtifact(file.status().getPath().toString(), entry, file.head().length,
+                            length - file.head().length, bufferBytes);
+                }
+                archive.end();
+                written++;
+                filesCounter.increment();
+                bytesCounter.increment(length);
+            }
+            archive.close();
+        } finally {
+            for (Future<Prefetched> pending : window) pending.cancel(true);
+        }
+        log.debug("Archived {} files of {} as {}", written, hdfsPath, format.extension());
+        return written;
+    }
+
+    private Prefetched prefetch(FileStatus status) throws IOException {
+        int length = (int) Math.min(status.getLen(), prefetchBytes);
+        ByteArrayOutputStream head = new ByteArrayOutputStream(length);
+        if (length > 0) {
+            artifactRepository.downloadArtifact(status.getPath().toString(), head, 0, length, Math.max(length, 4096));
+        }
+        return new Prefetched(status, head.toByteArray());
+    }
+
+    private static Prefetched await(Future<Prefetched> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading ahead");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) throw io;
+            if (e.getCause() instanceof RuntimeException runtime) throw runtime;
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /** Writes entries of one archive; {@link #begin} returns the stream for the entry's bytes. */
+    private interface ArchiveWriter {
+        OutputStream begin(String name, long length, long modificationTime) throws IOException;
+
+        void end() throws IOException;
+
+        /** Writes the end of the archive and closes the underlying stream. */
+        void close() throws IOException;
+    }
+
+    private static ArchiveWriter open(Format format, OutputStream out) throws IOException {
+        return switch (format) {
+            case ZIP -> zip(out);
+            case TAR -> tar(out);
+            case TAR_GZ -> tar(new GZIPOutputStream(out, 65536));
+            case TAR_ZST -> tar(new ZstdCompressorOutputStream(out));
+        };
+    }
+
+    private static ArchiveWriter zip(OutputStream out) {
+        ZipOutputStream zip = new ZipOutputStream(out);
+        zip.setLevel(Deflater.BEST_SPEED);
+        return new ArchiveWriter() {
+            @Override
+            public OutputStream begin(String name, long length, long modificationTime) throws IOException {
+                ZipEntry entry = new ZipEntry(name);
+                entry.setLastModifiedTime(FileTime.fromMillis(modificationTime));
+                zip.putNextEntry(entry);
+                return zip;
+            }
+
+            @Override
+            public void end() throws IOException {
+                zip.closeEntry();
+            }
+
+            @Override
+            public void close() throws IOException {
+                zip.close();
+            }
+        };
+    }
+
+    private static ArchiveWriter tar(OutputStream out) {
+        TarArchiveOutputStream tar = new TarArchiveOutputStream(out);
+        tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+        tar.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+        return new ArchiveWriter() {
+            @Override
+            public OutputStream begin(String name, long length, long modificationTime) throws IOException {
+                TarArchiveEntry entry = new TarArchiveEntry(name);
+                entry.setSize(length);
+                entry.setModTime(new Date(modificationTime));
+                tar.putArchiveEntry(entry);
+                return tar;
+            }
+
+            @Override
+            public void end() throws IOException {
+                tar.closeArchiveEntry();
+            }
+
+            @Override
+            public void close() throws IOException {
+                tar.close();
+            }
+        };
+    }
+}
@@ -0,0 +1,333 @@
+package varga.kirka.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Node-local disk cache of artifact files, for the many identical downloads of a model
+ * rollout. Entries are keyed by HDFS path and entity tag (so by modification time, or content
+ * checksum with {@code download.etag=checksum}): a rewritten file is a new entry and the old
+ * one simply ages out. The cache holds at most {@code max-bytes}, evicting the least recently
+ * used files, and only files up to {@code max-file-bytes} (1 GiB by default) are admitted.
+ *
+ * <p>Concurrent misses on one entry fetch it from HDFS once: the first request copies the file
+ * to disk while the others wait for it. A byte-range request does not wait for a whole file:
+ * on a miss ({@link #peek}) it is served from HDFS while the file is fetched in the
+ * background. An evicted file is unlinked only after {@code eviction-grace-ms}, so a response
+ * that already chose it can still open it. The directory must be dedicated to the cache
+ * (typically an {@code emptyDir}); cache files left there by a previous process are removed at
+ * startup.
+ */
+@Slf4j
+@Component
+public class ArtifactCache {
+
+    /** Writes the whole artifact to {@code out}. */
+    public interface Loader {
+        void load(OutputStream out) throws IOException;
+    }
+
+    private static final Pattern CACHE_FILE = Pattern.compile("[0-9a-f]{64}-[0-9]+(\\.part)?");
+
+    private final boolean enabled;
+    private final Path directory;
+    private final long maxBytes;
+    private final long maxFileBytes;
+    private final long evictionGraceMs;
+
+    /** Key to cached file, least recently used first. Guarded by {@code this}. */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedBytes;
+    private final ConcurrentHashMap<String, CompletableFuture<Path>> loading = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final ScheduledExecutorService reaper;
+    /** Background fetches started by {@link #peek}; more than a few queued are refused. */
+    private final ThreadPoolExecutor filler;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter coalesced;
+    private final Counter servedBytes;
+
+    private record Entry(Path file, long size) {}
+
+    public ArtifactCache(MeterRegistry meterRegistry,
+                         @Value("${kirka.artifacts.cache.enabled:false}") boolean enabled,
+                         @Value("${kirka.artifacts.cache.directory:/var/cache/kirka/artifacts}") String directory,
+                         @Value("${kirka.artifacts.cache.max-bytes:10737418240}") long maxBytes,
+                         @Value("${kirka.artifacts.cache.max-file-bytes:1073741824}") long maxFileBytes,
+                         @Value("${kirka.artifacts.cache.eviction-grace-ms:60000}") long evictionGraceMs) throws IOException {
+        this.enabled = enabled;
+        this.directory = Paths.get(directory);
+        this.maxBytes = Math.max(0, maxBytes);
+        this.maxFileBytes = maxFileBytes > 0 ? Math.min(maxFileBytes, this.maxBytes) : this.maxBytes;
+        this.evictionGraceMs = Math.max(0, evictionGraceMs);
+        this.reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "kirka-artifact-cache-reaper");
+            t.setDaemon(true);
+            return t;
+        });
+        this.filler = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(16), r -> {
+            Thread t = new Thread(r, "kirka-artifact-cache-filler");
+            t.setDaemon(true);
+            return t;
+        });
+        if (enabled) {
+            Files.createDirectories(this.directory);
+            clearLeftovers();
+            log.info("Artifact cache in {} holding up to {} bytes", this.directory, this.maxBytes);
+        }
+        this.hits = requests(meterRegistry, "hit");
+        this.misses = requests(meterRegistry, "miss");
+        this.coalesced = requests(meterRegistry, "coalesced");
+        this.servedBytes = Counter.builder("kirka.artifacts.cache.served.bytes")
+                .description("Artifact bytes served from the local cache instead of HDFS")
+                .baseUnit("bytes")
+                .tag("service", "kirka")
+                .register(meterRegistry);
+        Gauge.builder("kirka.artifacts.cache.hit-ratio", this, ArtifactCache::hitRatio)
+                .description("Share of cacheable downloads that did not read from HDFS")
+                .tag("service", "kirka")
+                .register(meterRegistry);
+        Gauge.builder("kirka.artifacts.cache.size", this, ArtifactCache::cachedBytes)
+                .description("Bytes held by the local artifact cache")
+                .baseUnit("bytes")
+                .tag("service", "kirka")
+                .register(meterRegistry);
+    }
+
+    private static Counter requests(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("kirka.artifacts.cache.requests")
+                .description("Cacheable artifact downloads by outcome")
+                .tag("service", "kirka")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void stop() {
+        filler.shutdownNow();
+        reaper.shutdown();
+    }
+
+    private void clearLeftovers() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                if (CACHE_FILE.matcher(file.getFileName().toString()).matches()) Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private double hitRatio() {
+        double served = hits.count() + coalesced.count();
+        double total = served + misses.count();
+        return total == 0 ? 0 : served / total;
+    }
+
+    private synchronized long cachedBytes() {
+        return cachedBytes;
+    }
+
+    /**
+     * Local copy of the artifact at {@code hdfsPath}, described by {@code file}, fetched with
+     * {@code loader} on a miss. Returns {@code null} when the file is not cached: the cache is
+     * disabled, the file is too large, or another request's fetch of it failed.
+     */
+    public Path get(String hdfsPath, ArtifactService.ArtifactFile file, Loader loader) throws IOException {
+        if (!enabled || file.length() > maxFileBytes) return null;
+        String key = key(hdfsPath, file.etag());
+        Path cached = lookup(key);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        CompletableFuture<Path> mine = new CompletableFuture<>();
+        CompletableFuture<Path> inFlight = loading.putIfAbsent(key, mine);
+        if (inFlight != null) {
+            coalesced.increment();
+            try {
+                return inFlight.get();
+            } catch (ExecutionException e) {
+                return null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for " + hdfsPath + " to be cached");
+            }
+        }
+        return fill(key, mine, file.length(), loader, true);
+    }
+
+    /**
+     * Fetches the entry {@code key} claimed with {@code mine}, then releases the claim. Only a
+     * request, not a background fill, is {@code counted} as a hit or a miss.
+     */
+    private Path fill(String key, CompletableFuture<Path> mine, long length, Loader loader,
+                      boolean counted) throws IOException {
+        try {
+            // A fetch may have completed between the lookup and the claim.
+            Path cached = lookup(key);
+            if (cached == null) {
+                if (counted) misses.increment();
+                cached = load(key, length, loader);
+            } else if (counted) {
+                hits.increment();
+            }
+            mine.complete(cached);
+            return cached;
+        } catch (IOException | RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, mine);
+        }
+    }
+
+    /**
+     * Local copy of the artifact at {@code hdfsPath} if it is already cached, for a request that
+     * only needs part of it. On a miss returns {@code null} at once and fetches the file with
+     * {@code loader} in the background, so that later requests find it. The entry is claimed
+     * before the fetch is queued, so concurrent misses queue it once; when the queue is full it
+     * is not fetched.
+     */
+    public Path peek(String hdfsPath, ArtifactService.ArtifactFile file, Loader loader) {
+        if (!enabled || file.length() > maxFileBytes) return null;
+        String key = key(hdfsPath, file.etag());
+        Path cached = lookup(key);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+        CompletableFuture<Path> mine = new CompletableFuture<>();
+        if (loading.putIfAbsent(key, mine) != null) return null;
+        try {
+            filler.execute(() -> {
+                try {
+                    fill(key, mine, file.length(), loader, false);
+                } catch (IOException | RuntimeException e) {
+                    log.debug("Background fetch of {} into the artifact cache failed: {}", hdfsPath, e.toString());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            loading.remove(key, mine);
+            mine.complete(null);
+        }
+        return null;
+    }
+
+    private synchronized Path lookup(String key) {
+        Entry entry = entries.get(key);
+        return entry != null ? entry.file() : null;
+    }
+
+    private Path load(String key, long length, Loader loader) throws IOException {
+        Path file = directory.resolve(key + "-" + sequence.incrementAndGet());
+        Path partial = file.resolveSibling(file.getFileName() + ".part");
+        try {
+            try (OutputStream out = Files.newOutputStream(partial)) {
+                loader.load(out);
+            }
+            long size = Files.size(partial);
+            if (size != length) {
+                throw new IOException("Artifact changed while being cached: expected " + length + " bytes, got " + size);
+            }
+            Files.move(partial, file, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(partial);
+            throw e;
+        }
+        admit(key, new Entry(file, length));
+        return file;
+    }
+
+    private synchronized void admit(String key, Entry entry) {
+        Entry replaced = entries.put(key, entry);
+        if (replaced != null) {
+            cachedBytes -= replaced.size();
+            unlinkLater(replaced.file());
+        }
+        cachedBytes += entry.size();
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (cachedBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Entry> victim = eldest.next();
+            if (victim.getKey().equals(key)) continue;
+            eldest.remove();
+            cachedBytes -= victim.getValue().size();
+            unlinkLater(victim.getValue().file());
+        }
+    }
+
+    private void unlinkLater(Path file) {
+        reaper.schedule(() -> {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Could not remove evicted cache file {}: {}", file, e.toString());
+            }
+        }, evictionGraceMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sends {@code length} bytes of a cached file from {@code offset}. The servlet output stream
+     * is not a channel, so this is a buffered copy through the heap: the cache saves the HDFS
+     * read, not the copy into the response.
+     */
+    public void transfer(Path cached, long offset, long length, OutputStream out) throws IOException {
+        try (FileChannel channel = FileChannel.open(cached, StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(out);
+            long sent = 0;
+            while (sent < length) {
+                long n = channel.transferTo(offset + sent, length - sent, target);
+                if (n <= 0) throw new EOFException("Cached file " + cached + " ended " + (length - sent) + " bytes early");
+                sent += n;
+            }
+        }
+        servedBytes.increment(length);
+    }
+
+    private static String key(String hdfsPath, String etag) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(sha256.digest((hdfsPath + "\n" + etag).getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package varga.kirka.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.hadoop.fs.Path;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import varga.kirka.model.FileInfo;
+import varga.kirka.repo.ArtifactRepository;
+import varga.kirka.repo.Page;
+import varga.kirka.repo.PageToken;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Whole artifact listings of runs that have ended (FINISHED, FAILED or KILLED), whose trees
+ * are not expected to change any more: every page of such a listing is then cut from memory
+ * instead of re-reading the directory up to its page token. A listing is read once, in pages
+ * of {@code max-listing-files}; a directory holding more is never cached and always read from
+ * HDFS. That it was too large is remembered for {@code ttl-ms} as well, so its later pages do
+ * not read {@code max-listing-files} entries again only to find out.
+ *
+ * <p>Listings are kept for {@code ttl-ms}, least recently used first out once they hold
+ * {@code max-files} entries together, a few hundred bytes of heap each. {@link ArtifactService}
+ * drops the listings of a directory, of its ancestors and of what is below it after each
+ * upload or delete there, so this node never serves a listing older than its own last write;
+ * other nodes see the change once their copy expires. A listing read while such a write
+ * happened is not kept. Setting {@code ttl-ms} to 0 disables the cache.
+ */
+@Component
+public class ArtifactListingCache {
+
+    @FunctionalInterface
+    public interface Loader {
+        /** The first page of the listing, up to {@code limit} entries. */
+        Page<FileInfo> load(int limit) throws IOException;
+    }
+
+    private record Key(String path, boolean recursive) {}
+
+    private static final int MAX_TOO_LARGE = 4096;
+
+    /** A whole listing and the relative path of each of its entries, in listing order. */
+    private record Listing(List<String> names, List<FileInfo> files, long loadedAt) {}
+
+    private final long ttlMs;
+    private final long maxFiles;
+    private final int maxListingFiles;
+    private final Map<Key, Listing> listings = new LinkedHashMap<>(16, 0.75f, true);
+    /** When each listing found too large was read, the oldest dropped beyond {@code MAX_TOO_LARGE}. */
+    private final Map<Key, Long> tooLarge = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Long> eldest) {
+            return size() > MAX_TOO_LARGE;
+        }
+    };
+    private final AtomicLong writes = new AtomicLong();
+    private long files;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter bypassed;
+
+    public ArtifactListingCache(MeterRegistry meterRegistry,
+                                @Value("${kirka.artifacts.listing-cache.ttl-ms:300000}") long ttlMs,
+                                @Value("${kirka.artifacts.listing-cache.max-files:200000}") long maxFiles,
+                                @Value("${kirka.artifacts.listing-cache.max-listing-files:100000}") int maxListingFiles) {
+        this.ttlMs = Math.max(0L, ttlMs);
+        this.maxFiles = Math.max(1L, maxFiles);
+        this.maxListingFiles = (int) Math.max(1L, Math.min(maxListingFiles, this.maxFiles));
+        this.hits = counter(meterRegistry, "hit");
+        this.misses = counter(meterRegistry, "miss");
+        this.bypassed = counter(meterRegistry, "too-large");
+        Gauge.builder("kirka.artifacts.listing-cache.files", this, ArtifactListingCache::size)
+                .description("Artifact listing entries held by the listing cache")
+                .tag("service", "kirka")
+                .register(meterRegistry);
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("kirka.artifacts.listing-cache.requests")
+                .description("Artifact listing pages asked of the listing cache, by outcome")
+                .tag("service", "kirka")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private synchronized long size() {
+        return files;
+    }
+
+    /**
+     * The page of the listing of {@code hdfsPath} after {@code after}, of up to {@code limit}
+     * entries, cut from the cached listing; on a miss the listing is read whole with
+     * {@code loader}. Returns {@code null} when the listing is too large to cache: the caller
+     * then reads the page itself.
+     */
+    public Page<FileInfo> page(String hdfsPath, boolean recursive, PageToken after, int limit, Loader loader)
+            throws IOException {
+        if (ttlMs == 0) return null;
+        Key key = new Key(normalize(hdfsPath), recursive);
+        if (isTooLarge(key)) {
+            bypassed.increment();
+            return null;
+        }
+        Listing listing = get(key);
+        if (listing == null) {
+            long writesBefore = writes.get();
+            Page<FileInfo> first = loader.load(maxListingFiles);
+            if (first.nextPageToken() != null) {
+                bypassed.increment();
+                putTooLarge(key, writesBefore);
+                return null;
+            }
+            misses.increment();
+            listing = listing(key.path(), first.items());
+            put(key, listing, writesBefore);
+        } else {
+            hits.increment();
+        }
+        int from = 0;
+        if (after != null) {
+            String last = new String(after.lastRow(), StandardCharsets.UTF_8);
+            int found = Collections.binarySearch(listing.names(), last, ArtifactRepository.PATH_ORDER);
+            from = found >= 0 ? found + 1 : -found - 1;
+        }
+        int to = (int) Math.min((long) from + limit, listing.files().size());
+        List<FileInfo> items = listing.files().subList(from, to);
+        return to < listing.files().size()
+                ? Page.of(items, PageToken.ofRow(listing.names().get(to - 1)).encode())
+                : Page.terminal(items);
+    }
+
+    /**
+     * Drops the listings that may include {@code hdfsPath}: its own, its ancestors' and those
+     * of the directories below it.
+     */
+    public void invalidate(String hdfsPath) {
+        if (ttlMs == 0) return;
+        writes.incrementAndGet();
+        String path = normalize(hdfsPath);
+        synchronized (this) {
+            Iterator<Map.Entry<Key, Listing>> entries = listings.entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry<Key, Listing> entry = entries.next();
+                String cached = entry.getKey().path();
+                if (isAtOrBelow(path, cached) || isAtOrBelow(cached, path)) {
+                    files -= entry.getValue().files().size();
+                    entries.remove();
+                }
+            }
+            tooLarge.keySet().removeIf(key -> isAtOrBelow(path, key.path()) || isAtOrBelow(key.path(), path));
+        }
+    }
+
+    private synchronized boolean isTooLarge(Key key) {
+        Long loadedAt = tooLarge.get(key);
+        if (loadedAt == null) return false;
+        if (System.currentTimeMillis() - loadedAt < ttlMs) return true;
+        tooLarge.remove(key);
+        return false;
+    }
+
+    private synchronized void putTooLarge(Key key, long writesBefore) {
+        // A delete since the read began may have made it small enough.
+        if (writes.get() == writesBefore) tooLarge.put(key, System.currentTimeMillis());
+    }
+
+    private synchronized Listing get(Key key) {
+        Listing listing = listings.get(key);
+        if (listing != null && System.currentTimeMillis() - listing.loadedAt() >= ttlMs) {
+            listings.remove(key);
+            files -= listing.files().size();
+            return null;
+        }
+        return listing;
+    }
+
+    private synchronized void put(Key key, Listing listing, long writesBefore) {
+        // An upload or delete since the read began may be missing from it.
+        if (writes.get() != writesBefore) return;
+        Listing previous = listings.put(key, listing);
+        if (previous != null) files -= previous.files().size();
+        files += listing.files().size();
+        Iterator<Listing> eldest = listings.values().iterator();
+        while (files > maxFiles && eldest.hasNext()) {
+            files -= eldest.next().files().size();
+            eldest.remove();
+        }
+    }
+
+    private static Listing listing(String root, List<FileInfo> files) {
+        String prefix = root + "/";
+        List<String> names = new ArrayList<>(files.size());
+        for (FileInfo file : files) {
+            String path = normalize(file.getPath());
+            names.add(path.startsWith(prefix) ? path.substring(prefix.length()) : new Path(path).getName());
+        }
+        return new Listing(names, List.copyOf(files), System.currentTimeMillis());
+    }
+
+    /** The path part of {@code hdfsPath}: listings of the same directory by another URI share an entry. */
+    private static String normalize(String hdfsPath) {
+        String path = new Path(hdfsPath).toUri().getPath();
+        return path.length() > 1 && path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+    }
+
+    private static boolean isAtOrBelow(String path, String directory) {
+        return path.equals(directory) || path.startsWith(directory.endsWith("/") ? directory : directory + "/");
+    }
+}
@@ -0,0 +1,223 @@
+package varga.kirka.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.security.token.Token;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import varga.kirka.repo.ArtifactRepository;
+import varga.kirka.security.SecurityContextHelper;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.PrivilegedExceptionAction;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Sends artifact downloads straight to the cluster: instead of streaming a file through this
+ * JVM, {@code /api/2.0/mlflow/artifacts/download} answers with a redirect to the file's
+ * {@code OPEN} URL on a WebHDFS or HttpFS {@code endpoint} ({@code webhdfs://host:port}, or
+ * {@code swebhdfs://} for HTTPS), and the client reads the bytes from there.
+ *
+ * <p>The URL acts as the caller, never as this server: the cluster's own permissions (HDFS
+ * ACLs, Ranger policies) decide what it may read, so Kirka user names must be cluster user
+ * names. On a Kerberized cluster the URL carries a delegation token issued by the endpoint
+ * itself (HttpFS only accepts its own) to the caller, which this server obtains by
+ * impersonating them: its principal must be allowed to, through the endpoint's
+ * {@code hadoop.proxyuser.*} settings. A caller's token serves their redirects for
+ * {@code token-ttl-ms / 2} and is cancelled {@code token-ttl-ms} after it was issued, so a
+ * redirect stays usable for at least half that time and leaked URLs soon stop working.
+ * Without Kerberos the URL names the caller ({@code user.name}).
+ *
+ * <p>Anonymous downloads, files smaller than {@code min-bytes}, packed files (their pack may
+ * be rewritten before the client reads it) and byte ranges are still proxied; a file
+ * deduplicated by the content store is redirected to its blob. When no token can be had, for
+ * instance because impersonation is refused, downloads fall back to the proxy. Redirects are
+ * counted on {@code kirka.artifacts.download.redirects}.
+ */
+@Slf4j
+@Service
+public class ArtifactRedirectService {
+
+    private static final String ANONYMOUS = "anonymous";
+
+    private final ArtifactRepository artifactRepository;
+    private final FileSystem fileSystem;
+    private final SecurityContextHelper securityContextHelper;
+    private final boolean enabled;
+    private final URI endpoint;
+    private final long minBytes;
+    private final long tokenTtlMs;
+    private final Counter redirectsCounter;
+    private final Counter tokensCounter;
+
+    /** Tokens issued and not yet cancelled, oldest first, and each caller's newest. Guarded by {@code tokens}. */
+    private final Deque<IssuedToken> tokens = new ArrayDeque<>();
+    private final Map<String, IssuedToken> newestByUser = new HashMap<>();
+
+    private record IssuedToken(String user, Token<?> token, String encoded, long issuedAt) {}
+
+    public ArtifactRedirectService(ArtifactRepository artifactRepository,
+                                   FileSystem fileSystem,
+                                   SecurityContextHelper securityContextHelper,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${kirka.artifacts.download.redirect.enabled:false}") boolean enabled,
+                                   @Value("${kirka.artifacts.download.redirect.endpoint:}") String endpoint,
+                                   @Value("${kirka.artifacts.download.redirect.min-bytes:1048576}") long minBytes,
+                                   @Value("${kirka.artifacts.download.redirect.token-ttl-ms:600000}") long tokenTtlMs) {
+        this.artifactRepository = artifactRepository;
+        this.fileSystem = fileSystem;
+        this.securityContextHelper = securityContextHelper;
+        this.enabled = enabled;
+        this.endpoint = enabled ? endpoint(endpoint) : null;
+        this.minBytes = Math.max(0L, minBytes);
+        this.tokenTtlMs = Math.max(60_000L, tokenTtlMs);
+        this.redirectsCounter = Counter.builder("kirka.artifacts.download.redirects")
+                .description("Artifact downloads redirected to WebHDFS or HttpFS instead of proxied")
+                .tag("service", "kirka")
+                .register(meterRegistry);
+        this.tokensCounter = Counter.builder("kirka.artifacts.download.redirect.tokens")
+                .description("Delegation tokens issued for download redirects")
+                .tag("service", "kirka")
+                .register(meterRegistry);
+    }
+
+    private static URI endpoint(String endpoint) {
+        URI uri = URI.create(endpoint.trim());
+        String scheme = uri.getScheme() == null ? "" : uri.getScheme().toLowerCase(Locale.ROOT);
+        if (!scheme.equals("webhdfs") && !scheme.equals("swebhdfs") || uri.getHost() == null) {
+            throw new IllegalArgumentException(
+                    "kirka.artifacts.download.redirect.endpoint must be webhdfs://host:port or swebhdfs://host:port: " + endpoint);
+        }
+        return uri;
+    }
+
+    /**
+     * The URL to send the current user's download of the whole {@code length}-byte artifact
+     * {@code hdfsPath} to, or {@code null} when it is to be proxied.
+     */
+    public URI redirect(String hdfsPath, long length) throws IOException {
+        if (!enabled || length < minBytes) return null;
+        String user = securityContextHelper.getCurrentUser();
+        if (user == null || user.isBlank() || ANONYMOUS.equals(user)) return null;
+        Path file = artifactRepository.dataFile(hdfsPath);
+        if (file == null) return null;
+        String credential;
+        if (useTokens()) {
+            try {
+                credential = "delegation=" + token(user);
+            } catch (IOException e) {
+                log.warn("No delegation token from {} for {}, proxying the download of {}: {}",
+                        endpoint, user, hdfsPath, e.getMessage());
+                return null;
+            }
+        } else {
+            credential = "user.name=" + encode(user);
+        }
+        StringBuilder path = new StringBuilder("/webhdfs/v1");
+        for (String segment : file.toUri().getPath().split("/")) {
+            if (!segment.isEmpty()) path.append('/').append(encode(segment));
+        }
+        String scheme = endpoint.getScheme().equalsIgnoreCase("swebhdfs") ? "https" : "http";
+        redirectsCounter.increment();
+        return URI.create(scheme + "://" + endpoint.getAuthority() + path + "?op=OPEN&" + credential);
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+
+    /** The URL-encoded token of {@code user}, issuing one when theirs is half-way through its life. */
+    private String token(String user) throws IOException {
+        long now = System.currentTimeMillis();
+        synchronized (tokens) {
+            IssuedToken newest = newestByUser.get(user);
+            if (newest != null && now - newest.issuedAt() < tokenTtlMs / 2) return newest.encoded();
+        }
+        // Issued outside the lock, so that a slow endpoint only delays this caller; two
+        // concurrent first downloads of one user may both get a token, and both are cancelled.
+        Token<?> token = issueToken(user);
+        if (token == null) throw new IOException("the endpoint issued no token");
+        IssuedToken issued = new IssuedToken(user, token, token.encodeToUrlString(), now);
+        synchronized (tokens) {
+            tokens.addLast(issued);
+            newestByUser.put(user, issued);
+        }
+        tokensCounter.increment();
+        return issued.encoded();
+    }
+
+    /** Whether the cluster authenticates with Kerberos, and so redirects need a delegation token. */
+    boolean useTokens() {
+        return UserGroupInformation.isSecurityEnabled();
+    }
+
+    /** A delegation token of the endpoint for {@code user}, obtained as their proxy and renewable by this server. */
+    Token<?> issueToken(String user) throws IOException {
+        UserGroupInformation server = UserGroupInformation.getLoginUser();
+        UserGroupInformation caller = UserGroupInformation.createProxyUser(user, server);
+        try {
+            return caller.doAs((PrivilegedExceptionAction<Token<?>>) () -> {
+                try (FileSystem endpointFs = FileSystem.newInstance(endpoint, fileSystem.getConf())) {
+                    return endpointFs.getDelegationToken(server.getShortUserName());
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while getting a delegation token for " + user);
+        }
+    }
+
+    void cancelToken(Token<?> token) throws IOException, InterruptedException {
+        token.cancel(fileSystem.getConf());
+    }
+
+    /** Cancels the tokens issued {@code token-ttl-ms} ago or more. */
+    @Scheduled(fixedDelayString = "${kirka.artifacts.download.redirect.token-sweep-ms:60000}",
+               initialDelayString = "${kirka.artifacts.download.redirect.token-sweep-ms:60000}")
+    public void cancelExpiredTokens() {
+        cancel(System.currentTimeMillis() - tokenTtlMs);
+    }
+
+    @PreDestroy
+    void stop() {
+        cancel(Long.MAX_VALUE);
+    }
+
+    private void cancel(long issuedBefore) {
+        List<IssuedToken> expired = new ArrayList<>();
+        synchronized (tokens) {
+            while (!tokens.isEmpty() && tokens.peekFirst().issuedAt() <= issuedBefore) {
+                IssuedToken issued = tokens.pollFirst();
+                newestByUser.remove(issued.user(), issued);
+                expired.add(issued);
+            }
+        }
+        for (IssuedToken issued : expired) {
+            try {
+                cancelToken(issued.token());
+            } catch (IOException e) {
+                log.warn("Failed to cancel a download redirect token of {}; it lapses when no longer renewed: {}",
+                        issued.user(), e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
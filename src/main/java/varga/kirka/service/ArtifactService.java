@@ -1,29 +1,212 @@
 package varga.kirka.service;
 
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.hadoop.fs.FileChecksum;
+import org.apache.hadoop.fs.FileStatus;
 import varga.kirka.model.FileInfo;
 import varga.kirka.repo.ArtifactRepository;
+import varga.kirka.repo.Page;
+import varga.kirka.repo.PageToken;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Artifact storage on HDFS. Uploads are streamed from the request body to HDFS through one
+ * {@code upload.buffer-bytes} buffer per upload, so their memory cost is bounded and nothing
+ * is spooled to local disk. {@code kirka.artifacts.upload.active} and
+ * {@code kirka.artifacts.upload.bytes-in-flight} report the uploads in progress and what they
+ * have received so far; {@code kirka.artifacts.upload.bytes} and
+ * {@code kirka.artifacts.upload.throughput} the volume and per-upload rate of completed ones.
+ *
+ * <p>Downloads can be limited to a byte range, read from HDFS with a seek to its start. Each
+ * file has an entity tag for conditional and resumed downloads: its length and modification
+ * time by default, or the HDFS {@link FileChecksum} with {@code download.etag=checksum}, which
+ * survives a rewrite with identical content but costs a datanode round trip per block.
+ *
+ * <p>Listings can be paged and recursive; those of runs that have ended are served from the
+ * {@link ArtifactListingCache}, which every upload and delete through this service keeps
+ * current on this node.
+ */
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class ArtifactService {
 
+    /** Directory of a run's artifact root holding its pending multipart uploads; never listed. */
+    public static final String MULTIPART_STAGING_DIR = ".kirka-mpu";
+
     private final ArtifactRepository artifactRepository;
+    private final ArtifactListingCache listingCache;
+    private final int uploadBufferBytes;
+    private final String proxyDestination;
+    private final int downloadBufferBytes;
+    private final boolean checksumETags;
+
+    private final AtomicInteger activeUploads = new AtomicInteger();
+    private final AtomicLong uploadBytesInFlight = new AtomicLong();
+    private final Counter uploadsCounter;
+    private final Counter uploadedBytesCounter;
+    private final DistributionSummary uploadThroughput;
+
+    public ArtifactService(ArtifactRepository artifactRepository,
+                           ArtifactListingCache listingCache,
+                           MeterRegistry meterRegistry,
+                           @Value("${kirka.artifacts.upload.buffer-bytes:1048576}") int uploadBufferBytes,
+                           @Value("${kirka.artifacts.proxy.destination:hdfs:///mlflow/artifacts}") String proxyDestination,
+                           @Value("${kirka.artifacts.download.buffer-bytes:1048576}") int downloadBufferBytes,
+                           @Value("${kirka.artifacts.download.etag:mtime}") String etagSource) {
+        this.artifactRepository = artifactRepository;
+        this.listingCache = listingCache;
+        this.uploadBufferBytes = Math.max(4096, uploadBufferBytes);
+        this.proxyDestination = proxyDestination.endsWith("/")
+                ? proxyDestination.substring(0, proxyDestination.length() - 1) : proxyDestination;
+        this.downloadBufferBytes = Math.max(4096, downloadBufferBytes);
+        this.checksumETags = switch (etagSource.trim().toLowerCase(Locale.ROOT)) {
+            case "checksum" -> true;
+            case "mtime" -> false;
+            default -> throw new IllegalArgumentException("kirka.artifacts.download.etag must be mtime or checksum: " + etagSource);
+        };
+        this.uploadsCounter = Counter.builder("kirka.artifacts.uploaded")
+                .description("Total number of artifacts uploaded")
+                .tag("service", "kirka")
+                .register(meterRegistry);
+        this.uploadedBytesCounter = Counter.builder("kirka.artifacts.upload.bytes")
+                .description("Bytes written to HDFS by artifact uploads")
+                .baseUnit("bytes")
+                .tag("service", "kirka")
+                .register(meterRegistry);
+        this.uploadThroughput = DistributionSummary.builder("kirka.artifacts.upload.throughput")
+                .description("Throughput of each completed artifact upload")
+                .baseUnit("bytes/s")
+                .tag("service", "kirka")
+                .register(meterRegistry);
+        Gauge.builder("kirka.artifacts.upload.active", activeUploads, AtomicInteger::get)
+                .description("Artifact uploads in progress")
+                .tag("service", "kirka")
+                .register(meterRegistry);
+        Gauge.builder("kirka.artifacts.upload.bytes-in-flight", uploadBytesInFlight, AtomicLong::get)
+                .description("Bytes received by artifact uploads that have not completed yet")
+                .baseUnit("bytes")
+                .tag("service", "kirka")
+                .register(meterRegistry);
+    }
 
     public List<FileInfo> listArtifacts(String path) throws IOException {
         // log.debug("Listing artifacts at: {}", path);
         return artifactRepository.listArtifacts(path);
     }
 
-    public void uploadArtifact(String path, java.io.InputStream inputStream) throws IOException {
+    /**
+     * A page of at most {@code maxResults} entries of {@code path} after {@code pageToken}; with
+     * {@code recursive}, of the files at any depth below it. {@code finished} tells that the
+     * artifacts belong to a run that has ended, whose listing may then be cached.
+     */
+    public Page<FileInfo> listArtifacts(String path, String pageToken, Integer maxResults, boolean recursive,
+                                        boolean finished) throws IOException {
+        int pageSize = PageToken.clampPageSize(maxResults);
+        PageToken token = PageToken.decode(pageToken);
+        if (finished) {
+            Page<FileInfo> cached = listingCache.page(path, recursive, token, pageSize,
+                    limit -> artifactRepository.listArtifacts(path, null, limit, recursive));
+            if (cached != null) return cached;
+        }
+        return artifactRepository.listArtifacts(path, token, pageSize, recursive);
+    }
+
+    /**
+     * Drops the cached listings that may include {@code path}, after it was written or
+     * deleted other than through this service.
+     */
+    public void invalidateListings(String path) {
+        listingCache.invalidate(path);
+    }
+
+    /** Streams {@code inputStream} to {@code path}; returns the number of bytes written. */
+    public long uploadArtifact(String path, java.io.InputStream inputStream) throws IOException {
+        try {
+            return upload(path, inputStream, null, null);
+        } finally {
+            listingCache.invalidate(path);
+        }
+    }
+
+    /**
+     * Streams {@code inputStream} to {@code path}, an artifact of the experiment
+     * {@code experimentId}; with the content store enabled, content the experiment already
+     * holds is stored once. A non-null {@code sha256} rejects content with another SHA-256.
+     */
+    public long uploadArtifact(String path, java.io.InputStream inputStream, String experimentId, String sha256) throws IOException {
+        try {
+            return upload(path, inputStream, experimentId, sha256);
+        } finally {
+            listingCache.invalidate(path);
+        }
+    }
+
+    /**
+     * Streams a multipart upload part to {@code path}. Parts are never deduplicated: they are
+     * joined byte-wise into the final file.
+     */
+    public long uploadPart(String path, java.io.InputStream inputStream) throws IOException {
+        return upload(path, inputStream, null, null);
+    }
+
+    /** Uploads through the content store, in the scope of {@code experimentId}, unless it is null. */
+    private long upload(String path, java.io.InputStream inputStream, String experimentId, String sha256) throws IOException {
         // log.info("Uploading artifact to: {}", path);
-        artifactRepository.uploadArtifact(path, inputStream);
+        long start = System.nanoTime();
+        AtomicLong received = new AtomicLong();
+        java.util.function.LongConsumer progress = n -> {
+            received.addAndGet(n);
+            uploadBytesInFlight.addAndGet(n);
+        };
+        activeUploads.incrementAndGet();
+        try {
+            long written;
+            if (experimentId != null && artifactRepository.isDeduplicating()) {
+                written = artifactRepository.storeArtifact(path, experimentId, inputStream, uploadBufferBytes, progress, sha256);
+            } else if (sha256 != null) {
+                MessageDigest digest = sha256Digest();
+                written = artifactRepository.uploadArtifact(path, new DigestInputStream(inputStream, digest),
+                        uploadBufferBytes, progress);
+                if (!HexFormat.of().formatHex(digest.digest()).equalsIgnoreCase(sha256)) {
+                    artifactRepository.deleteArtifact(path);
+                    throw new IllegalArgumentException("Content does not match its declared SHA-256 " + sha256);
+                }
+            } else {
+                written = artifactRepository.uploadArtifact(path, inputStream, uploadBufferBytes, progress);
+            }
+            uploadsCounter.increment();
+            uploadedBytesCounter.increment(written);
+            double seconds = Math.max(1e-3, (System.nanoTime() - start) / 1e9);
+            uploadThroughput.record(written / seconds);
+            return written;
+        } finally {
+            uploadBytesInFlight.addAndGet(-received.get());
+            activeUploads.decrementAndGet();
+        }
+    }
+
+    /**
+     * Location on HDFS of {@code relativePath} under the artifact proxy destination, the root
+     * that {@code /api/2.0/mlflow-artifacts/artifacts/<relativePath>} maps to. Run artifact
+     * directories are {@code <destination>/<experiment_id>/<run_id>}.
+     */
+    public String proxyLocation(String relativePath) {
+        return proxyDestination + "/" + relativePath;
     }
 
     public void downloadArtifact(String path, java.io.OutputStream outputStream) throws IOException {
@@ -31,8 +214,75 @@ public class ArtifactService {
         artifactRepository.downloadArtifact(path, outputStream);
     }
 
+    /** Size, modification time and strong entity tag (quoted) of a stored artifact file. */
+    public record ArtifactFile(long length, long modificationTime, String etag) {}
+
+    /** Whether there is a file or directory at {@code path}. */
+    public boolean existsArtifact(String path) throws IOException {
+        return artifactRepository.exists(path);
+    }
+
+    /** Describes the file at {@code path}; {@link ResourceNotFoundException} if there is no such file. */
+    public ArtifactFile statArtifact(String path) throws IOException {
+        FileStatus status = artifactRepository.getFileStatus(path);
+        if (status == null || status.isDirectory()) {
+            throw new ResourceNotFoundException("Artifact", path);
+        }
+        String etag = null;
+        if (checksumETags) {
+            FileChecksum checksum = artifactRepository.getFileChecksum(path);
+            if (checksum != null) {
+                etag = "\"" + checksum.getAlgorithmName() + "-" + HexFormat.of().formatHex(checksum.getBytes()) + "\"";
+            }
+        }
+        if (etag == null) {
+            etag = "\"" + Long.toHexString(status.getLen()) + "-" + Long.toHexString(status.getModificationTime()) + "\"";
+        }
+        return new ArtifactFile(status.getLen(), status.getModificationTime(), etag);
+    }
+
+    /** Writes {@code length} bytes of {@code path} from {@code offset} to {@code outputStream}. */
+    public void downloadArtifact(String path, java.io.OutputStream outputStream, long offset, long length) throws IOException {
+        artifactRepository.downloadArtifact(path, outputStream, offset, length, downloadBufferBytes);
+    }
+
+    /**
+     * Size of the content-store blob {@code sha256} of the experiment {@code experimentId}, or
+     * {@code null} if the experiment holds no such content.
+     */
+    public Long blobLength(String experimentId, String sha256) throws IOException {
+        return artifactRepository.blobLength(experimentId, sha256);
+    }
+
+    /**
+     * Makes {@code path}, an artifact of the experiment {@code experimentId}, have the content of
+     * the experiment's stored blob {@code sha256}, without uploading it again;
+     * {@link ResourceNotFoundException} if the experiment holds no such content.
+     */
+    public long linkArtifact(String path, String experimentId, String sha256) throws IOException {
+        Long length = artifactRepository.blobLength(experimentId, sha256);
+        if (length == null || !artifactRepository.linkArtifact(path, experimentId, sha256)) {
+            throw new ResourceNotFoundException("Blob", sha256);
+        }
+        listingCache.invalidate(path);
+        uploadsCounter.increment();
+        return length;
+    }
+
+    private static MessageDigest sha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     public void deleteArtifact(String path) throws IOException {
         // log.info("Deleting artifact at: {}", path);
-        artifactRepository.deleteArtifact(path);
+        try {
+            artifactRepository.deleteArtifact(path);
+        } finally {
+            listingCache.invalidate(path);
+        }
     }
 }
@@ -1,19 +1,27 @@
 package varga.kirka.service;
 
+import jakarta.annotation.PreDestroy;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.slf4j.MDC;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
 import varga.kirka.model.AuditEvent;
+import varga.kirka.observability.AsyncAuditWriter;
+import varga.kirka.observability.AuditCoalescer;
 import varga.kirka.observability.MdcCorrelationFilter;
+import varga.kirka.repo.AuditArchiveRepository;
+import varga.kirka.repo.AuditQuery;
 import varga.kirka.repo.AuditRepository;
 import varga.kirka.repo.Page;
 import varga.kirka.repo.PageToken;
 import varga.kirka.security.SecurityContextHelper;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -25,6 +33,18 @@ import java.util.UUID;
  * event is logged at WARN level and discarded. This is the correct trade-off for a tracking
  * server: blocking a model registration because we couldn't write the audit row would cause
  * more production incidents than it would prevent compliance issues.
+ *
+ * <p>With {@code kirka.audit.async.enabled=true} (the default) events are enriched on the
+ * request thread — the security context and servlet request are thread-bound — and then
+ * handed to {@link AsyncAuditWriter}, which persists them in batches off the request path.
+ * High-frequency actions may first be folded by {@link AuditCoalescer}; its windows are
+ * flushed by {@link #flushCoalesced()} and drained on shutdown.
+ *
+ * <p>When the HDFS audit archive is enabled, {@link #search(AuditQuery, Integer, String)} reads
+ * HBase first and continues into {@link AuditArchiveRepository} once the hot tier is exhausted.
+ * The archiver only moves whole days older than the retention cutoff, so archived events are
+ * older than the ones left in HBase, and both tiers share the same page-token format: callers
+ * page through one continuous, newest-first log.
  */
 @Slf4j
 @Service
@@ -33,6 +53,9 @@ public class AuditService {
 
     private final AuditRepository auditRepository;
     private final SecurityContextHelper securityContextHelper;
+    private final AsyncAuditWriter auditWriter;
+    private final AuditCoalescer auditCoalescer;
+    private final AuditArchiveRepository auditArchiveRepository;
 
     public void record(String action, String resourceType, String resourceId,
                        String outcome, String reason) {
@@ -48,23 +71,74 @@ public class AuditService {
                 .reason(reason)
                 .requestId(MDC.get(MdcCorrelationFilter.MDC_KEY))
                 .build();
+        if (auditCoalescer.offer(event)) {
+            return;
+        }
+        persist(event);
+    }
+
+    /** Emits the coalescing windows that have reached their configured age. */
+    @Scheduled(fixedDelayString = "${kirka.audit.coalesce.flush-interval-ms:1000}")
+    public void flushCoalesced() {
+        auditCoalescer.drainExpired(System.currentTimeMillis()).forEach(this::persist);
+    }
+
+    @PreDestroy
+    void flushAllCoalesced() {
+        auditCoalescer.drainAll().forEach(this::persist);
+    }
+
+    private void persist(AuditEvent event) {
+        if (auditWriter.isEnabled()) {
+            auditWriter.submit(event);
+            return;
+        }
         try {
             auditRepository.append(event);
         } catch (Exception e) {
             // Never rollback the caller on audit failure — log and move on.
             log.warn("Failed to persist audit event {} on {}:{} ({}): {}",
-                    action, resourceType, resourceId, outcome, e.toString());
+                    event.getAction(), event.getResourceType(), event.getResourceId(),
+                    event.getOutcome(), e.toString());
         }
     }
 
     public Page<AuditEvent> search(Integer maxResults, String pageToken) {
+        return search(AuditQuery.all(), maxResults, pageToken);
+    }
+
+    public Page<AuditEvent> search(AuditQuery query, Integer maxResults, String pageToken) {
         int cap = PageToken.clampPageSize(maxResults);
         PageToken token = PageToken.decode(pageToken);
+        if (query.startTime() != null && query.endTime() != null && query.startTime() > query.endTime()) {
+            throw new IllegalArgumentException("start_time must not be after end_time");
+        }
+        Page<AuditEvent> hot;
         try {
-            return auditRepository.search(cap, token);
+            hot = auditRepository.search(query, cap, token);
         } catch (Exception e) {
             log.error("Audit search failed: {}", e.toString());
-            return Page.terminal(java.util.List.of());
+            return Page.terminal(List.of());
+        }
+        if (hot.nextPageToken() != null || !auditArchiveRepository.isEnabled()) {
+            return hot;
+        }
+        return withArchive(hot, query, cap, token);
+    }
+
+    /** Fills the rest of a terminal HBase page from the archive, resuming after its last event. */
+    private Page<AuditEvent> withArchive(Page<AuditEvent> hot, AuditQuery query, int cap, PageToken token) {
+        List<AuditEvent> items = hot.items();
+        PageToken after = items.isEmpty() ? token : AuditRepository.tokenAfter(items.get(items.size() - 1));
+        try {
+            Page<AuditEvent> cold = auditArchiveRepository.search(query, cap - items.size(), after);
+            List<AuditEvent> merged = new ArrayList<>(items.size() + cold.items().size());
+            merged.addAll(items);
+            merged.addAll(cold.items());
+            return Page.of(merged, cold.nextPageToken());
+        } catch (Exception e) {
+            log.error("Audit archive search failed: {}", e.toString());
+            return hot;
         }
     }
 
@@ -0,0 +1,64 @@
+package varga.kirka.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import varga.kirka.model.Job;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Background variant of the {@link GdprService} hard deletes, submitted through
+ * {@link GdprService#submitHardDelete} once the caller has been authorized. An experiment
+ * purge checkpoints its totals as it goes, so a resumed job only lists the runs that are
+ * still there and still reports the totals of the whole erasure. An erasure that leaves
+ * failures behind is retried like any transient error.
+ */
+@Component
+@RequiredArgsConstructor
+public class GdprHardDeleteJob implements JobHandler {
+
+    public static final String TYPE = "gdpr-hard-delete";
+    static final String PARAM_RESOURCE_TYPE = "resource_type";
+    static final String PARAM_RESOURCE_ID = "resource_id";
+    static final String PARAM_ARTIFACT_ROOT = "artifact_root";
+
+    private static final String RUNS_DELETED = "runs_deleted";
+    private static final String ARTIFACTS_DELETED = "artifacts_deleted";
+
+    private final GdprService gdprService;
+
+    @Override
+    public String type() {
+        return TYPE;
+    }
+
+    @Override
+    public Map<String, String> run(Job job, Context context) throws IOException {
+        String resourceType = job.getParams().get(PARAM_RESOURCE_TYPE);
+        String resourceId = job.getParams().get(PARAM_RESOURCE_ID);
+        GdprService.DeletionReport report = switch (resourceType) {
+            case "experiment" -> gdprService.purgeExperiment(resourceId,
+                    job.getParams().get(PARAM_ARTIFACT_ROOT),
+                    Integer.parseInt(context.checkpoint().getOrDefault(RUNS_DELETED, "0")),
+                    Integer.parseInt(context.checkpoint().getOrDefault(ARTIFACTS_DELETED, "0")),
+                    (runs, artifacts, remaining) -> context.checkpoint(
+                            Map.of(RUNS_DELETED, String.valueOf(runs), ARTIFACTS_DELETED, String.valueOf(artifacts)),
+                            runs, (long) runs + remaining));
+            case "run" -> gdprService.purgeRun(resourceId);
+            case "registered-model" -> gdprService.purgeRegisteredModel(resourceId);
+            default -> throw new IllegalArgumentException("Unsupported resource_type: " + resourceType);
+        };
+        if (!report.failures().isEmpty()) {
+            // Retried from the checkpoint: only the runs that are still there get listed again.
+            Map.Entry<String, String> first = report.failures().entrySet().iterator().next();
+            throw new IOException(report.failures().size() + " item(s) of " + resourceType + " " + resourceId
+                    + " could not be erased, e.g. " + first.getKey() + ": " + first.getValue());
+        }
+        return Map.of(
+                "resource_type", report.resourceType(),
+                "resource_id", report.resourceId(),
+                "child_rows_deleted", String.valueOf(report.childRowsDeleted()),
+                "artifact_paths_deleted", String.valueOf(report.artifactPathsDeleted()));
+    }
+}
@@ -1,7 +1,8 @@
 package varga.kirka.service;
 
-import lombok.RequiredArgsConstructor;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import varga.kirka.model.Experiment;
 import varga.kirka.model.ModelVersion;
@@ -13,8 +14,20 @@ import varga.kirka.repo.RunRepository;
 import varga.kirka.security.SecurityContextHelper;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * GDPR "right to erasure" implementation. Every entry point:
@@ -33,17 +46,68 @@ import java.util.Map;
  * token equals the resource identifier: purging experiment {@code exp-42} requires
  * {@code X-Kirka-Confirm-Hard-Delete: exp-42}. This is not a security control — the admin
  * role is — but a cheap way to stop {@code curl ... /hard-delete} from nuking the wrong row.
+ *
+ * <p>An experiment's runs are erased {@code purge.parallelism} at a time on a shared pool:
+ * artifact trees are deleted concurrently, paced to {@code purge.hdfs-deletes-per-second} to
+ * spare the NameNode, and HBase deletes go through a {@link RunRepository.RunPurger}. A run
+ * that cannot be erased is reported in {@link DeletionReport#failures()} and the cascade
+ * carries on. HBase rows are only removed once the files they point at are gone, and the
+ * experiment row only once all its runs are, so a partial erasure can simply be retried.
  */
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class GdprService {
 
+    /** How often an experiment purge flushes its HBase deletes and reports progress. */
+    private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
     private final ExperimentRepository experimentRepository;
     private final RunRepository runRepository;
     private final ModelRegistryRepository modelRegistryRepository;
     private final ArtifactService artifactService;
     private final SecurityContextHelper securityContextHelper;
+    private final ModelResolutionCache resolutionCache;
+    private final JobService jobService;
+    private final int parallelism;
+    private final long hdfsDeleteIntervalNanos;
+    private final long writeBufferBytes;
+    private final ExecutorService purgeExecutor;
+
+    private final Object hdfsPaceLock = new Object();
+    private long nextHdfsDeleteNanos;
+
+    public GdprService(ExperimentRepository experimentRepository,
+                       RunRepository runRepository,
+                       ModelRegistryRepository modelRegistryRepository,
+                       ArtifactService artifactService,
+                       SecurityContextHelper securityContextHelper,
+                       ModelResolutionCache resolutionCache,
+                       JobService jobService,
+                       @Value("${kirka.gdpr.purge.parallelism:8}") int parallelism,
+                       @Value("${kirka.gdpr.purge.hdfs-deletes-per-second:50}") int hdfsDeletesPerSecond,
+                       @Value("${kirka.gdpr.purge.write-buffer-bytes:4194304}") long writeBufferBytes) {
+        this.experimentRepository = experimentRepository;
+        this.runRepository = runRepository;
+        this.modelRegistryRepository = modelRegistryRepository;
+        this.artifactService = artifactService;
+        this.securityContextHelper = securityContextHelper;
+        this.resolutionCache = resolutionCache;
+        this.jobService = jobService;
+        this.parallelism = Math.max(1, parallelism);
+        this.hdfsDeleteIntervalNanos = hdfsDeletesPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / hdfsDeletesPerSecond : 0L;
+        this.writeBufferBytes = writeBufferBytes;
+        AtomicInteger threads = new AtomicInteger();
+        this.purgeExecutor = Executors.newFixedThreadPool(this.parallelism, r -> {
+            Thread t = new Thread(r, "kirka-gdpr-purge-" + threads.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        purgeExecutor.shutdownNow();
+    }
 
     /**
      * Erases an experiment and every artefact linked to it: child runs (each with their full
@@ -52,98 +116,246 @@ public class GdprService {
      * record of the operator intent.
      */
     public DeletionReport hardDeleteExperiment(String experimentId) throws IOException {
-        Experiment experiment = experimentRepository.getExperiment(experimentId);
-        if (experiment == null) {
-            throw new ResourceNotFoundException("Experiment", experimentId);
+        Experiment experiment = authorizedExperiment(experimentId);
+        return purgeExperiment(experimentId, experiment.getArtifactLocation(), 0, 0, PurgeProgress.NONE);
+    }
+
+    /**
+     * Checks the caller may erase the given resource and submits the erasure as a background
+     * {@link GdprHardDeleteJob}, returning its job id. Used for experiments with too many runs
+     * to purge within an HTTP request.
+     */
+    public String submitHardDelete(String resourceType, String resourceId) throws IOException {
+        Map<String, String> params = new java.util.HashMap<>();
+        params.put(GdprHardDeleteJob.PARAM_RESOURCE_TYPE, resourceType);
+        params.put(GdprHardDeleteJob.PARAM_RESOURCE_ID, resourceId);
+        switch (resourceType) {
+            case "experiment" -> {
+                // Kept with the job, read once while the experiment is authorized. The purge removes
+                // the artifact root before the experiment row, but a retry of a job that stopped
+                // after deleting the row could no longer look the root up.
+                String artifactRoot = authorizedExperiment(resourceId).getArtifactLocation();
+                if (artifactRoot != null) params.put(GdprHardDeleteJob.PARAM_ARTIFACT_ROOT, artifactRoot);
+            }
+            case "run" -> authorizedRun(resourceId);
+            case "registered-model" -> authorizedModel(resourceId);
+            default -> throw new IllegalArgumentException("Unsupported resource_type: " + resourceType);
         }
-        Map<String, String> tagsMap = securityContextHelper.tagsToMap(
-                experiment.getTags(),
-                varga.kirka.model.ExperimentTag::getKey,
-                varga.kirka.model.ExperimentTag::getValue);
-        securityContextHelper.checkDeleteAccess("experiment", experimentId, experiment.getOwner(), tagsMap);
+        String jobId = jobService.submit(GdprHardDeleteJob.TYPE, params);
+        log.warn("GDPR hard-delete submitted as job {}: type={} id={}", jobId, resourceType, resourceId);
+        return jobId;
+    }
 
-        List<String> runIds = runRepository.findRunIdsForExperiment(experimentId);
-        int artifactsDeleted = 0;
-        int runsDeleted = 0;
-        for (String runId : runIds) {
-            artifactsDeleted += hardDeleteRunInternal(runId, false);
-            runsDeleted++;
+    /** Receives the running totals of an experiment purge after each deleted run. */
+    @FunctionalInterface
+    public interface PurgeProgress {
+        PurgeProgress NONE = (runsDeleted, artifactsDeleted, runsRemaining) -> { };
+
+        void runDeleted(int runsDeleted, int artifactsDeleted, int runsRemaining) throws IOException;
+    }
+
+    /**
+     * Erases an experiment already authorized by the caller. Counts start from
+     * {@code runsDeleted} and {@code artifactsDeleted} so that a resumed purge reports the
+     * totals of the whole erasure; runs removed by an earlier attempt are simply no longer
+     * listed. {@code progress} is called on this thread, about once a second, after the
+     * deletes counted so far have been flushed to HBase.
+     */
+    DeletionReport purgeExperiment(String experimentId, String artifactRoot, int runsDeleted,
+                                   int artifactsDeleted, PurgeProgress progress) throws IOException {
+        List<RunRepository.PurgeTarget> targets = runRepository.findPurgeTargetsForExperiment(experimentId);
+        Map<String, String> failures = new TreeMap<>();
+        int remaining = targets.size();
+        try (RunRepository.RunPurger purger = runRepository.openRunPurger(writeBufferBytes)) {
+            CompletionService<Integer> completion = new ExecutorCompletionService<>(purgeExecutor);
+            Map<Future<Integer>, String> inFlight = new HashMap<>();
+            Iterator<RunRepository.PurgeTarget> pending = targets.iterator();
+            long lastProgress = System.nanoTime();
+            try {
+                while (pending.hasNext() || !inFlight.isEmpty()) {
+                    // Keep the pool busy without queueing every run of a huge experiment up front.
+                    while (pending.hasNext() && inFlight.size() < 2 * parallelism) {
+                        RunRepository.PurgeTarget target = pending.next();
+                        inFlight.put(completion.submit(() -> purgeTarget(purger, target)), target.runId());
+                    }
+                    Future<Integer> done = take(completion);
+                    String runId = inFlight.remove(done);
+                    remaining--;
+                    try {
+                        artifactsDeleted += done.get();
+                        runsDeleted++;
+                    } catch (ExecutionException e) {
+                        failures.put(runId, String.valueOf(e.getCause()));
+                        log.warn("GDPR hard-delete: run {} of experiment {} could not be erased: {}",
+                                runId, experimentId, e.getCause().toString());
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while erasing experiment " + experimentId);
+                    }
+                    if (System.nanoTime() - lastProgress >= PROGRESS_INTERVAL_NANOS) {
+                        runsDeleted -= flushAndCollectFailures(purger, failures);
+                        progress.runDeleted(runsDeleted, artifactsDeleted, remaining);
+                        lastProgress = System.nanoTime();
+                    }
+                }
+                runsDeleted -= flushAndCollectFailures(purger, failures);
+            } finally {
+                inFlight.keySet().forEach(f -> f.cancel(true));
+            }
         }
-        experimentRepository.hardDeleteExperiment(experimentId);
 
-        // Wipe the artifact root for the experiment if the service stored one
-        String artifactRoot = experiment.getArtifactLocation();
-        if (artifactRoot != null && !artifactRoot.isBlank()) {
+        if (failures.isEmpty() && artifactRoot != null && !artifactRoot.isBlank()) {
             try {
+                paceHdfsDelete();
                 artifactService.deleteArtifact(artifactRoot);
                 artifactsDeleted++;
             } catch (IOException e) {
-                // The experiment row is already gone; don't rollback on an HDFS glitch.
-                log.warn("Experiment {} purged from HBase but artifact root {} could not be removed: {}",
-                        experimentId, artifactRoot, e.toString());
+                failures.put(artifactRoot, e.toString());
             }
         }
+        if (failures.isEmpty()) {
+            experimentRepository.hardDeleteExperiment(experimentId);
+        }
 
-        log.warn("GDPR hard-delete: experiment={} runs={} artifactsDeleted={}",
-                experimentId, runsDeleted, artifactsDeleted);
-        return new DeletionReport("experiment", experimentId, runsDeleted, artifactsDeleted);
+        log.warn("GDPR hard-delete: experiment={} runs={} artifactsDeleted={} failures={}",
+                experimentId, runsDeleted, artifactsDeleted, failures.size());
+        return new DeletionReport("experiment", experimentId, runsDeleted, artifactsDeleted, failures);
     }
 
-    public DeletionReport hardDeleteRun(String runId) throws IOException {
-        Run run = runRepository.getRun(runId);
-        if (run == null) {
-            throw new ResourceNotFoundException("Run", runId);
+    /** Deletes the artifacts of one run, then queues its rows; returns the artifact paths removed. */
+    private int purgeTarget(RunRepository.RunPurger purger, RunRepository.PurgeTarget target) throws IOException {
+        int deleted = 0;
+        String artifactUri = target.artifactUri();
+        if (artifactUri != null && !artifactUri.isBlank()) {
+            paceHdfsDelete();
+            artifactService.deleteArtifact(artifactUri);
+            deleted = 1;
         }
-        Map<String, String> tagsMap = runTagsAsMap(run);
-        securityContextHelper.checkDeleteAccess("run", runId,
-                run.getInfo() != null ? run.getInfo().getUserId() : null, tagsMap);
-        int artifactsDeleted = hardDeleteRunInternal(runId, true);
-        log.warn("GDPR hard-delete: run={} artifactsDeleted={}", runId, artifactsDeleted);
-        return new DeletionReport("run", runId, 0, artifactsDeleted);
+        purger.purge(target.runId());
+        return deleted;
     }
 
-    /** Returns the number of artefact paths removed so the caller can report it. */
-    private int hardDeleteRunInternal(String runId, boolean enforceAuthz) throws IOException {
-        Run run = runRepository.getRun(runId);
-        if (run == null) return 0;
-        if (enforceAuthz) {
-            securityContextHelper.checkDeleteAccess("run", runId,
-                    run.getInfo() != null ? run.getInfo().getUserId() : null, runTagsAsMap(run));
+    /**
+     * Flushes the purger and moves runs whose buffered deletes were given up into
+     * {@code failures}; returns how many of them had been counted as deleted.
+     */
+    private static int flushAndCollectFailures(RunRepository.RunPurger purger, Map<String, String> failures)
+            throws IOException {
+        purger.flush();
+        int uncounted = 0;
+        for (String runId : purger.failedRunIds()) {
+            if (failures.putIfAbsent(runId, "HBase delete failed after retries") == null) uncounted++;
         }
-        int deleted = 0;
+        return uncounted;
+    }
+
+    private static Future<Integer> take(CompletionService<Integer> completion) throws InterruptedIOException {
+        try {
+            return completion.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for run deletions");
+        }
+    }
+
+    /** Spaces HDFS deletes across all purges of this node to {@code hdfs-deletes-per-second}. */
+    private void paceHdfsDelete() throws InterruptedIOException {
+        if (hdfsDeleteIntervalNanos == 0) return;
+        long wait;
+        synchronized (hdfsPaceLock) {
+            long now = System.nanoTime();
+            long slot = Math.max(now, nextHdfsDeleteNanos);
+            nextHdfsDeleteNanos = slot + hdfsDeleteIntervalNanos;
+            wait = slot - now;
+        }
+        if (wait > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while pacing HDFS deletes");
+            }
+        }
+    }
+
+    public DeletionReport hardDeleteRun(String runId) throws IOException {
+        authorizedRun(runId);
+        return purgeRun(runId);
+    }
+
+    /**
+     * Erases a run already authorized by the caller; a missing run is not an error. If its
+     * artifacts cannot be removed the run row is kept, so the erasure can be retried.
+     */
+    DeletionReport purgeRun(String runId) throws IOException {
+        Run run = runRepository.getRun(runId);
+        if (run == null) return new DeletionReport("run", runId, 0, 0);
+        int artifactsDeleted = 0;
         String artifactUri = run.getInfo() != null ? run.getInfo().getArtifactUri() : null;
         if (artifactUri != null && !artifactUri.isBlank()) {
             try {
                 artifactService.deleteArtifact(artifactUri);
-                deleted = 1;
+                artifactsDeleted = 1;
             } catch (IOException e) {
                 log.warn("Artifact root {} could not be removed for run {}: {}", artifactUri, runId, e.toString());
+                return new DeletionReport("run", runId, 0, 0, Map.of(runId, e.toString()));
             }
         }
         runRepository.hardDeleteRun(runId);
-        return deleted;
+        log.warn("GDPR hard-delete: run={} artifactsDeleted={}", runId, artifactsDeleted);
+        return new DeletionReport("run", runId, 0, artifactsDeleted);
     }
 
     public DeletionReport hardDeleteRegisteredModel(String name) throws IOException {
-        RegisteredModel model = modelRegistryRepository.getRegisteredModel(name);
-        if (model == null) {
-            throw new ResourceNotFoundException("RegisteredModel", name);
-        }
-        Map<String, String> tagsMap = modelTagsAsMap(model);
-        securityContextHelper.checkDeleteAccess("model", name, model.getUserId(), tagsMap);
+        authorizedModel(name);
+        return purgeRegisteredModel(name);
+    }
 
+    /** Erases a registered model already authorized by the caller; repeating it is harmless. */
+    DeletionReport purgeRegisteredModel(String name) throws IOException {
         int versionsDeleted = 0;
-        if (model.getLatestVersions() != null) {
-            for (ModelVersion v : model.getLatestVersions()) {
-                modelRegistryRepository.deleteModelVersion(v.getName(), v.getVersion());
-                versionsDeleted++;
-            }
+        for (ModelVersion v : modelRegistryRepository.getVersions(name)) {
+            modelRegistryRepository.deleteModelVersion(v.getName(), v.getVersion());
+            versionsDeleted++;
         }
         modelRegistryRepository.deleteRegisteredModel(name);
+        resolutionCache.invalidate(name);
         log.warn("GDPR hard-delete: model={} versionsDeleted={}", name, versionsDeleted);
         return new DeletionReport("registered-model", name, versionsDeleted, 0);
     }
 
+    private Experiment authorizedExperiment(String experimentId) throws IOException {
+        Experiment experiment = experimentRepository.getExperiment(experimentId);
+        if (experiment == null) {
+            throw new ResourceNotFoundException("Experiment", experimentId);
+        }
+        Map<String, String> tagsMap = securityContextHelper.tagsToMap(
+                experiment.getTags(),
+                varga.kirka.model.ExperimentTag::getKey,
+                varga.kirka.model.ExperimentTag::getValue);
+        securityContextHelper.checkDeleteAccess("experiment", experimentId, experiment.getOwner(), tagsMap);
+        return experiment;
+    }
+
+    private Run authorizedRun(String runId) throws IOException {
+        Run run = runRepository.getRun(runId);
+        if (run == null) {
+            throw new ResourceNotFoundException("Run", runId);
+        }
+        securityContextHelper.checkDeleteAccess("run", runId,
+                run.getInfo() != null ? run.getInfo().getUserId() : null, runTagsAsMap(run));
+        return run;
+    }
+
+    private RegisteredModel authorizedModel(String name) throws IOException {
+        RegisteredModel model = modelRegistryRepository.getRegisteredModel(name);
+        if (model == null) {
+            throw new ResourceNotFoundException("RegisteredModel", name);
+        }
+        securityContextHelper.checkDeleteAccess("model", name, model.getUserId(), modelTagsAsMap(model));
+        return model;
+    }
+
     private static Map<String, String> runTagsAsMap(Run run) {
         if (run == null || run.getData() == null || run.getData().getTags() == null) return Map.of();
         Map<String, String> out = new java.util.HashMap<>();
@@ -158,7 +370,17 @@ public class GdprService {
         return out;
     }
 
-    /** Immutable record returned by the hard-delete API so operators can log the outcome. */
+    /**
+     * Immutable record returned by the hard-delete API so operators can log the outcome.
+     * {@code failures} maps each run id (or artifact path) that could not be erased to the
+     * reason; a non-empty map means the erasure is incomplete and should be retried.
+     */
     public record DeletionReport(String resourceType, String resourceId,
-                                 int childRowsDeleted, int artifactPathsDeleted) {}
+                                 int childRowsDeleted, int artifactPathsDeleted,
+                                 Map<String, String> failures) {
+
+        public DeletionReport(String resourceType, String resourceId, int childRowsDeleted, int artifactPathsDeleted) {
+            this(resourceType, resourceId, childRowsDeleted, artifactPathsDeleted, Map.of());
+        }
+    }
 }
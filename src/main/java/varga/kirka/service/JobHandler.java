@@ -0,0 +1,39 @@
+package varga.kirka.service;
+
+import varga.kirka.model.Job;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * One kind of background job run by {@link JobService}. Handlers run on a worker thread with
+ * no security context: the submitter is authorized when the job is created, not when it runs.
+ *
+ * <p>A job may be started more than once — after a pod restart, a lost lease or a transient
+ * failure — so {@link #run} must be safe to repeat and should resume from
+ * {@link Context#checkpoint()} rather than start over.
+ */
+public interface JobHandler {
+
+    /** Value of {@link Job#getType()} this handler runs. */
+    String type();
+
+    /**
+     * Runs (or resumes) {@code job} and returns its result. A {@link RuntimeException} (e.g.
+     * {@link ResourceNotFoundException}) fails the job for good; an {@link IOException} is
+     * treated as transient and the job is retried from its last checkpoint.
+     */
+    Map<String, String> run(Job job, Context context) throws IOException;
+
+    interface Context {
+
+        /** Resume state saved by the last {@link #checkpoint(Map, long, long)}, empty on a first run. */
+        Map<String, String> checkpoint();
+
+        /**
+         * Persists resume state and progress, and extends the worker's lease. Throws if another
+         * node has taken the job over, which aborts this run.
+         */
+        void checkpoint(Map<String, String> state, long completed, long total) throws IOException;
+    }
+}
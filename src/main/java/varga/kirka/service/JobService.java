@@ -0,0 +1,319 @@
+package varga.kirka.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import varga.kirka.model.Job;
+import varga.kirka.model.JobStatus;
+import varga.kirka.repo.JobRepository;
+import varga.kirka.security.SecurityContextHelper;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs operations too long for an HTTP request — renaming a model with thousands of versions,
+ * erasing an experiment with all its runs and artifacts — on a bounded worker pool, with their
+ * state in HBase ({@link JobRepository}) so that any node can report on them and pick them up
+ * again after a restart.
+ *
+ * <p>{@link #submit} stores the job and hands it to the local pool if it has room; otherwise
+ * the job waits in HBase. Every {@code sweep-interval-ms} each node renews the leases of the
+ * jobs it is running and claims jobs whose lease has expired: not yet started, released after
+ * a transient failure, or abandoned by a node that died. A resumed job starts from the last
+ * checkpoint its handler saved. A job that keeps failing transiently is given up after
+ * {@code max-attempts} runs.
+ *
+ * <p>Outcomes are counted on {@code kirka.jobs.finished} (tagged by type and status) and
+ * jobs in flight on this node on {@code kirka.jobs.running}. Finished jobs are deleted after
+ * {@code retention-ms}.
+ */
+@Slf4j
+@Service
+public class JobService {
+
+    private static final long PURGE_INTERVAL_MS = 60 * 60 * 1000L;
+
+    /** A checkpoint was refused because another node holds the job now. */
+    private static final class LeaseLostException extends IOException {
+        LeaseLostException(String jobId) {
+            super("Lease on job " + jobId + " was lost to another node");
+        }
+    }
+
+    private final JobRepository jobRepository;
+    private final ObjectProvider<JobHandler> handlerProvider;
+    private final SecurityContextHelper securityContextHelper;
+    private final MeterRegistry meterRegistry;
+    private final int workers;
+    private final long leaseMs;
+    private final int maxAttempts;
+    private final long retryDelayMs;
+    private final long retentionMs;
+
+    private final String node;
+    private final ThreadPoolExecutor executor;
+    private final Map<String, Job> running = new ConcurrentHashMap<>();
+    private volatile Map<String, JobHandler> handlers;
+    private volatile long lastPurgeMs;
+
+    public JobService(JobRepository jobRepository,
+                      ObjectProvider<JobHandler> handlerProvider,
+                      SecurityContextHelper securityContextHelper,
+                      MeterRegistry meterRegistry,
+                      @Value("${kirka.jobs.workers:2}") int workers,
+                      @Value("${kirka.jobs.queue-capacity:16}") int queueCapacity,
+                      @Value("${kirka.jobs.lease-ms:120000}") long leaseMs,
+                      @Value("${kirka.jobs.max-attempts:5}") int maxAttempts,
+                      @Value("${kirka.jobs.retry-delay-ms:60000}") long retryDelayMs,
+                      @Value("${kirka.jobs.retention-ms:604800000}") long retentionMs) {
+        this.jobRepository = jobRepository;
+        this.handlerProvider = handlerProvider;
+        this.securityContextHelper = securityContextHelper;
+        this.meterRegistry = meterRegistry;
+        this.workers = Math.max(1, workers);
+        this.leaseMs = Math.max(1000L, leaseMs);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryDelayMs = Math.max(0L, retryDelayMs);
+        this.retentionMs = retentionMs;
+        this.node = nodeName();
+
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(this.workers, this.workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), r -> {
+                    Thread t = new Thread(r, "kirka-job-" + threads.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        Gauge.builder("kirka.jobs.running", running, Map::size)
+                .description("Background jobs running or queued on this node")
+                .tag("service", "kirka")
+                .register(meterRegistry);
+    }
+
+    private static String nodeName() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (IOException e) {
+            host = "unknown";
+        }
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    @PreDestroy
+    void stop() {
+        // Running jobs keep their lease until it expires, then another node resumes them.
+        executor.shutdownNow();
+    }
+
+    /**
+     * Creates a job of {@code type} owned by the current user and starts it if this node has
+     * a free worker. Callers must have authorized the operation already. Returns the job id.
+     */
+    public String submit(String type, Map<String, String> params) throws IOException {
+        if (!handlers().containsKey(type)) {
+            throw new IllegalArgumentException("Unknown job type: " + type);
+        }
+        long now = System.currentTimeMillis();
+        Job job = Job.builder()
+                .jobId(UUID.randomUUID().toString())
+                .type(type)
+                .status(JobStatus.PENDING)
+                .owner(securityContextHelper.getCurrentUser())
+                .params(Map.copyOf(params))
+                .checkpoint(Map.of())
+                .creationTimestamp(now)
+                .lastUpdatedTimestamp(now)
+                .build();
+        jobRepository.create(job);
+        log.info("Job {} submitted: type={} owner={} params={}", job.getJobId(), type, job.getOwner(), params);
+        dispatch(job);
+        return job.getJobId();
+    }
+
+    /**
+     * Takes the cluster-wide lease {@code name} for {@code lease-ms}, for work outside jobs that
+     * only one node may do at a time. Returns whether this node holds it.
+     */
+    public boolean tryLease(String name) throws IOException {
+        long now = System.currentTimeMillis();
+        return jobRepository.tryLease(name, node, now, now + leaseMs);
+    }
+
+    /** Extends a lease taken with {@link #tryLease} by {@code lease-ms}; {@code false} if it was lost. */
+    public boolean renewLease(String name) throws IOException {
+        return jobRepository.extendLease(name, node, System.currentTimeMillis() + leaseMs);
+    }
+
+    /** Gives up a lease taken with {@link #tryLease}; one that cannot be released lapses after {@code lease-ms}. */
+    public void releaseLease(String name) {
+        try {
+            jobRepository.releaseLease(name, node);
+        } catch (IOException e) {
+            log.warn("Failed to release lease {}; it lapses on its own: {}", name, e.toString());
+        }
+    }
+
+    /** Returns a job, provided the current user submitted it or may read it as an admin. */
+    public Job getJob(String jobId) throws IOException {
+        Job job = jobRepository.get(jobId);
+        if (job == null) {
+            throw new ResourceNotFoundException("Job", jobId);
+        }
+        securityContextHelper.checkReadAccess("job", jobId, job.getOwner(), Map.of());
+        return job;
+    }
+
+    /** Renews the leases of local jobs, claims abandoned ones and purges old finished ones. */
+    @Scheduled(fixedDelayString = "${kirka.jobs.sweep-interval-ms:15000}",
+               initialDelayString = "${kirka.jobs.sweep-initial-delay-ms:15000}")
+    public void sweep() {
+        long now = System.currentTimeMillis();
+        for (String jobId : running.keySet()) {
+            try {
+                if (!jobRepository.renewLease(jobId, node, now + leaseMs)) {
+                    log.warn("Job {} was taken over by another node; its next checkpoint on this node will abort", jobId);
+                }
+            } catch (IOException e) {
+                log.warn("Failed to renew the lease of job {}: {}", jobId, e.toString());
+            }
+        }
+        try {
+            int free = freeSlots();
+            if (free > 0) {
+                for (Job job : jobRepository.findClaimable(now, free)) {
+                    if (!running.containsKey(job.getJobId())) dispatch(job);
+                }
+            }
+            if (retentionMs > 0 && now - lastPurgeMs >= PURGE_INTERVAL_MS) {
+                lastPurgeMs = now;
+                int purged = jobRepository.deleteFinishedBefore(now - retentionMs);
+                if (purged > 0) log.info("Purged {} finished jobs older than {} ms", purged, retentionMs);
+            }
+        } catch (IOException e) {
+            log.error("Failed to sweep background jobs", e);
+        }
+    }
+
+    private int freeSlots() {
+        return workers - executor.getActiveCount() + executor.getQueue().remainingCapacity();
+    }
+
+    /** Claims {@code observed} for this node and queues it; leaves it in HBase if the pool is full. */
+    private void dispatch(Job observed) throws IOException {
+        if (executor.getQueue().remainingCapacity() == 0) return;
+        Job job = jobRepository.tryClaim(observed, node, System.currentTimeMillis() + leaseMs);
+        if (job == null) return;
+        running.put(job.getJobId(), job);
+        try {
+            executor.execute(() -> execute(job));
+        } catch (RejectedExecutionException e) {
+            running.remove(job.getJobId());
+            jobRepository.release(job.getJobId(), node, "Worker pool full", System.currentTimeMillis());
+        }
+    }
+
+    private void execute(Job job) {
+        String jobId = job.getJobId();
+        try {
+            JobHandler handler = handlers().get(job.getType());
+            if (handler == null) {
+                // Submitted by a node running a newer version: leave it for one that knows the type.
+                jobRepository.release(jobId, node, "No handler for job type " + job.getType() + " on " + node,
+                        System.currentTimeMillis() + retryDelayMs);
+                return;
+            }
+            log.info("Job {} started: type={} attempt={}", jobId, job.getType(), job.getAttempts());
+            Map<String, String> result = handler.run(job, new LeasedContext(job));
+            finish(job, JobStatus.SUCCEEDED, result, null);
+        } catch (LeaseLostException e) {
+            log.warn("Job {} abandoned on this node: {}", jobId, e.getMessage());
+        } catch (IOException e) {
+            if (job.getAttempts() >= maxAttempts) {
+                finish(job, JobStatus.FAILED, null, e.toString());
+            } else {
+                log.warn("Job {} failed on attempt {}, will retry: {}", jobId, job.getAttempts(), e.toString());
+                try {
+                    jobRepository.release(jobId, node, e.toString(), System.currentTimeMillis() + retryDelayMs);
+                } catch (IOException releaseFailure) {
+                    log.warn("Failed to release job {}; it will be retried when its lease expires", jobId);
+                }
+            }
+        } catch (RuntimeException e) {
+            finish(job, JobStatus.FAILED, null, e.getMessage() != null ? e.getMessage() : e.toString());
+        } finally {
+            running.remove(jobId);
+        }
+    }
+
+    private void finish(Job job, JobStatus status, Map<String, String> result, String error) {
+        try {
+            if (jobRepository.finish(job.getJobId(), node, status, result, error)) {
+                Counter.builder("kirka.jobs.finished")
+                        .description("Background jobs finished, by type and final status")
+                        .tag("service", "kirka")
+                        .tag("type", job.getType())
+                        .tag("status", status.name())
+                        .register(meterRegistry)
+                        .increment();
+                log.info("Job {} {}: type={} attempts={}{}", job.getJobId(), status, job.getType(), job.getAttempts(),
+                        error != null ? " error=" + error : "");
+            }
+        } catch (IOException e) {
+            // The lease expires and the job runs again; handlers are idempotent.
+            log.warn("Failed to record the outcome of job {}: {}", job.getJobId(), e.toString());
+        }
+    }
+
+    private Map<String, JobHandler> handlers() {
+        Map<String, JobHandler> h = handlers;
+        if (h == null) {
+            h = new HashMap<>();
+            for (JobHandler handler : handlerProvider.orderedStream().toList()) {
+                h.put(handler.type(), handler);
+            }
+            handlers = h;
+        }
+        return h;
+    }
+
+    private final class LeasedContext implements JobHandler.Context {
+        private final Job job;
+
+        LeasedContext(Job job) {
+            this.job = job;
+        }
+
+        @Override
+        public Map<String, String> checkpoint() {
+            return job.getCheckpoint() != null ? job.getCheckpoint() : Map.of();
+        }
+
+        @Override
+        public void checkpoint(Map<String, String> state, long completed, long total) throws IOException {
+            if (!jobRepository.checkpoint(job.getJobId(), node, state, completed, total,
+                    System.currentTimeMillis() + leaseMs)) {
+                throw new LeaseLostException(job.getJobId());
+            }
+            job.setCheckpoint(Map.copyOf(state));
+            job.setCompleted(completed);
+            job.setTotal(total);
+        }
+    }
+}
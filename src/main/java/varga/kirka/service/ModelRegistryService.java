@@ -17,17 +17,26 @@ import java.util.stream.Collectors;
 public class ModelRegistryService {
 
     private static final String RESOURCE_TYPE = "model";
+    private static final int MAX_VERSION_ALLOCATION_ATTEMPTS = 5;
 
     private final ModelRegistryRepository modelRegistryRepository;
 
     private final SecurityContextHelper securityContextHelper;
 
+    private final ModelResolutionCache resolutionCache;
+
+    private final JobService jobService;
+
+    private final WebhookDispatcher webhookDispatcher;
+
     public void createRegisteredModel(String name) throws IOException {
         log.info("Creating registered model: {}", name);
         if (name == null || name.isBlank()) {
             throw new IllegalArgumentException("Model name must not be empty");
         }
         modelRegistryRepository.createRegisteredModel(name);
+        resolutionCache.invalidate(name);
+        publish(event(RegistryEvent.REGISTERED_MODEL_CREATED, name));
     }
 
     public RegisteredModel getRegisteredModel(String name) throws IOException {
@@ -76,43 +85,53 @@ public class ModelRegistryService {
         Map<String, String> tagsMap = getModelTagsMap(model);
         securityContextHelper.checkWriteAccess(RESOURCE_TYPE, name, model.getUserId(), tagsMap);
 
-        int versionNum = 1;
-        if (model.getLatestVersions() != null) {
-            versionNum = model.getLatestVersions().size() + 1;
+        // The number comes from the model's atomic counter and the row is only inserted if that
+        // number is free, so concurrent requests never overwrite each other's version. A number
+        // can only be taken already if a row was written behind the counter's back.
+        for (int attempt = 1; ; attempt++) {
+            String number = modelRegistryRepository.allocateModelVersion(name);
+            if (number == null) {
+                throw new ResourceNotFoundException("RegisteredModel", name);
+            }
+            ModelVersion version = ModelVersion.builder()
+                    .name(name)
+                    .version(number)
+                    .creationTimestamp(System.currentTimeMillis())
+                    .currentStage("None")
+                    .source(source)
+                    .runId(runId)
+                    .status(ModelVersionStatus.READY)
+                    .build();
+            if (modelRegistryRepository.createModelVersionIfAbsent(version)) {
+                resolutionCache.invalidate(name);
+                publish(event(RegistryEvent.MODEL_VERSION_CREATED, name).version(version.getVersion()));
+                return version;
+            }
+            if (attempt >= MAX_VERSION_ALLOCATION_ATTEMPTS) {
+                throw new IOException("Could not allocate a free version number for model " + name);
+            }
+            log.warn("Version {} of model {} already exists, allocating the next one", version.getVersion(), name);
         }
-
-        ModelVersion version = ModelVersion.builder()
-                .name(name)
-                .version(String.valueOf(versionNum))
-                .creationTimestamp(System.currentTimeMillis())
-                .currentStage("None")
-                .source(source)
-                .runId(runId)
-                .status(ModelVersionStatus.READY)
-                .build();
-
-        modelRegistryRepository.createModelVersion(version);
-        return version;
     }
 
-    public List<RegisteredModel> searchRegisteredModels(String filter) throws IOException {
-        List<RegisteredModel> all = modelRegistryRepository.listRegisteredModels();
-
-        List<RegisteredModel> accessible = all.stream()
-                .filter(model -> {
-                    Map<String, String> tagsMap = getModelTagsMap(model);
-                    return securityContextHelper.canRead(RESOURCE_TYPE, model.getName(), model.getUserId(), tagsMap);
-                })
-                .collect(Collectors.toList());
-
-        if (filter != null && !filter.isBlank()) {
-            var clauses = varga.kirka.search.FilterParser.parse(filter);
-            var evaluator = modelFilterEvaluator();
-            accessible = accessible.stream()
-                    .filter(m -> evaluator.matches(m, clauses))
-                    .collect(Collectors.toList());
-        }
-        return accessible;
+    /**
+     * One page of the registered models matching {@code filter} that the caller may read, in
+     * {@code orderBy} order ({@code name}, {@code last_updated_timestamp}; default
+     * {@code name ASC}). Filters on {@code name} are pushed down as row ranges; authorization is
+     * applied during the scan, so pages are full.
+     */
+    public varga.kirka.repo.Page<RegisteredModel> searchRegisteredModels(String filter, Integer maxResults,
+                                                                       String pageToken, String orderBy) throws IOException {
+        var clauses = varga.kirka.search.FilterParser.parse(filter);
+        var evaluator = modelFilterEvaluator();
+        var order = varga.kirka.repo.RegistryOrder.parse(orderBy, false);
+        return modelRegistryRepository.searchRegisteredModels(
+                varga.kirka.search.NameKeyPlan.of(clauses),
+                model -> evaluator.matches(model, clauses)
+                        && securityContextHelper.canRead(RESOURCE_TYPE, model.getName(), model.getUserId(), getModelTagsMap(model)),
+                order,
+                varga.kirka.repo.PageToken.clampPageSize(maxResults),
+                varga.kirka.repo.PageToken.decode(pageToken));
     }
 
     private static varga.kirka.search.FilterEvaluator<RegisteredModel> modelFilterEvaluator() {
@@ -149,6 +168,8 @@ public class ModelRegistryService {
         Map<String, String> tagsMap = getModelTagsMap(model);
         securityContextHelper.checkWriteAccess(RESOURCE_TYPE, name, model.getUserId(), tagsMap);
         modelRegistryRepository.updateRegisteredModel(name, description);
+        resolutionCache.invalidate(name);
+        publish(event(RegistryEvent.REGISTERED_MODEL_UPDATED, name));
     }
 
     public void deleteRegisteredModel(String name) throws IOException {
@@ -159,20 +180,46 @@ public class ModelRegistryService {
         Map<String, String> tagsMap = getModelTagsMap(model);
         securityContextHelper.checkDeleteAccess(RESOURCE_TYPE, name, model.getUserId(), tagsMap);
         modelRegistryRepository.deleteRegisteredModel(name);
+        resolutionCache.invalidate(name);
+        publish(event(RegistryEvent.REGISTERED_MODEL_DELETED, name));
     }
 
     public ModelVersion getModelVersion(String name, String version) throws IOException {
-        RegisteredModel model = modelRegistryRepository.getRegisteredModel(name);
+        readableModel(name);
+        ModelVersion mv = resolutionCache.get(name, "version:" + version,
+                () -> modelRegistryRepository.getModelVersion(name, version));
+        if (mv == null) {
+            throw new ResourceNotFoundException("ModelVersion", name + "/" + version);
+        }
+        return mv;
+    }
+
+    /**
+     * Latest version of each requested stage ({@code None}, {@code Staging}, ...), or of every
+     * stage when {@code stages} is empty. Served from the denormalized model row.
+     */
+    public List<ModelVersion> getLatestVersions(String name, List<String> stages) throws IOException {
+        RegisteredModel model = readableModel(name);
+        if (model.getLatestVersions() == null) return List.of();
+        return model.getLatestVersions().stream()
+                .filter(mv -> stages == null || stages.isEmpty()
+                        || stages.stream().anyMatch(s -> s.equalsIgnoreCase(mv.getCurrentStage())))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Model row of {@code name} for the serving read paths, through the resolution cache.
+     * Read access is checked on every call.
+     */
+    private RegisteredModel readableModel(String name) throws IOException {
+        RegisteredModel model = resolutionCache.get(name, "model",
+                () -> modelRegistryRepository.getRegisteredModel(name));
         if (model == null) {
             throw new ResourceNotFoundException("RegisteredModel", name);
         }
         Map<String, String> tagsMap = getModelTagsMap(model);
         securityContextHelper.checkReadAccess(RESOURCE_TYPE, name, model.getUserId(), tagsMap);
-        ModelVersion mv = modelRegistryRepository.getModelVersion(name, version);
-        if (mv == null) {
-            throw new ResourceNotFoundException("ModelVersion", name + "/" + version);
-        }
-        return mv;
+        return model;
     }
 
     public void updateModelVersion(String name, String version, String description) throws IOException {
@@ -183,6 +230,8 @@ public class ModelRegistryService {
         Map<String, String> tagsMap = getModelTagsMap(model);
         securityContextHelper.checkWriteAccess(RESOURCE_TYPE, name, model.getUserId(), tagsMap);
         modelRegistryRepository.updateModelVersion(name, version, description);
+        resolutionCache.invalidate(name);
+        publish(event(RegistryEvent.MODEL_VERSION_UPDATED, name).version(version));
     }
 
     public void deleteModelVersion(String name, String version) throws IOException {
@@ -193,6 +242,8 @@ public class ModelRegistryService {
         Map<String, String> tagsMap = getModelTagsMap(model);
         securityContextHelper.checkDeleteAccess(RESOURCE_TYPE, name, model.getUserId(), tagsMap);
         modelRegistryRepository.deleteModelVersion(name, version);
+        resolutionCache.invalidate(name);
+        publish(event(RegistryEvent.MODEL_VERSION_DELETED, name).version(version));
     }
 
     public ModelVersion transitionModelVersionStage(String name, String version, String stage, boolean archiveExistingVersions) throws IOException {
@@ -203,16 +254,21 @@ public class ModelRegistryService {
         Map<String, String> tagsMap = getModelTagsMap(model);
         securityContextHelper.checkWriteAccess(RESOURCE_TYPE, name, model.getUserId(), tagsMap);
 
-        if (archiveExistingVersions) {
-            List<ModelVersion> versions = modelRegistryRepository.getVersions(name);
-            for (ModelVersion v : versions) {
-                if (v.getCurrentStage().equalsIgnoreCase(stage) && !v.getVersion().equals(version)) {
-                    modelRegistryRepository.updateModelVersionStage(name, v.getVersion(), "Archived");
-                }
-            }
+        ModelRegistryRepository.StageTransition transition = modelRegistryRepository.transitionModelVersionStage(
+                name, version, stage, archiveExistingVersions);
+        resolutionCache.invalidate(name);
+        if (transition == null) {
+            throw new ResourceNotFoundException("ModelVersion", name + "/" + version);
         }
-        modelRegistryRepository.updateModelVersionStage(name, version, stage);
-        return modelRegistryRepository.getModelVersion(name, version);
+        ModelVersion transitioned = transition.version();
+        publish(event(RegistryEvent.MODEL_VERSION_STAGE_TRANSITIONED, name)
+                .version(version).stage(transitioned.getCurrentStage()));
+        // Subscribers following a stage learn that its previous versions left it.
+        for (ModelVersion archived : transition.archived()) {
+            publish(event(RegistryEvent.MODEL_VERSION_STAGE_TRANSITIONED, name)
+                    .version(archived.getVersion()).stage(archived.getCurrentStage()));
+        }
+        return transitioned;
     }
 
     public void setRegisteredModelTag(String name, String key, String value) throws IOException {
@@ -223,6 +279,8 @@ public class ModelRegistryService {
         Map<String, String> tagsMap = getModelTagsMap(model);
         securityContextHelper.checkWriteAccess(RESOURCE_TYPE, name, model.getUserId(), tagsMap);
         modelRegistryRepository.setRegisteredModelTag(name, key, value);
+        resolutionCache.invalidate(name);
+        publish(event(RegistryEvent.REGISTERED_MODEL_TAG_SET, name).key(key).value(value));
     }
 
     public void deleteRegisteredModelTag(String name, String key) throws IOException {
@@ -233,6 +291,8 @@ public class ModelRegistryService {
         Map<String, String> tagsMap = getModelTagsMap(model);
         securityContextHelper.checkWriteAccess(RESOURCE_TYPE, name, model.getUserId(), tagsMap);
         modelRegistryRepository.deleteRegisteredModelTag(name, key);
+        resolutionCache.invalidate(name);
+        publish(event(RegistryEvent.REGISTERED_MODEL_TAG_DELETED, name).key(key));
     }
 
     public void setModelVersionTag(String name, String version, String key, String value) throws IOException {
@@ -243,6 +303,8 @@ public class ModelRegistryService {
         Map<String, String> tagsMap = getModelTagsMap(model);
         securityContextHelper.checkWriteAccess(RESOURCE_TYPE, name, model.getUserId(), tagsMap);
         modelRegistryRepository.setModelVersionTag(name, version, key, value);
+        resolutionCache.invalidate(name);
+        publish(event(RegistryEvent.MODEL_VERSION_TAG_SET, name).version(version).key(key).value(value));
     }
 
     public void deleteModelVersionTag(String name, String version, String key) throws IOException {
@@ -253,6 +315,8 @@ public class ModelRegistryService {
         Map<String, String> tagsMap = getModelTagsMap(model);
         securityContextHelper.checkWriteAccess(RESOURCE_TYPE, name, model.getUserId(), tagsMap);
         modelRegistryRepository.deleteModelVersionTag(name, version, key);
+        resolutionCache.invalidate(name);
+        publish(event(RegistryEvent.MODEL_VERSION_TAG_DELETED, name).version(version).key(key));
     }
 
     /** Sets an alias on a registered model. The target version must exist. */
@@ -272,6 +336,8 @@ public class ModelRegistryService {
             throw new ResourceNotFoundException("ModelVersion", name + "/" + version);
         }
         modelRegistryRepository.setAlias(name, alias, version);
+        resolutionCache.invalidate(name);
+        publish(event(RegistryEvent.MODEL_VERSION_ALIAS_SET, name).alias(alias).version(version));
     }
 
     public void deleteAlias(String name, String alias) throws IOException {
@@ -282,21 +348,20 @@ public class ModelRegistryService {
         Map<String, String> tagsMap = getModelTagsMap(model);
         securityContextHelper.checkWriteAccess(RESOURCE_TYPE, name, model.getUserId(), tagsMap);
         modelRegistryRepository.deleteAlias(name, alias);
+        resolutionCache.invalidate(name);
+        publish(event(RegistryEvent.MODEL_VERSION_ALIAS_DELETED, name).alias(alias));
     }
 
     /** Resolves an alias to its pinned model version. */
     public ModelVersion getModelVersionByAlias(String name, String alias) throws IOException {
-        RegisteredModel model = modelRegistryRepository.getRegisteredModel(name);
-        if (model == null) {
-            throw new ResourceNotFoundException("RegisteredModel", name);
-        }
-        Map<String, String> tagsMap = getModelTagsMap(model);
-        securityContextHelper.checkReadAccess(RESOURCE_TYPE, name, model.getUserId(), tagsMap);
-        String version = modelRegistryRepository.getAliasedVersion(name, alias);
+        readableModel(name);
+        String version = resolutionCache.get(name, "alias:" + alias,
+                () -> modelRegistryRepository.getAliasedVersion(name, alias));
         if (version == null) {
             throw new ResourceNotFoundException("Alias", name + "@" + alias);
         }
-        ModelVersion mv = modelRegistryRepository.getModelVersion(name, version);
+        ModelVersion mv = resolutionCache.get(name, "version:" + version,
+                () -> modelRegistryRepository.getModelVersion(name, version));
         if (mv == null) {
             throw new ResourceNotFoundException("ModelVersion", name + "/" + version);
         }
@@ -315,6 +380,42 @@ public class ModelRegistryService {
         Map<String, String> tagsMap = getModelTagsMap(model);
         securityContextHelper.checkWriteAccess(RESOURCE_TYPE, oldName, model.getUserId(), tagsMap);
         modelRegistryRepository.renameRegisteredModel(oldName, newName);
+        resolutionCache.invalidate(oldName);
+        resolutionCache.invalidate(newName);
+        publish(event(RegistryEvent.REGISTERED_MODEL_RENAMED, newName).oldName(oldName));
+    }
+
+    /**
+     * Same checks as {@link #renameRegisteredModel}, but the copy runs as a background
+     * {@link RegisteredModelRenameJob}; returns its job id immediately. Meant for models with
+     * too many versions to move within an HTTP request.
+     */
+    public String submitRenameRegisteredModel(String oldName, String newName) throws IOException {
+        if (newName == null || newName.isBlank()) {
+            throw new IllegalArgumentException("new_name must not be empty");
+        }
+        if (oldName.equals(newName)) {
+            throw new IllegalArgumentException("new_name must differ from name");
+        }
+        RegisteredModel model = modelRegistryRepository.getRegisteredModel(oldName);
+        if (model == null) {
+            throw new ResourceNotFoundException("RegisteredModel", oldName);
+        }
+        Map<String, String> tagsMap = getModelTagsMap(model);
+        securityContextHelper.checkWriteAccess(RESOURCE_TYPE, oldName, model.getUserId(), tagsMap);
+        if (modelRegistryRepository.getRegisteredModel(newName) != null) {
+            throw new varga.kirka.repo.ExperimentAlreadyExistsException(newName);
+        }
+        return jobService.submit(RegisteredModelRenameJob.TYPE, Map.of("name", oldName, "new_name", newName));
+    }
+
+    private RegistryEvent.RegistryEventBuilder event(String type, String name) {
+        return RegistryEvent.builder().eventType(type).modelName(name).user(securityContextHelper.getCurrentUser());
+    }
+
+    /** Queues a committed change for registry webhooks; never blocks or fails the request. */
+    private void publish(RegistryEvent.RegistryEventBuilder event) {
+        webhookDispatcher.publish(event.build());
     }
 
     /**
@@ -334,45 +435,40 @@ public class ModelRegistryService {
 
     /**
      * Server-side search on model versions. Accepts MLFlow filter syntax — the parser is the
-     * same as for experiments and runs. When the filter contains a top-level
-     * {@code name = '...'} equality we push it down as an HBase prefix scan on the versions
-     * table to avoid scanning every version of every model.
+     * same as for experiments and runs. Filters on {@code name} (equality, {@code IN}, literal
+     * {@code LIKE}/{@code ILIKE} prefixes) are pushed down as row ranges on the versions table
+     * to avoid scanning every version of every model. Results are paged in
+     * {@code orderBy} order ({@code name}, {@code last_updated_timestamp},
+     * {@code version_number}; default {@code name ASC}).
      */
-    public List<ModelVersion> searchModelVersions(String filter, int maxResults) throws IOException {
+    public varga.kirka.repo.Page<ModelVersion> searchModelVersions(String filter, Integer maxResults,
+                                                                 String pageToken, String orderBy) throws IOException {
         List<varga.kirka.search.FilterClause> clauses = varga.kirka.search.FilterParser.parse(filter);
-        String modelNamePrefix = extractEqualityAttribute(clauses, "name");
-
-        int cap = Math.max(1, Math.min(maxResults <= 0 ? 1000 : maxResults, 10000));
-        // `stageFilter` is a cheap server-side short-circuit; the parser still evaluates the
-        // full expression below so other predicates are honoured.
-        String stageFilter = extractEqualityAttribute(clauses, "current_stage");
-        List<ModelVersion> versions = modelRegistryRepository.searchModelVersions(modelNamePrefix, stageFilter, cap);
-
         var evaluator = modelVersionFilterEvaluator();
-        List<ModelVersion> accessible = new java.util.ArrayList<>(versions.size());
-        for (ModelVersion mv : versions) {
-            if (!evaluator.matches(mv, clauses)) continue;
-            RegisteredModel parent = modelRegistryRepository.getRegisteredModel(mv.getName());
-            if (parent == null) continue;
-            Map<String, String> tagsMap = getModelTagsMap(parent);
-            if (securityContextHelper.canRead(RESOURCE_TYPE, parent.getName(), parent.getUserId(), tagsMap)) {
-                accessible.add(mv);
-            }
-        }
-        return accessible;
-    }
-
-    /** Returns the string value of a top-level {@code attribute = '...'} clause, or null. */
-    private static String extractEqualityAttribute(List<varga.kirka.search.FilterClause> clauses, String key) {
-        for (var c : clauses) {
-            if (c.field() == varga.kirka.search.FilterClause.Field.ATTRIBUTE
-                    && c.op() == varga.kirka.search.FilterClause.Operator.EQ
-                    && key.equalsIgnoreCase(c.key())
-                    && c.firstValue() != null) {
-                return String.valueOf(c.firstValue());
-            }
+        varga.kirka.repo.Page<ModelVersion> page = modelRegistryRepository.searchModelVersions(
+                varga.kirka.search.NameKeyPlan.of(clauses),
+                mv -> evaluator.matches(mv, clauses),
+                varga.kirka.repo.RegistryOrder.parse(orderBy, true),
+                varga.kirka.repo.PageToken.clampPageSize(maxResults),
+                varga.kirka.repo.PageToken.decode(pageToken));
+
+        // Versions of one model share its authorization decision: resolve every parent of the
+        // page in a single multi-get and ask the policy once per model rather than once per
+        // version. Like listRegisteredModelsPaged, a page may come back short after filtering.
+        java.util.Set<String> parentNames = new java.util.HashSet<>();
+        for (ModelVersion mv : page.items()) parentNames.add(mv.getName());
+        Map<String, RegisteredModel> parents = modelRegistryRepository.getRegisteredModelsForAuthorization(parentNames);
+        Map<String, Boolean> readable = new java.util.HashMap<>();
+        List<ModelVersion> accessible = new java.util.ArrayList<>(page.items().size());
+        for (ModelVersion mv : page.items()) {
+            boolean allowed = readable.computeIfAbsent(mv.getName(), name -> {
+                RegisteredModel parent = parents.get(name);
+                return parent != null && securityContextHelper.canRead(
+                        RESOURCE_TYPE, parent.getName(), parent.getUserId(), getModelTagsMap(parent));
+            });
+            if (allowed) accessible.add(mv);
         }
-        return null;
+        return varga.kirka.repo.Page.of(accessible, page.nextPageToken());
     }
 
     private static varga.kirka.search.FilterEvaluator<ModelVersion> modelVersionFilterEvaluator() {
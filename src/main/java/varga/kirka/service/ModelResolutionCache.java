@@ -0,0 +1,141 @@
+package varga.kirka.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Read-through cache for the registry lookups a serving fleet makes on every pod start:
+ * model row (for authorization and latest version per stage), alias to version, and model
+ * version. Entries are keyed by model name plus a lookup key and expire after
+ * {@code ttl-ms}; {@link ModelRegistryService} drops every entry of a model with
+ * {@link #invalidate} after each write to it, so this node never serves a value older than
+ * its own last write. Other nodes see the change once their entry expires.
+ *
+ * <p>Concurrent misses on the same key are coalesced: the first caller loads from HBase and
+ * every caller arriving while that load is in flight waits for its result instead of
+ * issuing its own read. A failed load is not cached — its waiters get the same exception
+ * and the next caller retries. A load that is invalidated while in flight still answers
+ * its waiters but is never stored.
+ *
+ * <p>Authorization is not cached here: callers evaluate it on every request against the
+ * cached model row. Setting {@code ttl-ms} to 0 disables the cache.
+ */
+@Component
+public class ModelResolutionCache {
+
+    @FunctionalInterface
+    public interface Loader<T> {
+        T load() throws IOException;
+    }
+
+    private record Key(String name, String lookup) {}
+
+    private static final class Entry {
+        final CompletableFuture<Object> value = new CompletableFuture<>();
+        volatile long loadedAt;
+    }
+
+    private final long ttlMs;
+    private final int maxEntries;
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter coalesced;
+
+    public ModelResolutionCache(MeterRegistry meterRegistry,
+                                @Value("${kirka.registry.resolution-cache.ttl-ms:10000}") long ttlMs,
+                                @Value("${kirka.registry.resolution-cache.max-entries:10000}") int maxEntries) {
+        this.ttlMs = Math.max(0L, ttlMs);
+        this.maxEntries = Math.max(1, maxEntries);
+        this.hits = counter(meterRegistry, "hit");
+        this.misses = counter(meterRegistry, "miss");
+        this.coalesced = counter(meterRegistry, "coalesced");
+        Gauge.builder("kirka.registry.resolution-cache.entries", entries, Map::size)
+                .description("Cached model registry lookups")
+                .tag("service", "kirka")
+                .register(meterRegistry);
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("kirka.registry.resolution-cache.requests")
+                .description("Model registry lookups served by the resolution cache, by outcome")
+                .tag("service", "kirka")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns the cached value of {@code lookup} for model {@code name}, loading it with
+     * {@code loader} on a miss. {@code null} results are cached like any other value.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String name, String lookup, Loader<T> loader) throws IOException {
+        if (ttlMs == 0) return loader.load();
+        Key key = new Key(name, lookup);
+        while (true) {
+            Entry existing = entries.get(key);
+            if (existing != null) {
+                if (!existing.value.isDone()) {
+                    coalesced.increment();
+                    return (T) await(existing);
+                }
+                if (System.currentTimeMillis() - existing.loadedAt < ttlMs) {
+                    hits.increment();
+                    return (T) await(existing);
+                }
+                entries.remove(key, existing);
+            }
+            Entry mine = new Entry();
+            if (entries.putIfAbsent(key, mine) != null) continue;
+            misses.increment();
+            T value;
+            try {
+                value = loader.load();
+            } catch (IOException | RuntimeException e) {
+                entries.remove(key, mine);
+                mine.value.completeExceptionally(e);
+                throw e;
+            }
+            mine.loadedAt = System.currentTimeMillis();
+            mine.value.complete(value);
+            if (entries.size() > maxEntries) evictExpired();
+            return value;
+        }
+    }
+
+    /** Drops every cached lookup of model {@code name}, including loads still in flight. */
+    public void invalidate(String name) {
+        entries.keySet().removeIf(k -> k.name().equals(name));
+    }
+
+    private void evictExpired() {
+        long now = System.currentTimeMillis();
+        entries.values().removeIf(e -> e.value.isDone() && now - e.loadedAt >= ttlMs);
+        // Still over the cap with live entries only: start over rather than track recency.
+        if (entries.size() > maxEntries) entries.clear();
+    }
+
+    private static Object await(Entry entry) throws IOException {
+        try {
+            return entry.value.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a model registry lookup");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) throw io;
+            if (cause instanceof RuntimeException re) throw re;
+            throw new IOException(cause);
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package varga.kirka.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hadoop.fs.FileStatus;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import varga.kirka.repo.ArtifactRepository;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * Multipart artifact uploads ({@code mpu/create}, part uploads, {@code mpu/complete},
+ * {@code mpu/abort}). Parts are independent requests, so a large file can be sent over many
+ * connections at once. Each part is streamed to its own file in
+ * {@code <run artifact root>/.kirka-mpu/<upload_id>/}; completion joins them in order with an
+ * HDFS concat (see {@link ArtifactRepository#concatArtifacts}) and removes the directory.
+ *
+ * <p>All state lives in that directory, so any node can serve any request of an upload, and
+ * erasing the run also erases its pending uploads. With {@code part-checksum=md5} every part
+ * is hashed while it streams: the MD5 is its ETag, a {@code Content-MD5} sent with the part is
+ * verified, and completion checks the ETags the client lists. Uploads with no activity for
+ * {@code expiry-ms} are removed by {@link #sweep()}.
+ */
+@Slf4j
+@Service
+public class MultipartUploadService {
+
+    private static final Pattern UPLOAD_ID = Pattern.compile("[0-9a-f]{32}");
+    private static final String MARKER = "_upload";
+
+    private final ArtifactService artifactService;
+    private final ArtifactRepository artifactRepository;
+    private final int maxParts;
+    private final boolean partChecksums;
+    private final long expiryMs;
+    private final int bufferBytes;
+    private final Counter createdCounter;
+    private final Counter completedCounter;
+    private final Counter abortedCounter;
+    private final Counter expiredCounter;
+
+    /** A part listed in a completion request; {@code etag} may be null. */
+    public record Part(int partNumber, String etag) {}
+
+    public MultipartUploadService(ArtifactService artifactService,
+                                  ArtifactRepository artifactRepository,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${kirka.artifacts.multipart.max-parts:10000}") int maxParts,
+                                  @Value("${kirka.artifacts.multipart.part-checksum:md5}") String partChecksum,
+                                  @Value("${kirka.artifacts.multipart.expiry-ms:86400000}") long expiryMs,
+                                  @Value("${kirka.artifacts.upload.buffer-bytes:1048576}") int bufferBytes) {
+        this.artifactService = artifactService;
+        this.artifactRepository = artifactRepository;
+        this.maxParts = Math.max(1, maxParts);
+        this.partChecksums = switch (partChecksum.trim().toLowerCase(Locale.ROOT)) {
+            case "md5" -> true;
+            case "none" -> false;
+            default -> throw new IllegalArgumentException("kirka.artifacts.multipart.part-checksum must be md5 or none: " + partChecksum);
+        };
+        this.expiryMs = Math.max(60_000L, expiryMs);
+        this.bufferBytes = Math.max(4096, bufferBytes);
+        this.createdCounter = uploadsCounter(meterRegistry, "created");
+        this.completedCounter = uploadsCounter(meterRegistry, "completed");
+        this.abortedCounter = uploadsCounter(meterRegistry, "aborted");
+        this.expiredCounter = uploadsCounter(meterRegistry, "expired");
+    }
+
+    private static Counter uploadsCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("kirka.artifacts.multipart.uploads")
+                .description("Multipart artifact uploads by outcome")
+                .tag("service", "kirka")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private static String stagingDir(String runRoot, String uploadId) {
+        String root = runRoot.endsWith("/") ? runRoot.substring(0, runRoot.length() - 1) : runRoot;
+        return root + "/" + ArtifactService.MULTIPART_STAGING_DIR + "/" + uploadId;
+    }
+
+    private static String partPath(String staging, int partNumber) {
+        return String.format("%s/part-%05d", staging, partNumber);
+    }
+
+    /** Starts an upload of {@code numParts} parts to {@code target}, inside {@code runRoot}. */
+    public String create(String runRoot, String target, int numParts) throws IOException {
+        if (numParts < 1 || numParts > maxParts) {
+            throw new IllegalArgumentException("num_parts must be between 1 and " + maxParts + ": " + numParts);
+        }
+        String uploadId = UUID.randomUUID().toString().replace("-", "");
+        byte[] marker = (target + "\n" + numParts).getBytes(StandardCharsets.UTF_8);
+        artifactRepository.uploadArtifact(stagingDir(runRoot, uploadId) + "/" + MARKER,
+                new ByteArrayInputStream(marker), 4096, n -> { });
+        createdCounter.increment();
+        log.debug("Multipart upload {} of {} parts to {}", uploadId, numParts, target);
+        return uploadId;
+    }
+
+    /** Checks that {@code uploadId} is a pending upload to {@code target}; returns its part count. */
+    private int checkUpload(String runRoot, String target, String uploadId) throws IOException {
+        if (uploadId == null || !UPLOAD_ID.matcher(uploadId).matches()) {
+            throw new IllegalArgumentException("Invalid upload_id: " + uploadId);
+        }
+        String marker = stagingDir(runRoot, uploadId) + "/" + MARKER;
+        if (artifactRepository.getFileStatus(marker) == null) {
+            throw new ResourceNotFoundException("Multipart upload", uploadId);
+        }
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        artifactRepository.downloadArtifact(marker, content);
+        String[] lines = content.toString(StandardCharsets.UTF_8).split("\n");
+        if (lines.length != 2 || !lines[0].equals(target)) {
+            throw new IllegalArgumentException("Multipart upload " + uploadId + " is not an upload to " + target);
+        }
+        return Integer.parseInt(lines[1].trim());
+    }
+
+    /**
+     * Streams part {@code partNumber} of an upload, replacing an earlier attempt at the same
+     * part, and returns its quoted ETag. {@code contentMd5} is the optional base64
+     * {@code Content-MD5} of the body.
+     */
+    public String uploadPart(String runRoot, String target, String uploadId, int partNumber,
+                             InputStream body, String contentMd5) throws IOException {
+        int numParts = checkUpload(runRoot, target, uploadId);
+        if (partNumber < 1 || partNumber > numParts) {
+            throw new IllegalArgumentException("part_number must be between 1 and " + numParts + ": " + partNumber);
+        }
+        String part = partPath(stagingDir(runRoot, uploadId), partNumber);
+        if (!partChecksums) {
+            artifactService.uploadPart(part, body);
+            return artifactService.statArtifact(part).etag();
+        }
+        MessageDigest md5 = md5();
+        artifactService.uploadPart(part, new DigestInputStream(body, md5));
+        byte[] digest = md5.digest();
+        if (contentMd5 != null && !contentMd5.isBlank() && !Arrays.equals(digest, decodeMd5(contentMd5))) {
+            artifactRepository.deleteArtifact(part);
+            throw new IllegalArgumentException("Content-MD5 does not match the body of part " + partNumber);
+        }
+        String hex = HexFormat.of().formatHex(digest);
+        artifactRepository.uploadArtifact(part + ".md5", new ByteArrayInputStream(hex.getBytes(StandardCharsets.UTF_8)),
+                4096, n -> { });
+        return "\"" + hex + "\"";
+    }
+
+    private String partETag(String part) throws IOException {
+        if (!partChecksums) return artifactService.statArtifact(part).etag();
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        artifactRepository.downloadArtifact(part + ".md5", content);
+        return "\"" + content.toString(StandardCharsets.UTF_8).trim() + "\"";
+    }
+
+    /**
+     * Joins {@code parts}, listed in ascending part order, into {@code target}. Parts that were
+     * uploaded but not listed are discarded, as with S3.
+     */
+    public void complete(String runRoot, String target, String uploadId, List<Part> parts) throws IOException {
+        int numParts = checkUpload(runRoot, target, uploadId);
+        if (parts == null || parts.isEmpty()) {
+            throw new IllegalArgumentException("A multipart upload needs at least one part");
+        }
+        String staging = stagingDir(runRoot, uploadId);
+        List<String> paths = new ArrayList<>(parts.size());
+        int previous = 0;
+        for (Part part : parts) {
+            if (part.partNumber() <= previous || part.partNumber() > numParts) {
+                throw new IllegalArgumentException("Parts must be listed in ascending order within 1.." + numParts
+                        + ": " + part.partNumber());
+            }
+            previous = part.partNumber();
+            String path = partPath(staging, part.partNumber());
+            if (artifactRepository.getFileStatus(path) == null) {
+                throw new IllegalArgumentException("Part " + part.partNumber() + " of upload " + uploadId + " was not uploaded");
+            }
+            if (part.etag() != null && !part.etag().isBlank() && !unquote(part.etag()).equals(unquote(partETag(path)))) {
+                throw new IllegalArgumentException("ETag of part " + part.partNumber() + " does not match the uploaded part");
+            }
+            paths.add(path);
+        }
+        artifactRepository.concatArtifacts(target, paths, bufferBytes);
+        artifactService.invalidateListings(target);
+        artifactRepository.deleteArtifact(staging);
+        completedCounter.increment();
+    }
+
+    /** Discards an upload and all its parts. */
+    public void abort(String runRoot, String target, String uploadId) throws IOException {
+        checkUpload(runRoot, target, uploadId);
+        artifactRepository.deleteArtifact(stagingDir(runRoot, uploadId));
+        abortedCounter.increment();
+    }
+
+    /**
+     * Removes uploads under the proxy destination that nothing was written to for
+     * {@code expiry-ms}: neither the staging directory nor any of its parts changed since.
+     */
+    @Scheduled(fixedDelayString = "${kirka.artifacts.multipart.sweep-interval-ms:3600000}",
+               initialDelayString = "${kirka.artifacts.multipart.sweep-initial-delay-ms:600000}")
+    public void sweep() {
+        long cutoff = System.currentTimeMillis() - expiryMs;
+        int expired = 0;
+        try {
+            for (FileStatus upload : artifactRepository.globStatus(
+                    artifactService.proxyLocation("*/*/" + ArtifactService.MULTIPART_STAGING_DIR + "/*"))) {
+                if (!upload.isDirectory() || upload.getModificationTime() >= cutoff) continue;
+                long lastWrite = upload.getModificationTime();
+                for (FileStatus part : artifactRepository.globStatus(upload.getPath() + "/*")) {
+                    lastWrite = Math.max(lastWrite, part.getModificationTime());
+                }
+                if (lastWrite >= cutoff) continue;
+                artifactRepository.deleteArtifact(upload.getPath().toString());
+                expiredCounter.increment();
+                expired++;
+            }
+        } catch (IOException e) {
+            log.error("Failed to sweep abandoned multipart uploads", e);
+        }
+        if (expired > 0) log.info("Removed {} abandoned multipart uploads", expired);
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] decodeMd5(String contentMd5) {
+        try {
+            return Base64.getDecoder().decode(contentMd5.trim());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Content-MD5 is not valid base64: " + contentMd5);
+        }
+    }
+
+    private static String unquote(String etag) {
+        String tag = etag.trim();
+        if (tag.startsWith("W/")) tag = tag.substring(2);
+        return tag.length() >= 2 && tag.startsWith("\"") && tag.endsWith("\"") ? tag.substring(1, tag.length() - 1) : tag;
+    }
+}
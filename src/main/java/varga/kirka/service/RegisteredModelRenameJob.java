@@ -0,0 +1,61 @@
+package varga.kirka.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import varga.kirka.model.Job;
+import varga.kirka.model.RegistryEvent;
+import varga.kirka.repo.ModelRegistryRepository;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Background variant of {@link ModelRegistryService#renameRegisteredModel}, submitted through
+ * {@link ModelRegistryService#submitRenameRegisteredModel}. Versions are moved in batches with
+ * a checkpoint after each one; a resumed run picks up the versions still under the old name
+ * instead of rolling back.
+ */
+@Component
+@RequiredArgsConstructor
+public class RegisteredModelRenameJob implements JobHandler {
+
+    public static final String TYPE = "rename-registered-model";
+
+    private static final int BATCH_SIZE = 500;
+
+    private final ModelRegistryRepository modelRegistryRepository;
+    private final ModelResolutionCache resolutionCache;
+    private final WebhookDispatcher webhookDispatcher;
+
+    @Override
+    public String type() {
+        return TYPE;
+    }
+
+    @Override
+    public Map<String, String> run(Job job, Context context) throws IOException {
+        String oldName = job.getParams().get("name");
+        String newName = job.getParams().get("new_name");
+        long moved = Long.parseLong(context.checkpoint().getOrDefault("versions_moved", "0"));
+
+        if (!modelRegistryRepository.copyModelForRename(oldName, newName, job.getAttempts() > 1)) {
+            throw new ResourceNotFoundException("RegisteredModel", oldName);
+        }
+        resolutionCache.invalidate(newName);
+        int batch;
+        while ((batch = modelRegistryRepository.moveVersionsForRename(oldName, newName, BATCH_SIZE)) > 0) {
+            moved += batch;
+            context.checkpoint(Map.of("versions_moved", String.valueOf(moved)), moved, 0L);
+        }
+        modelRegistryRepository.finishRename(oldName, newName);
+        resolutionCache.invalidate(oldName);
+        resolutionCache.invalidate(newName);
+        webhookDispatcher.publish(RegistryEvent.builder()
+                .eventType(RegistryEvent.REGISTERED_MODEL_RENAMED)
+                .modelName(newName)
+                .oldName(oldName)
+                .user(job.getOwner())
+                .build());
+        return Map.of("name", newName, "versions_moved", String.valueOf(moved));
+    }
+}
@@ -69,6 +69,17 @@ public class RunService {
         return run;
     }
 
+    /** Like {@link #getRun}, but requires write access: for callers about to add artifacts to the run. */
+    public Run getWritableRun(String runId) throws IOException {
+        Run run = runRepository.getRun(runId);
+        if (run == null) {
+            throw new ResourceNotFoundException("Run", runId);
+        }
+        Map<String, String> tagsMap = getRunTagsMap(run);
+        securityContextHelper.checkWriteAccess(RESOURCE_TYPE, runId, run.getInfo().getUserId(), tagsMap);
+        return run;
+    }
+
     public void updateRun(String runId, String status, long endTime) throws IOException {
         log.info("Updating run: {} with status: {} and endTime: {}", runId, status, endTime);
         Run run = runRepository.getRun(runId);
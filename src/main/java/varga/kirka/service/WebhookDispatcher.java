@@ -0,0 +1,428 @@
+package varga.kirka.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import varga.kirka.model.RegistryEvent;
+import varga.kirka.model.Webhook;
+import varga.kirka.repo.WebhookRepository;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Delivers {@link RegistryEvent}s to the {@link Webhook}s subscribed to them, off the request
+ * thread. {@link #publish} only hands the event to a single router thread through a bounded
+ * queue; the router matches it against the subscriptions (re-read from HBase every
+ * {@code subscription-refresh-ms}) and appends it to the queue of each matching webhook.
+ *
+ * <p>Each webhook is delivered to independently and in order: events that arrive within
+ * {@code batch-linger-ms} of each other are POSTed together, up to {@code batch-size} per
+ * request, and the next batch is only sent once the previous one has been acknowledged with a
+ * 2xx or given up on. Network errors, timeouts, 408, 429 and 5xx responses are retried with
+ * exponential backoff and jitter, from {@code initial-backoff-ms} up to
+ * {@code max-backoff-ms}, for at most {@code max-attempts} attempts; other 4xx responses drop
+ * the batch at once.
+ *
+ * <p>Requests are sent asynchronously: a sender thread only builds and signs the request and
+ * its response is handled when it arrives, so a receiver that is slow to answer holds no
+ * sender thread and delays only its own events. Each webhook has at most one request in
+ * flight, which also bounds the connections open to a receiver.
+ *
+ * <p>Right before each request the receiver's host is resolved and checked by
+ * {@link WebhookTargetPolicy}, on the sender thread; a batch for a host that now resolves to a
+ * refused address is dropped like a rejected one. Redirects are never followed.
+ *
+ * <p>Every request carries {@code X-Kirka-Webhook-Id}, a {@code X-Kirka-Delivery-Id} that is
+ * stable across retries of the same batch, {@code X-Kirka-Timestamp} (epoch seconds) and
+ * {@code X-Kirka-Signature: v1=<hex>}, the HMAC-SHA256 of {@code <timestamp>.<body>} under the
+ * webhook secret. Receivers should check the signature and reject stale timestamps.
+ *
+ * <p>Queues live in memory: events still pending when a node stops are lost, and a full
+ * queue drops new events. Both show up on {@code kirka.webhooks.events}; receivers that must
+ * not miss a change should reconcile with {@code model-versions/search} on startup.
+ */
+@Slf4j
+@Component
+public class WebhookDispatcher {
+
+    static final String HEADER_WEBHOOK_ID = "X-Kirka-Webhook-Id";
+    static final String HEADER_DELIVERY_ID = "X-Kirka-Delivery-Id";
+    static final String HEADER_TIMESTAMP = "X-Kirka-Timestamp";
+    static final String HEADER_SIGNATURE = "X-Kirka-Signature";
+
+    /** Outstanding events of one webhook; guarded by its own monitor. */
+    private static final class Target {
+        Webhook webhook;
+        final ArrayDeque<RegistryEvent> pending = new ArrayDeque<>();
+        List<RegistryEvent> inFlight;
+        String deliveryId;
+        int attempts;
+        boolean scheduled;
+
+        Target(Webhook webhook) {
+            this.webhook = webhook;
+        }
+    }
+
+    private final WebhookRepository webhookRepository;
+    private final ObjectMapper objectMapper;
+    private final WebhookTargetPolicy targetPolicy;
+    private final int batchSize;
+    private final long batchLingerMs;
+    private final int targetCapacity;
+    private final int maxAttempts;
+    private final long initialBackoffMs;
+    private final long maxBackoffMs;
+    private final long subscriptionRefreshMs;
+    private final Duration requestTimeout;
+
+    private final HttpClient httpClient;
+    private final ThreadPoolExecutor router;
+    private final ScheduledThreadPoolExecutor sender;
+    private final Map<String, Target> targets = new ConcurrentHashMap<>();
+
+    /** Owned by the router thread. */
+    private List<Webhook> subscriptions = List.of();
+    private long subscriptionsLoadedAt = Long.MIN_VALUE;
+    private volatile boolean subscriptionsStale = true;
+
+    private final Counter delivered;
+    private final Counter droppedQueueFull;
+    private final Counter droppedUndeliverable;
+    private final Counter requestsSucceeded;
+    private final Counter requestsRetried;
+    private final Counter requestsFailed;
+
+    public WebhookDispatcher(WebhookRepository webhookRepository,
+                             ObjectMapper objectMapper,
+                             WebhookTargetPolicy targetPolicy,
+                             MeterRegistry meterRegistry,
+                             @Value("${kirka.webhooks.queue-capacity:10000}") int queueCapacity,
+                             @Value("${kirka.webhooks.target-queue-capacity:10000}") int targetCapacity,
+                             @Value("${kirka.webhooks.delivery-threads:4}") int deliveryThreads,
+                             @Value("${kirka.webhooks.batch-size:100}") int batchSize,
+                             @Value("${kirka.webhooks.batch-linger-ms:200}") long batchLingerMs,
+                             @Value("${kirka.webhooks.max-attempts:8}") int maxAttempts,
+                             @Value("${kirka.webhooks.initial-backoff-ms:1000}") long initialBackoffMs,
+                             @Value("${kirka.webhooks.max-backoff-ms:300000}") long maxBackoffMs,
+                             @Value("${kirka.webhooks.request-timeout-ms:10000}") long requestTimeoutMs,
+                             @Value("${kirka.webhooks.subscription-refresh-ms:30000}") long subscriptionRefreshMs) {
+        this.webhookRepository = webhookRepository;
+        this.objectMapper = objectMapper;
+        this.targetPolicy = targetPolicy;
+        this.batchSize = Math.max(1, batchSize);
+        this.batchLingerMs = Math.max(0L, batchLingerMs);
+        this.targetCapacity = Math.max(1, targetCapacity);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.initialBackoffMs = Math.max(1L, initialBackoffMs);
+        this.maxBackoffMs = Math.max(this.initialBackoffMs, maxBackoffMs);
+        this.subscriptionRefreshMs = Math.max(0L, subscriptionRefreshMs);
+        this.requestTimeout = Duration.ofMillis(Math.max(1L, requestTimeoutMs));
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(requestTimeout)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .build();
+
+        this.delivered = eventCounter(meterRegistry, "delivered");
+        this.droppedQueueFull = eventCounter(meterRegistry, "dropped_queue_full");
+        this.droppedUndeliverable = eventCounter(meterRegistry, "dropped_undeliverable");
+        this.requestsSucceeded = requestCounter(meterRegistry, "success");
+        this.requestsRetried = requestCounter(meterRegistry, "retry");
+        this.requestsFailed = requestCounter(meterRegistry, "failed");
+
+        this.router = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), r -> {
+                    Thread t = new Thread(r, "kirka-webhook-router");
+                    t.setDaemon(true);
+                    return t;
+                }, (r, executor) -> droppedQueueFull.increment());
+        AtomicInteger threads = new AtomicInteger();
+        this.sender = new ScheduledThreadPoolExecutor(Math.max(1, deliveryThreads), r -> {
+            Thread t = new Thread(r, "kirka-webhook-sender-" + threads.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        Gauge.builder("kirka.webhooks.pending", this, WebhookDispatcher::pendingEvents)
+                .description("Registry events queued for webhook delivery on this node")
+                .tag("service", "kirka")
+                .register(meterRegistry);
+    }
+
+    private static Counter eventCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("kirka.webhooks.events")
+                .description("Registry events handled by the webhook dispatcher, by outcome")
+                .tag("service", "kirka")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private static Counter requestCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("kirka.webhooks.requests")
+                .description("Webhook delivery requests, by result")
+                .tag("service", "kirka")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void stop() {
+        router.shutdownNow();
+        sender.shutdownNow();
+        double left = pendingEvents();
+        if (left > 0) log.warn("Webhook dispatcher stopped with {} events undelivered", (long) left);
+    }
+
+    /**
+     * Queues {@code event} for every webhook it matches. Never blocks and never throws; fills
+     * in {@code eventId} and {@code timestamp} when missing.
+     */
+    public void publish(RegistryEvent event) {
+        if (event.getEventId() == null) event.setEventId(UUID.randomUUID().toString());
+        if (event.getTimestamp() == 0) event.setTimestamp(System.currentTimeMillis());
+        try {
+            router.execute(() -> route(event));
+        } catch (RuntimeException e) {
+            droppedQueueFull.increment();
+            log.warn("Failed to queue registry event {} for webhooks: {}", event.getEventType(), e.toString());
+        }
+    }
+
+    /** Makes the next event re-read subscriptions, after one was created or deleted on this node. */
+    public void invalidateSubscriptions() {
+        subscriptionsStale = true;
+    }
+
+    private void route(RegistryEvent event) {
+        for (Webhook webhook : subscriptions()) {
+            if (!matches(webhook, event)) continue;
+            Target target = targets.computeIfAbsent(webhook.getWebhookId(), id -> new Target(webhook));
+            synchronized (target) {
+                target.webhook = webhook;
+                if (target.pending.size() >= targetCapacity) {
+                    droppedQueueFull.increment();
+                    continue;
+                }
+                target.pending.add(event);
+                if (!target.scheduled) {
+                    target.scheduled = true;
+                    schedule(target, batchLingerMs);
+                }
+            }
+        }
+    }
+
+    static boolean matches(Webhook webhook, RegistryEvent event) {
+        if (webhook.getEvents() != null && !webhook.getEvents().isEmpty()
+                && !webhook.getEvents().contains(event.getEventType())) {
+            return false;
+        }
+        String model = webhook.getModelName();
+        return model == null || model.equals(event.getModelName()) || model.equals(event.getOldName());
+    }
+
+    private List<Webhook> subscriptions() {
+        long now = System.currentTimeMillis();
+        if (subscriptionsStale || now - subscriptionsLoadedAt >= subscriptionRefreshMs) {
+            subscriptionsStale = false;
+            try {
+                subscriptions = webhookRepository.list();
+                subscriptionsLoadedAt = now;
+                Set<String> live = subscriptions.stream().map(Webhook::getWebhookId).collect(Collectors.toSet());
+                targets.keySet().retainAll(live);
+            } catch (IOException e) {
+                // Keep routing on the last known subscriptions; retry on the next event.
+                subscriptionsStale = true;
+                log.warn("Failed to load webhook subscriptions: {}", e.toString());
+            }
+        }
+        return subscriptions;
+    }
+
+    private void schedule(Target target, long delayMs) {
+        try {
+            sender.schedule(() -> deliver(target), delayMs, TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            // Shutting down: the target stays scheduled so nothing else is queued behind it.
+            log.debug("Webhook delivery not scheduled: {}", e.toString());
+        }
+    }
+
+    private void deliver(Target target) {
+        Webhook webhook;
+        List<RegistryEvent> batch;
+        String deliveryId;
+        synchronized (target) {
+            if (targets.get(target.webhook.getWebhookId()) != target) {
+                // Webhook deleted since the events were queued.
+                droppedUndeliverable.increment(target.pending.size() + (target.inFlight != null ? target.inFlight.size() : 0));
+                target.pending.clear();
+                target.inFlight = null;
+                target.scheduled = false;
+                return;
+            }
+            if (target.inFlight == null) {
+                List<RegistryEvent> next = new ArrayList<>(Math.min(batchSize, target.pending.size()));
+                while (next.size() < batchSize && !target.pending.isEmpty()) next.add(target.pending.poll());
+                if (next.isEmpty()) {
+                    target.scheduled = false;
+                    return;
+                }
+                target.inFlight = next;
+                target.deliveryId = UUID.randomUUID().toString();
+                target.attempts = 0;
+            }
+            webhook = target.webhook;
+            batch = target.inFlight;
+            deliveryId = target.deliveryId;
+            target.attempts++;
+        }
+
+        HttpRequest request;
+        try {
+            request = request(webhook, deliveryId, batch);
+        } catch (WebhookTargetPolicy.BlockedTargetException e) {
+            log.warn("Webhook {} delivery {} refused: {}", webhook.getWebhookId(), deliveryId, e.getMessage());
+            complete(target, batch, Outcome.REJECTED);
+            return;
+        } catch (IOException | RuntimeException e) {
+            log.debug("Webhook {} delivery {} failed: {}", webhook.getWebhookId(), deliveryId, e.toString());
+            complete(target, batch, Outcome.RETRY);
+            return;
+        }
+        httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, error) -> {
+                    Outcome outcome;
+                    if (error != null) {
+                        log.debug("Webhook {} delivery {} failed: {}", webhook.getWebhookId(), deliveryId, error.toString());
+                        outcome = Outcome.RETRY;
+                    } else {
+                        outcome = outcome(webhook, deliveryId, response.statusCode());
+                    }
+                    complete(target, batch, outcome);
+                });
+    }
+
+    private void complete(Target target, List<RegistryEvent> batch, Outcome outcome) {
+        synchronized (target) {
+            switch (outcome) {
+                case DELIVERED -> {
+                    requestsSucceeded.increment();
+                    delivered.increment(batch.size());
+                    target.inFlight = null;
+                }
+                case RETRY -> {
+                    if (target.attempts < maxAttempts) {
+                        requestsRetried.increment();
+                    } else {
+                        giveUp(target, "after " + target.attempts + " attempts");
+                    }
+                }
+                case REJECTED -> giveUp(target, "rejected by the receiver");
+            }
+            if (target.inFlight != null) {
+                schedule(target, backoffMs(target.attempts));
+            } else if (!target.pending.isEmpty()) {
+                schedule(target, 0L);
+            } else {
+                target.scheduled = false;
+            }
+        }
+    }
+
+    private void giveUp(Target target, String reason) {
+        requestsFailed.increment();
+        droppedUndeliverable.increment(target.inFlight.size());
+        log.warn("Dropping {} registry events for webhook {} ({}): {}", target.inFlight.size(),
+                target.webhook.getWebhookId(), target.webhook.getUrl(), reason);
+        target.inFlight = null;
+    }
+
+    /** Exponential backoff with jitter: a uniform delay in [d/2, d] for d = initial * 2^(attempts-1). */
+    long backoffMs(int attempts) {
+        long delay = initialBackoffMs << Math.min(Math.max(0, attempts - 1), 30);
+        if (delay <= 0 || delay > maxBackoffMs) delay = maxBackoffMs;
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    private enum Outcome { DELIVERED, RETRY, REJECTED }
+
+    /** The signed request delivering {@code batch}, once the receiver's host passed the target policy. */
+    private HttpRequest request(Webhook webhook, String deliveryId, List<RegistryEvent> batch) throws IOException {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("webhook_id", webhook.getWebhookId());
+        payload.put("delivery_id", deliveryId);
+        payload.put("events", batch);
+        byte[] body = objectMapper.writeValueAsBytes(payload);
+        URI uri = URI.create(webhook.getUrl());
+        targetPolicy.check(uri);
+        String timestamp = Long.toString(System.currentTimeMillis() / 1000);
+        return HttpRequest.newBuilder(uri)
+                .timeout(requestTimeout)
+                .header("Content-Type", "application/json")
+                .header(HEADER_WEBHOOK_ID, webhook.getWebhookId())
+                .header(HEADER_DELIVERY_ID, deliveryId)
+                .header(HEADER_TIMESTAMP, timestamp)
+                .header(HEADER_SIGNATURE, "v1=" + sign(webhook.getSecret(), timestamp, body))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+    }
+
+    private static Outcome outcome(Webhook webhook, String deliveryId, int status) {
+        if (status >= 200 && status < 300) return Outcome.DELIVERED;
+        log.debug("Webhook {} answered {} to delivery {}", webhook.getWebhookId(), status, deliveryId);
+        return status == 408 || status == 429 || status >= 500 ? Outcome.RETRY : Outcome.REJECTED;
+    }
+
+    /** Hex HMAC-SHA256 of {@code <timestamp>.<body>} under {@code secret}. */
+    static String sign(String secret, String timestamp, byte[] body) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            mac.update(timestamp.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) '.');
+            return HexFormat.of().formatHex(mac.doFinal(body));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+
+    private double pendingEvents() {
+        long total = 0;
+        for (Target target : targets.values()) {
+            synchronized (target) {
+                total += target.pending.size() + (target.inFlight != null ? target.inFlight.size() : 0);
+            }
+        }
+        return total;
+    }
+}
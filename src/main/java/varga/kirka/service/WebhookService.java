@@ -0,0 +1,118 @@
+package varga.kirka.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import varga.kirka.model.RegisteredModel;
+import varga.kirka.model.RegisteredModelTag;
+import varga.kirka.model.RegistryEvent;
+import varga.kirka.model.Webhook;
+import varga.kirka.repo.ModelRegistryRepository;
+import varga.kirka.repo.WebhookRepository;
+import varga.kirka.security.SecurityContextHelper;
+
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Management of registry {@link Webhook}s. A webhook scoped to one registered model requires
+ * read access to that model; a registry-wide webhook sees every model's changes and requires
+ * admin rights on {@code webhook}. Its URL must be accepted by {@link WebhookTargetPolicy};
+ * unless {@code kirka.webhooks.allowed-hosts} restricts where webhooks may point, creating one
+ * requires admin rights whatever its scope. Delivery itself is {@link WebhookDispatcher}'s job.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class WebhookService {
+
+    private static final String RESOURCE_TYPE = "webhook";
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final WebhookRepository webhookRepository;
+    private final ModelRegistryRepository modelRegistryRepository;
+    private final WebhookDispatcher webhookDispatcher;
+    private final SecurityContextHelper securityContextHelper;
+    private final WebhookTargetPolicy targetPolicy;
+
+    /**
+     * Registers a webhook and returns it with its secret, which is not readable afterwards.
+     * A secret is generated when {@code secret} is blank.
+     */
+    public Webhook createWebhook(String name, String url, List<String> events, String modelName,
+                                 String secret) throws IOException {
+        targetPolicy.validate(url);
+        List<String> types = events != null ? List.copyOf(events) : List.of();
+        for (String type : types) {
+            if (!RegistryEvent.TYPES.contains(type)) {
+                throw new IllegalArgumentException("Unknown webhook event type: " + type);
+            }
+        }
+        if (modelName != null && !modelName.isBlank()) {
+            RegisteredModel model = modelRegistryRepository.getRegisteredModel(modelName);
+            if (model == null) {
+                throw new ResourceNotFoundException("RegisteredModel", modelName);
+            }
+            securityContextHelper.checkReadAccess("model", modelName, model.getUserId(),
+                    securityContextHelper.tagsToMap(model.getTags(), RegisteredModelTag::getKey, RegisteredModelTag::getValue));
+        } else {
+            modelName = null;
+        }
+        // Without a host allowlist the URL could point anywhere this server can reach.
+        if ((modelName == null || !targetPolicy.hasAllowedHosts())
+                && !securityContextHelper.canAdmin(RESOURCE_TYPE, "*", null, Map.of())) {
+            throw new varga.kirka.security.AccessDeniedException(RESOURCE_TYPE, "*",
+                    securityContextHelper.getCurrentUser(), "admin");
+        }
+        Webhook webhook = Webhook.builder()
+                .webhookId(UUID.randomUUID().toString())
+                .name(name)
+                .url(url)
+                .events(types)
+                .modelName(modelName)
+                .owner(securityContextHelper.getCurrentUser())
+                .creationTimestamp(System.currentTimeMillis())
+                .secret(secret != null && !secret.isBlank() ? secret : generateSecret())
+                .build();
+        webhookRepository.create(webhook);
+        webhookDispatcher.invalidateSubscriptions();
+        log.info("Created webhook {} to {} for model {}", webhook.getWebhookId(), url, modelName);
+        return webhook;
+    }
+
+    public Webhook getWebhook(String webhookId) throws IOException {
+        Webhook webhook = webhookRepository.get(webhookId);
+        if (webhook == null) {
+            throw new ResourceNotFoundException("Webhook", webhookId);
+        }
+        securityContextHelper.checkReadAccess(RESOURCE_TYPE, webhookId, webhook.getOwner(), Map.of());
+        return webhook;
+    }
+
+    /** Webhooks visible to the current user. */
+    public List<Webhook> listWebhooks() throws IOException {
+        return webhookRepository.list().stream()
+                .filter(w -> securityContextHelper.canRead(RESOURCE_TYPE, w.getWebhookId(), w.getOwner(), Map.of()))
+                .toList();
+    }
+
+    public void deleteWebhook(String webhookId) throws IOException {
+        Webhook webhook = webhookRepository.get(webhookId);
+        if (webhook == null) {
+            throw new ResourceNotFoundException("Webhook", webhookId);
+        }
+        securityContextHelper.checkDeleteAccess(RESOURCE_TYPE, webhookId, webhook.getOwner(), Map.of());
+        webhookRepository.delete(webhookId);
+        webhookDispatcher.invalidateSubscriptions();
+    }
+
+    private static String generateSecret() {
+        byte[] bytes = new byte[32];
+        RANDOM.nextBytes(bytes);
+        return HexFormat.of().formatHex(bytes);
+    }
+}
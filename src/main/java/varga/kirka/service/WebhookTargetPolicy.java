@@ -0,0 +1,138 @@
+package varga.kirka.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Where webhooks may be delivered to. A webhook URL is a request this server makes on behalf
+ * of whoever registered it, so it must not reach the cluster's own services: the URL is
+ * checked when the webhook is created and its host resolved again right before every
+ * delivery, so that a name re-pointed after registration (DNS rebinding) is caught too.
+ *
+ * <ul>
+ *   <li>{@code allowed-hosts}: comma-separated host names, {@code .example.com} or
+ *       {@code *.example.com} for a domain and its subdomains. When set, no other host is
+ *       accepted. When empty, any host is, but only admins may create webhooks.</li>
+ *   <li>Hosts must only resolve to public addresses: loopback, link-local (which includes
+ *       cloud metadata endpoints), wildcard and multicast addresses are always refused, and
+ *       private ranges (10/8, 172.16/12, 192.168/16, 100.64/10, fc00::/7) unless
+ *       {@code allow-private-addresses} is set for receivers inside the corporate network.</li>
+ * </ul>
+ *
+ * <p>The HTTP client resolves the host again when it connects. Both lookups go through the
+ * JVM's address cache ({@code networkaddress.cache.ttl}, 30 s by default), so the client
+ * connects to the address checked here; with the cache disabled a rebinding window remains.
+ */
+@Component
+public class WebhookTargetPolicy {
+
+    /** A delivery refused because its host is not an acceptable target. */
+    public static final class BlockedTargetException extends IOException {
+        BlockedTargetException(String message) {
+            super(message);
+        }
+    }
+
+    private final List<String> allowedHosts;
+    private final boolean allowPrivateAddresses;
+
+    public WebhookTargetPolicy(@Value("${kirka.webhooks.allowed-hosts:}") String allowedHosts,
+                               @Value("${kirka.webhooks.allow-private-addresses:false}") boolean allowPrivateAddresses) {
+        this.allowedHosts = Arrays.stream(allowedHosts.split(","))
+                .map(h -> h.trim().toLowerCase(Locale.ROOT))
+                .map(h -> h.startsWith("*.") ? h.substring(1) : h)
+                .filter(h -> !h.isEmpty())
+                .toList();
+        this.allowPrivateAddresses = allowPrivateAddresses;
+    }
+
+    /** Whether webhooks are restricted to {@code allowed-hosts}, which lets non-admins create them. */
+    public boolean hasAllowedHosts() {
+        return !allowedHosts.isEmpty();
+    }
+
+    /** Checks a URL given for a new webhook; throws {@link IllegalArgumentException} if it is refused. */
+    public void validate(String url) {
+        if (url == null || url.isBlank()) {
+            throw new IllegalArgumentException("Webhook url must not be empty");
+        }
+        URI uri;
+        try {
+            uri = URI.create(url);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid webhook url: " + url);
+        }
+        String scheme = uri.getScheme() != null ? uri.getScheme().toLowerCase(Locale.ROOT) : "";
+        if (!scheme.equals("http") && !scheme.equals("https") || uri.getHost() == null) {
+            throw new IllegalArgumentException("Webhook url must be an absolute http(s) URL: " + url);
+        }
+        if (uri.getRawUserInfo() != null) {
+            throw new IllegalArgumentException("Webhook url must not carry credentials");
+        }
+        try {
+            check(uri);
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Webhook host cannot be resolved: " + uri.getHost());
+        } catch (BlockedTargetException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /**
+     * Resolves the host of {@code uri} and checks it against the policy, before a delivery.
+     * Throws {@link BlockedTargetException} when the target is refused and
+     * {@link UnknownHostException} when the host does not resolve.
+     */
+    public void check(URI uri) throws UnknownHostException, BlockedTargetException {
+        String host = uri.getHost();
+        if (host == null) throw new BlockedTargetException("Webhook url has no host: " + uri);
+        host = host.toLowerCase(Locale.ROOT);
+        if (hasAllowedHosts() && !isAllowedHost(host)) {
+            throw new BlockedTargetException("Webhook host is not in kirka.webhooks.allowed-hosts: " + host);
+        }
+        for (InetAddress address : resolve(host)) {
+            if (!isPermitted(address)) {
+                throw new BlockedTargetException("Webhook host " + host + " resolves to a non-public address "
+                        + address.getHostAddress());
+            }
+        }
+    }
+
+    private boolean isAllowedHost(String host) {
+        for (String allowed : allowedHosts) {
+            if (allowed.startsWith(".")
+                    ? host.endsWith(allowed) || host.equals(allowed.substring(1))
+                    : host.equals(allowed)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    InetAddress[] resolve(String host) throws UnknownHostException {
+        // URI keeps the brackets of an IPv6 literal.
+        String name = host.startsWith("[") && host.endsWith("]") ? host.substring(1, host.length() - 1) : host;
+        return InetAddress.getAllByName(name);
+    }
+
+    boolean isPermitted(InetAddress address) {
+        if (address.isAnyLocalAddress() || address.isLoopbackAddress() || address.isLinkLocalAddress()
+                || address.isMulticastAddress()) {
+            return false;
+        }
+        byte[] bytes = address.getAddress();
+        if (bytes.length == 4 && bytes[0] == 0) return false;
+        boolean sharedOrUniqueLocal = bytes.length == 4
+                ? (bytes[0] & 0xff) == 100 && (bytes[1] & 0xc0) == 64
+                : (bytes[0] & 0xfe) == 0xfc;
+        return allowPrivateAddresses || !(address.isSiteLocalAddress() || sharedOrUniqueLocal);
+    }
+}
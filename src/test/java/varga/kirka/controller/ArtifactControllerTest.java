@@ -9,20 +9,28 @@ import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.context.annotation.Import;
 import varga.kirka.config.JacksonConfig;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.web.servlet.MockMvc;
 import varga.kirka.model.Run;
+import varga.kirka.service.ArtifactArchiveService;
+import varga.kirka.service.ArtifactCache;
+import varga.kirka.service.ArtifactRedirectService;
 import varga.kirka.service.ArtifactService;
 import varga.kirka.service.RunService;
 
 import java.util.List;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
-import static org.mockito.Mockito.doNothing;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -40,6 +48,15 @@ public class ArtifactControllerTest {
     @MockBean
     private RunService runService;
 
+    @MockBean
+    private ArtifactCache artifactCache;
+
+    @MockBean
+    private ArtifactArchiveService artifactArchiveService;
+
+    @MockBean
+    private ArtifactRedirectService artifactRedirectService;
+
     @Test
     public void testListArtifacts() throws Exception {
         Run run = Run.builder().info(varga.kirka.model.RunInfo.builder().runId("run-1").artifactUri("hdfs:///tmp").build()).build();
@@ -59,6 +76,60 @@ public class ArtifactControllerTest {
                 .andExpect(jsonPath("$.files[0].path").value("model.pkl"));
     }
 
+    @Test
+    public void testListArtifactsPagedForAFinishedRun() throws Exception {
+        Run run = Run.builder().info(varga.kirka.model.RunInfo.builder().runId("run-1").artifactUri("hdfs:///tmp")
+                .status(varga.kirka.model.RunStatus.FINISHED).build()).build();
+        when(runService.getRun("run-1")).thenReturn(run);
+        varga.kirka.model.FileInfo info = varga.kirka.model.FileInfo.builder().path("hdfs:///tmp/model/a.bin").build();
+        when(artifactService.listArtifacts("hdfs:///tmp/model", "YQ", 1, true, true))
+                .thenReturn(varga.kirka.repo.Page.of(List.of(info), "Yg"));
+
+        mockMvc.perform(get("/api/2.0/mlflow/artifacts/list")
+                .param("run_id", "run-1")
+                .param("path", "model")
+                .param("max_results", "1")
+                .param("page_token", "YQ")
+                .param("recursive", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.files[0].path").value("hdfs:///tmp/model/a.bin"))
+                .andExpect(jsonPath("$.next_page_token").value("Yg"));
+    }
+
+    @Test
+    public void testDownloadRedirectsToTheEndpoint() throws Exception {
+        Run run = Run.builder().info(varga.kirka.model.RunInfo.builder().runId("run-1").artifactUri("hdfs:///tmp").build()).build();
+        when(runService.getRun("run-1")).thenReturn(run);
+        when(artifactService.statArtifact("hdfs:///tmp/model.bin"))
+                .thenReturn(new ArtifactService.ArtifactFile(1 << 20, 0, "\"1048576-0\""));
+        when(artifactRedirectService.redirect("hdfs:///tmp/model.bin", 1 << 20))
+                .thenReturn(java.net.URI.create("http://httpfs:14000/webhdfs/v1/tmp/model.bin?op=OPEN&delegation=abc"));
+
+        mockMvc.perform(get("/api/2.0/mlflow/artifacts/download").param("run_id", "run-1").param("path", "model.bin"))
+                .andExpect(status().isTemporaryRedirect())
+                .andExpect(header().string(HttpHeaders.LOCATION, "http://httpfs:14000/webhdfs/v1/tmp/model.bin?op=OPEN&delegation=abc"))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-store"));
+        verify(artifactService, never()).downloadArtifact(anyString(), any(), anyLong(), anyLong());
+    }
+
+    @Test
+    public void testDownloadIsProxiedWhenTheClientDeclinesRedirects() throws Exception {
+        Run run = Run.builder().info(varga.kirka.model.RunInfo.builder().runId("run-1").artifactUri("hdfs:///tmp").build()).build();
+        when(runService.getRun("run-1")).thenReturn(run);
+        when(artifactService.statArtifact("hdfs:///tmp/model.bin"))
+                .thenReturn(new ArtifactService.ArtifactFile(4, 0, "\"4-0\""));
+
+        mockMvc.perform(get("/api/2.0/mlflow/artifacts/download").param("run_id", "run-1").param("path", "model.bin")
+                        .param("redirect", "false"))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/api/2.0/mlflow/artifacts/download").param("run_id", "run-1").param("path", "model.bin")
+                        .header(HttpHeaders.RANGE, "bytes=0-1"))
+                .andExpect(status().isPartialContent());
+
+        verify(artifactRedirectService, never()).redirect(anyString(), anyLong());
+        verify(artifactService).downloadArtifact(eq("hdfs:///tmp/model.bin"), any(), eq(0L), eq(4L));
+    }
+
     @Test
     public void testDeleteArtifact() throws Exception {
         Run run = Run.builder().info(varga.kirka.model.RunInfo.builder().runId("run-1").artifactUri("hdfs:///tmp").build()).build();
@@ -74,7 +145,7 @@ public class ArtifactControllerTest {
     public void testUploadArtifact() throws Exception {
         Run run = Run.builder().info(varga.kirka.model.RunInfo.builder().runId("run-1").artifactUri("hdfs:///tmp").build()).build();
         when(runService.getRun("run-1")).thenReturn(run);
-        doNothing().when(artifactService).uploadArtifact(anyString(), any());
+        when(artifactService.uploadArtifact(anyString(), any(), any(), any())).thenReturn(12L);
 
         MockMultipartFile file = new MockMultipartFile(
                 "file",
@@ -95,12 +166,102 @@ public class ArtifactControllerTest {
     public void testDownloadArtifact() throws Exception {
         Run run = Run.builder().info(varga.kirka.model.RunInfo.builder().runId("run-1").artifactUri("hdfs:///tmp").build()).build();
         when(runService.getRun("run-1")).thenReturn(run);
-        doNothing().when(artifactService).downloadArtifact(anyString(), any());
+        when(artifactService.statArtifact("hdfs:///tmp/model.pkl"))
+                .thenReturn(new ArtifactService.ArtifactFile(1000L, 1_700_000_000_000L, "\"3e8-18bcfe56800\""));
+
+        mockMvc.perform(get("/api/2.0/mlflow/artifacts/download")
+                .param("run_id", "run-1")
+                .param("path", "model.pkl"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Accept-Ranges", "bytes"))
+                .andExpect(header().string("ETag", "\"3e8-18bcfe56800\""))
+                .andExpect(header().longValue("Content-Length", 1000L));
+        verify(artifactService).downloadArtifact(eq("hdfs:///tmp/model.pkl"), any(), eq(0L), eq(1000L));
+    }
+
+    @Test
+    public void testCachedDownloadIsCopiedFromDisk() throws Exception {
+        Run run = Run.builder().info(varga.kirka.model.RunInfo.builder().runId("run-1").artifactUri("hdfs:///tmp").build()).build();
+        when(runService.getRun("run-1")).thenReturn(run);
+        ArtifactService.ArtifactFile file = new ArtifactService.ArtifactFile(1000L, 1_700_000_000_000L, "\"v1\"");
+        when(artifactService.statArtifact("hdfs:///tmp/model.pkl")).thenReturn(file);
+        java.nio.file.Path cached = java.nio.file.Paths.get("/cache/0123-1");
+        when(artifactCache.get(eq("hdfs:///tmp/model.pkl"), eq(file), any())).thenReturn(cached);
+        when(artifactCache.peek(eq("hdfs:///tmp/model.pkl"), eq(file), any())).thenReturn(cached);
+
+        mockMvc.perform(get("/api/2.0/mlflow/artifacts/download")
+                .param("run_id", "run-1")
+                .param("path", "model.pkl")
+                .header("Range", "bytes=100-"))
+                .andExpect(status().isPartialContent());
+        verify(artifactCache).transfer(eq(cached), eq(100L), eq(900L), any());
 
         mockMvc.perform(get("/api/2.0/mlflow/artifacts/download")
                 .param("run_id", "run-1")
                 .param("path", "model.pkl"))
                 .andExpect(status().isOk());
+        verify(artifactCache).transfer(eq(cached), eq(0L), eq(1000L), any());
+        verify(artifactService, never()).downloadArtifact(anyString(), any(), anyLong(), anyLong());
+    }
+
+    @Test
+    public void testDownloadRangeIsPartialContent() throws Exception {
+        Run run = Run.builder().info(varga.kirka.model.RunInfo.builder().runId("run-1").artifactUri("hdfs:///tmp").build()).build();
+        when(runService.getRun("run-1")).thenReturn(run);
+        when(artifactService.statArtifact("hdfs:///tmp/model.safetensors"))
+                .thenReturn(new ArtifactService.ArtifactFile(1000L, 1_700_000_000_000L, "\"v1\""));
+
+        mockMvc.perform(get("/api/2.0/mlflow/artifacts/download")
+                .param("run_id", "run-1")
+                .param("path", "model.safetensors")
+                .header("Range", "bytes=0-7"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string("Content-Range", "bytes 0-7/1000"))
+                .andExpect(header().longValue("Content-Length", 8L));
+        verify(artifactService).downloadArtifact(eq("hdfs:///tmp/model.safetensors"), any(), eq(0L), eq(8L));
+
+        // Resuming with the ETag of the first response: only the rest is sent.
+        mockMvc.perform(get("/api/2.0/mlflow/artifacts/download")
+                .param("run_id", "run-1")
+                .param("path", "model.safetensors")
+                .header("Range", "bytes=600-")
+                .header("If-Range", "\"v1\""))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string("Content-Range", "bytes 600-999/1000"));
+        verify(artifactService).downloadArtifact(eq("hdfs:///tmp/model.safetensors"), any(), eq(600L), eq(400L));
+    }
+
+    @Test
+    public void testStaleIfRangeGetsTheWholeFile() throws Exception {
+        Run run = Run.builder().info(varga.kirka.model.RunInfo.builder().runId("run-1").artifactUri("hdfs:///tmp").build()).build();
+        when(runService.getRun("run-1")).thenReturn(run);
+        when(artifactService.statArtifact("hdfs:///tmp/model.pkl"))
+                .thenReturn(new ArtifactService.ArtifactFile(1000L, 1_700_000_000_000L, "\"v2\""));
+
+        mockMvc.perform(get("/api/2.0/mlflow/artifacts/download")
+                .param("run_id", "run-1")
+                .param("path", "model.pkl")
+                .header("Range", "bytes=600-")
+                .header("If-Range", "\"v1\""))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Content-Range"));
+        verify(artifactService).downloadArtifact(eq("hdfs:///tmp/model.pkl"), any(), eq(0L), eq(1000L));
+    }
+
+    @Test
+    public void testRangePastTheEndIsNotSatisfiable() throws Exception {
+        Run run = Run.builder().info(varga.kirka.model.RunInfo.builder().runId("run-1").artifactUri("hdfs:///tmp").build()).build();
+        when(runService.getRun("run-1")).thenReturn(run);
+        when(artifactService.statArtifact("hdfs:///tmp/model.pkl"))
+                .thenReturn(new ArtifactService.ArtifactFile(1000L, 1_700_000_000_000L, "\"v1\""));
+
+        mockMvc.perform(get("/api/2.0/mlflow/artifacts/download")
+                .param("run_id", "run-1")
+                .param("path", "model.pkl")
+                .header("Range", "bytes=1000-"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string("Content-Range", "bytes */1000"));
+        verify(artifactService, never()).downloadArtifact(anyString(), any(), anyLong(), anyLong());
     }
 
     @Test
@@ -115,4 +276,70 @@ public class ArtifactControllerTest {
                 .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isBadRequest());
     }
+
+    @Test
+    public void testDownloadArchiveStreamsTheDirectory() throws Exception {
+        Run run = Run.builder().info(varga.kirka.model.RunInfo.builder().runId("run-1").artifactUri("hdfs:///tmp").build()).build();
+        when(runService.getRun("run-1")).thenReturn(run);
+        when(artifactService.existsArtifact("hdfs:///tmp/model/")).thenReturn(true);
+        when(artifactArchiveService.writeArchive(eq("hdfs:///tmp/model/"), eq(ArtifactArchiveService.Format.TAR_ZST), any()))
+                .thenAnswer(inv -> {
+                    ((java.io.OutputStream) inv.getArgument(2)).write("archive".getBytes());
+                    return 1;
+                });
+
+        mockMvc.perform(get("/api/2.0/mlflow/artifacts/download-archive")
+                        .param("run_id", "run-1")
+                        .param("path", "model/")
+                        .param("format", "tar.zst"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", "application/zstd"))
+                .andExpect(header().string("Content-Disposition", "attachment; filename=\"model.tar.zst\""))
+                .andExpect(org.springframework.test.web.servlet.result.MockMvcResultMatchers.content().string("archive"));
+    }
+
+    @Test
+    public void testDownloadArchiveFailingAfterTheResponseIsSentIsNotEnded() throws Exception {
+        Run run = Run.builder().info(varga.kirka.model.RunInfo.builder().runId("run-1").artifactUri("hdfs:///tmp").build()).build();
+        when(runService.getRun("run-1")).thenReturn(run);
+        when(artifactService.existsArtifact("hdfs:///tmp")).thenReturn(true);
+        when(artifactArchiveService.writeArchive(eq("hdfs:///tmp"), eq(ArtifactArchiveService.Format.TAR), any()))
+                .thenAnswer(inv -> {
+                    java.io.OutputStream out = inv.getArgument(2);
+                    out.write("partial".getBytes());
+                    out.flush();
+                    throw new java.io.IOException("DataNode went away");
+                });
+
+        // The failure is not reported in a body appended to the partial archive.
+        mockMvc.perform(get("/api/2.0/mlflow/artifacts/download-archive")
+                        .param("run_id", "run-1")
+                        .param("format", "tar"))
+                .andExpect(status().isOk())
+                .andExpect(org.springframework.test.web.servlet.result.MockMvcResultMatchers.content().string("partial"));
+
+        when(artifactArchiveService.writeArchive(eq("hdfs:///tmp"), eq(ArtifactArchiveService.Format.TAR), any()))
+                .thenThrow(new java.io.IOException("NameNode unavailable"));
+        mockMvc.perform(get("/api/2.0/mlflow/artifacts/download-archive")
+                        .param("run_id", "run-1")
+                        .param("format", "tar"))
+                .andExpect(status().is5xxServerError());
+    }
+
+    @Test
+    public void testDownloadArchiveRejectsUnknownFormatsAndMissingDirectories() throws Exception {
+        Run run = Run.builder().info(varga.kirka.model.RunInfo.builder().runId("run-1").artifactUri("hdfs:///tmp").build()).build();
+        when(runService.getRun("run-1")).thenReturn(run);
+
+        mockMvc.perform(get("/api/2.0/mlflow/artifacts/download-archive")
+                        .param("run_id", "run-1")
+                        .param("format", "rar"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/2.0/mlflow/artifacts/download-archive")
+                        .param("run_id", "run-1")
+                        .param("path", "missing"))
+                .andExpect(status().isNotFound());
+
+        verify(artifactArchiveService, never()).writeArchive(anyString(), any(), any());
+    }
 }
@@ -12,6 +12,9 @@ import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.web.servlet.MockMvc;
 import varga.kirka.model.Run;
 import varga.kirka.model.RunInfo;
+import varga.kirka.service.ArtifactArchiveService;
+import varga.kirka.service.ArtifactCache;
+import varga.kirka.service.ArtifactRedirectService;
 import varga.kirka.service.ArtifactService;
 import varga.kirka.service.RunService;
 
@@ -39,6 +42,15 @@ public class ArtifactPathTraversalTest {
     @MockBean
     private RunService runService;
 
+    @MockBean
+    private ArtifactCache artifactCache;
+
+    @MockBean
+    private ArtifactArchiveService artifactArchiveService;
+
+    @MockBean
+    private ArtifactRedirectService artifactRedirectService;
+
     private static final String[] MALICIOUS_PATHS = {
             "../../etc/passwd",
             "subdir/../../secret",
@@ -0,0 +1,222 @@
+package varga.kirka.controller;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import varga.kirka.config.JacksonConfig;
+import varga.kirka.model.Run;
+import varga.kirka.model.RunInfo;
+import varga.kirka.security.AccessDeniedException;
+import varga.kirka.service.ArtifactService;
+import varga.kirka.service.ExperimentService;
+import varga.kirka.service.MultipartUploadService;
+import varga.kirka.service.RunService;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@Import(JacksonConfig.class)
+@WebMvcTest(ArtifactProxyController.class)
+@AutoConfigureMockMvc(addFilters = false)
+public class ArtifactProxyControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private ArtifactService artifactService;
+
+    @MockBean
+    private RunService runService;
+
+    @MockBean
+    private ExperimentService experimentService;
+
+    @MockBean
+    private MultipartUploadService multipartUploadService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Run run = Run.builder().info(RunInfo.builder().runId("run-1").experimentId("7")
+                .artifactUri("hdfs:///mlflow/artifacts/7/run-1").build()).build();
+        when(runService.getWritableRun("run-1")).thenReturn(run);
+        when(artifactService.proxyLocation(anyString()))
+                .thenAnswer(inv -> "hdfs:///mlflow/artifacts/" + inv.getArgument(0));
+    }
+
+    @Test
+    public void testPutStreamsTheRawBodyIntoTheRunDirectory() throws Exception {
+        byte[] content = "serialized model weights".getBytes();
+        AtomicReference<byte[]> received = new AtomicReference<>();
+        when(artifactService.uploadArtifact(eq("hdfs:///mlflow/artifacts/7/run-1/model/model.pkl"), any(), eq("7"), isNull()))
+                .thenAnswer(inv -> {
+                    received.set(((InputStream) inv.getArgument(1)).readAllBytes());
+                    return (long) content.length;
+                });
+
+        mockMvc.perform(put("/api/2.0/mlflow-artifacts/artifacts/7/run-1/model/model.pkl")
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .content(content))
+                .andExpect(status().isOk());
+
+        assertArrayEquals(content, received.get());
+    }
+
+    @Test
+    public void testPathOutsideTheRunDirectoryIsRejected() throws Exception {
+        mockMvc.perform(put("/api/2.0/mlflow-artifacts/artifacts/8/run-1/model.pkl")
+                        .content(new byte[]{1}))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(put("/api/2.0/mlflow-artifacts/artifacts/7/run-1")
+                        .content(new byte[]{1}))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(put("/api/2.0/mlflow-artifacts/artifacts/7/run-1/..%2F..%2Fother/x")
+                        .content(new byte[]{1}))
+                .andExpect(status().isBadRequest());
+
+        verify(artifactService, never()).uploadArtifact(anyString(), any(), any(), any());
+    }
+
+    @Test
+    public void testWriteAccessToTheRunIsRequired() throws Exception {
+        when(runService.getWritableRun("run-2")).thenThrow(new AccessDeniedException("run", "run-2", "bob", "write"));
+
+        mockMvc.perform(put("/api/2.0/mlflow-artifacts/artifacts/7/run-2/model.pkl")
+                        .content(new byte[]{1}))
+                .andExpect(status().isForbidden());
+
+        verify(artifactService, never()).uploadArtifact(anyString(), any(), any(), any());
+    }
+
+    @Test
+    public void testCreateMultipartUploadReturnsOnePartUrlPerPart() throws Exception {
+        when(multipartUploadService.create("hdfs:///mlflow/artifacts/7/run-1",
+                "hdfs:///mlflow/artifacts/7/run-1/checkpoints/model.ckpt", 3)).thenReturn("0123456789abcdef0123456789abcdef");
+
+        mockMvc.perform(post("/api/2.0/mlflow-artifacts/mpu/create/7/run-1/checkpoints")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"path\": \"model.ckpt\", \"num_parts\": 3}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.upload_id").value("0123456789abcdef0123456789abcdef"))
+                .andExpect(jsonPath("$.credentials.length()").value(3))
+                .andExpect(jsonPath("$.credentials[2].part_number").value(3))
+                .andExpect(jsonPath("$.credentials[2].url").value("http://localhost/api/2.0/mlflow-artifacts/mpu/upload/7/run-1/checkpoints"
+                        + "?path=model.ckpt&upload_id=0123456789abcdef0123456789abcdef&part_number=3"));
+    }
+
+    @Test
+    public void testPartUploadReturnsItsETag() throws Exception {
+        byte[] content = "part two".getBytes();
+        AtomicReference<byte[]> received = new AtomicReference<>();
+        when(multipartUploadService.uploadPart(eq("hdfs:///mlflow/artifacts/7/run-1"),
+                eq("hdfs:///mlflow/artifacts/7/run-1/model.ckpt"), eq("abc"), eq(2), any(), isNull()))
+                .thenAnswer(inv -> {
+                    received.set(((InputStream) inv.getArgument(4)).readAllBytes());
+                    return "\"5d41402abc4b2a76b9719d911017c592\"";
+                });
+
+        mockMvc.perform(put("/api/2.0/mlflow-artifacts/mpu/upload/7/run-1")
+                        .param("path", "model.ckpt").param("upload_id", "abc").param("part_number", "2")
+                        .content(content))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"5d41402abc4b2a76b9719d911017c592\""));
+
+        assertArrayEquals(content, received.get());
+    }
+
+    @Test
+    public void testCompleteAndAbortAreScopedToTheRun() throws Exception {
+        mockMvc.perform(post("/api/2.0/mlflow-artifacts/mpu/complete/7/run-1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"path\": \"model.ckpt\", \"upload_id\": \"abc\", "
+                                + "\"parts\": [{\"part_number\": 1, \"etag\": \"e1\"}, {\"part_number\": 2}]}"))
+                .andExpect(status().isOk());
+        verify(multipartUploadService).complete("hdfs:///mlflow/artifacts/7/run-1",
+                "hdfs:///mlflow/artifacts/7/run-1/model.ckpt", "abc",
+                List.of(new MultipartUploadService.Part(1, "e1"), new MultipartUploadService.Part(2, null)));
+
+        mockMvc.perform(post("/api/2.0/mlflow-artifacts/mpu/abort/8/run-1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"path\": \"model.ckpt\", \"upload_id\": \"abc\"}"))
+                .andExpect(status().isBadRequest());
+        verify(multipartUploadService, never()).abort(anyString(), anyString(), anyString());
+    }
+
+    @Test
+    public void testDeclaredContentHashIsPassedOnLowerCased() throws Exception {
+        String sha256 = "9F86D081884C7D659A2FEAA0C55AD015A3BF4F1B2B0B822CD15D6C15B0F00A08";
+
+        mockMvc.perform(put("/api/2.0/mlflow-artifacts/artifacts/7/run-1/model.pkl")
+                        .header("X-Kirka-Content-Sha256", sha256)
+                        .content("test".getBytes()))
+                .andExpect(status().isOk());
+        verify(artifactService).uploadArtifact(eq("hdfs:///mlflow/artifacts/7/run-1/model.pkl"), any(), eq("7"),
+                eq(sha256.toLowerCase()));
+
+        mockMvc.perform(put("/api/2.0/mlflow-artifacts/artifacts/7/run-1/other.pkl")
+                        .header("X-Kirka-Content-Sha256", "not-a-hash")
+                        .content("test".getBytes()))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testBlobPreCheckAndLink() throws Exception {
+        String known = "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08";
+        String unknown = "2c26b46b68ffc68ff99b453c1d30413413422d706483bfa0f98a5e886266e7ae";
+        when(artifactService.blobLength("7", known)).thenReturn(4L);
+        when(artifactService.blobLength("7", unknown)).thenReturn(null);
+        when(artifactService.linkArtifact("hdfs:///mlflow/artifacts/7/run-1/tokenizer.json", "7", known)).thenReturn(4L);
+
+        mockMvc.perform(get("/api/2.0/mlflow-artifacts/blobs/" + known).param("experiment_id", "7"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.exists").value(true))
+                .andExpect(jsonPath("$.size").value(4));
+        mockMvc.perform(get("/api/2.0/mlflow-artifacts/blobs/" + unknown).param("experiment_id", "7"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.exists").value(false));
+        mockMvc.perform(get("/api/2.0/mlflow-artifacts/blobs/xyz").param("experiment_id", "7"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/2.0/mlflow-artifacts/blobs/" + known))
+                .andExpect(status().isBadRequest());
+
+        mockMvc.perform(post("/api/2.0/mlflow-artifacts/blobs/" + known + "/link/7/run-1/tokenizer.json"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.size").value(4));
+        mockMvc.perform(post("/api/2.0/mlflow-artifacts/blobs/" + known + "/link/8/run-1/tokenizer.json"))
+                .andExpect(status().isBadRequest());
+        verify(artifactService, never()).linkArtifact(eq("hdfs:///mlflow/artifacts/8/run-1/tokenizer.json"), anyString(), anyString());
+    }
+
+    @Test
+    public void testBlobPreCheckNeedsReadAccessToTheExperiment() throws Exception {
+        String known = "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08";
+        when(experimentService.getExperiment("8")).thenThrow(new AccessDeniedException("experiment", "8", "bob", "read"));
+
+        mockMvc.perform(get("/api/2.0/mlflow-artifacts/blobs/" + known).param("experiment_id", "8"))
+                .andExpect(status().isForbidden());
+
+        verify(artifactService, never()).blobLength(anyString(), anyString());
+    }
+}
@@ -0,0 +1,39 @@
+package varga.kirka.controller;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ByteRangeTest {
+
+    @Test
+    public void testClosedOpenAndSuffixRanges() {
+        assertEquals(new ByteRange(0, 7), ByteRange.parse("bytes=0-7", 100));
+        assertEquals(new ByteRange(90, 99), ByteRange.parse("bytes=90-", 100));
+        assertEquals(new ByteRange(80, 99), ByteRange.parse("bytes=-20", 100));
+        assertEquals(8, ByteRange.parse("bytes=0-7", 100).length());
+    }
+
+    @Test
+    public void testRangesAreClampedToTheFile() {
+        assertEquals(new ByteRange(50, 99), ByteRange.parse("bytes=50-5000", 100));
+        assertEquals(new ByteRange(0, 99), ByteRange.parse("bytes=-5000", 100));
+    }
+
+    @Test
+    public void testRangesPastTheEndAreUnsatisfiable() {
+        assertSame(ByteRange.UNSATISFIABLE, ByteRange.parse("bytes=100-", 100));
+        assertSame(ByteRange.UNSATISFIABLE, ByteRange.parse("bytes=-0", 100));
+        assertSame(ByteRange.UNSATISFIABLE, ByteRange.parse("bytes=0-", 0));
+    }
+
+    @Test
+    public void testUnsupportedOrMalformedHeadersServeTheWholeFile() {
+        assertNull(ByteRange.parse(null, 100));
+        assertNull(ByteRange.parse("items=0-7", 100));
+        assertNull(ByteRange.parse("bytes=0-7,20-30", 100));
+        assertNull(ByteRange.parse("bytes=7-0", 100));
+        assertNull(ByteRange.parse("bytes=abc-", 100));
+        assertNull(ByteRange.parse("bytes=5", 100));
+    }
+}
@@ -0,0 +1,64 @@
+package varga.kirka.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import varga.kirka.config.JacksonConfig;
+import varga.kirka.model.Job;
+import varga.kirka.model.JobStatus;
+import varga.kirka.service.JobService;
+import varga.kirka.service.ModelRegistryService;
+
+import java.util.Map;
+
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@Import(JacksonConfig.class)
+@WebMvcTest(JobController.class)
+@AutoConfigureMockMvc(addFilters = false)
+public class JobControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private JobService jobService;
+
+    @MockBean
+    private ModelRegistryService modelRegistryService;
+
+    @Test
+    public void testGetJob() throws Exception {
+        Job job = Job.builder().jobId("j1").type("rename-registered-model").status(JobStatus.RUNNING)
+                .completed(500).checkpoint(Map.of("versions_moved", "500"))
+                .leaseOwner("node-1").leaseExpiry(42L).build();
+        when(jobService.getJob("j1")).thenReturn(job);
+
+        mockMvc.perform(get("/api/2.0/kirka/jobs/get").param("job_id", "j1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.job.job_id").value("j1"))
+                .andExpect(jsonPath("$.job.status").value("RUNNING"))
+                .andExpect(jsonPath("$.job.completed").value(500))
+                .andExpect(jsonPath("$.job.lease_owner").doesNotExist());
+    }
+
+    @Test
+    public void testSubmitRename() throws Exception {
+        when(modelRegistryService.submitRenameRegisteredModel("m1", "m2")).thenReturn("j2");
+
+        mockMvc.perform(post("/api/2.0/kirka/jobs/registered-models/rename")
+                .content("{\"name\": \"m1\", \"new_name\": \"m2\"}")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.job_id").value("j2"));
+    }
+}
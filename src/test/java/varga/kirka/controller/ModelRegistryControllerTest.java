@@ -56,6 +56,18 @@ public class ModelRegistryControllerTest {
                 .andExpect(jsonPath("$.model_version.version").value("1"));
     }
 
+    @Test
+    public void testGetLatestVersions() throws Exception {
+        varga.kirka.model.ModelVersion version = varga.kirka.model.ModelVersion.builder().name("m1").version("4").currentStage("Production").build();
+        when(modelRegistryService.getLatestVersions(eq("m1"), eq(List.of("Production")))).thenReturn(List.of(version));
+
+        mockMvc.perform(post("/api/2.0/mlflow/registered-models/get-latest-versions")
+                .content("{\"name\": \"m1\", \"stages\": [\"Production\"]}")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.model_versions[0].version").value("4"));
+    }
+
     @Test
     public void testTransitionModelVersionStage() throws Exception {
         varga.kirka.model.ModelVersion version = varga.kirka.model.ModelVersion.builder().name("m1").version("1").currentStage("Production").build();
@@ -70,13 +82,17 @@ public class ModelRegistryControllerTest {
 
     @Test
     public void testSearchRegisteredModels() throws Exception {
-        when(modelRegistryService.searchRegisteredModels(any())).thenReturn(List.of());
+        when(modelRegistryService.searchRegisteredModels(any(), eq(2), isNull(), eq("last_updated_timestamp DESC")))
+                .thenReturn(varga.kirka.repo.Page.of(List.of(), "bmV4dA"));
 
         mockMvc.perform(get("/api/2.0/mlflow/registered-models/search")
                 .param("filter", "name LIKE 'm1%'")
+                .param("max_results", "2")
+                .param("order_by", "last_updated_timestamp DESC")
                 .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$.registered_models").isArray());
+                .andExpect(jsonPath("$.registered_models").isArray())
+                .andExpect(jsonPath("$.next_page_token").value("bmV4dA"));
     }
 
     @Test
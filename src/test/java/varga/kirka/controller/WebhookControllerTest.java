@@ -0,0 +1,73 @@
+package varga.kirka.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import varga.kirka.config.JacksonConfig;
+import varga.kirka.model.RegistryEvent;
+import varga.kirka.model.Webhook;
+import varga.kirka.service.WebhookService;
+
+import java.util.List;
+
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@Import(JacksonConfig.class)
+@WebMvcTest(WebhookController.class)
+@AutoConfigureMockMvc(addFilters = false)
+public class WebhookControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private WebhookService webhookService;
+
+    private static Webhook webhook() {
+        return Webhook.builder().webhookId("w1").url("https://deployer/hook").modelName("fraud")
+                .events(List.of(RegistryEvent.MODEL_VERSION_ALIAS_SET)).owner("alice").secret("s3cr3t").build();
+    }
+
+    @Test
+    public void testCreateReturnsTheSecretOnce() throws Exception {
+        when(webhookService.createWebhook("deployer", "https://deployer/hook",
+                List.of(RegistryEvent.MODEL_VERSION_ALIAS_SET), "fraud", null)).thenReturn(webhook());
+
+        mockMvc.perform(post("/api/2.0/mlflow/webhooks")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"deployer\",\"url\":\"https://deployer/hook\","
+                                + "\"events\":[\"model_version_alias.set\"],\"model_name\":\"fraud\"}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.webhook.webhook_id").value("w1"))
+                .andExpect(jsonPath("$.webhook.model_name").value("fraud"))
+                .andExpect(jsonPath("$.webhook.secret").doesNotExist())
+                .andExpect(jsonPath("$.secret").value("s3cr3t"));
+    }
+
+    @Test
+    public void testGetDoesNotExposeTheSecret() throws Exception {
+        when(webhookService.getWebhook("w1")).thenReturn(webhook());
+
+        mockMvc.perform(get("/api/2.0/mlflow/webhooks/w1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.webhook.url").value("https://deployer/hook"))
+                .andExpect(jsonPath("$.webhook.secret").doesNotExist());
+    }
+
+    @Test
+    public void testCreateRequiresUrl() throws Exception {
+        mockMvc.perform(post("/api/2.0/mlflow/webhooks")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"deployer\"}"))
+                .andExpect(status().isBadRequest());
+    }
+}
@@ -0,0 +1,175 @@
+package varga.kirka.observability;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.BufferedMutator;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.RetriesExhaustedWithDetailsException;
+import org.apache.hadoop.hbase.client.Row;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import varga.kirka.model.AuditEvent;
+import varga.kirka.repo.AuditRepository;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class AsyncAuditWriterTest {
+
+    private final AuditRepository auditRepository = mock(AuditRepository.class);
+    private final AuditRepository.BatchWriter batchWriter = mock(AuditRepository.BatchWriter.class);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private AsyncAuditWriter writer;
+
+    @TempDir
+    Path spillDir;
+
+    private AsyncAuditWriter newWriter(int capacity, int flushSize, long flushIntervalMs, String policy) throws Exception {
+        when(auditRepository.openBatchWriter(anyLong(), any())).thenReturn(batchWriter);
+        writer = new AsyncAuditWriter(auditRepository, registry, true, capacity, flushSize, flushIntervalMs,
+                1024 * 1024, policy, 50, 5_000, spillDir.toString());
+        return writer;
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (writer != null) writer.stop();
+    }
+
+    private static AuditEvent event(String resourceId) {
+        return AuditEvent.builder()
+                .eventId(UUID.randomUUID().toString())
+                .timestamp(System.currentTimeMillis())
+                .action("log").resourceType("run").resourceId(resourceId).outcome("allowed")
+                .build();
+    }
+
+    @Test
+    void flushesOnceBatchSizeIsReached() throws Exception {
+        newWriter(100, 3, 60_000, "drop").start();
+
+        for (int i = 0; i < 3; i++) writer.submit(event("run-" + i));
+
+        verify(batchWriter, timeout(5_000).times(3)).append(any(AuditEvent.class));
+        verify(batchWriter, timeout(5_000)).flush();
+        assertEquals(3.0, registry.get("kirka.audit.written").counter().count(), 0.0);
+    }
+
+    @Test
+    void flushesPartialBatchAfterInterval() throws Exception {
+        newWriter(100, 50, 20, "drop").start();
+
+        writer.submit(event("run-1"));
+
+        verify(batchWriter, timeout(5_000)).flush();
+        verify(batchWriter).append(any(AuditEvent.class));
+    }
+
+    @Test
+    void dropPolicyCountsOverflowWithoutThrowing() throws Exception {
+        // Writer not started: the queue never drains, so the third event overflows.
+        newWriter(2, 2, 60_000, "drop");
+
+        writer.submit(event("a"));
+        writer.submit(event("b"));
+        assertDoesNotThrow(() -> writer.submit(event("c")));
+
+        assertEquals(1.0, registry.get("kirka.audit.dropped").counter().count(), 0.0);
+        assertEquals(2.0, registry.get("kirka.audit.queue.size").gauge().value(), 0.0);
+    }
+
+    @Test
+    void blockPolicyGivesUpAfterTimeout() throws Exception {
+        newWriter(1, 1, 60_000, "block");
+
+        writer.submit(event("a"));
+        long start = System.nanoTime();
+        writer.submit(event("b"));
+
+        assertTrue(System.nanoTime() - start < 5_000_000_000L, "block policy must be bounded");
+        assertEquals(1.0, registry.get("kirka.audit.dropped").counter().count(), 0.0);
+    }
+
+    @Test
+    void spillPolicyWritesToDiskAndReplaysOnStart() throws Exception {
+        newWriter(1, 1, 20, "spill");
+        writer.submit(event("a"));
+        writer.submit(event("spilled"));
+
+        assertEquals(1.0, registry.get("kirka.audit.spilled").counter().count(), 0.0);
+        assertTrue(Files.exists(spillDir.resolve("audit-spill.jsonl")));
+
+        writer.start();
+
+        verify(batchWriter, timeout(5_000)).append(
+                argThat(e -> "spilled".equals(e.getResourceId())));
+        verify(batchWriter, timeout(5_000)).append(
+                argThat(e -> "a".equals(e.getResourceId())));
+    }
+
+    @Test
+    void failedFlushIsCountedAndWriterKeepsRunning() throws Exception {
+        newWriter(100, 1, 20, "drop").start();
+        doThrow(new java.io.IOException("HBase down")).doNothing().when(batchWriter).flush();
+
+        writer.submit(event("lost"));
+        verify(batchWriter, timeout(5_000)).flush();
+        writer.submit(event("kept"));
+
+        verify(batchWriter, timeout(5_000)).append(
+                argThat(e -> "kept".equals(e.getResourceId())));
+        assertEquals(1.0, registry.get("kirka.audit.failed").counter().count(), 0.0);
+    }
+
+    @Test
+    void rowsGivenUpByTheMutatorAreNotCountedAsWritten() throws Exception {
+        AtomicReference<BufferedMutator.ExceptionListener> listener = new AtomicReference<>();
+        when(auditRepository.openBatchWriter(anyLong(), any())).thenAnswer(invocation -> {
+            listener.set(invocation.getArgument(1));
+            return batchWriter;
+        });
+        writer = new AsyncAuditWriter(auditRepository, registry, true, 100, 3, 60_000,
+                1024 * 1024, "drop", 50, 5_000, "");
+        doAnswer(invocation -> {
+            listener.get().onException(lost("mlflow_audit"), mutator("mlflow_audit"));
+            listener.get().onException(lost("mlflow_audit_by_user"), mutator("mlflow_audit_by_user"));
+            return null;
+        }).when(batchWriter).flush();
+        writer.start();
+
+        for (int i = 0; i < 3; i++) writer.submit(event("run-" + i));
+
+        verify(batchWriter, timeout(5_000)).flush();
+        writer.stop();
+        assertEquals(2.0, registry.get("kirka.audit.written").counter().count(), 0.0);
+        assertEquals(1.0, registry.get("kirka.audit.failed").counter().count(), 0.0);
+    }
+
+    @Test
+    void spillPolicyRequiresASpillDirectory() {
+        assertThrows(IllegalArgumentException.class, () -> new AsyncAuditWriter(auditRepository, registry, true,
+                100, 3, 60_000, 1024 * 1024, "spill", 50, 5_000, ""));
+        assertDoesNotThrow(() -> new AsyncAuditWriter(auditRepository, new SimpleMeterRegistry(), true,
+                100, 3, 60_000, 1024 * 1024, "drop", 50, 5_000, ""));
+    }
+
+    private static RetriesExhaustedWithDetailsException lost(String table) {
+        Row row = new Put(table.getBytes());
+        return new RetriesExhaustedWithDetailsException(
+                List.of(new java.io.IOException("region unavailable")), List.of(row), List.of("rs1:16020"));
+    }
+
+    private static BufferedMutator mutator(String table) {
+        BufferedMutator mutator = mock(BufferedMutator.class);
+        when(mutator.getName()).thenReturn(TableName.valueOf(table));
+        return mutator;
+    }
+}
@@ -0,0 +1,79 @@
+package varga.kirka.observability;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import varga.kirka.model.AuditEvent;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AuditCoalescerTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private AuditCoalescer coalescer(boolean enabled, int maxKeys) {
+        return new AuditCoalescer(registry, enabled, 1_000, "log", maxKeys);
+    }
+
+    private static AuditEvent event(String user, String runId, String action, String outcome, long ts) {
+        return AuditEvent.builder()
+                .eventId("e-" + ts).timestamp(ts).user(user)
+                .action(action).resourceType("run").resourceId(runId).outcome(outcome)
+                .build();
+    }
+
+    @Test
+    void foldsAllowedLogEventsPerUserAndResource() {
+        AuditCoalescer c = coalescer(true, 100);
+
+        assertTrue(c.offer(event("alice", "run-1", "log", "allowed", 1_000)));
+        assertTrue(c.offer(event("alice", "run-1", "log", "allowed", 1_200)));
+        assertTrue(c.offer(event("alice", "run-1", "log", "allowed", 1_500)));
+        assertTrue(c.offer(event("bob", "run-1", "log", "allowed", 1_100)));
+
+        List<AuditEvent> out = c.drainExpired(2_100);
+
+        assertEquals(2, out.size());
+        AuditEvent alice = out.stream().filter(e -> "alice".equals(e.getUser())).findFirst().orElseThrow();
+        assertEquals(3, alice.getCount());
+        assertEquals(1_000L, alice.getFirstTimestamp());
+        assertEquals(1_500L, alice.getLastTimestamp());
+        assertEquals("e-1000", alice.getEventId());
+        assertEquals(2.0, registry.get("kirka.audit.coalesced").counter().count(), 0.0);
+    }
+
+    @Test
+    void deniedErrorAndOtherActionsPassThrough() {
+        AuditCoalescer c = coalescer(true, 100);
+
+        assertFalse(c.offer(event("alice", "run-1", "log", "denied", 1_000)));
+        assertFalse(c.offer(event("alice", "run-1", "log", "error", 1_000)));
+        assertFalse(c.offer(event("alice", "run-1", "delete", "allowed", 1_000)));
+        assertTrue(c.drainAll().isEmpty());
+    }
+
+    @Test
+    void windowsAreKeptUntilTheyExpire() {
+        AuditCoalescer c = coalescer(true, 100);
+        c.offer(event("alice", "run-1", "log", "allowed", 1_000));
+
+        assertTrue(c.drainExpired(1_500).isEmpty());
+        assertEquals(1, c.drainExpired(2_000).size());
+        assertTrue(c.drainAll().isEmpty());
+    }
+
+    @Test
+    void newKeysBypassTheMapOnceCapIsReached() {
+        AuditCoalescer c = coalescer(true, 1);
+
+        assertTrue(c.offer(event("alice", "run-1", "log", "allowed", 1_000)));
+        assertFalse(c.offer(event("alice", "run-2", "log", "allowed", 1_000)));
+        assertTrue(c.offer(event("alice", "run-1", "log", "allowed", 1_100)));
+    }
+
+    @Test
+    void disabledCoalescerNeverAbsorbs() {
+        assertFalse(coalescer(false, 100).offer(event("alice", "run-1", "log", "allowed", 1_000)));
+    }
+}
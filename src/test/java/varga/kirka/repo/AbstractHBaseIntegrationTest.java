@@ -58,15 +58,22 @@ public abstract class AbstractHBaseIntegrationTest {
         byte[][] standardCFs = {Bytes.toBytes("info"), Bytes.toBytes("params"), Bytes.toBytes("metrics"), Bytes.toBytes("tags")};
         String[] standardTables = {
                 "mlflow_experiments", "mlflow_experiments_name_index", "mlflow_runs",
-                "mlflow_metric_history", "mlflow_registered_models", "mlflow_model_versions",
+                "mlflow_registered_models_ci_index", "mlflow_registry_order_index", "mlflow_jobs", "mlflow_webhooks",
+                "mlflow_metric_history", "mlflow_model_versions",
                 "mlflow_scorers", "mlflow_prompts",
-                "mlflow_gateway_routes", "mlflow_gateway_endpoints"
+                "mlflow_gateway_routes", "mlflow_gateway_endpoints",
+                "mlflow_audit", "mlflow_audit_by_user", "mlflow_audit_by_resource"
         };
         for (String table : standardTables) {
             utility.createTable(TableName.valueOf(table), standardCFs);
             utility.waitTableEnabled(TableName.valueOf(table), 60000);
         }
 
+        // Registered models carry aliases and the denormalized latest version per stage
+        utility.createTable(TableName.valueOf("mlflow_registered_models"),
+                new byte[][]{Bytes.toBytes("info"), Bytes.toBytes("tags"), Bytes.toBytes("aliases"), Bytes.toBytes("latest")});
+        utility.waitTableEnabled(TableName.valueOf("mlflow_registered_models"), 60000);
+
         // Gateway secrets table needs an extra "values" column family for secret storage
         utility.createTable(TableName.valueOf("mlflow_gateway_secrets"),
                 new byte[][]{Bytes.toBytes("info"), Bytes.toBytes("values")});
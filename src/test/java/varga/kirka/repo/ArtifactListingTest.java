@@ -0,0 +1,111 @@
+package varga.kirka.repo;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import varga.kirka.model.FileInfo;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs against the local file system, which lists directories in no particular order: every
+ * directory is read to its end there, unlike on HDFS.
+ */
+public class ArtifactListingTest {
+
+    @TempDir
+    java.nio.file.Path dir;
+
+    private ArtifactRepository repository;
+    private String run;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        FileSystem fileSystem = FileSystem.getLocal(new Configuration());
+        ContentStore contentStore = new ContentStore(fileSystem, false, "file://" + dir + "/cas", "file://" + dir, 65536);
+        ParallelArtifactReader parallelReader = new ParallelArtifactReader(new SimpleMeterRegistry(), false, 0, 1 << 16, 1, 1, 1 << 16);
+        repository = new ArtifactRepository(fileSystem, parallelReader, contentStore,
+                new ArtifactPackStore(fileSystem, contentStore, true, 16));
+        run = "file://" + dir + "/7/run-1";
+    }
+
+    private void upload(String relative) throws IOException {
+        repository.uploadArtifact(run + "/" + relative, new ByteArrayInputStream(relative.getBytes()), 4096, n -> { });
+    }
+
+    private String relative(FileInfo file) {
+        String root = new Path(run).toUri().getPath() + "/";
+        return new Path(file.getPath()).toUri().getPath().substring(root.length());
+    }
+
+    /** Every page of the listing, {@code size} entries at a time, as relative paths. */
+    private List<List<String>> pages(String relative, int size, boolean recursive) throws IOException {
+        List<List<String>> pages = new ArrayList<>();
+        PageToken token = null;
+        do {
+            Page<FileInfo> page = repository.listArtifacts(run + relative, token, size, recursive);
+            pages.add(page.items().stream().map(this::relative).toList());
+            token = PageToken.decode(page.nextPageToken());
+        } while (token != null);
+        return pages;
+    }
+
+    @Test
+    public void testPagesFollowEachOtherInNameOrder() throws Exception {
+        for (String name : new String[]{"e.txt", "a.txt", "d", "c.txt", "b.txt"}) upload(name.equals("d") ? "d/x" : name);
+
+        assertEquals(List.of(List.of("a.txt", "b.txt"), List.of("c.txt", "d"), List.of("e.txt")), pages("", 2, false));
+        assertEquals(List.of(List.of("a.txt", "b.txt", "c.txt", "d", "e.txt")), pages("", 5, false));
+    }
+
+    @Test
+    public void testRecursivePagesResumeInsideDirectories() throws Exception {
+        for (String name : new String[]{"MLmodel", "model/weights.bin", "model/conf/a.json", "model/conf/b.json",
+                "plots/1.png", "plots/2.png", "plots-old/1.png", "z.txt"}) {
+            upload(name);
+        }
+        repository.packArtifacts(run, 1000, 3, 4096, () -> true);
+        upload("plots/3.png");
+
+        List<String> all = List.of("MLmodel", "model/conf/a.json", "model/conf/b.json", "model/weights.bin",
+                "plots/1.png", "plots/2.png", "plots/3.png", "plots-old/1.png", "z.txt");
+        for (int size = 1; size <= all.size(); size++) {
+            assertEquals(all, pages("", size, true).stream().flatMap(List::stream).toList(), "pages of " + size);
+        }
+        assertEquals(List.of(List.of("model/conf/a.json", "model/conf/b.json"), List.of("model/weights.bin")),
+                pages("/model", 2, true));
+    }
+
+    @Test
+    public void testAPageResumesAfterItsLastEntryWasDeleted() throws Exception {
+        for (String name : new String[]{"a.txt", "b.txt", "c.txt", "d.txt"}) upload(name);
+        Page<FileInfo> first = repository.listArtifacts(run, null, 2, false);
+
+        repository.deleteArtifact(run + "/b.txt");
+        upload("a2.txt");
+
+        Page<FileInfo> second = repository.listArtifacts(run, PageToken.decode(first.nextPageToken()), 2, false);
+        assertEquals(List.of("c.txt", "d.txt"), second.items().stream().map(this::relative).toList());
+        assertNull(second.nextPageToken());
+    }
+
+    @Test
+    public void testInternalEntriesAndMissingDirectoriesListNothing() throws Exception {
+        upload("model.pkl");
+        upload(".kirka-mpu/0123/_upload");
+        repository.packArtifacts(run, 1000, 1, 4096, () -> true);
+
+        assertEquals(List.of(List.of("model.pkl")), pages("", 10, false));
+        assertEquals(List.of(List.of("model.pkl")), pages("", 10, true));
+        assertEquals(List.of(List.of()), pages("/missing", 10, true));
+    }
+}
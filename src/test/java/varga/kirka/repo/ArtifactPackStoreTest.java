@@ -0,0 +1,187 @@
+package varga.kirka.repo;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import varga.kirka.model.FileInfo;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Runs against the local file system; packs are swapped with delete and rename there. */
+public class ArtifactPackStoreTest {
+
+    @TempDir
+    java.nio.file.Path dir;
+
+    private FileSystem fileSystem;
+    private ArtifactRepository repository;
+    private String run;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        fileSystem = FileSystem.getLocal(new Configuration());
+        ContentStore contentStore = new ContentStore(fileSystem, false, "file://" + dir + "/cas", "file://" + dir, 65536);
+        ParallelArtifactReader parallelReader = new ParallelArtifactReader(new SimpleMeterRegistry(), false, 0, 1 << 16, 1, 1, 1 << 16);
+        repository = new ArtifactRepository(fileSystem, parallelReader, contentStore,
+                new ArtifactPackStore(fileSystem, contentStore, true, 16));
+        run = "file://" + dir + "/7/run-1";
+    }
+
+    private void upload(String relative, String content) throws IOException {
+        repository.uploadArtifact(run + "/" + relative, new ByteArrayInputStream(content.getBytes()), 4096, n -> { });
+    }
+
+    private String read(String relative) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        repository.downloadArtifact(run + "/" + relative, out);
+        return out.toString();
+    }
+
+    private Map<String, Long> list(String relative) throws IOException {
+        return repository.listArtifacts(run + "/" + relative).stream()
+                .collect(Collectors.toMap(f -> new Path(f.getPath()).getName(),
+                        f -> f.getFileSize() == null ? -1L : f.getFileSize(), (a, b) -> a, TreeMap::new));
+    }
+
+    private void logRun() throws IOException {
+        upload("summary.json", "{\"loss\": 0.1}");
+        upload("plots/epoch-1.txt", "one");
+        upload("plots/epoch-2.txt", "two");
+        upload("model/weights.bin", "0123456789".repeat(10));
+    }
+
+    @Test
+    public void testPackedFilesKeepTheirPaths() throws Exception {
+        logRun();
+        long modified = repository.getFileStatus(run + "/plots/epoch-1.txt").getModificationTime();
+
+        assertEquals(3, repository.packArtifacts(run, 50, 2, 4096, () -> true));
+
+        assertFalse(fileSystem.exists(new Path(run + "/plots")), "emptied directories are removed");
+        assertTrue(fileSystem.exists(new Path(run + "/model/weights.bin")), "large files stay loose");
+        assertEquals("one", read("plots/epoch-1.txt"));
+        assertEquals("{\"loss\": 0.1}", read("summary.json"));
+        assertEquals(Map.of("model", -1L, "plots", -1L, "summary.json", 13L), list(""));
+        assertEquals(Map.of("epoch-1.txt", 3L, "epoch-2.txt", 3L), list("plots"));
+
+        FileStatus status = repository.getFileStatus(run + "/plots/epoch-1.txt");
+        assertEquals(3, status.getLen());
+        assertEquals(modified, status.getModificationTime());
+        assertTrue(repository.getFileStatus(run + "/plots").isDirectory());
+        assertTrue(repository.exists(run + "/plots/epoch-2.txt"));
+        assertNull(repository.getFileStatus(run + "/plots/epoch-3.txt"));
+        assertNull(repository.getFileChecksum(run + "/plots/epoch-2.txt"));
+
+        ByteArrayOutputStream range = new ByteArrayOutputStream();
+        repository.downloadArtifact(run + "/plots/epoch-2.txt", range, 1, 2, 4096);
+        assertEquals("wo", range.toString());
+        assertThrows(FileNotFoundException.class, () -> read("plots/epoch-3.txt"));
+    }
+
+    @Test
+    public void testNothingIsPackedBelowTheMinimumFileCount() throws Exception {
+        logRun();
+
+        assertEquals(0, repository.packArtifacts(run, 50, 4, 4096, () -> true));
+
+        assertFalse(fileSystem.exists(new Path(run + "/" + ArtifactPackStore.PACK_FILE)));
+    }
+
+    @Test
+    public void testLooseFilesShadowAndJoinAnExistingPack() throws Exception {
+        logRun();
+        repository.packArtifacts(run, 50, 2, 4096, () -> true);
+
+        upload("plots/epoch-1.txt", "ONE");
+        upload("plots/epoch-3.txt", "three");
+        assertEquals("ONE", read("plots/epoch-1.txt"));
+        assertEquals(Map.of("epoch-1.txt", 3L, "epoch-2.txt", 3L, "epoch-3.txt", 5L), list("plots"));
+
+        assertEquals(2, repository.packArtifacts(run, 50, 2, 4096, () -> true));
+
+        assertFalse(fileSystem.exists(new Path(run + "/plots")));
+        assertEquals("ONE", read("plots/epoch-1.txt"));
+        assertEquals("two", read("plots/epoch-2.txt"));
+        assertEquals("three", read("plots/epoch-3.txt"));
+    }
+
+    @Test
+    public void testDeletingDropsPackedFiles() throws Exception {
+        logRun();
+        repository.packArtifacts(run, 50, 2, 4096, () -> true);
+
+        repository.deleteArtifact(run + "/plots");
+
+        assertFalse(repository.exists(run + "/plots/epoch-1.txt"));
+        assertEquals(Map.of("model", -1L, "summary.json", 13L), list(""));
+        assertEquals("{\"loss\": 0.1}", read("summary.json"));
+
+        repository.deleteArtifact(run + "/summary.json");
+        assertFalse(repository.exists(run + "/summary.json"));
+        assertTrue(fileSystem.exists(new Path(run + "/" + ArtifactPackStore.PACK_FILE)), "deletes leave the pack to the packer");
+
+        assertEquals(0, repository.packArtifacts(run, 50, 2, 4096, () -> true));
+        assertFalse(fileSystem.exists(new Path(run + "/" + ArtifactPackStore.PACK_FILE)), "an empty pack is removed");
+        assertFalse(fileSystem.exists(new Path(run + "/.kirka-pack.deleted")), "applied tombstones are removed");
+        assertEquals(List.of("weights.bin"),
+                repository.listArtifacts(run + "/model").stream().map(f -> new Path(f.getPath()).getName()).toList());
+    }
+
+    @Test
+    public void testFilesUploadedAgainAfterADeleteAreKept() throws Exception {
+        logRun();
+        repository.packArtifacts(run, 50, 2, 4096, () -> true);
+        repository.deleteArtifact(run + "/plots");
+        Thread.sleep(5);
+
+        upload("plots/epoch-1.txt", "uno");
+        assertEquals("uno", read("plots/epoch-1.txt"));
+        assertEquals(Map.of("epoch-1.txt", 3L), list("plots"));
+
+        assertEquals(1, repository.packArtifacts(run, 50, 1, 4096, () -> true));
+        assertEquals("uno", read("plots/epoch-1.txt"));
+        assertFalse(repository.exists(run + "/plots/epoch-2.txt"));
+        assertEquals("{\"loss\": 0.1}", read("summary.json"));
+    }
+
+    @Test
+    public void testRewriteIsDroppedWithoutTheGuard() throws Exception {
+        logRun();
+        repository.packArtifacts(run, 50, 2, 4096, () -> true);
+        upload("plots/epoch-3.txt", "three");
+        repository.deleteArtifact(run + "/summary.json");
+        byte[] pack = fileSystem.open(new Path(run + "/" + ArtifactPackStore.PACK_FILE)).readAllBytes();
+
+        assertThrows(IOException.class, () -> repository.packArtifacts(run, 50, 1, 4096, () -> false));
+
+        assertArrayEquals(pack, fileSystem.open(new Path(run + "/" + ArtifactPackStore.PACK_FILE)).readAllBytes());
+        assertEquals("three", read("plots/epoch-3.txt"));
+        assertFalse(repository.exists(run + "/summary.json"), "the tombstone is kept for the next pack");
+        assertEquals(1, repository.packArtifacts(run, 50, 1, 4096, () -> true));
+        assertFalse(repository.exists(run + "/summary.json"));
+    }
+
+    @Test
+    public void testPackFilesAreNotListed() throws Exception {
+        logRun();
+        repository.packArtifacts(run, 50, 2, 4096, () -> true);
+
+        for (FileInfo file : repository.listArtifacts(run)) {
+            assertFalse(file.getPath().contains(".kirka-pack"), file.getPath());
+        }
+    }
+}
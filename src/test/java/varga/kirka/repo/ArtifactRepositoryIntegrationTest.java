@@ -12,9 +12,16 @@ import org.springframework.context.annotation.Import;
 import org.springframework.context.annotation.Primary;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @SpringBootTest(properties = {
@@ -33,7 +40,7 @@ public class ArtifactRepositoryIntegrationTest extends AbstractHBaseIntegrationT
     public void testUploadAndExists() throws IOException {
         String path = "/tmp/test.txt";
         byte[] content = "Hello HBase".getBytes();
-        artifactRepository.uploadArtifact(path, new ByteArrayInputStream(content));
+        artifactRepository.uploadArtifact(path, new ByteArrayInputStream(content), 4096, n -> { });
         
         assertTrue(artifactRepository.exists(path));
     }
@@ -41,10 +48,58 @@ public class ArtifactRepositoryIntegrationTest extends AbstractHBaseIntegrationT
     @Test
     public void testDelete() throws IOException {
         String path = "/tmp/delete.txt";
-        artifactRepository.uploadArtifact(path, new ByteArrayInputStream("to delete".getBytes()));
+        artifactRepository.uploadArtifact(path, new ByteArrayInputStream("to delete".getBytes()), 4096, n -> { });
         assertTrue(artifactRepository.exists(path));
         
         artifactRepository.deleteArtifact(path);
         assertFalse(artifactRepository.exists(path));
     }
+
+    @Test
+    public void testUploadStreamsThroughTheGivenBuffer() throws IOException {
+        String path = "/tmp/streamed.bin";
+        byte[] content = new byte[3 * 1024 * 1024 + 17];
+        new Random(42).nextBytes(content);
+        AtomicLong progress = new AtomicLong();
+
+        long written = artifactRepository.uploadArtifact(path, new ByteArrayInputStream(content), 1024 * 1024, progress::addAndGet);
+
+        assertEquals(content.length, written);
+        assertEquals(content.length, progress.get());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        artifactRepository.downloadArtifact(path, out);
+        assertArrayEquals(content, out.toByteArray());
+    }
+
+    @Test
+    public void testFailedUploadLeavesNoPartialFile() throws IOException {
+        String path = "/tmp/interrupted.bin";
+        InputStream broken = new InputStream() {
+            private int served;
+
+            @Override
+            public int read() throws IOException {
+                if (served++ < 10_000) return 'x';
+                throw new IOException("client disconnected");
+            }
+        };
+
+        assertThrows(IOException.class, () -> artifactRepository.uploadArtifact(path, broken, 4096, n -> { }));
+        assertFalse(artifactRepository.exists(path));
+    }
+
+    @Test
+    public void testRangeDownloadSeeksToTheOffset() throws IOException {
+        String path = "/tmp/ranged.bin";
+        byte[] content = new byte[2 * 1024 * 1024];
+        new Random(7).nextBytes(content);
+        artifactRepository.uploadArtifact(path, new ByteArrayInputStream(content), 65536, n -> { });
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        artifactRepository.downloadArtifact(path, out, 1_500_000, 10_000, 4096);
+
+        assertArrayEquals(java.util.Arrays.copyOfRange(content, 1_500_000, 1_510_000), out.toByteArray());
+        assertEquals(content.length, artifactRepository.getFileStatus(path).getLen());
+        assertEquals(null, artifactRepository.getFileStatus("/tmp/does-not-exist"));
+    }
 }
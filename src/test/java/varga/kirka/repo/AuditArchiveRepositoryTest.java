@@ -0,0 +1,117 @@
+package varga.kirka.repo;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import varga.kirka.model.AuditEvent;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AuditArchiveRepositoryTest {
+
+    private static final long DAY = 24L * 3600 * 1000;
+    private static final long JAN_10 = LocalDate.of(2024, 1, 10).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+
+    @TempDir
+    java.nio.file.Path dir;
+
+    private FileSystem fileSystem;
+    private AuditArchiveRepository repository;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        fileSystem = FileSystem.getLocal(new Configuration());
+        repository = new AuditArchiveRepository(fileSystem, true, dir.toString(), 6);
+    }
+
+    private static AuditEvent event(String id, long ts, String user) {
+        return AuditEvent.builder().eventId(id).timestamp(ts).user(user)
+                .action("delete").resourceType("run").resourceId("r-" + id).outcome("allowed").build();
+    }
+
+    @Test
+    void writeThenSearchReturnsNewestFirstAcrossPartitions() throws Exception {
+        repository.write(LocalDate.of(2024, 1, 10), List.of(event("a", JAN_10 + 1_000, "alice"),
+                event("b", JAN_10 + 2_000, "bob")));
+        repository.write(LocalDate.of(2024, 1, 11), List.of(event("c", JAN_10 + DAY + 5, "alice")));
+
+        Page<AuditEvent> page = repository.search(AuditQuery.all(), 10, null);
+
+        assertEquals(List.of("c", "b", "a"), page.items().stream().map(AuditEvent::getEventId).toList());
+        assertNull(page.nextPageToken());
+        AuditEvent c = page.items().get(0);
+        assertEquals("alice", c.getUser());
+        assertEquals("r-c", c.getResourceId());
+        assertNull(c.getCount());
+    }
+
+    @Test
+    void paginatesWithTheSameCursorAsTheHotTier() throws Exception {
+        List<AuditEvent> events = new ArrayList<>();
+        for (int i = 0; i < 7; i++) events.add(event("e" + i, JAN_10 + i * 1_000, "alice"));
+        repository.write(LocalDate.of(2024, 1, 10), events);
+
+        List<String> seen = new ArrayList<>();
+        String token = null;
+        do {
+            Page<AuditEvent> page = repository.search(AuditQuery.all(), 3, PageToken.decode(token));
+            page.items().forEach(e -> seen.add(e.getEventId()));
+            token = page.nextPageToken();
+        } while (token != null);
+
+        assertEquals(List.of("e6", "e5", "e4", "e3", "e2", "e1", "e0"), seen);
+
+        // A token minted from an HBase row resumes in the archive.
+        Page<AuditEvent> resumed = repository.search(AuditQuery.all(), 10, AuditRepository.tokenAfter(events.get(4)));
+        assertEquals(List.of("e3", "e2", "e1", "e0"), resumed.items().stream().map(AuditEvent::getEventId).toList());
+    }
+
+    @Test
+    void prunesPartitionsOutsideTheTimeRangeAndFiltersRecords() throws Exception {
+        repository.write(LocalDate.of(2024, 1, 10), List.of(event("old", JAN_10 + 10, "alice")));
+        repository.write(LocalDate.of(2024, 1, 12), List.of(event("new-alice", JAN_10 + 2 * DAY + 10, "alice"),
+                event("new-bob", JAN_10 + 2 * DAY + 20, "bob")));
+        // A corrupt file in a pruned partition must never be opened.
+        fileSystem.create(new Path(dir.toString(), "dt=2024-01-10/part-garbage.avro")).close();
+
+        AuditQuery query = new AuditQuery("alice", null, null, null, JAN_10 + DAY, null);
+        Page<AuditEvent> page = repository.search(query, 10, null);
+
+        assertEquals(List.of("new-alice"), page.items().stream().map(AuditEvent::getEventId).toList());
+    }
+
+    @Test
+    void eventArchivedTwiceIsReturnedOnce() throws Exception {
+        AuditEvent e = event("dup", JAN_10 + 5, "alice");
+        repository.write(LocalDate.of(2024, 1, 10), List.of(e));
+        repository.write(LocalDate.of(2024, 1, 10), List.of(e));
+
+        assertEquals(1, repository.search(AuditQuery.all(), 10, null).items().size());
+    }
+
+    @Test
+    void unfinishedFilesAreIgnored() throws Exception {
+        repository.write(LocalDate.of(2024, 1, 10), List.of(event("ok", JAN_10 + 5, "alice")));
+        fileSystem.create(new Path(dir.toString(), "dt=2024-01-10/_part-crashed.avro.tmp")).close();
+
+        assertEquals(1, repository.search(AuditQuery.all(), 10, null).items().size());
+    }
+
+    @Test
+    void missingArchiveRootYieldsEmptyPage() throws Exception {
+        AuditArchiveRepository empty = new AuditArchiveRepository(fileSystem, true, dir.resolve("none").toString(), 6);
+
+        Page<AuditEvent> page = empty.search(AuditQuery.all(), 10, null);
+
+        assertTrue(page.items().isEmpty());
+        assertNull(page.nextPageToken());
+    }
+}
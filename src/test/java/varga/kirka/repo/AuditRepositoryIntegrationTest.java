@@ -0,0 +1,197 @@
+package varga.kirka.repo;
+
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import varga.kirka.model.AuditEvent;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+    "spring.main.allow-bean-definition-overriding=true",
+    "security.kerberos.enabled=false"
+})
+@Import(AbstractHBaseIntegrationTest.HBaseTestConfig.class)
+public class AuditRepositoryIntegrationTest extends AbstractHBaseIntegrationTest {
+
+    @Autowired
+    private AuditRepository auditRepository;
+
+    @Autowired
+    private Connection connection;
+
+    private void append(String user, String type, String id, String action, long ts) throws IOException {
+        auditRepository.append(AuditEvent.builder()
+                .eventId(UUID.randomUUID().toString())
+                .timestamp(ts)
+                .user(user)
+                .action(action)
+                .resourceType(type)
+                .resourceId(id)
+                .outcome("allowed")
+                .build());
+    }
+
+    @Test
+    public void testSearchByResourceUsesTimeRangeNewestFirst() throws IOException {
+        append("idx_alice", "experiment", "idx-exp-1", "update", 1_000L);
+        append("idx_alice", "experiment", "idx-exp-1", "delete", 2_000L);
+        append("idx_bob", "experiment", "idx-exp-1", "update", 3_000L);
+        append("idx_alice", "experiment", "idx-exp-2", "update", 2_500L);
+
+        List<AuditEvent> all = auditRepository.search(
+                new AuditQuery(null, "experiment", "idx-exp-1", null, null, null), 100, null).items();
+        assertEquals(List.of(3_000L, 2_000L, 1_000L), all.stream().map(AuditEvent::getTimestamp).toList());
+
+        List<AuditEvent> ranged = auditRepository.search(
+                new AuditQuery(null, "experiment", "idx-exp-1", null, 1_500L, 2_000L), 100, null).items();
+        assertEquals(1, ranged.size());
+        assertEquals("delete", ranged.get(0).getAction());
+
+        List<AuditEvent> aliceOnExp1 = auditRepository.search(
+                new AuditQuery("idx_alice", "experiment", "idx-exp-1", "update", null, null), 100, null).items();
+        assertEquals(1, aliceOnExp1.size());
+        assertEquals(1_000L, aliceOnExp1.get(0).getTimestamp());
+    }
+
+    @Test
+    public void testSearchByUserDoesNotMatchUsersSharingAPrefix() throws IOException {
+        append("idx_carol", "run", "r1", "log", 5_000L);
+        append("idx_carol_admin", "run", "r2", "log", 5_100L);
+
+        List<AuditEvent> carol = auditRepository.search(
+                new AuditQuery("idx_carol", null, null, null, null, null), 100, null).items();
+        assertEquals(1, carol.size());
+        assertEquals("r1", carol.get(0).getResourceId());
+    }
+
+    @Test
+    public void testSearchPaginatesWithinTheIndex() throws IOException {
+        for (int i = 0; i < 5; i++) {
+            append("idx_dave", "run", "r-page", "log", 10_000L + i);
+        }
+        AuditQuery query = new AuditQuery("idx_dave", null, null, null, null, null);
+
+        Page<AuditEvent> first = auditRepository.search(query, 3, null);
+        assertEquals(3, first.items().size());
+        assertNotNull(first.nextPageToken());
+
+        Page<AuditEvent> second = auditRepository.search(query, 3, PageToken.decode(first.nextPageToken()));
+        assertEquals(2, second.items().size());
+        assertEquals(10_000L, second.items().get(1).getTimestamp());
+    }
+
+    @Test
+    public void testPrimarySearchMergesSaltsNewestFirstAcrossPages() throws IOException {
+        for (int i = 0; i < 30; i++) {
+            append("merge-user-" + (i % 4), "run", "merge-run-" + i, "merge", 20_000L + i);
+        }
+        AuditQuery query = new AuditQuery(null, null, null, "merge", null, null);
+
+        List<Long> seen = new ArrayList<>();
+        PageToken token = null;
+        do {
+            Page<AuditEvent> page = auditRepository.search(query, 7, token);
+            page.items().forEach(e -> seen.add(e.getTimestamp()));
+            token = PageToken.decode(page.nextPageToken());
+        } while (token != null);
+
+        assertEquals(30, seen.size());
+        for (int i = 1; i < seen.size(); i++) {
+            assertTrue(seen.get(i - 1) > seen.get(i), "events must come back newest first");
+        }
+    }
+
+    @Test
+    public void testLegacyRowsAreSearchableUntilMigrated() throws IOException {
+        long ts = 30_000L;
+        String eventId = UUID.randomUUID().toString();
+        byte[] legacyKey = Bytes.toBytes(String.format("%019d", Long.MAX_VALUE - ts) + "_" + eventId);
+        try (Table table = connection.getTable(TableName.valueOf("mlflow_audit"))) {
+            Put put = new Put(legacyKey);
+            put.addColumn(Bytes.toBytes("info"), Bytes.toBytes("event_id"), Bytes.toBytes(eventId));
+            put.addColumn(Bytes.toBytes("info"), Bytes.toBytes("timestamp"), Bytes.toBytes(ts));
+            put.addColumn(Bytes.toBytes("info"), Bytes.toBytes("action"), Bytes.toBytes("legacy"));
+            table.put(put);
+        }
+        AuditQuery query = new AuditQuery(null, null, null, "legacy", null, null);
+        assertEquals(1, auditRepository.search(query, 10, null).items().size());
+
+        assertTrue(auditRepository.migrateLegacyRows(100, 1_000) >= 1);
+
+        List<AuditEvent> after = auditRepository.search(query, 10, null).items();
+        assertEquals(1, after.size());
+        assertEquals(eventId, after.get(0).getEventId());
+        try (Table table = connection.getTable(TableName.valueOf("mlflow_audit"))) {
+            assertTrue(table.get(new Get(legacyKey)).isEmpty());
+        }
+        assertEquals(0, auditRepository.migrateLegacyRows(100, 1_000));
+    }
+
+    @Test
+    public void testScanOlderThanAndDeleteStoredRemoveIndexEntriesToo() throws IOException {
+        // Timestamps below every other test's so the cutoff only selects these two events.
+        append("arch_alice", "run", "arch-run-1", "update", 10L);
+        append("arch_alice", "run", "arch-run-1", "delete", 20L);
+        append("arch_alice", "run", "arch-run-1", "update", 900L);
+
+        List<AuditRepository.StoredEvent> old = auditRepository.scanOlderThan(100L, 10);
+        assertEquals(List.of(10L, 20L), old.stream().map(r -> r.event().getTimestamp()).sorted().toList());
+
+        auditRepository.deleteStored(old);
+
+        assertTrue(auditRepository.scanOlderThan(100L, 10).isEmpty());
+        List<AuditEvent> byUser = auditRepository.search(
+                new AuditQuery("arch_alice", null, null, null, null, null), 10, null).items();
+        assertEquals(List.of(900L), byUser.stream().map(AuditEvent::getTimestamp).toList());
+        List<AuditEvent> byResource = auditRepository.search(
+                new AuditQuery(null, "run", "arch-run-1", null, null, null), 10, null).items();
+        assertEquals(List.of(900L), byResource.stream().map(AuditEvent::getTimestamp).toList());
+    }
+
+    @Test
+    public void testBackfillIndexesEventsAppendedBeforeTheIndexes() throws IOException {
+        long ts = 40_000L;
+        String eventId = UUID.randomUUID().toString();
+        byte[] key = Bytes.toBytes("s00_" + String.format("%019d", Long.MAX_VALUE - ts) + "_" + eventId);
+        try (Table table = connection.getTable(TableName.valueOf("mlflow_audit"))) {
+            Put put = new Put(key);
+            put.addColumn(Bytes.toBytes("info"), Bytes.toBytes("event_id"), Bytes.toBytes(eventId));
+            put.addColumn(Bytes.toBytes("info"), Bytes.toBytes("timestamp"), Bytes.toBytes(ts));
+            put.addColumn(Bytes.toBytes("info"), Bytes.toBytes("user"), Bytes.toBytes("bf_carol"));
+            put.addColumn(Bytes.toBytes("info"), Bytes.toBytes("resource_type"), Bytes.toBytes("run"));
+            put.addColumn(Bytes.toBytes("info"), Bytes.toBytes("resource_id"), Bytes.toBytes("bf-run-1"));
+            put.addColumn(Bytes.toBytes("info"), Bytes.toBytes("action"), Bytes.toBytes("update"));
+            table.put(put);
+        }
+        AuditQuery byUser = new AuditQuery("bf_carol", null, null, null, null, null);
+        AuditQuery byResource = new AuditQuery(null, "run", "bf-run-1", null, null, null);
+        assertTrue(auditRepository.search(byUser, 10, null).items().isEmpty());
+
+        PageToken after = null;
+        int rows = 0;
+        do {
+            AuditRepository.IndexBackfill batch = auditRepository.backfillIndexes(after, 2);
+            rows += batch.rows();
+            after = batch.next();
+        } while (after != null);
+
+        assertTrue(rows >= 1);
+        assertEquals(List.of(eventId), auditRepository.search(byUser, 10, null).items().stream()
+                .map(AuditEvent::getEventId).toList());
+        assertEquals(List.of(eventId), auditRepository.search(byResource, 10, null).items().stream()
+                .map(AuditEvent::getEventId).toList());
+    }
+}
@@ -0,0 +1,152 @@
+package varga.kirka.repo;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.HRegionLocation;
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Admin;
+import org.apache.hadoop.hbase.client.ColumnFamilyDescriptorBuilder;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.ConnectionFactory;
+import org.apache.hadoop.hbase.client.RegionLocator;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.client.TableDescriptorBuilder;
+import org.apache.hadoop.hbase.filter.FirstKeyOnlyFilter;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import varga.kirka.model.AuditEvent;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Write-throughput benchmark for the {@code mlflow_audit} row-key layout. It is not part of the
+ * regular suite — the class name does not match Surefire's default includes — and is run
+ * explicitly:
+ *
+ * <pre>
+ *   mvn test -Dtest=AuditWriteBenchmark -Dkirka.benchmark.events=200000 -Dkirka.benchmark.writers=16
+ * </pre>
+ *
+ * <p>For 1, 2 and 4 region servers it starts a mini cluster, creates the table pre-split on the
+ * salt boundaries and writes the same load through {@link AuditRepository.BatchWriter} twice:
+ * with a single salt bucket (every write goes to the head of one region, as with the legacy
+ * key) and with 16. It prints events/s and how many region servers actually received rows.
+ * Absolute numbers from a single-JVM mini cluster are only indicative; the shape — the salted
+ * layout spreading over every server while the monotonic one stays on one — is the point.
+ */
+class AuditWriteBenchmark {
+
+    private static final TableName AUDIT_TABLE = TableName.valueOf("mlflow_audit");
+
+    @Test
+    void writeThroughputScalesWithRegionServers() throws Exception {
+        Assumptions.assumeTrue("allow".equals(System.getProperty("java.security.manager")),
+                "requires -Djava.security.manager=allow (configured via Surefire in the pom)");
+        int events = Integer.getInteger("kirka.benchmark.events", 50_000);
+        int writers = Integer.getInteger("kirka.benchmark.writers", 8);
+
+        List<String> report = new ArrayList<>();
+        for (int servers : new int[]{1, 2, 4}) {
+            HBaseTestingUtility utility = new HBaseTestingUtility();
+            Configuration conf = utility.getConfiguration();
+            conf.setInt("hbase.master.info.port", -1);
+            conf.setInt("hbase.regionserver.info.port", -1);
+            utility.startMiniZKCluster();
+            utility.startMiniHBaseCluster(1, servers);
+            try (Connection connection = ConnectionFactory.createConnection(conf)) {
+                for (int salts : new int[]{1, 16}) {
+                    AuditRepository repository = new AuditRepository(connection, salts);
+                    recreateTable(connection, repository.splitKeys());
+                    utility.waitUntilNoRegionsInTransition(60_000);
+
+                    double rate = writeEvents(repository, events, writers);
+                    int serversHit = serversWithRows(connection);
+                    report.add(String.format("regionServers=%d salts=%2d events/s=%,10.0f serversReceivingWrites=%d",
+                            servers, salts, rate, serversHit));
+                    if (salts > 1) {
+                        assertTrue(serversHit == servers, "salted writes must reach every region server");
+                    }
+                }
+            } finally {
+                utility.shutdownMiniCluster();
+            }
+        }
+        System.out.println("---- audit write benchmark (" + events + " events, " + writers + " writers) ----");
+        report.forEach(System.out::println);
+    }
+
+    private static void recreateTable(Connection connection, byte[][] splitKeys) throws Exception {
+        try (Admin admin = connection.getAdmin()) {
+            if (admin.tableExists(AUDIT_TABLE)) {
+                admin.disableTable(AUDIT_TABLE);
+                admin.deleteTable(AUDIT_TABLE);
+            }
+            admin.createTable(TableDescriptorBuilder.newBuilder(AUDIT_TABLE)
+                    .setColumnFamily(ColumnFamilyDescriptorBuilder.of("info"))
+                    .build(), splitKeys);
+        }
+    }
+
+    private static double writeEvents(AuditRepository repository, int events, int writers) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(writers);
+        int perWriter = events / writers;
+        long start = System.nanoTime();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int w = 0; w < writers; w++) {
+                futures.add(pool.submit(() -> {
+                    try (AuditRepository.BatchWriter writer = repository.openBatchWriter(4L * 1024 * 1024, null)) {
+                        for (int i = 0; i < perWriter; i++) {
+                            // No user / resource: only the primary table is written, which isolates its layout.
+                            writer.append(AuditEvent.builder()
+                                    .eventId(UUID.randomUUID().toString())
+                                    .timestamp(System.currentTimeMillis())
+                                    .action("log")
+                                    .outcome("allowed")
+                                    .build());
+                        }
+                        writer.flush();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) f.get();
+        } finally {
+            pool.shutdown();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        return perWriter * (double) writers / seconds;
+    }
+
+    private static int serversWithRows(Connection connection) throws Exception {
+        Set<ServerName> servers = new HashSet<>();
+        try (RegionLocator locator = connection.getRegionLocator(AUDIT_TABLE);
+             Table table = connection.getTable(AUDIT_TABLE)) {
+            for (HRegionLocation location : locator.getAllRegionLocations()) {
+                Scan scan = new Scan()
+                        .withStartRow(location.getRegion().getStartKey(), true)
+                        .setFilter(new FirstKeyOnlyFilter())
+                        .setLimit(1);
+                byte[] end = location.getRegion().getEndKey();
+                if (!Bytes.equals(end, new byte[0])) scan.withStopRow(end, false);
+                try (ResultScanner scanner = table.getScanner(scan)) {
+                    if (scanner.next() != null) servers.add(location.getServerName());
+                }
+            }
+        }
+        return servers.size();
+    }
+}
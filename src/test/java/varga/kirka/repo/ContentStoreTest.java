@@ -0,0 +1,206 @@
+package varga.kirka.repo;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ContentStoreTest {
+
+    @TempDir
+    java.nio.file.Path dir;
+
+    private FileSystem fileSystem;
+    private ContentStore store;
+    private ArtifactRepository repository;
+    private String artifacts;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        fileSystem = new XAttrLocalFileSystem();
+        artifacts = "file://" + dir + "/artifacts";
+        store = new ContentStore(fileSystem, true, "file://" + dir + "/cas", artifacts, 1024);
+        ParallelArtifactReader parallelReader = new ParallelArtifactReader(new SimpleMeterRegistry(), false, 0, 1 << 16, 1, 1, 1 << 16);
+        repository = new ArtifactRepository(fileSystem, parallelReader, store, new ArtifactPackStore(fileSystem, store, false, 16));
+    }
+
+    private static byte[] random(int length, long seed) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static String sha256(byte[] bytes) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+    }
+
+    private long store(String path, byte[] content, String sha256) throws IOException {
+        return repository.storeArtifact(path, "1", new ByteArrayInputStream(content), 4096, n -> { }, sha256);
+    }
+
+    private byte[] read(String path) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        repository.downloadArtifact(path, out);
+        return out.toByteArray();
+    }
+
+    private long blobCount() throws IOException {
+        Path blobs = new Path("file://" + dir + "/cas/blobs");
+        if (!fileSystem.exists(blobs)) return 0;
+        long count = 0;
+        var files = fileSystem.listFiles(blobs, true);
+        while (files.hasNext()) {
+            files.next();
+            count++;
+        }
+        return count;
+    }
+
+    @Test
+    public void testIdenticalContentIsStoredOnce() throws Exception {
+        byte[] weights = random(50_000, 1);
+        String first = artifacts + "/1/run-a/model/weights.bin";
+        String second = artifacts + "/1/run-b/model/weights.bin";
+
+        assertEquals(weights.length, store(first, weights, null));
+        assertEquals(weights.length, store(second, weights, sha256(weights)));
+
+        assertEquals(1, blobCount());
+        assertArrayEquals(weights, read(second));
+        FileStatus status = repository.getFileStatus(first);
+        assertEquals(weights.length, status.getLen());
+        assertEquals(0, fileSystem.getFileStatus(new Path(first)).getLen(), "the run path holds only a reference");
+        assertEquals(List.of((long) weights.length),
+                repository.listArtifacts(artifacts + "/1/run-a/model").stream().map(f -> f.getFileSize()).toList());
+
+        ByteArrayOutputStream range = new ByteArrayOutputStream();
+        repository.downloadArtifact(first, range, 100, 10, 4096);
+        assertArrayEquals(java.util.Arrays.copyOfRange(weights, 100, 110), range.toByteArray());
+    }
+
+    @Test
+    public void testSmallContentIsStoredInPlace() throws Exception {
+        byte[] requirements = "numpy==1.26.4\n".getBytes();
+        String path = artifacts + "/1/run-a/requirements.txt";
+
+        store(path, requirements, null);
+
+        assertEquals(0, blobCount());
+        assertArrayEquals(requirements, fileSystem.open(new Path(path)).readAllBytes());
+    }
+
+    @Test
+    public void testDeclaredHashMustMatch() throws Exception {
+        byte[] content = random(5000, 2);
+        String path = artifacts + "/1/run-a/data.bin";
+
+        assertThrows(IllegalArgumentException.class, () -> store(path, content, sha256(new byte[]{1})));
+
+        assertFalse(fileSystem.exists(new Path(path)));
+        assertEquals(0, blobCount());
+    }
+
+    @Test
+    public void testKnownBlobsCanBeLinkedWithoutUploading() throws Exception {
+        byte[] tokenizer = random(8000, 3);
+        String sha256 = sha256(tokenizer);
+        assertNull(repository.blobLength("1", sha256));
+        assertFalse(repository.linkArtifact(artifacts + "/1/run-b/tokenizer.json", "1", sha256));
+
+        store(artifacts + "/1/run-a/tokenizer.json", tokenizer, null);
+
+        assertEquals(tokenizer.length, repository.blobLength("1", sha256));
+        assertTrue(repository.linkArtifact(artifacts + "/1/run-b/tokenizer.json", "1", sha256));
+        assertArrayEquals(tokenizer, read(artifacts + "/1/run-b/tokenizer.json"));
+    }
+
+    @Test
+    public void testBlobsAreOnlyVisibleInTheirExperiment() throws Exception {
+        byte[] weights = random(8000, 7);
+        String sha256 = sha256(weights);
+        store(artifacts + "/1/run-a/weights.bin", weights, null);
+
+        assertNull(repository.blobLength("2", sha256), "another experiment does not learn the content exists");
+        assertFalse(repository.linkArtifact(artifacts + "/2/run-c/weights.bin", "2", sha256));
+        assertFalse(fileSystem.exists(new Path(artifacts + "/2/run-c/weights.bin")));
+
+        repository.storeArtifact(artifacts + "/2/run-c/weights.bin", "2", new ByteArrayInputStream(weights), 4096, n -> { }, null);
+        assertEquals(2, blobCount(), "each experiment keeps its own copy");
+        assertArrayEquals(weights, read(artifacts + "/2/run-c/weights.bin"));
+        assertThrows(IllegalArgumentException.class, () -> repository.storeArtifact(artifacts + "/3/run-d/weights.bin",
+                "../1", new ByteArrayInputStream(weights), 4096, n -> { }, null));
+    }
+
+    @Test
+    public void testReferencesAreNotFollowedOutOfTheirExperiment() throws Exception {
+        byte[] secret = random(8000, 8);
+        String sha256 = sha256(secret);
+        store(artifacts + "/1/run-a/secret.bin", secret, null);
+        byte[] ref = fileSystem.getXAttr(new Path(artifacts + "/1/run-a/secret.bin"), "user.kirka.ref");
+
+        // A reference planted in another experiment reads as the empty file it is.
+        Path planted = new Path(artifacts + "/2/run-c/secret.bin");
+        fileSystem.create(planted, true).close();
+        fileSystem.setXAttr(planted, "user.kirka.ref", ref);
+        assertEquals(0, read(planted.toString()).length);
+        assertEquals(0, repository.getFileStatus(planted.toString()).getLen());
+        assertEquals(planted.toUri().getPath(), repository.dataFile(planted.toString()).toUri().getPath());
+
+        // Content shaped like a reference is content.
+        byte[] forged = ("1 " + sha256 + " " + secret.length + "\n").getBytes();
+        repository.storeArtifact(artifacts + "/2/run-c/forged.bin", "2", new ByteArrayInputStream(forged), 4096, n -> { }, null);
+        assertArrayEquals(forged, read(artifacts + "/2/run-c/forged.bin"));
+
+        // Nor is a blob linked or referenced from outside the experiment's directory.
+        assertFalse(repository.linkArtifact(artifacts + "/2/run-c/linked.bin", "1", sha256));
+        String outside = "file://" + dir + "/elsewhere/secret.bin";
+        repository.storeArtifact(outside, "1", new ByteArrayInputStream(secret), 4096, n -> { }, null);
+        assertEquals(secret.length, fileSystem.getFileStatus(new Path(outside)).getLen(), "stored in place");
+        assertEquals(1, blobCount());
+    }
+
+    @Test
+    public void testCollectionRemovesOnlyUnreferencedBlobs() throws Exception {
+        byte[] kept = random(4000, 4);
+        byte[] dropped = random(4000, 5);
+        store(artifacts + "/1/run-a/kept.bin", kept, null);
+        store(artifacts + "/1/run-b/dropped.bin", dropped, null);
+        repository.deleteArtifact(artifacts + "/1/run-b");
+
+        assertEquals(0, store.collectGarbage(List.of(artifacts), 60_000), "young blobs survive the grace period");
+        long old = System.currentTimeMillis() - 120_000;
+        for (String sha256 : List.of(sha256(kept), sha256(dropped))) {
+            fileSystem.setTimes(store.blobPath("1", sha256), old, -1);
+        }
+
+        assertEquals(1, store.collectGarbage(List.of(artifacts), 60_000));
+
+        assertNull(repository.blobLength("1", sha256(dropped)));
+        assertArrayEquals(kept, read(artifacts + "/1/run-a/kept.bin"));
+    }
+
+    @Test
+    public void testReferencesAreOrdinaryFilesWhileDisabled() throws Exception {
+        String path = artifacts + "/1/run-a/weights.bin";
+        store(path, random(4000, 6), null);
+        long referenceLength = fileSystem.getFileStatus(new Path(path)).getLen();
+
+        ContentStore disabled = new ContentStore(fileSystem, false, "file://" + dir + "/cas", artifacts, 1024);
+
+        assertFalse(disabled.isEnabled());
+        assertEquals(referenceLength, disabled.resolve(fileSystem.getFileStatus(new Path(path))).getLen());
+    }
+}
@@ -0,0 +1,141 @@
+package varga.kirka.repo;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import varga.kirka.model.Job;
+import varga.kirka.model.JobStatus;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+    "spring.main.allow-bean-definition-overriding=true",
+    "security.kerberos.enabled=false"
+})
+@Import(AbstractHBaseIntegrationTest.HBaseTestConfig.class)
+public class JobRepositoryIntegrationTest extends AbstractHBaseIntegrationTest {
+
+    @Autowired
+    private JobRepository jobRepository;
+
+    private Job newJob() throws IOException {
+        long now = System.currentTimeMillis();
+        Job job = Job.builder()
+                .jobId(UUID.randomUUID().toString())
+                .type("rename-registered-model")
+                .owner("alice")
+                .params(Map.of("name", "a", "new_name", "b"))
+                .creationTimestamp(now)
+                .build();
+        jobRepository.create(job);
+        return jobRepository.get(job.getJobId());
+    }
+
+    @Test
+    public void testCreateAndGet() throws IOException {
+        Job job = newJob();
+
+        assertEquals(JobStatus.PENDING, job.getStatus());
+        assertEquals("alice", job.getOwner());
+        assertEquals(Map.of("name", "a", "new_name", "b"), job.getParams());
+        assertEquals(Map.of(), job.getCheckpoint());
+        assertEquals(0, job.getAttempts());
+        assertNull(jobRepository.get("missing"));
+    }
+
+    @Test
+    public void testOnlyOneNodeWinsTheClaim() throws IOException {
+        Job job = newJob();
+        Job copy = jobRepository.get(job.getJobId());
+        long lease = System.currentTimeMillis() + 60_000;
+
+        assertNotNull(jobRepository.tryClaim(job, "node-a", lease));
+        assertNull(jobRepository.tryClaim(copy, "node-b", lease));
+
+        Job stored = jobRepository.get(job.getJobId());
+        assertEquals(JobStatus.RUNNING, stored.getStatus());
+        assertEquals("node-a", stored.getLeaseOwner());
+        assertEquals(1, stored.getAttempts());
+    }
+
+    @Test
+    public void testWritesAreGuardedByTheLease() throws IOException {
+        Job job = newJob();
+        String id = job.getJobId();
+        jobRepository.tryClaim(job, "node-a", System.currentTimeMillis() + 60_000);
+
+        assertTrue(jobRepository.checkpoint(id, "node-a", Map.of("versions_moved", "500"), 500, 0,
+                System.currentTimeMillis() + 60_000));
+        assertFalse(jobRepository.checkpoint(id, "node-b", Map.of("versions_moved", "0"), 0, 0, 0));
+        assertFalse(jobRepository.finish(id, "node-b", JobStatus.FAILED, null, "not mine"));
+
+        Job stored = jobRepository.get(id);
+        assertEquals(Map.of("versions_moved", "500"), stored.getCheckpoint());
+        assertEquals(500, stored.getCompleted());
+
+        assertTrue(jobRepository.finish(id, "node-a", JobStatus.SUCCEEDED, Map.of("name", "b"), null));
+        stored = jobRepository.get(id);
+        assertEquals(JobStatus.SUCCEEDED, stored.getStatus());
+        assertEquals(Map.of("name", "b"), stored.getResult());
+    }
+
+    @Test
+    public void testNamedLeaseIsHeldByOneNodeUntilItExpires() throws IOException {
+        String name = "artifact-pack:/mlflow/artifacts/1/" + UUID.randomUUID();
+        long now = System.currentTimeMillis();
+
+        assertTrue(jobRepository.tryLease(name, "node-a", now, now + 60_000));
+        assertFalse(jobRepository.tryLease(name, "node-b", now, now + 60_000));
+        assertFalse(jobRepository.extendLease(name, "node-b", now + 60_000));
+        assertTrue(jobRepository.extendLease(name, "node-a", now + 1));
+
+        assertTrue(jobRepository.tryLease(name, "node-b", now + 1, now + 60_000), "an expired lease is taken over");
+        assertFalse(jobRepository.extendLease(name, "node-a", now + 120_000));
+        jobRepository.releaseLease(name, "node-a");
+        assertFalse(jobRepository.tryLease(name, "node-a", now + 2, now + 60_000), "only the holder releases it");
+        jobRepository.releaseLease(name, "node-b");
+        assertTrue(jobRepository.tryLease(name, "node-a", now + 2, now + 60_000));
+        assertNull(jobRepository.get("lease:" + name), "a lease is not a job");
+    }
+
+    @Test
+    public void testExpiredAndReleasedJobsAreClaimable() throws IOException {
+        long now = System.currentTimeMillis();
+        Job fresh = newJob();
+        Job held = newJob();
+        jobRepository.tryClaim(held, "node-a", now + 60_000);
+        Job expired = newJob();
+        jobRepository.tryClaim(expired, "node-a", now - 1);
+        Job released = newJob();
+        jobRepository.tryClaim(released, "node-a", now + 60_000);
+        jobRepository.release(released.getJobId(), "node-a", "java.io.IOException: boom", now - 1);
+        Job done = newJob();
+        jobRepository.tryClaim(done, "node-a", now - 1);
+        jobRepository.finish(done.getJobId(), "node-a", JobStatus.SUCCEEDED, Map.of(), null);
+
+        List<String> claimable = jobRepository.findClaimable(now, 100).stream().map(Job::getJobId).toList();
+
+        assertTrue(claimable.containsAll(List.of(fresh.getJobId(), expired.getJobId(), released.getJobId())));
+        assertFalse(claimable.contains(held.getJobId()));
+        assertFalse(claimable.contains(done.getJobId()));
+        assertEquals("java.io.IOException: boom", jobRepository.get(released.getJobId()).getError());
+    }
+
+    @Test
+    public void testDeleteFinishedBefore() throws IOException {
+        Job done = newJob();
+        jobRepository.tryClaim(done, "node-a", 0);
+        jobRepository.finish(done.getJobId(), "node-a", JobStatus.FAILED, null, "boom");
+        Job pending = newJob();
+
+        assertTrue(jobRepository.deleteFinishedBefore(System.currentTimeMillis() + 1) >= 1);
+        assertNull(jobRepository.get(done.getJobId()));
+        assertNotNull(jobRepository.get(pending.getJobId()));
+    }
+}
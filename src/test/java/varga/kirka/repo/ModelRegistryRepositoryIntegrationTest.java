@@ -10,13 +10,21 @@ import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Import;
 import org.springframework.context.annotation.Primary;
+import varga.kirka.model.ModelVersion;
 import varga.kirka.model.RegisteredModel;
+import varga.kirka.search.FilterParser;
+import varga.kirka.search.NameKeyPlan;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -31,6 +39,9 @@ public class ModelRegistryRepositoryIntegrationTest extends AbstractHBaseIntegra
     @Autowired
     private ModelRegistryRepository modelRegistryRepository;
 
+    @Autowired
+    private Connection connection;
+
     @Test
     public void testCreateAndGetRegisteredModel() throws IOException {
         String name = "test-model";
@@ -79,4 +90,382 @@ public class ModelRegistryRepositoryIntegrationTest extends AbstractHBaseIntegra
         modelRegistryRepository.deleteRegisteredModel(name);
         assertNull(modelRegistryRepository.getRegisteredModel(name));
     }
+
+    private void createVersion(String model, String version, String stage) throws IOException {
+        modelRegistryRepository.createModelVersion(varga.kirka.model.ModelVersion.builder()
+                .name(model)
+                .version(version)
+                .creationTimestamp(System.currentTimeMillis())
+                .currentStage(stage)
+                .source("hdfs:///tmp/" + model)
+                .runId("run-" + version)
+                .status(varga.kirka.model.ModelVersionStatus.READY)
+                .build());
+    }
+
+    private static Map<String, String> latestByStage(RegisteredModel model) {
+        Map<String, String> out = new HashMap<>();
+        model.getLatestVersions().forEach(v -> out.put(v.getCurrentStage(), v.getVersion()));
+        return out;
+    }
+
+    @Test
+    public void testLatestVersionsAreKeptPerStage() throws IOException {
+        String name = "latest-model";
+        modelRegistryRepository.createRegisteredModel(name);
+        createVersion(name, "1", "None");
+        createVersion(name, "2", "None");
+        createVersion(name, "3", "None");
+        assertEquals(Map.of("None", "3"), latestByStage(modelRegistryRepository.getRegisteredModel(name)));
+
+        modelRegistryRepository.updateModelVersionStage(name, "2", "Production");
+        assertEquals(Map.of("None", "3", "Production", "2"), latestByStage(modelRegistryRepository.getRegisteredModel(name)));
+
+        modelRegistryRepository.updateModelVersionStage(name, "3", "Production");
+        assertEquals(Map.of("None", "1", "Production", "3"), latestByStage(modelRegistryRepository.getRegisteredModel(name)));
+
+        modelRegistryRepository.deleteModelVersion(name, "1");
+        assertEquals(Map.of("Production", "3"), latestByStage(modelRegistryRepository.getRegisteredModel(name)));
+        assertEquals(2, modelRegistryRepository.getVersions(name).size());
+    }
+
+    @Test
+    public void testTransitionArchivesExistingVersionsInOneStep() throws IOException {
+        String name = "transition-model";
+        modelRegistryRepository.createRegisteredModel(name);
+        for (int v = 1; v <= 4; v++) createVersion(name, String.valueOf(v), v <= 3 ? "Production" : "None");
+
+        ModelRegistryRepository.StageTransition transition =
+                modelRegistryRepository.transitionModelVersionStage(name, "4", "production", true);
+        ModelVersion promoted = transition.version();
+
+        assertEquals("production", promoted.getCurrentStage());
+        assertTrue(promoted.getLastUpdatedTimestamp() > 0);
+        assertEquals(promoted, modelRegistryRepository.getModelVersion(name, "4"));
+        for (int v = 1; v <= 3; v++) {
+            assertEquals("Archived", modelRegistryRepository.getModelVersion(name, String.valueOf(v)).getCurrentStage());
+        }
+        assertEquals(Set.of("1", "2", "3"),
+                transition.archived().stream().map(ModelVersion::getVersion).collect(java.util.stream.Collectors.toSet()));
+        RegisteredModel model = modelRegistryRepository.getRegisteredModel(name);
+        assertEquals(Map.of("Archived", "3", "production", "4"), latestByStage(model));
+        assertEquals(promoted.getLastUpdatedTimestamp(), model.getLastUpdatedTimestamp());
+        // The denormalized state written from memory is exactly what a rebuild computes.
+        assertFalse(modelRegistryRepository.refreshLatestVersions(name));
+
+        assertNull(modelRegistryRepository.transitionModelVersionStage(name, "99", "Staging", true));
+        assertNull(modelRegistryRepository.getModelVersion(name, "99"));
+    }
+
+    @Test
+    public void testRenameStepsCanBeResumed() throws IOException {
+        String from = "resumable";
+        String to = "resumable-renamed";
+        modelRegistryRepository.createRegisteredModel(from);
+        modelRegistryRepository.createRegisteredModel(from + "_sibling");
+        for (int v = 1; v <= 3; v++) createVersion(from, String.valueOf(v), "None");
+        createVersion(from + "_sibling", "1", "None");
+
+        assertTrue(modelRegistryRepository.copyModelForRename(from, to, false));
+        assertEquals(2, modelRegistryRepository.moveVersionsForRename(from, to, 2));
+        // A restarted job finds its own copy and carries on; a fresh rename would conflict.
+        assertThrows(ExperimentAlreadyExistsException.class,
+                () -> modelRegistryRepository.copyModelForRename(from, to, false));
+        assertTrue(modelRegistryRepository.copyModelForRename(from, to, true));
+        assertEquals(1, modelRegistryRepository.moveVersionsForRename(from, to, 2));
+        assertEquals(0, modelRegistryRepository.moveVersionsForRename(from, to, 2));
+        modelRegistryRepository.finishRename(from, to);
+        assertTrue(modelRegistryRepository.copyModelForRename(from, to, true));
+
+        assertNull(modelRegistryRepository.getRegisteredModel(from));
+        assertEquals(3, modelRegistryRepository.getVersions(to).size());
+        assertEquals(Map.of("None", "3"), latestByStage(modelRegistryRepository.getRegisteredModel(to)));
+        assertEquals(1, modelRegistryRepository.getVersions(from + "_sibling").size());
+        assertEquals(from + "_sibling", modelRegistryRepository.getModelVersion(from + "_sibling", "1").getName());
+    }
+
+    @Test
+    public void testRefreshBackfillsLegacyRowsAndIgnoresPrefixSiblings() throws IOException {
+        String name = "legacy-latest";
+        modelRegistryRepository.createRegisteredModel(name);
+        modelRegistryRepository.createRegisteredModel(name + "_v2");
+        createVersion(name, "1", "Staging");
+        createVersion(name + "_v2", "9", "Staging");
+        // Simulate a row written before the latest family existed.
+        try (Table table = connection.getTable(TableName.valueOf("mlflow_registered_models"))) {
+            Delete delete = new Delete(Bytes.toBytes(name));
+            delete.addFamily(Bytes.toBytes("latest"));
+            delete.addColumns(Bytes.toBytes("info"), Bytes.toBytes("latest_indexed"));
+            table.delete(delete);
+        }
+
+        // Without the marker the latest versions are computed from the versions table.
+        assertEquals(Map.of("Staging", "1"), latestByStage(modelRegistryRepository.getRegisteredModel(name)));
+
+        assertTrue(modelRegistryRepository.refreshLatestVersions(name));
+        assertFalse(modelRegistryRepository.refreshLatestVersions(name));
+        assertEquals(Map.of("Staging", "1"), latestByStage(modelRegistryRepository.getRegisteredModel(name)));
+    }
+
+    @Test
+    public void testRefreshDoesNotResurrectDeletedModel() throws IOException {
+        String name = "gone-model";
+        modelRegistryRepository.createRegisteredModel(name);
+        createVersion(name, "1", "None");
+        modelRegistryRepository.deleteRegisteredModel(name);
+
+        assertFalse(modelRegistryRepository.refreshLatestVersions(name));
+        assertNull(modelRegistryRepository.getRegisteredModel(name));
+    }
+
+    @Test
+    public void testConcurrentVersionAllocationNeverSharesANumber() throws Exception {
+        String name = "concurrent-model";
+        modelRegistryRepository.createRegisteredModel(name);
+        int threads = 8;
+        int perThread = 5;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<List<String>>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(pool.submit(() -> {
+                List<String> mine = new ArrayList<>();
+                for (int i = 0; i < perThread; i++) {
+                    String version = modelRegistryRepository.allocateModelVersion(name);
+                    assertTrue(modelRegistryRepository.createModelVersionIfAbsent(varga.kirka.model.ModelVersion.builder()
+                            .name(name).version(version).creationTimestamp(System.currentTimeMillis())
+                            .currentStage("None").source("hdfs:///tmp").runId("run-" + version).build()));
+                    mine.add(version);
+                }
+                return mine;
+            }));
+        }
+        Set<String> allocated = new HashSet<>();
+        for (Future<List<String>> f : futures) allocated.addAll(f.get());
+        pool.shutdown();
+
+        assertEquals(threads * perThread, allocated.size());
+        assertEquals(threads * perThread, modelRegistryRepository.getVersions(name).size());
+        // Whatever order the creations landed in, the highest number wins the stage slot.
+        assertEquals(Map.of("None", String.valueOf(threads * perThread)),
+                latestByStage(modelRegistryRepository.getRegisteredModel(name)));
+    }
+
+    @Test
+    public void testAllocationSeedsFromExistingVersionsAndRefusesTakenNumbers() throws IOException {
+        String name = "seeded-model";
+        modelRegistryRepository.createRegisteredModel(name);
+        // Versions written before the counter existed.
+        createVersion(name, "1", "None");
+        createVersion(name, "3", "None");
+
+        assertEquals("4", modelRegistryRepository.allocateModelVersion(name));
+        assertFalse(modelRegistryRepository.createModelVersionIfAbsent(varga.kirka.model.ModelVersion.builder()
+                .name(name).version("3").creationTimestamp(1L).currentStage("None")
+                .source("hdfs:///other").runId("other").build()));
+        assertEquals("run-3", modelRegistryRepository.getModelVersion(name, "3").getRunId());
+
+        // Numbers are not reused after a delete.
+        modelRegistryRepository.deleteModelVersion(name, "3");
+        assertEquals("5", modelRegistryRepository.allocateModelVersion(name));
+    }
+
+    @Test
+    public void testAllocationDoesNotRecreateADeletedModel() throws IOException {
+        String name = "deleted-before-allocation";
+        modelRegistryRepository.createRegisteredModel(name);
+        modelRegistryRepository.deleteRegisteredModel(name);
+
+        assertNull(modelRegistryRepository.allocateModelVersion(name));
+        try (Table table = connection.getTable(TableName.valueOf("mlflow_registered_models"))) {
+            assertFalse(table.exists(new Get(Bytes.toBytes(name))), "no row holding only the counter");
+        }
+        assertNull(modelRegistryRepository.getRegisteredModel(name));
+    }
+
+    @Test
+    public void testGetRegisteredModelsForAuthorizationSkipsMissingModels() throws IOException {
+        modelRegistryRepository.createRegisteredModel("authz-a");
+        modelRegistryRepository.createRegisteredModel("authz-b");
+
+        Map<String, RegisteredModel> models = modelRegistryRepository.getRegisteredModelsForAuthorization(
+                List.of("authz-a", "authz-b", "authz-missing"));
+
+        assertEquals(Set.of("authz-a", "authz-b"), models.keySet());
+        assertEquals("authz-a", models.get("authz-a").getName());
+        assertNull(models.get("authz-a").getLatestVersions());
+        assertTrue(modelRegistryRepository.getRegisteredModelsForAuthorization(List.of()).isEmpty());
+    }
+
+    private static <T> List<T> drain(PageSource<T> source) throws IOException {
+        List<T> all = new ArrayList<>();
+        PageToken token = null;
+        do {
+            Page<T> page = source.fetch(token);
+            all.addAll(page.items());
+            token = PageToken.decode(page.nextPageToken());
+        } while (token != null);
+        return all;
+    }
+
+    @FunctionalInterface
+    private interface PageSource<T> {
+        Page<T> fetch(PageToken token) throws IOException;
+    }
+
+    @Test
+    public void testSearchRegisteredModelsPagesInNameAndTimestampOrder() throws Exception {
+        for (String n : List.of("paged-c", "paged-a", "paged-e", "paged-b", "paged-d")) {
+            modelRegistryRepository.createRegisteredModel(n);
+        }
+        Thread.sleep(5);
+        modelRegistryRepository.updateRegisteredModel("paged-c", "touched last");
+        java.util.function.Predicate<RegisteredModel> mine = m -> m.getName().startsWith("paged-");
+
+        Page<RegisteredModel> first = modelRegistryRepository.searchRegisteredModels(NameKeyPlan.NONE, mine, RegistryOrder.NAME_ASC, 2, null);
+        assertEquals(List.of("paged-a", "paged-b"), first.items().stream().map(RegisteredModel::getName).toList());
+        assertNotNull(first.nextPageToken());
+
+        assertEquals(List.of("paged-a", "paged-b", "paged-c", "paged-d", "paged-e"),
+                drain(t -> modelRegistryRepository.searchRegisteredModels(NameKeyPlan.NONE, mine, RegistryOrder.NAME_ASC, 2, t))
+                        .stream().map(RegisteredModel::getName).toList());
+        assertEquals(List.of("paged-e", "paged-d", "paged-c", "paged-b", "paged-a"),
+                drain(t -> modelRegistryRepository.searchRegisteredModels(NameKeyPlan.NONE, mine,
+                        RegistryOrder.parse("name DESC", false), 2, t))
+                        .stream().map(RegisteredModel::getName).toList());
+
+        List<RegisteredModel> byUpdate = drain(t -> modelRegistryRepository.searchRegisteredModels(NameKeyPlan.NONE, mine,
+                RegistryOrder.parse("last_updated_timestamp DESC", false), 2, t));
+        assertEquals(5, byUpdate.size());
+        assertEquals("paged-c", byUpdate.get(0).getName());
+    }
+
+    @Test
+    public void testSearchModelVersionsOrdersByVersionNumberNumerically() throws IOException {
+        String name = "paged-versions";
+        modelRegistryRepository.createRegisteredModel(name);
+        for (int v = 1; v <= 12; v++) createVersion(name, String.valueOf(v), "None");
+        java.util.function.Predicate<varga.kirka.model.ModelVersion> mine = mv -> name.equals(mv.getName());
+
+        List<String> desc = drain(t -> modelRegistryRepository.searchModelVersions(NameKeyPlan.of(FilterParser.parse("name = '" + name + "'")), mine,
+                RegistryOrder.parse("version_number DESC", true), 5, t))
+                .stream().map(varga.kirka.model.ModelVersion::getVersion).toList();
+        assertEquals(List.of("12", "11", "10", "9", "8", "7", "6", "5", "4", "3", "2", "1"), desc);
+
+        Page<varga.kirka.model.ModelVersion> byName = modelRegistryRepository.searchModelVersions(NameKeyPlan.of(FilterParser.parse("name = '" + name + "'")), mine,
+                RegistryOrder.NAME_ASC, 3, null);
+        assertEquals(List.of("1", "2", "3"), byName.items().stream().map(varga.kirka.model.ModelVersion::getVersion).toList());
+    }
+
+    private List<String> searchNames(String filter) throws IOException {
+        var clauses = FilterParser.parse(filter);
+        var evaluator = new varga.kirka.search.FilterEvaluator<RegisteredModel>(m -> Map.of(), m -> Map.of(), m -> Map.of(),
+                (m, attr) -> "name".equals(attr) ? m.getName() : null);
+        return drain(t -> modelRegistryRepository.searchRegisteredModels(NameKeyPlan.of(clauses),
+                m -> evaluator.matches(m, clauses), RegistryOrder.NAME_ASC, 10, t))
+                .stream().map(RegisteredModel::getName).toList();
+    }
+
+    @Test
+    public void testNameFiltersArePushedDownAsRowRanges() throws IOException {
+        for (String n : List.of("Pushdown-Fraud-1", "pushdown-fraud-2", "pushdown-churn", "pushdowx")) {
+            modelRegistryRepository.createRegisteredModel(n);
+        }
+        createVersion("pushdown-fraud-2", "1", "None");
+        createVersion("pushdown-churn", "1", "None");
+
+        assertEquals(List.of("pushdown-churn", "pushdown-fraud-2"), searchNames("name LIKE 'pushdown-%'"));
+        assertEquals(List.of("pushdown-churn", "pushdowx"), searchNames("name IN ('pushdowx', 'pushdown-churn', 'absent')"));
+        assertEquals(List.of(), searchNames("name = 'absent'"));
+
+        // ILIKE works before the index is marked complete (full scan) and after (index ranges).
+        assertEquals(List.of("Pushdown-Fraud-1", "pushdown-fraud-2"), searchNames("name ILIKE 'PUSHDOWN-FRAUD%'"));
+        assertEquals(0, modelRegistryRepository.backfillNameIndex());
+        modelRegistryRepository.markNameIndexComplete();
+        assertEquals(List.of("Pushdown-Fraud-1", "pushdown-fraud-2"), searchNames("name ILIKE 'PUSHDOWN-FRAUD%'"));
+
+        modelRegistryRepository.renameRegisteredModel("pushdown-fraud-2", "pushdown-FRAUD-3");
+        modelRegistryRepository.deleteRegisteredModel("Pushdown-Fraud-1");
+        assertEquals(List.of("pushdown-FRAUD-3"), searchNames("name ILIKE 'pushdown-fraud%'"));
+
+        List<String> versionModels = drain(t -> modelRegistryRepository.searchModelVersions(
+                NameKeyPlan.of(FilterParser.parse("name LIKE 'pushdown-%'")), mv -> true, RegistryOrder.NAME_ASC, 10, t))
+                .stream().map(varga.kirka.model.ModelVersion::getName).toList();
+        assertEquals(List.of("pushdown-FRAUD-3", "pushdown-churn"), versionModels);
+    }
+
+    @Test
+    public void testBackfillAddsIndexEntriesForLegacyModels() throws IOException {
+        modelRegistryRepository.createRegisteredModel("Legacy-Index");
+        try (Table table = connection.getTable(TableName.valueOf("mlflow_registered_models_ci_index"))) {
+            table.delete(new Delete(Bytes.toBytes("legacy-index\u0000Legacy-Index")));
+        }
+        modelRegistryRepository.markNameIndexComplete();
+        assertEquals(List.of(), searchNames("name ILIKE 'legacy-index'"));
+
+        assertEquals(1, modelRegistryRepository.backfillNameIndex());
+        assertEquals(List.of("Legacy-Index"), searchNames("name ILIKE 'legacy-index'"));
+        // Fresh entries are inside the orphan grace period.
+        assertEquals(0, modelRegistryRepository.removeOrphanNameIndexEntries());
+    }
+
+    @Test
+    public void testVersionNameOrderPagesAcrossNamesThatPrefixEachOther() throws IOException {
+        // Rows of "ordpage" sort after those of "ordpage-x" ('-' is below '_'), but its versions come first.
+        for (String n : List.of("ordpage", "ordpage-x", "ordpage_b")) {
+            modelRegistryRepository.createRegisteredModel(n);
+            for (String v : List.of("1", "2", "10")) createVersion(n, v, "None");
+        }
+        java.util.function.Predicate<ModelVersion> mine = mv -> mv.getName().startsWith("ordpage");
+        List<String> expected = new ArrayList<>();
+        for (String n : List.of("ordpage", "ordpage-x", "ordpage_b")) {
+            for (String v : List.of("1", "2", "10")) expected.add(n + "/" + v);
+        }
+
+        for (int pageSize : List.of(1, 2, 4)) {
+            assertEquals(expected, drain(t -> modelRegistryRepository.searchModelVersions(NameKeyPlan.NONE, mine,
+                    RegistryOrder.NAME_ASC, pageSize, t)).stream().map(mv -> mv.getName() + "/" + mv.getVersion()).toList());
+            List<String> descending = drain(t -> modelRegistryRepository.searchModelVersions(NameKeyPlan.NONE, mine,
+                    RegistryOrder.parse("name DESC", true), pageSize, t)).stream().map(mv -> mv.getName() + "/" + mv.getVersion()).toList();
+            List<String> reversed = new ArrayList<>(expected);
+            java.util.Collections.reverse(reversed);
+            assertEquals(reversed, descending);
+        }
+    }
+
+    @Test
+    public void testTimestampAndVersionOrdersPageThroughTheOrderIndex() throws Exception {
+        String name = "order-indexed";
+        modelRegistryRepository.createRegisteredModel(name);
+        for (int v = 1; v <= 12; v++) createVersion(name, String.valueOf(v), "None");
+        modelRegistryRepository.backfillOrderIndex();
+        modelRegistryRepository.markOrderIndexComplete();
+        assertTrue(modelRegistryRepository.isOrderIndexComplete());
+
+        Thread.sleep(5);
+        // Leaves a stale entry for version 3's creation time, which readers must skip.
+        modelRegistryRepository.transitionModelVersionStage(name, "3", "Staging", false);
+        java.util.function.Predicate<ModelVersion> mine = mv -> name.equals(mv.getName());
+
+        List<String> byNumber = drain(t -> modelRegistryRepository.searchModelVersions(NameKeyPlan.NONE, mine,
+                RegistryOrder.parse("version_number DESC", true), 5, t))
+                .stream().map(ModelVersion::getVersion).toList();
+        assertEquals(List.of("12", "11", "10", "9", "8", "7", "6", "5", "4", "3", "2", "1"), byNumber);
+
+        List<String> byUpdate = drain(t -> modelRegistryRepository.searchModelVersions(NameKeyPlan.NONE, mine,
+                RegistryOrder.parse("last_updated_timestamp DESC", true), 4, t))
+                .stream().map(ModelVersion::getVersion).toList();
+        assertEquals(12, byUpdate.size());
+        assertEquals(12, new HashSet<>(byUpdate).size());
+        assertEquals("3", byUpdate.get(0));
+
+        Thread.sleep(5);
+        modelRegistryRepository.createRegisteredModel("order-indexed-new");
+        List<String> models = drain(t -> modelRegistryRepository.searchRegisteredModels(NameKeyPlan.NONE,
+                m -> m.getName().startsWith("order-indexed"), RegistryOrder.parse("last_updated_timestamp DESC", false), 1, t))
+                .stream().map(RegisteredModel::getName).toList();
+        assertEquals(List.of("order-indexed-new", name), models);
+
+        // Fresh entries are inside the grace period, stale or not.
+        assertEquals(0, modelRegistryRepository.removeStaleOrderIndexEntries());
+    }
 }
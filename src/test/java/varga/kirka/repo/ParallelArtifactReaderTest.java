@@ -0,0 +1,155 @@
+package varga.kirka.repo;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParallelArtifactReaderTest {
+
+    private static final int CHUNK = 64 * 1024;
+
+    @TempDir
+    java.nio.file.Path dir;
+
+    private FileSystem fileSystem;
+    private SimpleMeterRegistry meterRegistry;
+    private ParallelArtifactReader reader;
+    private Path file;
+    private byte[] content;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        fileSystem = FileSystem.getLocal(new Configuration());
+        meterRegistry = new SimpleMeterRegistry();
+        // Three chunks of budget shared by every download.
+        reader = new ParallelArtifactReader(meterRegistry, true, 0, CHUNK, 4, 4, 3L * CHUNK);
+        content = new byte[CHUNK * 10 + 1234];
+        new Random(42).nextBytes(content);
+        file = new Path(dir.resolve("model.bin").toString());
+        try (FSDataOutputStream out = fileSystem.create(file, true)) {
+            out.write(content);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        reader.stop();
+    }
+
+    private double buffersInUse() {
+        return meterRegistry.get("kirka.artifacts.download.readahead.buffers").gauge().value();
+    }
+
+    @Test
+    public void testRangesAreReassembledInOrder() throws IOException {
+        long[][] ranges = {{0, content.length}, {1, content.length - 1}, {CHUNK - 7, CHUNK * 3 + 11}, {500, 2L * CHUNK}};
+        for (long[] range : ranges) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (FSDataInputStream in = fileSystem.open(file)) {
+                reader.copy(in, out, range[0], range[1]);
+            }
+            assertArrayEquals(Arrays.copyOfRange(content, (int) range[0], (int) (range[0] + range[1])), out.toByteArray(),
+                    "range " + range[0] + "+" + range[1]);
+        }
+        assertEquals(0, buffersInUse());
+    }
+
+    @Test
+    public void testOnlyLargeRangesAreAccepted() {
+        assertFalse(reader.accepts(2L * CHUNK - 1));
+        assertTrue(reader.accepts(2L * CHUNK));
+        ParallelArtifactReader disabled = new ParallelArtifactReader(new SimpleMeterRegistry(), false, 0, CHUNK, 4, 1, CHUNK);
+        assertFalse(disabled.accepts(Long.MAX_VALUE));
+        disabled.stop();
+    }
+
+    @Test
+    public void testReadPastTheEndFailsAndReturnsBuffers() throws IOException {
+        try (FSDataInputStream in = fileSystem.open(file)) {
+            assertThrows(EOFException.class,
+                    () -> reader.copy(in, OutputStream.nullOutputStream(), CHUNK * 8L, CHUNK * 4L));
+        }
+        assertEquals(0, buffersInUse());
+    }
+
+    @Test
+    public void testFailingClientReturnsBuffers() throws IOException {
+        OutputStream broken = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+        };
+        try (FSDataInputStream in = fileSystem.open(file)) {
+            assertThrows(IOException.class, () -> reader.copy(in, broken, 0, content.length));
+        }
+        assertEquals(0, buffersInUse());
+    }
+
+    @Test
+    public void testConcurrentDownloadsShareTheBudgetWithoutDeadlock() throws Exception {
+        ExecutorService clients = Executors.newFixedThreadPool(6);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            Future<?>[] downloads = new Future<?>[6];
+            for (int i = 0; i < downloads.length; i++) {
+                downloads[i] = clients.submit(() -> {
+                    start.await();
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    try (FSDataInputStream in = fileSystem.open(file)) {
+                        reader.copy(in, out, 0, content.length);
+                    }
+                    assertArrayEquals(content, out.toByteArray());
+                    return null;
+                });
+            }
+            start.countDown();
+            for (Future<?> download : downloads) download.get(30, TimeUnit.SECONDS);
+        } finally {
+            clients.shutdownNow();
+        }
+        assertEquals(0, buffersInUse());
+    }
+
+    @Test
+    public void testWindowGrowsWhileThroughputImprovesAndShrinksForSlowClients() {
+        ParallelArtifactReader.Window window = new ParallelArtifactReader.Window(4, 0);
+        long now = 0;
+        // Each epoch is faster than the last while the response keeps waiting on HDFS.
+        for (int epoch = 1; epoch <= 3; epoch++) {
+            int chunks = Math.max(2, window.size);
+            for (int i = 0; i < chunks; i++) window.record(CHUNK, true, now += 1000 / epoch);
+        }
+        assertEquals(4, window.size);
+
+        // Every chunk is ready before the response asks for it: the client is the bottleneck.
+        for (int i = 0; i < 4 + 3 + 2; i++) window.record(CHUNK, false, now += 1000);
+        assertEquals(1, window.size);
+    }
+}
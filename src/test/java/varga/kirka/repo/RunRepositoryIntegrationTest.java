@@ -17,6 +17,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -84,4 +85,35 @@ public class RunRepositoryIntegrationTest extends AbstractHBaseIntegrationTest {
         assertTrue(retrieved.getData().getMetrics().stream().anyMatch(m -> m.getKey().equals("m1")));
         assertTrue(retrieved.getData().getParams().stream().anyMatch(p -> p.getKey().equals("p1")));
     }
+
+    @Test
+    public void testRunPurgerErasesRunsAndMetricHistoryInBatches() throws IOException {
+        for (String runId : List.of("purge-a", "purge-b", "keep-c")) {
+            Run run = Run.builder().info(varga.kirka.model.RunInfo.builder()
+                    .runId(runId)
+                    .experimentId(runId.startsWith("purge") ? "exp-purge" : "exp-keep")
+                    .status(varga.kirka.model.RunStatus.FINISHED)
+                    .artifactUri("hdfs:///tmp/" + runId)
+                    .build()).build();
+            runRepository.createRun(run);
+            runRepository.logBatch(runId, List.of(
+                    new varga.kirka.model.Metric("loss", 0.5, 1L, 1),
+                    new varga.kirka.model.Metric("loss", 0.4, 2L, 2)), null, null);
+        }
+
+        List<RunRepository.PurgeTarget> targets = runRepository.findPurgeTargetsForExperiment("exp-purge");
+        assertEquals(Set.of(new RunRepository.PurgeTarget("purge-a", "hdfs:///tmp/purge-a"),
+                new RunRepository.PurgeTarget("purge-b", "hdfs:///tmp/purge-b")), Set.copyOf(targets));
+
+        try (RunRepository.RunPurger purger = runRepository.openRunPurger(1024 * 1024)) {
+            for (RunRepository.PurgeTarget target : targets) purger.purge(target.runId());
+            purger.flush();
+            assertTrue(purger.failedRunIds().isEmpty());
+        }
+
+        assertNull(runRepository.getRun("purge-a"));
+        assertTrue(runRepository.getMetricHistory("purge-b", "loss").isEmpty());
+        assertTrue(runRepository.findPurgeTargetsForExperiment("exp-purge").isEmpty());
+        assertEquals(2, runRepository.getMetricHistory("keep-c", "loss").size());
+    }
 }
@@ -7,7 +7,13 @@ import org.springframework.context.annotation.Import;
 import varga.kirka.model.Scorer;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -61,4 +67,32 @@ public class ScorerRepositoryIntegrationTest extends AbstractHBaseIntegrationTes
         Scorer retrieved = scorerRepository.getScorer(experimentId, "to_delete", 1);
         assertNull(retrieved);
     }
+
+    @Test
+    public void testConcurrentRegistrationsGetDistinctVersions() throws Exception {
+        String experimentId = "4";
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 24; i++) {
+            futures.add(pool.submit(() -> scorerRepository.registerScorer(experimentId, "racy", "{}").getScorerVersion()));
+        }
+        Set<Integer> versions = new HashSet<>();
+        for (Future<Integer> f : futures) versions.add(f.get());
+        pool.shutdown();
+
+        assertEquals(24, versions.size());
+        assertEquals(24, scorerRepository.listScorerVersions(experimentId, "racy").size());
+        // The counter row is invisible to scorer listings.
+        assertEquals(1, scorerRepository.listScorers(experimentId).size());
+    }
+
+    @Test
+    public void testVersionsAreNotReusedAfterDelete() throws IOException {
+        String experimentId = "5";
+        scorerRepository.registerScorer(experimentId, "s", "{}");
+        scorerRepository.registerScorer(experimentId, "s", "{}");
+        scorerRepository.deleteScorer(experimentId, "s", 2);
+
+        assertEquals(3, scorerRepository.registerScorer(experimentId, "s", "{}").getScorerVersion());
+    }
 }
@@ -0,0 +1,63 @@
+package varga.kirka.repo;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import varga.kirka.model.RegistryEvent;
+import varga.kirka.model.Webhook;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+    "spring.main.allow-bean-definition-overriding=true",
+    "security.kerberos.enabled=false"
+})
+@Import(AbstractHBaseIntegrationTest.HBaseTestConfig.class)
+public class WebhookRepositoryIntegrationTest extends AbstractHBaseIntegrationTest {
+
+    @Autowired
+    private WebhookRepository webhookRepository;
+
+    @Test
+    public void testCreateListAndDelete() throws IOException {
+        Webhook webhook = Webhook.builder()
+                .webhookId(UUID.randomUUID().toString())
+                .name("deployer")
+                .url("https://deployer.example.com/hooks/registry")
+                .events(List.of(RegistryEvent.MODEL_VERSION_STAGE_TRANSITIONED, RegistryEvent.MODEL_VERSION_ALIAS_SET))
+                .modelName("fraud-detector")
+                .owner("alice")
+                .secret("s3cr3t")
+                .creationTimestamp(1234L)
+                .build();
+        webhookRepository.create(webhook);
+
+        Webhook stored = webhookRepository.get(webhook.getWebhookId());
+        assertEquals(webhook, stored);
+        assertTrue(webhookRepository.list().stream().anyMatch(w -> w.getWebhookId().equals(webhook.getWebhookId())));
+
+        webhookRepository.delete(webhook.getWebhookId());
+        assertNull(webhookRepository.get(webhook.getWebhookId()));
+        assertTrue(webhookRepository.list().stream().noneMatch(w -> w.getWebhookId().equals(webhook.getWebhookId())));
+    }
+
+    @Test
+    public void testRegistryWideWebhookHasNoModelName() throws IOException {
+        Webhook webhook = Webhook.builder()
+                .webhookId(UUID.randomUUID().toString())
+                .url("http://localhost:9000/hook")
+                .secret("k")
+                .build();
+        webhookRepository.create(webhook);
+
+        Webhook stored = webhookRepository.get(webhook.getWebhookId());
+        assertNull(stored.getModelName());
+        assertNull(stored.getName());
+        assertEquals(List.of(), stored.getEvents());
+    }
+}
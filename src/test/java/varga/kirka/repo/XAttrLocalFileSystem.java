@@ -0,0 +1,116 @@
+package varga.kirka.repo;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FilterFileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.XAttrSetFlag;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.util.Progressable;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The local file system with extended attributes kept in memory, as the local file system has
+ * none and the content store marks its references with one. Attributes go with their file
+ * through renames and go away when it is deleted or overwritten.
+ */
+public class XAttrLocalFileSystem extends FilterFileSystem {
+
+    private final Map<String, Map<String, byte[]>> xattrs = new ConcurrentHashMap<>();
+
+    public XAttrLocalFileSystem() throws IOException {
+        super(FileSystem.getLocal(new Configuration()));
+        setConf(fs.getConf());
+    }
+
+    private static String key(Path path) {
+        return path.toUri().getPath();
+    }
+
+    private void forget(Path path) {
+        String prefix = key(path) + "/";
+        xattrs.keySet().removeIf(file -> file.equals(key(path)) || file.startsWith(prefix));
+    }
+
+    @Override
+    public FSDataOutputStream create(Path f, FsPermission permission, boolean overwrite, int bufferSize,
+                                     short replication, long blockSize, Progressable progress) throws IOException {
+        FSDataOutputStream out = super.create(f, permission, overwrite, bufferSize, replication, blockSize, progress);
+        forget(f);
+        return out;
+    }
+
+    @Override
+    public boolean delete(Path f, boolean recursive) throws IOException {
+        boolean deleted = super.delete(f, recursive);
+        if (deleted) forget(f);
+        return deleted;
+    }
+
+    @Override
+    public boolean rename(Path src, Path dst) throws IOException {
+        Path target = isDirectory(dst) ? new Path(dst, src.getName()) : dst;
+        if (!super.rename(src, dst)) return false;
+        String from = key(src);
+        String to = key(target);
+        forget(target);
+        Map<String, Map<String, byte[]>> moved = new HashMap<>();
+        xattrs.entrySet().removeIf(entry -> {
+            String file = entry.getKey();
+            if (!file.equals(from) && !file.startsWith(from + "/")) return false;
+            moved.put(to + file.substring(from.length()), entry.getValue());
+            return true;
+        });
+        xattrs.putAll(moved);
+        return true;
+    }
+
+    @Override
+    public void setXAttr(Path path, String name, byte[] value) throws IOException {
+        setXAttr(path, name, value, EnumSet.of(XAttrSetFlag.CREATE, XAttrSetFlag.REPLACE));
+    }
+
+    @Override
+    public void setXAttr(Path path, String name, byte[] value, EnumSet<XAttrSetFlag> flag) throws IOException {
+        if (!exists(path)) throw new FileNotFoundException(path.toString());
+        xattrs.computeIfAbsent(key(path), file -> new ConcurrentHashMap<>()).put(name, value.clone());
+    }
+
+    @Override
+    public byte[] getXAttr(Path path, String name) throws IOException {
+        return getXAttrs(path).get(name);
+    }
+
+    @Override
+    public Map<String, byte[]> getXAttrs(Path path) throws IOException {
+        if (!exists(path)) throw new FileNotFoundException(path.toString());
+        return new HashMap<>(xattrs.getOrDefault(key(path), Map.of()));
+    }
+
+    @Override
+    public Map<String, byte[]> getXAttrs(Path path, List<String> names) throws IOException {
+        Map<String, byte[]> all = getXAttrs(path);
+        all.keySet().retainAll(names);
+        return all;
+    }
+
+    @Override
+    public List<String> listXAttrs(Path path) throws IOException {
+        return List.copyOf(getXAttrs(path).keySet());
+    }
+
+    @Override
+    public void removeXAttr(Path path, String name) throws IOException {
+        if (!exists(path)) throw new FileNotFoundException(path.toString());
+        Map<String, byte[]> attributes = xattrs.get(key(path));
+        if (attributes != null) attributes.remove(name);
+    }
+}
@@ -0,0 +1,49 @@
+package varga.kirka.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NameKeyPlanTest {
+
+    private static NameKeyPlan plan(String filter) {
+        return NameKeyPlan.of(FilterParser.parse(filter));
+    }
+
+    @Test
+    void equalityAndInBecomeExactNames() {
+        assertEquals(Set.of("fraud"), plan("name = 'fraud'").names());
+        assertEquals(Set.of("a", "b"), plan("name IN ('b', 'a')").names());
+    }
+
+    @Test
+    void likeKeepsTheLiteralPrefixBeforeTheFirstWildcard() {
+        assertEquals("fraud-", plan("name LIKE 'fraud-%'").prefix());
+        assertEquals("fraud", plan("name LIKE 'fraud_v%'").prefix());
+        assertTrue(plan("name LIKE '%fraud'").isEmpty());
+    }
+
+    @Test
+    void ilikeIsCaseFolded() {
+        NameKeyPlan p = plan("name ILIKE 'Fraud-%'");
+        assertEquals("fraud-", p.foldedPrefix());
+        assertNull(p.prefix());
+    }
+
+    @Test
+    void prefersExactNamesThenTheLongestPrefix() {
+        assertEquals(Set.of("fraud-v2"), plan("name LIKE 'fraud%' AND name = 'fraud-v2'").names());
+        assertEquals("fraud-v", plan("name LIKE 'fr%' AND name LIKE 'fraud-v%'").prefix());
+        assertEquals("fr", plan("name LIKE 'fr%' AND name ILIKE 'fraud-v%'").prefix());
+    }
+
+    @Test
+    void ignoresNonNameAndNonStringClauses() {
+        assertTrue(plan("tags.name = 'x'").isEmpty());
+        assertTrue(plan("name = 123").isEmpty());
+        assertTrue(plan("name != 'x'").isEmpty());
+        assertTrue(plan(null).isEmpty());
+    }
+}
@@ -0,0 +1,156 @@
+package varga.kirka.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStream;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import varga.kirka.repo.ArtifactPackStore;
+import varga.kirka.repo.ArtifactRepository;
+import varga.kirka.repo.ContentStore;
+import varga.kirka.repo.ParallelArtifactReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ArtifactArchiveServiceTest {
+
+    @TempDir
+    java.nio.file.Path dir;
+
+    private FileSystem fileSystem;
+    private ContentStore contentStore;
+    private ParallelArtifactReader parallelReader;
+    private ArtifactRepository repository;
+    private ArtifactArchiveService service;
+    private String run;
+    private final Map<String, byte[]> files = new TreeMap<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        fileSystem = FileSystem.getLocal(new Configuration());
+        contentStore = new ContentStore(fileSystem, false, "file://" + dir + "/cas", "file://" + dir, 65536);
+        parallelReader = new ParallelArtifactReader(new SimpleMeterRegistry(), false, 0, 1 << 16, 1, 1, 1 << 16);
+        repository = new ArtifactRepository(fileSystem, parallelReader, contentStore,
+                new ArtifactPackStore(fileSystem, contentStore, true, 16));
+        // Prefetch 100 bytes of 2 files: larger files are streamed past their prefetched head.
+        service = new ArtifactArchiveService(repository, new SimpleMeterRegistry(), 2, 100, 2, 4096);
+        run = "file://" + dir + "/7/run-1";
+
+        Random random = new Random(11);
+        for (String name : new String[]{"MLmodel", "model/weights.bin", "model/config.json", "plots/a.txt", "plots/b.txt", "empty.txt"}) {
+            byte[] content = new byte[name.equals("empty.txt") ? 0 : name.endsWith(".bin") ? 300_000 : 50 + random.nextInt(100)];
+            random.nextBytes(content);
+            files.put(name, content);
+            repository.uploadArtifact(run + "/" + name, new ByteArrayInputStream(content), 4096, n -> { });
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.stop();
+    }
+
+    private static Map<String, byte[]> unzip(byte[] archive) throws IOException {
+        Map<String, byte[]> entries = new TreeMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(archive))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) entries.put(entry.getName(), zip.readAllBytes());
+        }
+        return entries;
+    }
+
+    private static Map<String, byte[]> untar(InputStream archive) throws IOException {
+        Map<String, byte[]> entries = new TreeMap<>();
+        try (TarArchiveInputStream tar = new TarArchiveInputStream(archive)) {
+            TarArchiveEntry entry;
+            while ((entry = tar.getNextTarEntry()) != null) entries.put(entry.getName(), tar.readAllBytes());
+        }
+        return entries;
+    }
+
+    private static void assertSameFiles(Map<String, byte[]> expected, Map<String, byte[]> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+        expected.forEach((name, content) -> assertArrayEquals(content, actual.get(name), name));
+    }
+
+    @Test
+    public void testZipHoldsTheWholeTree() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertEquals(files.size(), service.writeArchive(run, ArtifactArchiveService.Format.ZIP, out));
+
+        assertSameFiles(files, unzip(out.toByteArray()));
+    }
+
+    @Test
+    public void testZstdTarOfASubdirectory() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        service.writeArchive(run + "/model", ArtifactArchiveService.Format.TAR_ZST, out);
+
+        Map<String, byte[]> expected = new TreeMap<>();
+        expected.put("weights.bin", files.get("model/weights.bin"));
+        expected.put("config.json", files.get("model/config.json"));
+        assertSameFiles(expected, untar(new ZstdCompressorInputStream(new ByteArrayInputStream(out.toByteArray()))));
+    }
+
+    @Test
+    public void testPackedFilesAreArchivedAndInternalFilesAreNot() throws Exception {
+        repository.packArtifacts(run, 1000, 2, 4096, () -> true);
+        repository.uploadArtifact(run + "/.kirka-mpu/0123/_upload", new ByteArrayInputStream(new byte[]{1}), 4096, n -> { });
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        service.writeArchive(run, ArtifactArchiveService.Format.TAR, out);
+
+        assertSameFiles(files, untar(new ByteArrayInputStream(out.toByteArray())));
+    }
+
+    @Test
+    public void testAFailedReadLeavesTheArchiveUnfinished() throws Exception {
+        ArtifactRepository failing = new ArtifactRepository(fileSystem, parallelReader, contentStore,
+                new ArtifactPackStore(fileSystem, contentStore, false, 16)) {
+            @Override
+            public void downloadArtifact(String hdfsPath, OutputStream outputStream, long offset, long length,
+                                         int bufferSize) throws IOException {
+                if (hdfsPath.endsWith("weights.bin") && offset > 0) throw new IOException("datanode down");
+                super.downloadArtifact(hdfsPath, outputStream, offset, length, bufferSize);
+            }
+        };
+        ArtifactArchiveService failingService = new ArtifactArchiveService(failing, new SimpleMeterRegistry(), 2, 100, 2, 4096);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            assertThrows(IOException.class, () -> failingService.writeArchive(run, ArtifactArchiveService.Format.ZIP, out));
+        } finally {
+            failingService.stop();
+        }
+
+        java.nio.file.Path partial = Files.write(dir.resolve("partial.zip"), out.toByteArray());
+        assertThrows(ZipException.class, () -> new ZipFile(partial.toFile()).close(), "a zip without its central directory");
+    }
+
+    @Test
+    public void testUnknownFormatsAreRejected() {
+        assertEquals(ArtifactArchiveService.Format.TAR_GZ, ArtifactArchiveService.Format.parse("TGZ"));
+        assertEquals(ArtifactArchiveService.Format.ZIP, ArtifactArchiveService.Format.parse(null));
+        assertThrows(IllegalArgumentException.class, () -> ArtifactArchiveService.Format.parse("rar"));
+    }
+}
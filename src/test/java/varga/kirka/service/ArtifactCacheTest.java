@@ -0,0 +1,240 @@
+package varga.kirka.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ArtifactCacheTest {
+
+    @TempDir
+    Path dir;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private ArtifactCache cache;
+
+    private ArtifactCache cache(long maxBytes, long graceMs) throws IOException {
+        cache = new ArtifactCache(meterRegistry, true, dir.toString(), maxBytes, 0, graceMs);
+        return cache;
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (cache != null) cache.stop();
+    }
+
+    private static ArtifactService.ArtifactFile file(int length, String etag) {
+        return new ArtifactService.ArtifactFile(length, 0, etag);
+    }
+
+    private static ArtifactCache.Loader content(byte[] bytes, AtomicInteger fetches) {
+        return out -> {
+            fetches.incrementAndGet();
+            out.write(bytes);
+        };
+    }
+
+    private double requests(String result) {
+        return meterRegistry.get("kirka.artifacts.cache.requests").tag("result", result).counter().count();
+    }
+
+    @Test
+    public void testHitsAreServedFromDiskWithTheRequestedRange() throws Exception {
+        cache(1000, 0);
+        byte[] bytes = "0123456789".getBytes();
+        AtomicInteger fetches = new AtomicInteger();
+
+        Path first = cache.get("hdfs:///m/model.pkl", file(10, "\"v1\""), content(bytes, fetches));
+        Path second = cache.get("hdfs:///m/model.pkl", file(10, "\"v1\""), content(bytes, fetches));
+
+        assertEquals(first, second);
+        assertEquals(1, fetches.get());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        cache.transfer(second, 3, 4, out);
+        assertEquals("3456", out.toString());
+        assertEquals(1, requests("hit"));
+        assertEquals(1, requests("miss"));
+        assertEquals(4, meterRegistry.get("kirka.artifacts.cache.served.bytes").counter().count());
+        assertEquals(0.5, meterRegistry.get("kirka.artifacts.cache.hit-ratio").gauge().value());
+    }
+
+    @Test
+    public void testANewETagIsANewEntry() throws Exception {
+        cache(1000, 0);
+        AtomicInteger fetches = new AtomicInteger();
+
+        Path v1 = cache.get("hdfs:///m/model.pkl", file(2, "\"v1\""), content("v1".getBytes(), fetches));
+        Path v2 = cache.get("hdfs:///m/model.pkl", file(2, "\"v2\""), content("v2".getBytes(), fetches));
+
+        assertNotEquals(v1, v2);
+        assertEquals("v2", Files.readString(v2));
+        assertEquals(2, fetches.get());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedFilesAreEvicted() throws Exception {
+        cache(250, 0);
+        AtomicInteger fetches = new AtomicInteger();
+        byte[] hundred = new byte[100];
+
+        Path a = cache.get("hdfs:///a", file(100, "\"1\""), content(hundred, fetches));
+        cache.get("hdfs:///b", file(100, "\"1\""), content(hundred, fetches));
+        cache.get("hdfs:///a", file(100, "\"1\""), content(hundred, fetches));
+        cache.get("hdfs:///c", file(100, "\"1\""), content(hundred, fetches));
+        assertEquals(3, fetches.get());
+
+        // b was the least recently used when c came in: a is still cached, b is fetched again.
+        assertEquals(a, cache.get("hdfs:///a", file(100, "\"1\""), content(hundred, fetches)));
+        assertEquals(3, fetches.get());
+        cache.get("hdfs:///b", file(100, "\"1\""), content(hundred, fetches));
+        assertEquals(4, fetches.get());
+        assertEquals(200, meterRegistry.get("kirka.artifacts.cache.size").gauge().value());
+
+        assertNull(cache.get("hdfs:///huge", file(300, "\"1\""), content(new byte[300], fetches)));
+    }
+
+    @Test
+    public void testEvictedFilesAreUnlinkedAfterTheGracePeriod() throws Exception {
+        cache(100, 200);
+        AtomicInteger fetches = new AtomicInteger();
+
+        Path a = cache.get("hdfs:///a", file(100, "\"1\""), content(new byte[100], fetches));
+        cache.get("hdfs:///b", file(100, "\"1\""), content(new byte[100], fetches));
+
+        assertTrue(Files.exists(a), "a response may still be about to open the evicted file");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (Files.exists(a) && System.currentTimeMillis() < deadline) Thread.sleep(20);
+        assertFalse(Files.exists(a));
+    }
+
+    @Test
+    public void testConcurrentMissesFetchOnce() throws Exception {
+        cache(1 << 20, 0);
+        AtomicInteger fetches = new AtomicInteger();
+        CountDownLatch fetching = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        byte[] bytes = new byte[4096];
+        Arrays.fill(bytes, (byte) 7);
+        ArtifactCache.Loader slow = out -> {
+            fetches.incrementAndGet();
+            fetching.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            out.write(bytes);
+        };
+
+        ExecutorService clients = Executors.newFixedThreadPool(8);
+        try {
+            Future<?>[] downloads = new Future<?>[8];
+            for (int i = 0; i < downloads.length; i++) {
+                downloads[i] = clients.submit(() -> cache.get("hdfs:///m/model.pkl", file(4096, "\"v1\""), slow));
+            }
+            assertTrue(fetching.await(5, TimeUnit.SECONDS));
+            Thread.sleep(100);
+            release.countDown();
+            Path cached = null;
+            for (Future<?> download : downloads) {
+                Path path = (Path) download.get(5, TimeUnit.SECONDS);
+                if (cached == null) cached = path;
+                assertEquals(cached, path);
+            }
+            assertArrayEquals(bytes, Files.readAllBytes(cached));
+        } finally {
+            clients.shutdownNow();
+        }
+        assertEquals(1, fetches.get());
+        assertEquals(8, requests("miss") + requests("coalesced") + requests("hit"));
+    }
+
+    @Test
+    public void testARangeMissDoesNotWaitForTheFetch() throws Exception {
+        cache(1000, 0);
+        CountDownLatch release = new CountDownLatch(1);
+        ArtifactCache.Loader slow = out -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            out.write("0123456789".getBytes());
+        };
+
+        assertNull(cache.peek("hdfs:///m", file(10, "\"1\""), slow), "served from HDFS while the file is fetched");
+        release.countDown();
+        long deadline = System.currentTimeMillis() + 5000;
+        Path cached = null;
+        while (cached == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+            cached = cache.peek("hdfs:///m", file(10, "\"1\""), out -> fail("already fetched"));
+        }
+        assertNotNull(cached);
+        assertEquals("0123456789", Files.readString(cached));
+    }
+
+    @Test
+    public void testConcurrentRangeMissesQueueOneFetch() throws Exception {
+        cache(1000, 0);
+        AtomicInteger fetches = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ArtifactCache.Loader slow = out -> {
+            fetches.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            out.write("0123456789".getBytes());
+        };
+
+        for (int i = 0; i < 20; i++) {
+            assertNull(cache.peek("hdfs:///m", file(10, "\"1\""), slow));
+        }
+        release.countDown();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (cache.peek("hdfs:///m", file(10, "\"1\""), slow) == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+
+        assertEquals(1, fetches.get());
+        assertEquals(1, requests("hit"), "the background fetch is not a hit");
+        assertTrue(requests("miss") >= 20, "every range served from HDFS is a miss");
+    }
+
+    @Test
+    public void testTruncatedFetchIsNotCached() throws Exception {
+        cache(1000, 0);
+        AtomicInteger fetches = new AtomicInteger();
+
+        assertThrows(IOException.class,
+                () -> cache.get("hdfs:///m", file(10, "\"1\""), content("short".getBytes(), fetches)));
+        try (var files = Files.list(dir)) {
+            assertEquals(0, files.count());
+        }
+        cache.get("hdfs:///m", file(10, "\"1\""), content("0123456789".getBytes(), fetches));
+        assertEquals(2, fetches.get());
+    }
+
+    @Test
+    public void testDisabledCacheCachesNothing() throws Exception {
+        cache = new ArtifactCache(meterRegistry, false, dir.resolve("unused").toString(), 1000, 0, 0);
+        assertNull(cache.get("hdfs:///m", file(1, "\"1\""), out -> fail("must not fetch")));
+        assertFalse(Files.exists(dir.resolve("unused")));
+    }
+}
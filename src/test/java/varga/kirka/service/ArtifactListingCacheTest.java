@@ -0,0 +1,129 @@
+package varga.kirka.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import varga.kirka.model.FileInfo;
+import varga.kirka.repo.ArtifactPackStore;
+import varga.kirka.repo.ArtifactRepository;
+import varga.kirka.repo.ContentStore;
+import varga.kirka.repo.Page;
+import varga.kirka.repo.ParallelArtifactReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ArtifactListingCacheTest {
+
+    @TempDir
+    java.nio.file.Path dir;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private FileSystem fileSystem;
+    private ArtifactService service;
+    private String run;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        fileSystem = FileSystem.getLocal(new Configuration());
+        ContentStore contentStore = new ContentStore(fileSystem, false, "file://" + dir + "/cas", "file://" + dir, 65536);
+        ParallelArtifactReader parallelReader = new ParallelArtifactReader(meterRegistry, false, 0, 1 << 16, 1, 1, 1 << 16);
+        ArtifactRepository repository = new ArtifactRepository(fileSystem, parallelReader, contentStore,
+                new ArtifactPackStore(fileSystem, contentStore, false, 16));
+        service = new ArtifactService(repository, new ArtifactListingCache(meterRegistry, 60_000, 100, 10),
+                meterRegistry, 4096, "file://" + dir, 4096, "mtime");
+        run = "file://" + dir + "/7/run-1";
+        for (String name : new String[]{"a.txt", "b.txt", "c.txt", "model/weights.bin", "model/MLmodel"}) upload(name);
+    }
+
+    private void upload(String relative) throws IOException {
+        service.uploadArtifact(run + "/" + relative, new ByteArrayInputStream(relative.getBytes()));
+    }
+
+    private double requests(String result) {
+        return meterRegistry.get("kirka.artifacts.listing-cache.requests").tag("result", result).counter().count();
+    }
+
+    private List<String> names(String relative, int size, boolean recursive) throws IOException {
+        List<String> names = new ArrayList<>();
+        String token = null;
+        do {
+            Page<FileInfo> page = service.listArtifacts(run + relative, token, size, recursive, true);
+            page.items().forEach(f -> names.add(new Path(f.getPath()).getName()));
+            token = page.nextPageToken();
+        } while (token != null);
+        return names;
+    }
+
+    @Test
+    void pagesOfAnEndedRunAreCutFromOneRead() throws Exception {
+        assertEquals(List.of("a.txt", "b.txt", "c.txt", "model"), names("", 1, false));
+
+        assertEquals(1.0, requests("miss"));
+        assertEquals(3.0, requests("hit"));
+        assertEquals(4.0, meterRegistry.get("kirka.artifacts.listing-cache.files").gauge().value());
+
+        // Served from memory: a file written behind the service's back is not seen.
+        fileSystem.create(new Path(run + "/d.txt")).close();
+        assertEquals(List.of("a.txt", "b.txt", "c.txt", "model"), names("", 3, false));
+    }
+
+    @Test
+    void writesDropTheListingsThatIncludeThem() throws Exception {
+        assertEquals(List.of("MLmodel", "weights.bin"), names("/model", 10, false));
+        assertEquals(List.of("a.txt", "b.txt", "c.txt", "MLmodel", "weights.bin"), names("", 10, true));
+
+        upload("model/conda.yaml");
+        assertEquals(List.of("MLmodel", "conda.yaml", "weights.bin"), names("/model", 10, false));
+        assertEquals(List.of("a.txt", "b.txt", "c.txt", "MLmodel", "conda.yaml", "weights.bin"), names("", 10, true));
+
+        service.deleteArtifact(run + "/model");
+        assertEquals(List.of("a.txt", "b.txt", "c.txt"), names("", 10, false));
+        assertEquals(0.0, requests("hit"));
+    }
+
+    @Test
+    void listingsTooLargeToCacheAreReadEachTime() throws Exception {
+        for (int i = 0; i < 11; i++) upload("many/" + i + ".txt");
+
+        assertEquals(11, names("/many", 4, false).size());
+
+        assertEquals(3.0, requests("too-large"));
+        assertEquals(0.0, requests("miss"));
+    }
+
+    @Test
+    void aListingTooLargeToCacheIsOnlyReadWholeOnce() throws Exception {
+        ArtifactListingCache cache = new ArtifactListingCache(new SimpleMeterRegistry(), 60_000, 100, 10);
+        AtomicInteger loads = new AtomicInteger();
+        ArtifactListingCache.Loader large = limit -> {
+            loads.incrementAndGet();
+            return Page.of(List.of(), "more");
+        };
+
+        for (int i = 0; i < 3; i++) assertNull(cache.page(run, false, null, 4, large));
+        assertEquals(1, loads.get());
+
+        cache.invalidate(run + "/many/0.txt");
+        assertNull(cache.page(run, false, null, 4, large));
+        assertEquals(2, loads.get(), "a write may have made it small enough");
+    }
+
+    @Test
+    void runningRunsAreNeverCached() throws Exception {
+        service.listArtifacts(run, null, 10, false, false);
+        fileSystem.create(new Path(run + "/d.txt")).close();
+
+        assertEquals(5, service.listArtifacts(run, null, 10, false, false).items().size());
+        assertEquals(0.0, requests("miss") + requests("hit"));
+    }
+}
@@ -0,0 +1,228 @@
+package varga.kirka.service;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.security.token.Token;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import varga.kirka.repo.ArtifactPackStore;
+import varga.kirka.repo.ArtifactRepository;
+import varga.kirka.repo.ContentStore;
+import varga.kirka.repo.ParallelArtifactReader;
+import varga.kirka.repo.XAttrLocalFileSystem;
+import varga.kirka.security.SecurityContextHelper;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Redirects are followed to a stand-in for WebHDFS that serves {@code OPEN} from the local
+ * file system (a MiniDFSCluster cannot start its web servers next to Spring Boot's Jetty).
+ */
+public class ArtifactRedirectServiceTest {
+
+    @TempDir
+    java.nio.file.Path dir;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private HttpServer webHdfs;
+    private final List<String> queries = new ArrayList<>();
+    private ArtifactRepository repository;
+    private ContentStore contentStore;
+    private FileSystem fileSystem;
+    private final AtomicReference<String> caller = new AtomicReference<>("alice");
+    private SecurityContextHelper securityContextHelper;
+    private String run;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        webHdfs = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        webHdfs.createContext("/webhdfs/v1", exchange -> {
+            synchronized (queries) {
+                queries.add(exchange.getRequestURI().getRawQuery());
+            }
+            String path = URLDecoder.decode(exchange.getRequestURI().getRawPath().substring("/webhdfs/v1".length()),
+                    StandardCharsets.UTF_8);
+            byte[] body = Files.readAllBytes(Paths.get(path));
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        webHdfs.start();
+
+        fileSystem = new XAttrLocalFileSystem();
+        contentStore = new ContentStore(fileSystem, true, "file://" + dir + "/cas", "file://" + dir, 65536);
+        ParallelArtifactReader parallelReader = new ParallelArtifactReader(meterRegistry, false, 0, 1 << 16, 1, 1, 1 << 16);
+        repository = new ArtifactRepository(fileSystem, parallelReader, contentStore,
+                new ArtifactPackStore(fileSystem, contentStore, true, 16));
+        run = "file://" + dir + "/7/run 1";
+        securityContextHelper = mock(SecurityContextHelper.class);
+        when(securityContextHelper.getCurrentUser()).thenAnswer(invocation -> caller.get());
+    }
+
+    @AfterEach
+    void tearDown() {
+        webHdfs.stop(0);
+    }
+
+    private ArtifactRedirectService service(long minBytes) {
+        return new ArtifactRedirectService(repository, fileSystem, securityContextHelper, meterRegistry, true,
+                "webhdfs://127.0.0.1:" + webHdfs.getAddress().getPort(), minBytes, 600_000);
+    }
+
+    private byte[] upload(String relative, int size) throws IOException {
+        byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+        repository.uploadArtifact(run + "/" + relative, new ByteArrayInputStream(content), 4096, n -> { });
+        return content;
+    }
+
+    private static byte[] fetch(URI location) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) location.toURL().openConnection();
+        try (InputStream in = connection.getInputStream()) {
+            return in.readAllBytes();
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Test
+    public void testLargeFilesAreFetchedFromTheEndpoint() throws Exception {
+        byte[] content = upload("model/weights #1.bin", 100_000);
+
+        URI location = service(1000).redirect(run + "/model/weights #1.bin", content.length);
+
+        assertNotNull(location);
+        assertEquals("http", location.getScheme());
+        assertArrayEquals(content, fetch(location));
+        assertEquals("op=OPEN&user.name=alice", queries.get(0), "read as the caller, not as the server");
+        assertEquals(1.0, meterRegistry.get("kirka.artifacts.download.redirects").counter().count());
+    }
+
+    @Test
+    public void testSmallAndPackedFilesAreProxied() throws Exception {
+        ArtifactRedirectService service = service(1000);
+        upload("MLmodel", 100);
+        upload("plots/a.txt", 2000);
+        upload("plots/b.txt", 2000);
+        repository.packArtifacts(run, 4000, 2, 4096, () -> true);
+
+        assertNull(service.redirect(run + "/MLmodel", 100));
+        assertNull(service.redirect(run + "/plots/a.txt", 2000), "packed");
+        assertNull(service.redirect(run + "/missing.bin", 2000));
+    }
+
+    @Test
+    public void testDeduplicatedFilesAreFetchedFromTheirBlob() throws Exception {
+        byte[] content = new byte[100_000];
+        new Random(3).nextBytes(content);
+        repository.storeArtifact(run + "/a.bin", "7", new ByteArrayInputStream(content), 4096, n -> { }, null);
+        repository.storeArtifact(run + "/b.bin", "7", new ByteArrayInputStream(content), 4096, n -> { }, null);
+
+        URI a = service(1000).redirect(run + "/a.bin", content.length);
+        URI b = service(1000).redirect(run + "/b.bin", content.length);
+
+        assertEquals(a, b);
+        assertTrue(a.getPath().contains("/cas/"), a.getPath());
+        assertArrayEquals(content, fetch(a));
+    }
+
+    @Test
+    public void testAnonymousDownloadsAreProxied() throws Exception {
+        byte[] content = upload("weights.bin", 100_000);
+        caller.set("anonymous");
+
+        assertNull(service(1000).redirect(run + "/weights.bin", content.length));
+    }
+
+    @Test
+    public void testEachCallerGetsTheirOwnTokenCancelledOnShutdown() throws Exception {
+        upload("weights.bin", 100_000);
+        List<String> issued = new ArrayList<>();
+        List<Token<?>> cancelled = new ArrayList<>();
+        ArtifactRedirectService service = new ArtifactRedirectService(repository, fileSystem, securityContextHelper,
+                meterRegistry, true, "swebhdfs://nn.example.com:9871", 1000, 600_000) {
+            @Override
+            boolean useTokens() {
+                return true;
+            }
+
+            @Override
+            Token<?> issueToken(String user) {
+                issued.add(user);
+                byte[] id = ("token-" + user + "-" + issued.size()).getBytes(StandardCharsets.UTF_8);
+                return new Token<>(id, new byte[]{1, 2, 3}, new Text("WEBHDFS delegation"), new Text("nn.example.com:9871"));
+            }
+
+            @Override
+            void cancelToken(Token<?> token) {
+                cancelled.add(token);
+            }
+        };
+
+        URI first = service.redirect(run + "/weights.bin", 100_000);
+        URI second = service.redirect(run + "/weights.bin", 100_000);
+
+        caller.set("bob");
+        URI third = service.redirect(run + "/weights.bin", 100_000);
+
+        assertEquals(first, second);
+        assertNotEquals(first, third, "a token is never shared between callers");
+        assertTrue(first.toString().startsWith("https://nn.example.com:9871/webhdfs/v1/"), first.toString());
+        assertTrue(first.getRawQuery().startsWith("op=OPEN&delegation="), first.getRawQuery());
+        assertFalse(first.getRawQuery().contains("user.name"), first.getRawQuery());
+        assertEquals(List.of("alice", "bob"), issued);
+        service.cancelExpiredTokens();
+        assertTrue(cancelled.isEmpty(), "the tokens are still young");
+
+        service.stop();
+        assertEquals(2, cancelled.size());
+    }
+
+    @Test
+    public void testDownloadsAreProxiedWithoutAToken() throws Exception {
+        upload("weights.bin", 100_000);
+        ArtifactRedirectService service = new ArtifactRedirectService(repository, fileSystem, securityContextHelper,
+                meterRegistry, true, "webhdfs://127.0.0.1:1", 1000, 600_000) {
+            @Override
+            boolean useTokens() {
+                return true;
+            }
+
+            @Override
+            Token<?> issueToken(String user) throws IOException {
+                throw new IOException("User: kirka is not allowed to impersonate " + user);
+            }
+        };
+
+        assertNull(service.redirect(run + "/weights.bin", 100_000));
+    }
+
+    @Test
+    public void testEndpointMustBeWebHdfs() {
+        assertThrows(IllegalArgumentException.class, () -> new ArtifactRedirectService(repository, fileSystem,
+                securityContextHelper, meterRegistry, true, "hdfs://nn:8020", 0, 600_000));
+    }
+}
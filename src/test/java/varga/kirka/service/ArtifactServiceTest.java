@@ -1,10 +1,11 @@
 package varga.kirka.service;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.Path;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import varga.kirka.repo.ArtifactRepository;
@@ -13,8 +14,12 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.List;
+import java.util.function.LongConsumer;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -23,9 +28,16 @@ public class ArtifactServiceTest {
     @Mock
     private ArtifactRepository artifactRepository;
 
-    @InjectMocks
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
     private ArtifactService artifactService;
 
+    @BeforeEach
+    void setUp() {
+        artifactService = new ArtifactService(artifactRepository, new ArtifactListingCache(meterRegistry, 0, 1, 1),
+                meterRegistry, 1 << 20, "hdfs:///mlflow/artifacts/", 1 << 20, "mtime");
+    }
+
     @Test
     public void testListArtifacts() throws IOException {
         String path = "hdfs:///test";
@@ -52,10 +64,80 @@ public class ArtifactServiceTest {
     public void testUploadArtifact() throws IOException {
         String path = "hdfs:///test/file.txt";
         ByteArrayInputStream is = new ByteArrayInputStream("content".getBytes());
-        
-        artifactService.uploadArtifact(path, is);
-        
-        verify(artifactRepository, times(1)).uploadArtifact(path, is);
+        when(artifactRepository.uploadArtifact(eq(path), eq(is), eq(1 << 20), any())).thenAnswer(inv -> {
+            LongConsumer progress = inv.getArgument(3);
+            progress.accept(4);
+            assertEquals(4.0, meterRegistry.get("kirka.artifacts.upload.bytes-in-flight").gauge().value());
+            assertEquals(1.0, meterRegistry.get("kirka.artifacts.upload.active").gauge().value());
+            progress.accept(3);
+            return 7L;
+        });
+
+        assertEquals(7L, artifactService.uploadArtifact(path, is));
+
+        assertEquals(0.0, meterRegistry.get("kirka.artifacts.upload.bytes-in-flight").gauge().value());
+        assertEquals(0.0, meterRegistry.get("kirka.artifacts.upload.active").gauge().value());
+        assertEquals(7.0, meterRegistry.get("kirka.artifacts.upload.bytes").counter().count());
+        assertEquals(1L, meterRegistry.get("kirka.artifacts.upload.throughput").summary().count());
+    }
+
+    @Test
+    public void testFailedUploadReleasesBytesInFlight() throws IOException {
+        when(artifactRepository.uploadArtifact(any(), any(), anyInt(), any())).thenAnswer(inv -> {
+            LongConsumer progress = inv.getArgument(3);
+            progress.accept(1000);
+            throw new IOException("client disconnected");
+        });
+
+        assertThrows(IOException.class,
+                () -> artifactService.uploadArtifact("hdfs:///x", new ByteArrayInputStream(new byte[0])));
+
+        assertEquals(0.0, meterRegistry.get("kirka.artifacts.upload.bytes-in-flight").gauge().value());
+        assertEquals(0.0, meterRegistry.get("kirka.artifacts.upload.bytes").counter().count());
+    }
+
+    @Test
+    public void testStatArtifactDerivesTheETagFromLengthAndModificationTime() throws IOException {
+        when(artifactRepository.getFileStatus("hdfs:///a/model.pkl"))
+                .thenReturn(new FileStatus(1000L, false, 3, 128L << 20, 1_700_000_000_000L, new Path("hdfs:///a/model.pkl")));
+
+        ArtifactService.ArtifactFile file = artifactService.statArtifact("hdfs:///a/model.pkl");
+
+        assertEquals(1000L, file.length());
+        assertEquals("\"3e8-18bcfe56800\"", file.etag());
+        verify(artifactRepository, never()).getFileChecksum(any());
+    }
+
+    @Test
+    public void testChecksumETagsFallBackWhenTheFileSystemHasNone() throws IOException {
+        ArtifactService checksummed = new ArtifactService(artifactRepository, new ArtifactListingCache(meterRegistry, 0, 1, 1),
+                meterRegistry, 1 << 20, "hdfs:///mlflow/artifacts", 1 << 20, "checksum");
+        when(artifactRepository.getFileStatus("hdfs:///a/model.pkl"))
+                .thenReturn(new FileStatus(1000L, false, 3, 128L << 20, 1_700_000_000_000L, new Path("hdfs:///a/model.pkl")));
+        org.apache.hadoop.fs.FileChecksum checksum = mock(org.apache.hadoop.fs.FileChecksum.class);
+        when(checksum.getAlgorithmName()).thenReturn("MD5-of-0MD5-of-512CRC32C");
+        when(checksum.getBytes()).thenReturn(new byte[]{(byte) 0xab, 0x01});
+        when(artifactRepository.getFileChecksum("hdfs:///a/model.pkl")).thenReturn(checksum);
+
+        assertEquals("\"MD5-of-0MD5-of-512CRC32C-ab01\"", checksummed.statArtifact("hdfs:///a/model.pkl").etag());
+
+        when(artifactRepository.getFileChecksum("hdfs:///a/model.pkl")).thenReturn(null);
+        assertEquals("\"3e8-18bcfe56800\"", checksummed.statArtifact("hdfs:///a/model.pkl").etag());
+    }
+
+    @Test
+    public void testStatOfMissingArtifactOrDirectoryIsNotFound() throws IOException {
+        when(artifactRepository.getFileStatus("hdfs:///missing")).thenReturn(null);
+        when(artifactRepository.getFileStatus("hdfs:///a/dir"))
+                .thenReturn(new FileStatus(0L, true, 0, 0L, 0L, new Path("hdfs:///a/dir")));
+
+        assertThrows(ResourceNotFoundException.class, () -> artifactService.statArtifact("hdfs:///missing"));
+        assertThrows(ResourceNotFoundException.class, () -> artifactService.statArtifact("hdfs:///a/dir"));
+    }
+
+    @Test
+    public void testProxyLocationIsUnderTheDestination() {
+        assertEquals("hdfs:///mlflow/artifacts/1/run-1/model.pkl", artifactService.proxyLocation("1/run-1/model.pkl"));
     }
 
     @Test
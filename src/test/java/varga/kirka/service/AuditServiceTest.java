@@ -11,9 +11,14 @@ import org.mockito.junit.jupiter.MockitoSettings;
 import org.mockito.quality.Strictness;
 import org.slf4j.MDC;
 import varga.kirka.model.AuditEvent;
+import varga.kirka.observability.AsyncAuditWriter;
+import varga.kirka.observability.AuditCoalescer;
 import varga.kirka.observability.MdcCorrelationFilter;
+import varga.kirka.repo.AuditArchiveRepository;
+import varga.kirka.repo.AuditQuery;
 import varga.kirka.repo.AuditRepository;
 import varga.kirka.repo.Page;
+import varga.kirka.repo.PageToken;
 import varga.kirka.security.SecurityContextHelper;
 
 import java.io.IOException;
@@ -32,6 +37,15 @@ class AuditServiceTest {
     @Mock
     private SecurityContextHelper securityContextHelper;
 
+    @Mock
+    private AsyncAuditWriter auditWriter;
+
+    @Mock
+    private AuditCoalescer auditCoalescer;
+
+    @Mock
+    private AuditArchiveRepository auditArchiveRepository;
+
     @InjectMocks
     private AuditService auditService;
 
@@ -63,7 +77,7 @@ class AuditServiceTest {
     @Test
     void recordFailsSilentlyWhenHBaseIsDown() throws Exception {
         // The business operation must not be rolled back if the audit write fails.
-        doThrow(new IOException("HBase down")).when(auditRepository).append(any());
+        doThrow(new IOException("HBase down")).when(auditRepository).append(any(AuditEvent.class));
 
         assertDoesNotThrow(() ->
                 auditService.record("create", "run", "run-1", "allowed", null));
@@ -80,10 +94,45 @@ class AuditServiceTest {
         assertEquals("anonymous", captor.getValue().getUser());
     }
 
+    @Test
+    void recordHandsEventToAsyncWriterWhenEnabled() throws Exception {
+        when(auditWriter.isEnabled()).thenReturn(true);
+        MDC.put(MdcCorrelationFilter.MDC_KEY, "req-9");
+
+        auditService.record("log", "run", "run-1", "allowed", null);
+
+        ArgumentCaptor<AuditEvent> captor = ArgumentCaptor.forClass(AuditEvent.class);
+        verify(auditWriter).submit(captor.capture());
+        verify(auditRepository, never()).append(any(AuditEvent.class));
+        // Enrichment happens on the request thread, before the event is queued.
+        assertEquals("alice", captor.getValue().getUser());
+        assertEquals("req-9", captor.getValue().getRequestId());
+    }
+
+    @Test
+    void recordSkipsPersistenceWhenEventIsCoalesced() throws Exception {
+        when(auditCoalescer.offer(any())).thenReturn(true);
+
+        auditService.record("log", "run", "run-1", "allowed", null);
+
+        verify(auditRepository, never()).append(any(AuditEvent.class));
+        verify(auditWriter, never()).submit(any());
+    }
+
+    @Test
+    void flushCoalescedPersistsExpiredWindows() throws Exception {
+        AuditEvent folded = AuditEvent.builder().eventId("e1").action("log").count(42).build();
+        when(auditCoalescer.drainExpired(anyLong())).thenReturn(List.of(folded));
+
+        auditService.flushCoalesced();
+
+        verify(auditRepository).append(folded);
+    }
+
     @Test
     void searchDelegatesToRepository() throws Exception {
         AuditEvent event = AuditEvent.builder().eventId("e1").action("delete").build();
-        when(auditRepository.search(anyInt(), any())).thenReturn(new Page<>(List.of(event), "tok"));
+        when(auditRepository.search(any(), anyInt(), any())).thenReturn(new Page<>(List.of(event), "tok"));
 
         Page<AuditEvent> result = auditService.search(10, null);
 
@@ -91,13 +140,71 @@ class AuditServiceTest {
         assertEquals("tok", result.nextPageToken());
     }
 
+    @Test
+    void searchPassesFiltersToRepository() throws Exception {
+        AuditQuery query = new AuditQuery("alice", "experiment", "exp-7", null, 1_000L, 2_000L);
+        when(auditRepository.search(any(), anyInt(), any())).thenReturn(Page.terminal(List.of()));
+
+        auditService.search(query, 50, null);
+
+        verify(auditRepository).search(eq(query), eq(50), isNull());
+    }
+
+    @Test
+    void searchRejectsInvertedTimeRange() {
+        AuditQuery query = new AuditQuery(null, null, null, null, 2_000L, 1_000L);
+
+        assertThrows(IllegalArgumentException.class, () -> auditService.search(query, 10, null));
+    }
+
     @Test
     void searchReturnsEmptyPageOnRepositoryError() throws Exception {
-        when(auditRepository.search(anyInt(), any())).thenThrow(new IOException("boom"));
+        when(auditRepository.search(any(), anyInt(), any())).thenThrow(new IOException("boom"));
 
         Page<AuditEvent> result = auditService.search(10, null);
 
         assertTrue(result.items().isEmpty());
         assertNull(result.nextPageToken());
     }
+
+    @Test
+    void searchFallsThroughToArchiveAfterLastHotEvent() throws Exception {
+        AuditEvent hot = AuditEvent.builder().eventId("hot").timestamp(2_000L).build();
+        AuditEvent cold = AuditEvent.builder().eventId("cold").timestamp(1_000L).build();
+        when(auditArchiveRepository.isEnabled()).thenReturn(true);
+        when(auditRepository.search(any(), anyInt(), any())).thenReturn(Page.terminal(List.of(hot)));
+        when(auditArchiveRepository.search(any(), anyInt(), any())).thenReturn(Page.of(List.of(cold), "next"));
+
+        Page<AuditEvent> result = auditService.search(10, null);
+
+        assertEquals(List.of("hot", "cold"), result.items().stream().map(AuditEvent::getEventId).toList());
+        assertEquals("next", result.nextPageToken());
+        ArgumentCaptor<PageToken> after = ArgumentCaptor.forClass(PageToken.class);
+        verify(auditArchiveRepository).search(eq(AuditQuery.all()), eq(9), after.capture());
+        assertEquals(AuditRepository.tokenAfter(hot).encode(), after.getValue().encode());
+    }
+
+    @Test
+    void searchSkipsArchiveWhileHotTierHasMorePages() throws Exception {
+        when(auditArchiveRepository.isEnabled()).thenReturn(true);
+        when(auditRepository.search(any(), anyInt(), any()))
+                .thenReturn(Page.of(List.of(AuditEvent.builder().eventId("e").build()), "tok"));
+
+        auditService.search(1, null);
+
+        verify(auditArchiveRepository, never()).search(any(), anyInt(), any());
+    }
+
+    @Test
+    void archiveFailureStillReturnsHotEvents() throws Exception {
+        AuditEvent hot = AuditEvent.builder().eventId("hot").timestamp(2_000L).build();
+        when(auditArchiveRepository.isEnabled()).thenReturn(true);
+        when(auditRepository.search(any(), anyInt(), any())).thenReturn(Page.terminal(List.of(hot)));
+        when(auditArchiveRepository.search(any(), anyInt(), any())).thenThrow(new IOException("namenode down"));
+
+        Page<AuditEvent> result = auditService.search(10, null);
+
+        assertEquals(List.of(hot), result.items());
+        assertNull(result.nextPageToken());
+    }
 }
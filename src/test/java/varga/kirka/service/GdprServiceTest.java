@@ -0,0 +1,111 @@
+package varga.kirka.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import varga.kirka.model.Experiment;
+import varga.kirka.repo.ExperimentRepository;
+import varga.kirka.repo.ModelRegistryRepository;
+import varga.kirka.repo.RunRepository;
+import varga.kirka.security.SecurityContextHelper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class GdprServiceTest {
+
+    private ExperimentRepository experimentRepository;
+    private RunRepository runRepository;
+    private ArtifactService artifactService;
+    private RunRepository.RunPurger purger;
+    private GdprService gdprService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        experimentRepository = mock(ExperimentRepository.class);
+        runRepository = mock(RunRepository.class);
+        artifactService = mock(ArtifactService.class);
+        purger = mock(RunRepository.RunPurger.class);
+        SecurityContextHelper securityContextHelper = mock(SecurityContextHelper.class);
+        when(securityContextHelper.tagsToMap(any(), any(), any())).thenReturn(Map.of());
+        when(runRepository.openRunPurger(anyLong())).thenReturn(purger);
+        when(purger.failedRunIds()).thenReturn(Set.of());
+        when(experimentRepository.getExperiment("exp-1")).thenReturn(
+                Experiment.builder().experimentId("exp-1").artifactLocation("hdfs:///exp-1").build());
+        gdprService = new GdprService(experimentRepository, runRepository, mock(ModelRegistryRepository.class),
+                artifactService, securityContextHelper, mock(ModelResolutionCache.class), mock(JobService.class),
+                4, 0, 1024);
+    }
+
+    @AfterEach
+    void tearDown() {
+        gdprService.shutdown();
+    }
+
+    private static List<RunRepository.PurgeTarget> runs(int count) {
+        List<RunRepository.PurgeTarget> targets = new ArrayList<>();
+        for (int i = 0; i < count; i++) targets.add(new RunRepository.PurgeTarget("run-" + i, "hdfs:///exp-1/run-" + i));
+        return targets;
+    }
+
+    @Test
+    public void testRunsAreErasedConcurrentlyThenTheExperiment() throws IOException {
+        when(runRepository.findPurgeTargetsForExperiment("exp-1")).thenReturn(runs(50));
+        AtomicInteger concurrent = new AtomicInteger();
+        AtomicInteger maxConcurrent = new AtomicInteger();
+        doAnswer(inv -> {
+            int now = concurrent.incrementAndGet();
+            maxConcurrent.accumulateAndGet(now, Math::max);
+            Thread.sleep(5);
+            concurrent.decrementAndGet();
+            return null;
+        }).when(artifactService).deleteArtifact(startsWith("hdfs:///exp-1/run-"));
+
+        GdprService.DeletionReport report = gdprService.hardDeleteExperiment("exp-1");
+
+        assertEquals(50, report.childRowsDeleted());
+        assertEquals(51, report.artifactPathsDeleted());
+        assertTrue(report.failures().isEmpty());
+        assertTrue(maxConcurrent.get() > 1 && maxConcurrent.get() <= 4, "max concurrency " + maxConcurrent.get());
+        verify(purger, times(50)).purge(anyString());
+        verify(purger).close();
+        verify(runRepository, never()).getRun(anyString());
+        verify(experimentRepository).hardDeleteExperiment("exp-1");
+    }
+
+    @Test
+    public void testFailedRunsAreReportedAndKeepTheExperiment() throws IOException {
+        when(runRepository.findPurgeTargetsForExperiment("exp-1")).thenReturn(runs(10));
+        doThrow(new IOException("NameNode unavailable")).when(artifactService).deleteArtifact("hdfs:///exp-1/run-3");
+        when(purger.failedRunIds()).thenReturn(Set.of("run-7"));
+
+        GdprService.DeletionReport report = gdprService.hardDeleteExperiment("exp-1");
+
+        assertEquals(Set.of("run-3", "run-7"), report.failures().keySet());
+        assertTrue(report.failures().get("run-3").contains("NameNode unavailable"));
+        assertEquals(8, report.childRowsDeleted());
+        verify(purger, never()).purge("run-3");
+        verify(artifactService, never()).deleteArtifact("hdfs:///exp-1");
+        verify(experimentRepository, never()).hardDeleteExperiment(anyString());
+    }
+
+    @Test
+    public void testResumedPurgeAddsToEarlierTotals() throws IOException {
+        when(runRepository.findPurgeTargetsForExperiment("exp-1")).thenReturn(runs(2));
+
+        GdprService.DeletionReport report = gdprService.purgeExperiment("exp-1", null, 100, 90,
+                GdprService.PurgeProgress.NONE);
+
+        assertEquals(102, report.childRowsDeleted());
+        assertEquals(92, report.artifactPathsDeleted());
+        verify(experimentRepository).hardDeleteExperiment("exp-1");
+    }
+}
@@ -0,0 +1,174 @@
+package varga.kirka.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.ObjectProvider;
+import varga.kirka.model.Job;
+import varga.kirka.model.JobStatus;
+import varga.kirka.repo.JobRepository;
+import varga.kirka.security.SecurityContextHelper;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class JobServiceTest {
+
+    private JobRepository jobRepository;
+    private JobHandler handler;
+    private SecurityContextHelper securityContextHelper;
+    private JobService jobService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() throws IOException {
+        jobRepository = mock(JobRepository.class);
+        handler = mock(JobHandler.class);
+        securityContextHelper = mock(SecurityContextHelper.class);
+        when(handler.type()).thenReturn("test");
+        when(securityContextHelper.getCurrentUser()).thenReturn("alice");
+        ObjectProvider<JobHandler> handlers = mock(ObjectProvider.class);
+        when(handlers.orderedStream()).thenAnswer(inv -> Stream.of(handler));
+        when(jobRepository.tryClaim(any(), anyString(), anyLong())).thenAnswer(inv -> {
+            Job job = inv.getArgument(0);
+            job.setStatus(JobStatus.RUNNING);
+            job.setAttempts(job.getAttempts() + 1);
+            return job;
+        });
+        when(jobRepository.finish(anyString(), anyString(), any(), any(), any())).thenReturn(true);
+        when(jobRepository.release(anyString(), anyString(), any(), anyLong())).thenReturn(true);
+        jobService = new JobService(jobRepository, handlers, securityContextHelper, new SimpleMeterRegistry(),
+                1, 4, 60_000, 2, 0, 0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jobService.stop();
+    }
+
+    @Test
+    public void testSubmitRunsTheHandlerAndRecordsItsResult() throws IOException {
+        when(handler.run(any(), any())).thenReturn(Map.of("moved", "3"));
+
+        String jobId = jobService.submit("test", Map.of("name", "m"));
+
+        verify(jobRepository).create(argThat(j -> j.getJobId().equals(jobId)
+                && "alice".equals(j.getOwner()) && j.getParams().equals(Map.of("name", "m"))));
+        verify(jobRepository, timeout(2000)).finish(eq(jobId), anyString(), eq(JobStatus.SUCCEEDED),
+                eq(Map.of("moved", "3")), isNull());
+    }
+
+    @Test
+    public void testUnknownTypeIsRejected() throws IOException {
+        assertThrows(IllegalArgumentException.class, () -> jobService.submit("nope", Map.of()));
+        verify(jobRepository, never()).create(any());
+    }
+
+    @Test
+    public void testRuntimeFailureFailsTheJob() throws IOException {
+        when(handler.run(any(), any())).thenThrow(new ResourceNotFoundException("RegisteredModel", "m"));
+
+        String jobId = jobService.submit("test", Map.of());
+
+        verify(jobRepository, timeout(2000)).finish(eq(jobId), anyString(), eq(JobStatus.FAILED), isNull(),
+                contains("RegisteredModel"));
+        verify(jobRepository, never()).release(anyString(), anyString(), any(), anyLong());
+    }
+
+    @Test
+    public void testTransientFailureIsReleasedForRetry() throws IOException {
+        when(handler.run(any(), any())).thenThrow(new IOException("hbase down"));
+        Job observed = Job.builder().jobId("j1").type("test").status(JobStatus.PENDING).params(Map.of()).build();
+        when(jobRepository.findClaimable(anyLong(), anyInt())).thenReturn(List.of(observed));
+
+        jobService.sweep();
+
+        verify(jobRepository, timeout(2000)).release(eq("j1"), anyString(), contains("hbase down"), anyLong());
+        verify(jobRepository, never()).finish(anyString(), anyString(), any(), any(), any());
+    }
+
+    @Test
+    public void testTransientFailureOnTheLastAttemptFailsTheJob() throws IOException {
+        when(handler.run(any(), any())).thenThrow(new IOException("hbase down"));
+        // Second attempt reaches max-attempts = 2.
+        Job observed = Job.builder().jobId("j1").type("test").status(JobStatus.PENDING).attempts(1)
+                .params(Map.of()).build();
+        when(jobRepository.findClaimable(anyLong(), anyInt())).thenReturn(List.of(observed));
+
+        jobService.sweep();
+
+        verify(jobRepository, timeout(2000)).finish(eq("j1"), anyString(), eq(JobStatus.FAILED), isNull(),
+                contains("hbase down"));
+        verify(jobRepository, never()).release(anyString(), anyString(), any(), anyLong());
+    }
+
+    @Test
+    public void testResumedJobSeesItsCheckpointAndStopsWhenTheLeaseIsLost() throws IOException {
+        AtomicReference<Map<String, String>> seen = new AtomicReference<>();
+        when(handler.run(any(), any())).thenAnswer(inv -> {
+            JobHandler.Context context = inv.getArgument(1);
+            seen.set(context.checkpoint());
+            context.checkpoint(Map.of("done", "4"), 4, 10);
+            return Map.of();
+        });
+        when(jobRepository.checkpoint(anyString(), anyString(), any(), anyLong(), anyLong(), anyLong())).thenReturn(false);
+        Job abandoned = Job.builder().jobId("j2").type("test").status(JobStatus.RUNNING).attempts(1)
+                .params(Map.of()).checkpoint(Map.of("done", "3")).build();
+        when(jobRepository.findClaimable(anyLong(), anyInt())).thenReturn(List.of(abandoned));
+
+        jobService.sweep();
+
+        verify(jobRepository, timeout(2000)).checkpoint(eq("j2"), anyString(), eq(Map.of("done", "4")),
+                eq(4L), eq(10L), anyLong());
+        assertEquals(Map.of("done", "3"), seen.get());
+        verify(jobRepository, after(200).never()).finish(anyString(), anyString(), any(), any(), any());
+        verify(jobRepository, never()).release(anyString(), anyString(), any(), anyLong());
+    }
+
+    @Test
+    public void testJobClaimedElsewhereIsNotRun() throws IOException {
+        doReturn(null).when(jobRepository).tryClaim(any(), anyString(), anyLong());
+
+        jobService.submit("test", Map.of());
+
+        verify(handler, after(200).never()).run(any(), any());
+    }
+
+    @Test
+    public void testLeasesAreTakenAndReleasedAsThisNode() throws IOException {
+        when(jobRepository.tryLease(eq("pack"), anyString(), anyLong(), anyLong())).thenReturn(true);
+        when(jobRepository.extendLease(eq("pack"), anyString(), anyLong())).thenReturn(true);
+        long before = System.currentTimeMillis();
+
+        assertTrue(jobService.tryLease("pack"));
+        assertTrue(jobService.renewLease("pack"));
+        doThrow(new IOException("hbase down")).when(jobRepository).releaseLease(eq("pack"), anyString());
+        jobService.releaseLease("pack");
+
+        ArgumentCaptor<String> node = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Long> expiry = ArgumentCaptor.forClass(Long.class);
+        verify(jobRepository).tryLease(eq("pack"), node.capture(), anyLong(), expiry.capture());
+        assertTrue(expiry.getValue() >= before + 60_000);
+        verify(jobRepository).extendLease(eq("pack"), eq(node.getValue()), anyLong());
+        verify(jobRepository).releaseLease("pack", node.getValue());
+    }
+
+    @Test
+    public void testGetJobChecksReadAccess() throws IOException {
+        Job job = Job.builder().jobId("j3").owner("bob").build();
+        when(jobRepository.get("j3")).thenReturn(job);
+
+        assertSame(job, jobService.getJob("j3"));
+        verify(securityContextHelper).checkReadAccess("job", "j3", "bob", Map.of());
+        assertThrows(ResourceNotFoundException.class, () -> jobService.getJob("missing"));
+    }
+}
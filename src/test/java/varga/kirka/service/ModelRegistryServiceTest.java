@@ -1,15 +1,18 @@
 package varga.kirka.service;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.junit.jupiter.MockitoSettings;
 import org.mockito.quality.Strictness;
 import varga.kirka.model.ModelVersion;
 import varga.kirka.model.RegisteredModel;
+import varga.kirka.model.RegistryEvent;
 import varga.kirka.repo.ModelRegistryRepository;
 import varga.kirka.security.SecurityContextHelper;
 
@@ -20,6 +23,7 @@ import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -32,6 +36,15 @@ public class ModelRegistryServiceTest {
     @Mock
     private SecurityContextHelper securityContextHelper;
 
+    @Mock
+    private JobService jobService;
+
+    @Mock
+    private WebhookDispatcher webhookDispatcher;
+
+    @Spy
+    private ModelResolutionCache resolutionCache = new ModelResolutionCache(new SimpleMeterRegistry(), 60_000, 1000);
+
     @InjectMocks
     private ModelRegistryService modelRegistryService;
 
@@ -55,35 +68,200 @@ public class ModelRegistryServiceTest {
     @Test
     public void testCreateModelVersion() throws IOException {
         when(modelRegistryRepository.getRegisteredModel("test-model")).thenReturn(existingModel("test-model"));
+        when(modelRegistryRepository.allocateModelVersion("test-model")).thenReturn("1");
+        when(modelRegistryRepository.createModelVersionIfAbsent(any(ModelVersion.class))).thenReturn(true);
 
         ModelVersion version = modelRegistryService.createModelVersion("test-model", "source", "run123");
 
         assertEquals("1", version.getVersion());
         assertEquals("None", version.getCurrentStage());
-        verify(modelRegistryRepository, times(1)).createModelVersion(any(ModelVersion.class));
+        verify(modelRegistryRepository, times(1)).createModelVersionIfAbsent(any(ModelVersion.class));
+    }
+
+    @Test
+    public void testCreateModelVersionSkipsNumberAlreadyTaken() throws IOException {
+        when(modelRegistryRepository.getRegisteredModel("test-model")).thenReturn(existingModel("test-model"));
+        when(modelRegistryRepository.allocateModelVersion("test-model")).thenReturn("7", "8");
+        when(modelRegistryRepository.createModelVersionIfAbsent(any(ModelVersion.class))).thenReturn(false, true);
+
+        ModelVersion version = modelRegistryService.createModelVersion("test-model", "source", "run123");
+
+        assertEquals("8", version.getVersion());
+        verify(modelRegistryRepository, times(2)).createModelVersionIfAbsent(any(ModelVersion.class));
+    }
+
+    @Test
+    public void testCreateModelVersionOfAModelDeletedMeanwhile() throws IOException {
+        when(modelRegistryRepository.getRegisteredModel("test-model")).thenReturn(existingModel("test-model"));
+        when(modelRegistryRepository.allocateModelVersion("test-model")).thenReturn(null);
+
+        assertThrows(ResourceNotFoundException.class,
+                () -> modelRegistryService.createModelVersion("test-model", "source", "run123"));
+        verify(modelRegistryRepository, never()).createModelVersionIfAbsent(any(ModelVersion.class));
+    }
+
+    @Test
+    public void testCreateModelVersionGivesUpWhenNoNumberIsFree() throws IOException {
+        when(modelRegistryRepository.getRegisteredModel("test-model")).thenReturn(existingModel("test-model"));
+        when(modelRegistryRepository.allocateModelVersion("test-model")).thenReturn("1");
+        when(modelRegistryRepository.createModelVersionIfAbsent(any(ModelVersion.class))).thenReturn(false);
+
+        assertThrows(IOException.class,
+                () -> modelRegistryService.createModelVersion("test-model", "source", "run123"));
     }
 
     @Test
     public void testTransitionModelVersionStage() throws IOException {
         ModelVersion mvProduction = ModelVersion.builder().name("test-model").version("1").currentStage("Production").build();
+        ModelVersion mvArchived = ModelVersion.builder().name("test-model").version("0").currentStage("Archived").build();
         when(modelRegistryRepository.getRegisteredModel("test-model")).thenReturn(existingModel("test-model"));
-        when(modelRegistryRepository.getModelVersion("test-model", "1")).thenReturn(mvProduction);
+        when(modelRegistryRepository.transitionModelVersionStage("test-model", "1", "Production", true))
+                .thenReturn(new ModelRegistryRepository.StageTransition(mvProduction, List.of(mvArchived)));
 
-        ModelVersion result = modelRegistryService.transitionModelVersionStage("test-model", "1", "Production", false);
+        ModelVersion result = modelRegistryService.transitionModelVersionStage("test-model", "1", "Production", true);
 
         assertEquals("Production", result.getCurrentStage());
-        verify(modelRegistryRepository).updateModelVersionStage("test-model", "1", "Production");
+        verify(modelRegistryRepository, never()).getModelVersion(anyString(), anyString());
+        verify(modelRegistryRepository, never()).getVersions(anyString());
+        verify(webhookDispatcher).publish(argThat(e ->
+                RegistryEvent.MODEL_VERSION_STAGE_TRANSITIONED.equals(e.getEventType())
+                        && "test-model".equals(e.getModelName()) && "1".equals(e.getVersion())
+                        && "Production".equals(e.getStage()) && "alice".equals(e.getUser())));
+        verify(webhookDispatcher).publish(argThat(e ->
+                RegistryEvent.MODEL_VERSION_STAGE_TRANSITIONED.equals(e.getEventType())
+                        && "0".equals(e.getVersion()) && "Archived".equals(e.getStage())));
+    }
+
+    @Test
+    public void testSubmitRenameChecksAccessAndDestinationBeforeQueueing() throws IOException {
+        when(modelRegistryRepository.getRegisteredModel("old")).thenReturn(existingModel("old"));
+        when(jobService.submit(RegisteredModelRenameJob.TYPE, Map.of("name", "old", "new_name", "new"))).thenReturn("j1");
+
+        assertEquals("j1", modelRegistryService.submitRenameRegisteredModel("old", "new"));
+        verify(securityContextHelper).checkWriteAccess(eq("model"), eq("old"), any(), any());
+
+        when(modelRegistryRepository.getRegisteredModel("taken")).thenReturn(existingModel("taken"));
+        assertThrows(varga.kirka.repo.ExperimentAlreadyExistsException.class,
+                () -> modelRegistryService.submitRenameRegisteredModel("old", "taken"));
+        verify(jobService, times(1)).submit(any(), any());
+        verify(modelRegistryRepository, never()).renameRegisteredModel(any(), any());
+    }
+
+    @Test
+    public void testTransitionOfMissingVersionIsNotFound() throws IOException {
+        when(modelRegistryRepository.getRegisteredModel("test-model")).thenReturn(existingModel("test-model"));
+        when(modelRegistryRepository.transitionModelVersionStage("test-model", "9", "Production", false))
+                .thenReturn(null);
+
+        assertThrows(ResourceNotFoundException.class,
+                () -> modelRegistryService.transitionModelVersionStage("test-model", "9", "Production", false));
+        verify(webhookDispatcher, never()).publish(any());
+    }
+
+    @Test
+    public void testSearchModelVersionsResolvesEachParentOnce() throws IOException {
+        List<ModelVersion> versions = new java.util.ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            versions.add(ModelVersion.builder().name("open").version(String.valueOf(i)).currentStage("None").build());
+            versions.add(ModelVersion.builder().name("secret").version(String.valueOf(i)).currentStage("None").build());
+        }
+        versions.add(ModelVersion.builder().name("orphan").version("1").currentStage("None").build());
+        when(modelRegistryRepository.searchModelVersions(any(), any(), any(), anyInt(), any()))
+                .thenReturn(varga.kirka.repo.Page.of(versions, "next"));
+        when(modelRegistryRepository.getRegisteredModelsForAuthorization(any())).thenReturn(Map.of(
+                "open", RegisteredModel.builder().name("open").userId("alice").build(),
+                "secret", RegisteredModel.builder().name("secret").userId("bob").build()));
+        when(securityContextHelper.canRead(any(), eq("secret"), any(), any())).thenReturn(false);
+
+        varga.kirka.repo.Page<ModelVersion> page = modelRegistryService.searchModelVersions(null, 100, null, null);
+        List<ModelVersion> results = page.items();
+
+        assertEquals(List.of("1", "2", "3"), results.stream().map(ModelVersion::getVersion).toList());
+        assertTrue(results.stream().allMatch(mv -> "open".equals(mv.getName())));
+        // Filtering by authorization never drops the cursor of the underlying page.
+        assertEquals("next", page.nextPageToken());
+        verify(modelRegistryRepository, times(1)).getRegisteredModelsForAuthorization(
+                java.util.Set.of("open", "secret", "orphan"));
+        verify(modelRegistryRepository, never()).getRegisteredModel(anyString());
+        verify(securityContextHelper, times(1)).canRead(any(), eq("open"), any(), any());
+        verify(securityContextHelper, times(1)).canRead(any(), eq("secret"), any(), any());
+    }
+
+    @Test
+    public void testAliasResolutionIsCachedUntilTheAliasChanges() throws IOException {
+        when(modelRegistryRepository.getRegisteredModel("m")).thenReturn(existingModel("m"));
+        when(modelRegistryRepository.getAliasedVersion("m", "champion")).thenReturn("1", "2");
+        when(modelRegistryRepository.getModelVersion(eq("m"), anyString())).thenAnswer(inv ->
+                ModelVersion.builder().name("m").version(inv.getArgument(1)).currentStage("None").build());
+
+        assertEquals("1", modelRegistryService.getModelVersionByAlias("m", "champion").getVersion());
+        assertEquals("1", modelRegistryService.getModelVersionByAlias("m", "champion").getVersion());
+        verify(modelRegistryRepository, times(1)).getRegisteredModel("m");
+        verify(modelRegistryRepository, times(1)).getAliasedVersion("m", "champion");
+        // Read access is still evaluated on every call.
+        verify(securityContextHelper, times(2)).checkReadAccess(any(), eq("m"), any(), any());
+
+        when(modelRegistryRepository.getModelVersion("m", "2")).thenReturn(
+                ModelVersion.builder().name("m").version("2").currentStage("None").build());
+        modelRegistryService.setAlias("m", "champion", "2");
+
+        assertEquals("2", modelRegistryService.getModelVersionByAlias("m", "champion").getVersion());
+    }
+
+    @Test
+    public void testGetLatestVersionsFiltersStagesCaseInsensitively() throws IOException {
+        when(modelRegistryRepository.getRegisteredModel("m")).thenReturn(RegisteredModel.builder().name("m")
+                .latestVersions(List.of(
+                        ModelVersion.builder().name("m").version("3").currentStage("None").build(),
+                        ModelVersion.builder().name("m").version("2").currentStage("Production").build()))
+                .build());
+
+        assertEquals(List.of("2"), modelRegistryService.getLatestVersions("m", List.of("production"))
+                .stream().map(ModelVersion::getVersion).toList());
+        assertEquals(2, modelRegistryService.getLatestVersions("m", null).size());
+        verify(modelRegistryRepository, times(1)).getRegisteredModel("m");
     }
 
     @Test
     public void testSearchRegisteredModels() throws IOException {
         RegisteredModel m1 = RegisteredModel.builder().name("model1").build();
         RegisteredModel m2 = RegisteredModel.builder().name("model2").build();
-        when(modelRegistryRepository.listRegisteredModels()).thenReturn(List.of(m1, m2));
+        when(modelRegistryRepository.searchRegisteredModels(any(), any(), any(), anyInt(), any())).thenAnswer(inv -> {
+            java.util.function.Predicate<RegisteredModel> filter = inv.getArgument(1);
+            return varga.kirka.repo.Page.terminal(java.util.stream.Stream.of(m1, m2).filter(filter).toList());
+        });
 
-        List<RegisteredModel> results = modelRegistryService.searchRegisteredModels("name LIKE 'model1%'");
+        List<RegisteredModel> results = modelRegistryService.searchRegisteredModels("name LIKE 'model1%'", null, null, null).items();
         assertEquals(1, results.size());
         assertEquals("model1", results.get(0).getName());
+        verify(modelRegistryRepository).searchRegisteredModels(eq(varga.kirka.search.NameKeyPlan.of(
+                        varga.kirka.search.FilterParser.parse("name LIKE 'model1%'"))), any(),
+                eq(varga.kirka.repo.RegistryOrder.NAME_ASC), eq(varga.kirka.repo.PageToken.DEFAULT_PAGE_SIZE), isNull());
+    }
+
+    @Test
+    public void testSearchRegisteredModelsAppliesReadAccessDuringTheScan() throws IOException {
+        RegisteredModel mine = RegisteredModel.builder().name("mine").build();
+        RegisteredModel theirs = RegisteredModel.builder().name("theirs").build();
+        when(securityContextHelper.canRead(any(), eq("theirs"), any(), any())).thenReturn(false);
+        when(modelRegistryRepository.searchRegisteredModels(any(), any(), any(), anyInt(), any())).thenAnswer(inv -> {
+            java.util.function.Predicate<RegisteredModel> filter = inv.getArgument(1);
+            return varga.kirka.repo.Page.terminal(java.util.stream.Stream.of(mine, theirs).filter(filter).toList());
+        });
+
+        List<RegisteredModel> results = modelRegistryService.searchRegisteredModels(null, 10, null, "name DESC").items();
+
+        assertEquals(List.of("mine"), results.stream().map(RegisteredModel::getName).toList());
+        verify(modelRegistryRepository).searchRegisteredModels(eq(varga.kirka.search.NameKeyPlan.NONE), any(),
+                eq(new varga.kirka.repo.RegistryOrder(varga.kirka.repo.RegistryOrder.Field.NAME, true)), eq(10), isNull());
+    }
+
+    @Test
+    public void testSearchRejectsUnknownOrderBy() {
+        assertThrows(IllegalArgumentException.class,
+                () -> modelRegistryService.searchRegisteredModels(null, 10, null, "version_number DESC"));
+        assertThrows(IllegalArgumentException.class,
+                () -> modelRegistryService.searchModelVersions(null, 10, null, "source ASC"));
     }
 
     @Test
@@ -0,0 +1,98 @@
+package varga.kirka.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ModelResolutionCacheTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private double requests(String result) {
+        return meterRegistry.get("kirka.registry.resolution-cache.requests").tag("result", result).counter().count();
+    }
+
+    @Test
+    void concurrentLookupsOfTheSameKeyShareOneLoad() throws Exception {
+        ModelResolutionCache cache = new ModelResolutionCache(meterRegistry, 60_000, 100);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(32);
+        List<Future<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            futures.add(pool.submit(() -> cache.get("m", "alias:champion", () -> {
+                loads.incrementAndGet();
+                try {
+                    assertTrue(release.await(10, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return "7";
+            })));
+        }
+        // Let the other callers pile up behind the in-flight load before it completes.
+        while (requests("coalesced") < 31) Thread.sleep(5);
+        release.countDown();
+        for (Future<String> f : futures) assertEquals("7", f.get());
+        pool.shutdown();
+
+        assertEquals(1, loads.get());
+        assertEquals(1.0, requests("miss"));
+        assertEquals(299.0, requests("hit") + requests("coalesced"));
+    }
+
+    @Test
+    void invalidateDropsEveryLookupOfTheModel() throws IOException {
+        ModelResolutionCache cache = new ModelResolutionCache(meterRegistry, 60_000, 100);
+        AtomicInteger loads = new AtomicInteger();
+        cache.get("m", "alias:a", () -> "v" + loads.incrementAndGet());
+        cache.get("m", "model", () -> "row" + loads.incrementAndGet());
+        cache.get("other", "model", () -> "other" + loads.incrementAndGet());
+
+        cache.invalidate("m");
+
+        assertEquals("v4", cache.get("m", "alias:a", () -> "v" + loads.incrementAndGet()));
+        assertEquals("other3", cache.get("other", "model", () -> "other" + loads.incrementAndGet()));
+    }
+
+    @Test
+    void expiredEntriesAreReloaded() throws Exception {
+        ModelResolutionCache cache = new ModelResolutionCache(meterRegistry, 20, 100);
+        AtomicInteger loads = new AtomicInteger();
+        cache.get("m", "model", loads::incrementAndGet);
+        assertEquals(1, cache.get("m", "model", loads::incrementAndGet));
+        Thread.sleep(40);
+        assertEquals(2, cache.get("m", "model", loads::incrementAndGet));
+    }
+
+    @Test
+    void failedLoadsAndMissingValues() throws IOException {
+        ModelResolutionCache cache = new ModelResolutionCache(meterRegistry, 60_000, 100);
+        assertThrows(IOException.class, () -> cache.get("m", "model", () -> {
+            throw new IOException("region server down");
+        }));
+        // The failure is not remembered, but a missing value is.
+        assertNull(cache.get("m", "model", () -> null));
+        assertNull(cache.get("m", "model", () -> "should not load"));
+    }
+
+    @Test
+    void zeroTtlDisablesCaching() throws IOException {
+        ModelResolutionCache cache = new ModelResolutionCache(meterRegistry, 0, 100);
+        AtomicInteger loads = new AtomicInteger();
+        cache.get("m", "model", loads::incrementAndGet);
+        cache.get("m", "model", loads::incrementAndGet);
+        assertEquals(2, loads.get());
+    }
+}
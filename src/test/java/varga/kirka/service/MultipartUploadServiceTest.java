@@ -0,0 +1,145 @@
+package varga.kirka.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import varga.kirka.repo.ArtifactPackStore;
+import varga.kirka.repo.ArtifactRepository;
+import varga.kirka.repo.ContentStore;
+import varga.kirka.repo.ParallelArtifactReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Runs against the local file system, which has no concat: completion takes the copy path. */
+public class MultipartUploadServiceTest {
+
+    @TempDir
+    java.nio.file.Path dir;
+
+    private FileSystem fileSystem;
+    private SimpleMeterRegistry meterRegistry;
+    private ArtifactService artifactService;
+    private MultipartUploadService service;
+    private String runRoot;
+    private String target;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        fileSystem = FileSystem.getLocal(new Configuration());
+        meterRegistry = new SimpleMeterRegistry();
+        ParallelArtifactReader parallelReader = new ParallelArtifactReader(meterRegistry, false, 0, 1 << 16, 1, 1, 1 << 16);
+        ContentStore contentStore = new ContentStore(fileSystem, false, "file://" + dir + "/cas", "file://" + dir, 65536);
+        ArtifactRepository repository = new ArtifactRepository(fileSystem, parallelReader, contentStore,
+                new ArtifactPackStore(fileSystem, contentStore, false, 16));
+        String destination = "file://" + dir;
+        artifactService = new ArtifactService(repository, new ArtifactListingCache(meterRegistry, 0, 1, 1),
+                meterRegistry, 4096, destination, 4096, "mtime");
+        service = new MultipartUploadService(artifactService, repository, meterRegistry, 100, "md5", 60_000, 4096);
+        runRoot = destination + "/7/run-1";
+        target = runRoot + "/checkpoints/model.ckpt";
+    }
+
+    private static String md5Hex(byte[] data) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("MD5").digest(data));
+    }
+
+    private byte[] read(String path) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        artifactService.downloadArtifact(path, out);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testPartsUploadedOutOfOrderAreJoinedInOrder() throws Exception {
+        byte[][] parts = new byte[3][];
+        Random random = new Random(7);
+        for (int i = 0; i < parts.length; i++) {
+            parts[i] = new byte[10_000 + i];
+            random.nextBytes(parts[i]);
+        }
+        String uploadId = service.create(runRoot, target, 3);
+
+        String etag3 = service.uploadPart(runRoot, target, uploadId, 3, new ByteArrayInputStream(parts[2]), null);
+        String etag1 = service.uploadPart(runRoot, target, uploadId, 1, new ByteArrayInputStream(parts[0]),
+                Base64.getEncoder().encodeToString(MessageDigest.getInstance("MD5").digest(parts[0])));
+        String etag2 = service.uploadPart(runRoot, target, uploadId, 2, new ByteArrayInputStream(parts[1]), null);
+        assertEquals("\"" + md5Hex(parts[0]) + "\"", etag1);
+
+        assertTrue(artifactService.listArtifacts(runRoot).isEmpty(), "staging directory must not be listed");
+
+        service.complete(runRoot, target, uploadId, List.of(
+                new MultipartUploadService.Part(1, etag1),
+                new MultipartUploadService.Part(2, etag2),
+                new MultipartUploadService.Part(3, etag3.replace("\"", ""))));
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (byte[] part : parts) expected.write(part);
+        assertArrayEquals(expected.toByteArray(), read(target));
+        assertFalse(fileSystem.exists(new Path(runRoot + "/" + ArtifactService.MULTIPART_STAGING_DIR + "/" + uploadId)));
+        assertEquals(1, meterRegistry.get("kirka.artifacts.multipart.uploads").tag("outcome", "completed").counter().count());
+    }
+
+    @Test
+    public void testCorruptPartsAndETagMismatchesAreRejected() throws Exception {
+        String uploadId = service.create(runRoot, target, 2);
+        String wrongMd5 = Base64.getEncoder().encodeToString(MessageDigest.getInstance("MD5").digest(new byte[]{1}));
+
+        assertThrows(IllegalArgumentException.class, () ->
+                service.uploadPart(runRoot, target, uploadId, 1, new ByteArrayInputStream(new byte[]{2}), wrongMd5));
+        assertThrows(IllegalArgumentException.class, () ->
+                service.uploadPart(runRoot, target, uploadId, 3, new ByteArrayInputStream(new byte[]{2}), null));
+
+        service.uploadPart(runRoot, target, uploadId, 1, new ByteArrayInputStream(new byte[]{2}), null);
+        assertThrows(IllegalArgumentException.class, () -> service.complete(runRoot, target, uploadId,
+                List.of(new MultipartUploadService.Part(1, "\"00000000000000000000000000000000\""))));
+        assertThrows(IllegalArgumentException.class, () -> service.complete(runRoot, target, uploadId,
+                List.of(new MultipartUploadService.Part(1, null), new MultipartUploadService.Part(2, null))),
+                "part 2 was never uploaded");
+        assertFalse(fileSystem.exists(new Path(target)));
+    }
+
+    @Test
+    public void testUploadIdIsBoundToItsTarget() throws Exception {
+        String uploadId = service.create(runRoot, target, 1);
+
+        assertThrows(IllegalArgumentException.class, () ->
+                service.abort(runRoot, runRoot + "/other.bin", uploadId));
+        assertThrows(IllegalArgumentException.class, () ->
+                service.abort(runRoot, target, "../../etc"));
+        assertThrows(ResourceNotFoundException.class, () ->
+                service.abort(runRoot, target, "0123456789abcdef0123456789abcdef"));
+
+        service.abort(runRoot, target, uploadId);
+        assertThrows(ResourceNotFoundException.class, () ->
+                service.uploadPart(runRoot, target, uploadId, 1, new ByteArrayInputStream(new byte[]{1}), null));
+    }
+
+    @Test
+    public void testSweepRemovesOnlyInactiveUploads() throws Exception {
+        String stale = service.create(runRoot, target, 1);
+        String active = service.create(runRoot, target, 1);
+        Path staleDir = new Path(runRoot + "/" + ArtifactService.MULTIPART_STAGING_DIR + "/" + stale);
+        long old = System.currentTimeMillis() - 120_000;
+        for (var status : fileSystem.listStatus(staleDir)) fileSystem.setTimes(status.getPath(), old, -1);
+        fileSystem.setTimes(staleDir, old, -1);
+
+        service.sweep();
+
+        assertFalse(fileSystem.exists(staleDir));
+        assertTrue(fileSystem.exists(new Path(runRoot + "/" + ArtifactService.MULTIPART_STAGING_DIR + "/" + active)));
+        assertEquals(1, meterRegistry.get("kirka.artifacts.multipart.uploads").tag("outcome", "expired").counter().count());
+    }
+}
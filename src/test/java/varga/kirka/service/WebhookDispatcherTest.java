@@ -0,0 +1,285 @@
+package varga.kirka.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import varga.kirka.model.RegistryEvent;
+import varga.kirka.model.Webhook;
+import varga.kirka.repo.WebhookRepository;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class WebhookDispatcherTest {
+
+    /** A request received by the stub, with the status it was answered. */
+    private record Received(String path, Map<String, String> headers, byte[] body, int status) {}
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .setPropertyNamingStrategy(PropertyNamingStrategies.SNAKE_CASE);
+    private final Queue<Received> received = new ConcurrentLinkedQueue<>();
+    /** Statuses the stub answers with, per path, in order; 200 once exhausted. */
+    private final Map<String, Queue<Integer>> statuses = new ConcurrentHashMap<>();
+    private final Map<String, Long> delaysMs = new ConcurrentHashMap<>();
+
+    private HttpServer server;
+    private WebhookRepository webhookRepository;
+    /** Receivers the target policy refuses, by host. */
+    private final Set<String> blockedHosts = ConcurrentHashMap.newKeySet();
+    private WebhookDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(java.util.concurrent.Executors.newCachedThreadPool());
+        server.createContext("/", exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            Long delay = delaysMs.get(path);
+            if (delay != null) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            Queue<Integer> planned = statuses.get(path);
+            Integer next = planned != null ? planned.poll() : null;
+            int status = next != null ? next : 200;
+            Map<String, String> headers = new ConcurrentHashMap<>();
+            exchange.getRequestHeaders().forEach((k, v) -> headers.put(k.toLowerCase(), v.get(0)));
+            received.add(new Received(path, headers, body, status));
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+        });
+        server.start();
+        webhookRepository = mock(WebhookRepository.class);
+        // The stub listens on loopback, which the real policy refuses.
+        WebhookTargetPolicy targetPolicy = new WebhookTargetPolicy("", false) {
+            @Override
+            boolean isPermitted(InetAddress address) {
+                return true;
+            }
+
+            @Override
+            public void check(URI uri) throws UnknownHostException, BlockedTargetException {
+                if (blockedHosts.contains(uri.getHost())) throw new BlockedTargetException("blocked " + uri.getHost());
+                super.check(uri);
+            }
+        };
+        dispatcher = new WebhookDispatcher(webhookRepository, objectMapper, targetPolicy, new SimpleMeterRegistry(),
+                100, 100, 4, 10, 100, 3, 10, 50, 5000, 60_000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dispatcher.stop();
+        server.stop(0);
+    }
+
+    private Webhook webhook(String id, String path, String modelName, List<String> events) {
+        return Webhook.builder()
+                .webhookId(id)
+                .url("http://127.0.0.1:" + server.getAddress().getPort() + path)
+                .modelName(modelName)
+                .events(events)
+                .secret("secret-" + id)
+                .build();
+    }
+
+    private static RegistryEvent event(String type, String model, String version) {
+        return RegistryEvent.builder().eventType(type).modelName(model).version(version).build();
+    }
+
+    private List<Received> receivedOn(String path) {
+        List<Received> out = new ArrayList<>();
+        for (Received r : received) if (r.path().equals(path)) out.add(r);
+        return out;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) fail("Timed out waiting for webhook deliveries");
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testEventsAreBatchedInOrderAndSigned() throws Exception {
+        when(webhookRepository.list()).thenReturn(List.of(webhook("w1", "/a", null, List.of())));
+
+        for (int v = 1; v <= 5; v++) {
+            dispatcher.publish(event(RegistryEvent.MODEL_VERSION_CREATED, "m", String.valueOf(v)));
+        }
+
+        await(() -> receivedOn("/a").size() == 1);
+        Received request = receivedOn("/a").get(0);
+        JsonNode payload = objectMapper.readTree(request.body());
+        assertEquals("w1", payload.get("webhook_id").asText());
+        assertEquals(5, payload.get("events").size());
+        for (int i = 0; i < 5; i++) {
+            JsonNode e = payload.get("events").get(i);
+            assertEquals(String.valueOf(i + 1), e.get("version").asText());
+            assertEquals("model_version.created", e.get("event_type").asText());
+            assertNotNull(e.get("event_id"));
+            assertNull(e.get("alias"));
+        }
+        assertEquals("w1", request.headers().get("x-kirka-webhook-id"));
+        assertEquals(payload.get("delivery_id").asText(), request.headers().get("x-kirka-delivery-id"));
+        String timestamp = request.headers().get("x-kirka-timestamp");
+        assertEquals("v1=" + WebhookDispatcher.sign("secret-w1", timestamp, request.body()),
+                request.headers().get("x-kirka-signature"));
+    }
+
+    @Test
+    public void testServerErrorsAreRetriedWithTheSameDeliveryId() throws Exception {
+        when(webhookRepository.list()).thenReturn(List.of(webhook("w1", "/a", null, List.of())));
+        statuses.put("/a", new ConcurrentLinkedQueue<>(List.of(503, 500)));
+
+        dispatcher.publish(event(RegistryEvent.MODEL_VERSION_STAGE_TRANSITIONED, "m", "3"));
+
+        await(() -> receivedOn("/a").size() == 3);
+        Thread.sleep(200);
+        List<Received> attempts = receivedOn("/a");
+        assertEquals(3, attempts.size());
+        assertEquals(List.of(503, 500, 200), attempts.stream().map(Received::status).toList());
+        assertEquals(1, attempts.stream().map(r -> r.headers().get("x-kirka-delivery-id")).distinct().count());
+    }
+
+    @Test
+    public void testBatchIsDroppedAfterMaxAttemptsOrWhenRejected() throws Exception {
+        when(webhookRepository.list()).thenReturn(List.of(webhook("w1", "/a", null, List.of())));
+        statuses.put("/a", new ConcurrentLinkedQueue<>(List.of(500, 500, 500, 400)));
+
+        dispatcher.publish(event(RegistryEvent.MODEL_VERSION_CREATED, "m", "1"));
+        await(() -> receivedOn("/a").size() == 3);
+        dispatcher.publish(event(RegistryEvent.MODEL_VERSION_CREATED, "m", "2"));
+        await(() -> receivedOn("/a").size() == 4);
+        dispatcher.publish(event(RegistryEvent.MODEL_VERSION_CREATED, "m", "3"));
+        await(() -> receivedOn("/a").size() == 5);
+        Thread.sleep(200);
+
+        List<Received> attempts = receivedOn("/a");
+        assertEquals(List.of(500, 500, 500, 400, 200), attempts.stream().map(Received::status).toList());
+        assertEquals("3", objectMapper.readTree(attempts.get(4).body()).get("events").get(0).get("version").asText());
+    }
+
+    @Test
+    public void testSlowReceiverDoesNotDelayOtherWebhooks() throws Exception {
+        when(webhookRepository.list()).thenReturn(List.of(
+                webhook("slow", "/slow", null, List.of()),
+                webhook("fast", "/fast", null, List.of())));
+        delaysMs.put("/slow", 2000L);
+
+        long start = System.currentTimeMillis();
+        dispatcher.publish(event(RegistryEvent.MODEL_VERSION_ALIAS_SET, "m", "1"));
+        assertTrue(System.currentTimeMillis() - start < 100, "publish must not wait for delivery");
+
+        await(() -> receivedOn("/fast").size() == 1);
+        assertTrue(System.currentTimeMillis() - start < 1500);
+        assertTrue(receivedOn("/slow").isEmpty());
+    }
+
+    @Test
+    public void testSlowReceiversDoNotHoldTheSenderThreads() throws Exception {
+        dispatcher.stop();
+        dispatcher = new WebhookDispatcher(webhookRepository, objectMapper, new WebhookTargetPolicy("", false) {
+            @Override
+            boolean isPermitted(InetAddress address) {
+                return true;
+            }
+        }, new SimpleMeterRegistry(), 100, 100, 1, 10, 100, 3, 10, 50, 5000, 60_000);
+        when(webhookRepository.list()).thenReturn(List.of(
+                webhook("slow-1", "/slow-1", null, List.of()),
+                webhook("slow-2", "/slow-2", null, List.of()),
+                webhook("fast", "/fast", null, List.of())));
+        delaysMs.put("/slow-1", 2000L);
+        delaysMs.put("/slow-2", 2000L);
+
+        long start = System.currentTimeMillis();
+        dispatcher.publish(event(RegistryEvent.MODEL_VERSION_CREATED, "m", "1"));
+
+        await(() -> receivedOn("/fast").size() == 1);
+        assertTrue(System.currentTimeMillis() - start < 1500, "one sender thread, two slow receivers");
+    }
+
+    @Test
+    public void testOnlyMatchingEventsAreRouted() throws Exception {
+        when(webhookRepository.list()).thenReturn(List.of(
+                webhook("scoped", "/scoped", "fraud", List.of(RegistryEvent.MODEL_VERSION_STAGE_TRANSITIONED))));
+
+        dispatcher.publish(event(RegistryEvent.MODEL_VERSION_STAGE_TRANSITIONED, "churn", "1"));
+        dispatcher.publish(event(RegistryEvent.MODEL_VERSION_CREATED, "fraud", "2"));
+        dispatcher.publish(event(RegistryEvent.MODEL_VERSION_STAGE_TRANSITIONED, "fraud", "2"));
+
+        await(() -> !receivedOn("/scoped").isEmpty());
+        Thread.sleep(200);
+        List<JsonNode> events = new ArrayList<>();
+        for (Received r : receivedOn("/scoped")) {
+            objectMapper.readTree(r.body()).get("events").forEach(events::add);
+        }
+        assertEquals(1, events.size());
+        assertEquals("fraud", events.get(0).get("model_name").asText());
+        assertEquals("2", events.get(0).get("version").asText());
+    }
+
+    @Test
+    public void testRenameMatchesWebhooksOfEitherName() {
+        Webhook onOld = webhook("w", "/a", "old", Collections.emptyList());
+        RegistryEvent rename = RegistryEvent.builder()
+                .eventType(RegistryEvent.REGISTERED_MODEL_RENAMED).modelName("new").oldName("old").build();
+
+        assertTrue(WebhookDispatcher.matches(onOld, rename));
+        assertTrue(WebhookDispatcher.matches(webhook("w", "/a", "new", null), rename));
+        assertFalse(WebhookDispatcher.matches(webhook("w", "/a", "other", null), rename));
+    }
+
+    @Test
+    public void testBackoffGrowsExponentiallyUpToTheCap() {
+        for (int i = 0; i < 20; i++) {
+            long first = dispatcher.backoffMs(1);
+            long third = dispatcher.backoffMs(3);
+            long capped = dispatcher.backoffMs(40);
+            assertTrue(first >= 5 && first <= 10, "first " + first);
+            assertTrue(third >= 20 && third <= 40, "third " + third);
+            assertTrue(capped >= 25 && capped <= 50, "capped " + capped);
+        }
+    }
+
+    @Test
+    public void testBatchesForARefusedHostAreDroppedWithoutARequest() throws Exception {
+        when(webhookRepository.list()).thenReturn(List.of(
+                webhook("w1", "/a", null, List.of()),
+                Webhook.builder().webhookId("w2").url("http://localhost:" + server.getAddress().getPort() + "/b")
+                        .events(List.of()).secret("s").build()));
+        blockedHosts.add("localhost");
+
+        dispatcher.publish(event(RegistryEvent.MODEL_VERSION_CREATED, "m", "1"));
+
+        await(() -> receivedOn("/a").size() == 1);
+        Thread.sleep(200);
+        assertTrue(receivedOn("/b").isEmpty());
+    }
+}
@@ -0,0 +1,64 @@
+package varga.kirka.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WebhookTargetPolicyTest {
+
+    /** Resolves every host to {@code address}, as a rebinding DNS server would. */
+    private static WebhookTargetPolicy resolvingTo(String allowedHosts, boolean allowPrivate, String address) {
+        return new WebhookTargetPolicy(allowedHosts, allowPrivate) {
+            @Override
+            InetAddress[] resolve(String host) throws UnknownHostException {
+                return new InetAddress[]{InetAddress.getByName(address)};
+            }
+        };
+    }
+
+    @Test
+    public void testInternalAddressesAreRefused() {
+        WebhookTargetPolicy policy = new WebhookTargetPolicy("", false);
+        for (String url : new String[]{"http://127.0.0.1:8080/", "http://169.254.169.254/latest/meta-data",
+                "http://0.0.0.0/", "http://10.1.2.3/", "http://192.168.0.1/", "http://100.64.0.1/",
+                "http://[::1]/", "http://[fd00::1]/", "http://[fe80::1]/"}) {
+            assertThrows(IllegalArgumentException.class, () -> policy.validate(url), url);
+        }
+        assertDoesNotThrow(() -> policy.validate("https://93.184.216.34/hook"));
+    }
+
+    @Test
+    public void testPrivateAddressesMayBeAllowedButNeverLoopback() {
+        WebhookTargetPolicy policy = new WebhookTargetPolicy("", true);
+
+        assertDoesNotThrow(() -> policy.validate("http://10.1.2.3/hook"));
+        assertThrows(IllegalArgumentException.class, () -> policy.validate("http://127.0.0.1/hook"));
+        assertThrows(IllegalArgumentException.class, () -> policy.validate("http://169.254.169.254/"));
+    }
+
+    @Test
+    public void testAllowedHostsRestrictTargets() {
+        WebhookTargetPolicy policy = resolvingTo("ci.example.com, *.hooks.example.org", false, "93.184.216.34");
+
+        assertTrue(policy.hasAllowedHosts());
+        assertDoesNotThrow(() -> policy.validate("https://ci.example.com/hook"));
+        assertDoesNotThrow(() -> policy.validate("https://a.hooks.example.org/hook"));
+        assertDoesNotThrow(() -> policy.validate("https://hooks.example.org/hook"));
+        assertThrows(IllegalArgumentException.class, () -> policy.validate("https://evil.example.com/hook"));
+        assertThrows(IllegalArgumentException.class, () -> policy.validate("https://ahooks.example.org/hook"));
+        assertThrows(IllegalArgumentException.class, () -> policy.validate("https://user:pw@ci.example.com/hook"));
+        assertThrows(IllegalArgumentException.class, () -> policy.validate("ftp://ci.example.com/hook"));
+    }
+
+    @Test
+    public void testAHostRepointedAfterRegistrationIsRefusedAtSendTime() {
+        WebhookTargetPolicy policy = resolvingTo("", false, "127.0.0.1");
+
+        assertThrows(WebhookTargetPolicy.BlockedTargetException.class,
+                () -> policy.check(URI.create("https://receiver.example.com/hook")));
+    }
+}